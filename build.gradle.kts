@@ -15,6 +15,7 @@ val yarnMappings: String by project
 val loaderVersion: String by project
 val fabricApiVersion: String by project
 val junitVersion: String by project
+val lwjglVersion: String by project
 val nativeBridgeVersion: String by project
 
 val isMacOs = System.getProperty("os.name").contains("Mac", ignoreCase = true)
@@ -24,6 +25,8 @@ val nativeSourceDir = layout.projectDirectory.dir("native")
 val nativeBuildDir = layout.buildDirectory.dir("native")
 val nativeBundleDir = layout.buildDirectory.dir("generated/native")
 val nativeLibraryFile = nativeBuildDir.map { it.file("libminecraft_metal.dylib") }
+val lwjglShaderModules = listOf("lwjgl-shaderc", "lwjgl-spvc")
+val lwjglNativeClassifiers = listOf("natives-macos", "natives-macos-arm64")
 
 dependencies {
     minecraft("com.mojang:minecraft:$minecraftVersion")
@@ -31,6 +34,15 @@ dependencies {
     modImplementation("net.fabricmc:fabric-loader:$loaderVersion")
     modImplementation("net.fabricmc.fabric-api:fabric-api:$fabricApiVersion")
 
+    lwjglShaderModules.forEach { module ->
+        implementation("org.lwjgl:$module:$lwjglVersion")
+        include("org.lwjgl:$module:$lwjglVersion")
+        lwjglNativeClassifiers.forEach { classifier ->
+            runtimeOnly("org.lwjgl:$module:$lwjglVersion:$classifier")
+            include("org.lwjgl:$module:$lwjglVersion:$classifier")
+        }
+    }
+
     testImplementation(platform("org.junit:junit-bom:$junitVersion"))
     testImplementation("org.junit.jupiter:junit-jupiter")
     testRuntimeOnly("org.junit.platform:junit-platform-launcher")
@@ -123,7 +135,23 @@ tasks.processResources {
 }
 
 tasks.test {
-    useJUnitPlatform()
+    useJUnitPlatform {
+        excludeTags("benchmark")
+    }
+}
+
+val shaderToolchainBenchmark by tasks.registering(Test::class) {
+    group = "verification"
+    description = "Compare a vanilla core shader reload through the in-process and subprocess shader toolchains."
+    testClassesDirs = sourceSets["test"].output.classesDirs
+    classpath = sourceSets["test"].runtimeClasspath
+    useJUnitPlatform {
+        includeTags("benchmark")
+    }
+    outputs.upToDateWhen { false }
+    testLogging {
+        showStandardStreams = true
+    }
 }
 
 java {
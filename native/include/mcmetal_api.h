@@ -80,6 +80,20 @@ extern "C"
         jboolean cull_enabled,
         jint cull_mode);
 
+    JNIEXPORT jint JNICALL Java_io_github_mcmetal_metal_bridge_NativeApi_nativeSetColorOutputState(
+        JNIEnv *env,
+        jclass clazz,
+        jint color_write_mask,
+        jboolean logic_op_enabled,
+        jint logic_op);
+
+    JNIEXPORT jint JNICALL Java_io_github_mcmetal_metal_bridge_NativeApi_nativeSetDepthBias(
+        JNIEnv *env,
+        jclass clazz,
+        jboolean enabled,
+        jfloat slope_factor,
+        jfloat constant_units);
+
     JNIEXPORT jint JNICALL Java_io_github_mcmetal_metal_bridge_NativeApi_nativeSetScissorState(
         JNIEnv *env,
         jclass clazz,
@@ -113,6 +127,27 @@ extern "C"
         jint count,
         jint index_type);
 
+    JNIEXPORT jint JNICALL Java_io_github_mcmetal_metal_bridge_NativeApi_nativeBeginFrame(
+        JNIEnv *env,
+        jclass clazz);
+
+    JNIEXPORT jint JNICALL Java_io_github_mcmetal_metal_bridge_NativeApi_nativeEndFrame(
+        JNIEnv *env,
+        jclass clazz);
+
+    JNIEXPORT jint JNICALL Java_io_github_mcmetal_metal_bridge_NativeApi_nativeSetFramesInFlight(
+        JNIEnv *env,
+        jclass clazz,
+        jint frames_in_flight);
+
+    JNIEXPORT jlong JNICALL Java_io_github_mcmetal_metal_bridge_NativeApi_nativeGetCompletedFrameCount(
+        JNIEnv *env,
+        jclass clazz);
+
+    JNIEXPORT jlong JNICALL Java_io_github_mcmetal_metal_bridge_NativeApi_nativeGetLastFrameWaitNanos(
+        JNIEnv *env,
+        jclass clazz);
+
     JNIEXPORT jlong JNICALL Java_io_github_mcmetal_metal_bridge_NativeApi_nativeCreateBuffer(
         JNIEnv *env,
         jclass clazz,
@@ -172,11 +207,66 @@ extern "C"
         jfloat z,
         jfloat w);
 
+    JNIEXPORT jint JNICALL Java_io_github_mcmetal_metal_bridge_NativeApi_nativeConfigureUniformBlock(
+        JNIEnv *env,
+        jclass clazz,
+        jlong program_handle,
+        jint block_byte_length,
+        jobject packed_regions,
+        jint packed_byte_length);
+
+    JNIEXPORT jint JNICALL Java_io_github_mcmetal_metal_bridge_NativeApi_nativeUpdateUniformBlock(
+        JNIEnv *env,
+        jclass clazz,
+        jlong program_handle,
+        jobject data,
+        jint data_length);
+
     JNIEXPORT jint JNICALL Java_io_github_mcmetal_metal_bridge_NativeApi_nativeDestroyShaderProgram(
         JNIEnv *env,
         jclass clazz,
         jlong program_handle);
 
+    JNIEXPORT jint JNICALL Java_io_github_mcmetal_metal_bridge_NativeApi_nativeSetShaderBinding(
+        JNIEnv *env,
+        jclass clazz,
+        jlong program_handle,
+        jlong vertex_descriptor_handle);
+
+    JNIEXPORT jint JNICALL Java_io_github_mcmetal_metal_bridge_NativeApi_nativePrecompilePipelineState(
+        JNIEnv *env,
+        jclass clazz,
+        jlong program_handle,
+        jlong vertex_descriptor_handle,
+        jobject packed_state,
+        jint packed_byte_length);
+
+    JNIEXPORT jint JNICALL Java_io_github_mcmetal_metal_bridge_NativeApi_nativeSetPendingClear(
+        JNIEnv *env,
+        jclass clazz,
+        jint clear_mask,
+        jfloat red,
+        jfloat green,
+        jfloat blue,
+        jfloat alpha,
+        jdouble depth,
+        jint stencil);
+
+    JNIEXPORT jint JNICALL Java_io_github_mcmetal_metal_bridge_NativeApi_nativeExecutePendingClear(
+        JNIEnv *env,
+        jclass clazz);
+
+    JNIEXPORT jint JNICALL Java_io_github_mcmetal_metal_bridge_NativeApi_nativeClearScissored(
+        JNIEnv *env,
+        jclass clazz,
+        jint clear_mask,
+        jfloat red,
+        jfloat green,
+        jfloat blue,
+        jfloat alpha,
+        jdouble depth,
+        jint stencil);
+
     JNIEXPORT void JNICALL Java_io_github_mcmetal_metal_bridge_NativeApi_nativeShutdown(
         JNIEnv *env,
         jclass clazz);
@@ -57,6 +57,16 @@ extern "C"
         int32_t cull_enabled,
         int32_t cull_mode);
 
+    int32_t mcmetal_swift_set_color_output_state(
+        int32_t color_write_mask,
+        int32_t logic_op_enabled,
+        int32_t logic_op);
+
+    int32_t mcmetal_swift_set_depth_bias(
+        int32_t enabled,
+        float slope_factor,
+        float constant_units);
+
     int32_t mcmetal_swift_set_scissor_state(
         int32_t scissor_enabled,
         int32_t x,
@@ -82,6 +92,16 @@ extern "C"
         int32_t count,
         int32_t index_type);
 
+    int32_t mcmetal_swift_begin_frame(void);
+
+    int32_t mcmetal_swift_end_frame(void);
+
+    int32_t mcmetal_swift_set_frames_in_flight(int32_t frames_in_flight);
+
+    int64_t mcmetal_swift_get_completed_frame_count(void);
+
+    int64_t mcmetal_swift_get_last_frame_wait_nanos(void);
+
     int64_t mcmetal_swift_create_buffer(
         int32_t usage,
         int32_t size,
@@ -125,9 +145,50 @@ extern "C"
         float z,
         float w);
 
+    int32_t mcmetal_swift_configure_uniform_block(
+        int64_t program_handle,
+        int32_t block_byte_length,
+        const int32_t *packed_regions,
+        int32_t packed_int_count);
+
+    int32_t mcmetal_swift_update_uniform_block(
+        int64_t program_handle,
+        const void *data,
+        int32_t data_length);
+
     int32_t mcmetal_swift_destroy_shader_program(
         int64_t program_handle);
 
+    int32_t mcmetal_swift_set_shader_binding(
+        int64_t program_handle,
+        int64_t vertex_descriptor_handle);
+
+    int32_t mcmetal_swift_precompile_pipeline_state(
+        int64_t program_handle,
+        int64_t vertex_descriptor_handle,
+        const int32_t *packed_state,
+        int32_t packed_int_count);
+
+    int32_t mcmetal_swift_set_pending_clear(
+        int32_t clear_mask,
+        float red,
+        float green,
+        float blue,
+        float alpha,
+        double depth,
+        int32_t stencil);
+
+    int32_t mcmetal_swift_execute_pending_clear(void);
+
+    int32_t mcmetal_swift_clear_scissored(
+        int32_t clear_mask,
+        float red,
+        float green,
+        float blue,
+        float alpha,
+        double depth,
+        int32_t stencil);
+
     void mcmetal_swift_shutdown(void);
 
 #ifdef __cplusplus
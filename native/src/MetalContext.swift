@@ -14,9 +14,20 @@ private let kDebugFlagLabels: Int32 = 1 << 1
 private let kBufferUsageStatic: Int32 = 0
 private let kBufferUsageDynamic: Int32 = 1
 private let kDynamicBufferSlotCount: Int = 3
+// Dynamic buffers rotate one slot per frame, so more frames in flight than slots would overwrite live data.
+private let kMaxFramesInFlight: Int = kDynamicBufferSlotCount
 private let kDynamicBufferAlignment: Int = 256
 private let kUploadStagingInitialSize: Int = 4 * 1024 * 1024
 private let kPackedVertexDescriptorIntsPerAttribute: Int = 7
+private let kPackedPipelineStateIntCount: Int = 13
+private let kPackedUniformRegionIntCount: Int = 3
+// Vertex data occupies buffer index 0, so uniform block binding N is bound at index N + 1; shaders are translated
+// to match (SpirvToMslTranslator.UNIFORM_BUFFER_INDEX_BASE).
+private let kUniformBufferIndexBase: Int = 1
+private let kMaxInlineUniformBytes: Int = 4096
+private let kClearColorBit: Int32 = 0x4000
+private let kClearDepthBit: Int32 = 0x0100
+private let kClearStencilBit: Int32 = 0x0400
 private let kVertexUsagePosition: Int32 = 0
 private let kVertexUsageNormal: Int32 = 1
 private let kVertexUsageColor: Int32 = 2
@@ -48,6 +59,32 @@ private let kDemoShaderSource = """
         return float4(0.9, 0.9, 0.95, 1.0);
     }
     """
+private let kClearVertexFunctionName = "mcmetal_clear_vertex"
+private let kClearFragmentFunctionName = "mcmetal_clear_fragment"
+private let kClearShaderSource = """
+    #include <metal_stdlib>
+    using namespace metal;
+
+    struct ClearVertexOut {
+        float4 position [[position]];
+    };
+
+    vertex ClearVertexOut mcmetal_clear_vertex(uint vertexId [[vertex_id]]) {
+        const float2 positions[3] = {
+            float2(-1.0, -1.0),
+            float2(3.0, -1.0),
+            float2(-1.0, 3.0)
+        };
+
+        ClearVertexOut out;
+        out.position = float4(positions[vertexId % 3], 0.0, 1.0);
+        return out;
+    }
+
+    fragment float4 mcmetal_clear_fragment(constant float4 &color [[buffer(0)]]) {
+        return color;
+    }
+    """
 
 private struct NativeBufferRecord {
     var usage: Int32
@@ -58,7 +95,7 @@ private struct NativeBufferRecord {
     let metalBuffer: MTLBuffer
 }
 
-private struct NativeVertexDescriptorElement {
+private struct NativeVertexDescriptorElement: Hashable {
     let attributeIndex: Int32
     let usage: Int32
     let componentType: Int32
@@ -74,13 +111,126 @@ private struct NativeVertexDescriptorRecord {
     var descriptor: MTLVertexDescriptor
 }
 
+private struct NativeVertexDescriptorSignature: Hashable {
+    let stride: Int
+    let elements: [NativeVertexDescriptorElement]
+}
+
+private final class NativeShaderFunctionEntry {
+    let library: MTLLibrary
+    let function: MTLFunction
+    var references: Int = 0
+
+    init(library: MTLLibrary, function: MTLFunction) {
+        self.library = library
+        self.function = function
+    }
+}
+
 private struct NativeShaderProgramRecord {
     var name: String
-    var vertexLibrary: MTLLibrary
-    var fragmentLibrary: MTLLibrary
+    var vertexSource: String
+    var fragmentSource: String
     var vertexFunction: MTLFunction
     var fragmentFunction: MTLFunction
     var pipelineState: MTLRenderPipelineState?
+    var uniformBlock: [UInt8] = []
+    var uniformRegions: [NativeUniformRegion] = []
+}
+
+private struct NativeUniformRegion {
+    var binding: Int
+    var offset: Int
+    var length: Int
+}
+
+private struct ScissoredClearTarget {
+    let scissorRect: MTLScissorRect
+    let writeMask: Int32
+}
+
+private struct PendingClearState {
+    var mask: Int32
+    var color: MTLClearColor
+    var depth: Double
+    var stencil: UInt32
+}
+
+private final class FramePacer {
+    // Starts at zero and is signalled up, so releasing it with slots held is not a libdispatch error.
+    private let semaphore = DispatchSemaphore(value: 0)
+    private let lock = NSLock()
+    private var framesInFlight: Int = kMaxFramesInFlight
+    private var completedFrames: UInt64 = 0
+    private var lastWaitNanos: UInt64 = 0
+
+    init() {
+        for _ in 0..<kMaxFramesInFlight {
+            semaphore.signal()
+        }
+    }
+
+    // Slots above the configured limit stay held by the pacer itself.
+    func configure(framesInFlight requested: Int) {
+        let target = min(max(requested, 1), kMaxFramesInFlight)
+        lock.lock()
+        let current = framesInFlight
+        framesInFlight = target
+        lock.unlock()
+
+        if target < current {
+            for _ in 0..<(current - target) {
+                semaphore.wait()
+            }
+        } else if target > current {
+            for _ in 0..<(target - current) {
+                semaphore.signal()
+            }
+        }
+    }
+
+    func acquireSlot() {
+        let start = DispatchTime.now().uptimeNanoseconds
+        semaphore.wait()
+        let waited = DispatchTime.now().uptimeNanoseconds &- start
+        lock.lock()
+        lastWaitNanos = waited
+        lock.unlock()
+    }
+
+    func releaseSlot(completed: Bool) {
+        if completed {
+            lock.lock()
+            completedFrames &+= 1
+            lock.unlock()
+        }
+        semaphore.signal()
+    }
+
+    var completedFrameCount: UInt64 {
+        lock.lock()
+        defer { lock.unlock() }
+        return completedFrames
+    }
+
+    var lastFrameWaitNanos: UInt64 {
+        lock.lock()
+        defer { lock.unlock() }
+        return lastWaitNanos
+    }
+}
+
+private final class NativeFrameState {
+    let drawable: CAMetalDrawable
+    let commandBuffer: MTLCommandBuffer
+    var encoder: MTLRenderCommandEncoder?
+    var passCount: Int = 0
+    var drawCount: Int = 0
+
+    init(drawable: CAMetalDrawable, commandBuffer: MTLCommandBuffer) {
+        self.drawable = drawable
+        self.commandBuffer = commandBuffer
+    }
 }
 
 private struct NativeUniformRecord {
@@ -108,20 +258,33 @@ private final class MetalContextState {
     var scaleFactor: CGFloat
     var fullscreen: Bool
     var pipelineCache: [PipelineKey: MTLRenderPipelineState] = [:]
+    var clearShaderLibrary: MTLLibrary?
+    var clearPipelineCache: [Int32: MTLRenderPipelineState] = [:]
     var depthStencilCache: [DepthStencilKey: MTLDepthStencilState] = [:]
     var nextBufferHandle: Int64 = 1
     var nativeBuffers: [Int64: NativeBufferRecord] = [:]
     var nextVertexDescriptorHandle: Int64 = 1
     var nativeVertexDescriptors: [Int64: NativeVertexDescriptorRecord] = [:]
+    var vertexDescriptorHandlesBySignature: [NativeVertexDescriptorSignature: Int64] = [:]
     var nextShaderProgramHandle: Int64 = 1
     var nativeShaderPrograms: [Int64: NativeShaderProgramRecord] = [:]
+    var shaderFunctionsBySource: [String: NativeShaderFunctionEntry] = [:]
     var nextUniformHandle: Int64 = 1
     var nativeUniforms: [Int64: NativeUniformRecord] = [:]
     var frameSerial: UInt64 = 0
+    var pendingClear: PendingClearState?
+    var currentFrame: NativeFrameState?
+    let framePacer = FramePacer()
     var uploadStagingBuffer: MTLBuffer?
     var uploadStagingCapacity: Int = 0
     var uploadStagingWriteOffset: Int = 0
     var uploadStagingFrame: UInt64 = 0
+    var uniformOverflowBuffers: [MTLBuffer?] = Array(repeating: nil, count: kDynamicBufferSlotCount)
+    var uniformOverflowWriteOffset: Int = 0
+    var uniformOverflowFrame: UInt64 = 0
+    // Program pipelines read stage_in from buffer 0 and sample bound textures, and the draw path binds neither yet, so
+    // draws keep the built-in pipeline; program pipelines are only recorded and precompiled until then.
+    let drawsWithProgramPipelines = false
 
     init(
         window: NSWindow,
@@ -301,6 +464,40 @@ private func reserveUploadStagingRange(
     return (stagingBuffer, rangeOffset)
 }
 
+private func reserveUniformOverflowRange(
+    context: MetalContextState,
+    byteCount: Int
+) -> (buffer: MTLBuffer, offset: Int)? {
+    // One buffer per dynamic slot: frames in flight never exceed the slot count, so a slot's buffer is idle on reuse.
+    let slot = Int(context.frameSerial % UInt64(kDynamicBufferSlotCount))
+    if context.uniformOverflowFrame != context.frameSerial {
+        context.uniformOverflowFrame = context.frameSerial
+        context.uniformOverflowWriteOffset = 0
+    }
+
+    let alignedLength = alignUp(byteCount, alignment: kDynamicBufferAlignment)
+    if let existing = context.uniformOverflowBuffers[slot],
+        context.uniformOverflowWriteOffset + alignedLength <= existing.length
+    {
+        let rangeOffset = context.uniformOverflowWriteOffset
+        context.uniformOverflowWriteOffset += alignedLength
+        return (existing, rangeOffset)
+    }
+
+    // Encoders retain the buffers bound to them, so draws already encoded this frame keep the one being replaced.
+    let previousLength = context.uniformOverflowBuffers[slot]?.length ?? 0
+    let capacity = max(previousLength * 2, alignedLength, kMaxInlineUniformBytes * 16)
+    guard let buffer = context.device.makeBuffer(length: capacity, options: .storageModeShared) else {
+        return nil
+    }
+    if (context.debugFlags & kDebugFlagLabels) != 0 {
+        buffer.label = "MCMetal Uniform Overflow \(slot)"
+    }
+    context.uniformOverflowBuffers[slot] = buffer
+    context.uniformOverflowWriteOffset = alignedLength
+    return (buffer, 0)
+}
+
 private func markFrameSubmitted() {
     stateLock.lock()
     defer { stateLock.unlock() }
@@ -310,6 +507,37 @@ private func markFrameSubmitted() {
     context.frameSerial &+= 1
 }
 
+private func takePendingClear(_ context: MetalContextState) -> PendingClearState? {
+    let pendingClear = context.pendingClear
+    context.pendingClear = nil
+    return pendingClear
+}
+
+// Puts back a clear taken for a pass that could not be encoded, unless a newer clear was set meanwhile.
+private func restorePendingClear(_ context: MetalContextState, _ pendingClear: PendingClearState?) {
+    guard let pendingClear else {
+        return
+    }
+    stateLock.lock()
+    defer { stateLock.unlock() }
+    if contextState === context && context.pendingClear == nil {
+        context.pendingClear = pendingClear
+    }
+}
+
+// Depth and stencil clear values are kept for when the pass gains those attachments.
+private func applyLoadAction(
+    _ pendingClear: PendingClearState?,
+    to colorAttachment: MTLRenderPassColorAttachmentDescriptor
+) {
+    guard let pendingClear, (pendingClear.mask & kClearColorBit) != 0 else {
+        colorAttachment.loadAction = .load
+        return
+    }
+    colorAttachment.loadAction = .clear
+    colorAttachment.clearColor = pendingClear.color
+}
+
 private func shouldLogStateTransitions(_ context: MetalContextState) -> Bool {
     return (context.debugFlags & kDebugFlagLabels) != 0
         || (context.debugFlags & kDebugFlagValidation) != 0
@@ -470,6 +698,76 @@ private func mapStencilOperation(_ glStencilOperation: Int32) -> MTLStencilOpera
     }
 }
 
+private func mapColorWriteMask(_ packedMask: Int32) -> MTLColorWriteMask {
+    var mask: MTLColorWriteMask = []
+    if (packedMask & 0x1) != 0 {
+        mask.insert(.red)
+    }
+    if (packedMask & 0x2) != 0 {
+        mask.insert(.green)
+    }
+    if (packedMask & 0x4) != 0 {
+        mask.insert(.blue)
+    }
+    if (packedMask & 0x8) != 0 {
+        mask.insert(.alpha)
+    }
+    return mask
+}
+
+// Metal has no framebuffer logic ops; approximate them with fixed blend factors.
+private let unsupportedLogicOpLock = NSLock()
+private var loggedUnsupportedLogicOps = Set<Int32>()
+
+private func logUnsupportedLogicOpOnce(_ glLogicOp: Int32) {
+    unsupportedLogicOpLock.lock()
+    let firstSighting = loggedUnsupportedLogicOps.insert(glLogicOp).inserted
+    unsupportedLogicOpLock.unlock()
+    if firstSighting {
+        NSLog(
+            "event=metal_phase6 phase=logic_op operation=approximate status=unsupported logic_op=0x%04X fallback=copy",
+            glLogicOp
+        )
+    }
+}
+
+// Blend factors reproduce these ops exactly for 0/1 channels, except where noted. Ops that need a result of 1 where
+// source and destination are both 0, such as GL_INVERT, cannot be expressed as a blend and draw as COPY.
+private func applyLogicOpApproximation(
+    _ glLogicOp: Int32,
+    to colorAttachment: MTLRenderPipelineColorAttachmentDescriptor
+) {
+    let factors: (MTLBlendFactor, MTLBlendFactor)
+    switch glLogicOp {
+    case 0x1503:  // GL_COPY
+        return
+    case 0x1500:  // GL_CLEAR
+        factors = (.zero, .zero)
+    case 0x1501:  // GL_AND
+        factors = (.zero, .sourceColor)
+    case 0x1505:  // GL_NOOP
+        factors = (.zero, .one)
+    case 0x1506:  // GL_XOR
+        factors = (.oneMinusDestinationColor, .oneMinusSourceColor)
+    case 0x1507:  // GL_OR
+        factors = (.one, .oneMinusSourceColor)
+    case 0x150B:  // GL_OR_REVERSE, used by vanilla text highlights
+        // s | ~d: exact where the source is 1 (a white cursor stays white); where it is 0 the destination is
+        // kept rather than inverted, which GL_OR gives and no blend can improve on.
+        factors = (.one, .oneMinusSourceColor)
+    default:
+        logUnsupportedLogicOpOnce(glLogicOp)
+        return
+    }
+    colorAttachment.isBlendingEnabled = true
+    colorAttachment.sourceRGBBlendFactor = factors.0
+    colorAttachment.destinationRGBBlendFactor = factors.1
+    colorAttachment.sourceAlphaBlendFactor = .one
+    colorAttachment.destinationAlphaBlendFactor = .zero
+    colorAttachment.rgbBlendOperation = .add
+    colorAttachment.alphaBlendOperation = .add
+}
+
 private func mapPrimitiveType(_ glMode: Int32) -> MTLPrimitiveType? {
     switch glMode {
     case 0x0000:
@@ -576,16 +874,27 @@ private func mapVertexElementFormat(
     }
 }
 
-private func createPipelineState(context: MetalContextState, key: PipelineKey)
-    -> MTLRenderPipelineState?
+private func makePipelineDescriptor(context: MetalContextState, key: PipelineKey)
+    -> MTLRenderPipelineDescriptor?
 {
-    if let cachedPipeline = context.pipelineCache[key] {
-        return cachedPipeline
-    }
-
     let descriptor = MTLRenderPipelineDescriptor()
-    descriptor.vertexFunction = context.vertexFunction
-    descriptor.fragmentFunction = context.fragmentFunction
+    if key.programHandle != 0 {
+        guard let program = context.nativeShaderPrograms[key.programHandle] else {
+            return nil
+        }
+        descriptor.vertexFunction = program.vertexFunction
+        descriptor.fragmentFunction = program.fragmentFunction
+    } else {
+        descriptor.vertexFunction = context.vertexFunction
+        descriptor.fragmentFunction = context.fragmentFunction
+    }
+    if key.vertexDescriptorHandle != 0 {
+        guard let vertexDescriptorRecord = context.nativeVertexDescriptors[key.vertexDescriptorHandle]
+        else {
+            return nil
+        }
+        descriptor.vertexDescriptor = vertexDescriptorRecord.descriptor
+    }
     descriptor.rasterSampleCount = Int(max(key.sampleCount, 1))
 
     guard let colorAttachment = descriptor.colorAttachments[0] else {
@@ -609,7 +918,24 @@ private func createPipelineState(context: MetalContextState, key: PipelineKey)
     } else {
         colorAttachment.isBlendingEnabled = false
     }
+    if key.logicOpEnabled {
+        applyLogicOpApproximation(key.logicOp, to: colorAttachment)
+    }
+    colorAttachment.writeMask = mapColorWriteMask(key.colorWriteMask)
+
+    return descriptor
+}
+
+private func createPipelineState(context: MetalContextState, key: PipelineKey)
+    -> MTLRenderPipelineState?
+{
+    if let cachedPipeline = context.pipelineCache[key] {
+        return cachedPipeline
+    }
 
+    guard let descriptor = makePipelineDescriptor(context: context, key: key) else {
+        return nil
+    }
     guard let pipelineState = try? context.device.makeRenderPipelineState(descriptor: descriptor)
     else {
         return nil
@@ -619,13 +945,51 @@ private func createPipelineState(context: MetalContextState, key: PipelineKey)
     return pipelineState
 }
 
-private func compileShaderProgramPipeline(
+private func parsePackedPipelineState(
+    context: MetalContextState,
+    programHandle: Int64,
+    vertexDescriptorHandle: Int64,
+    packedState: UnsafePointer<Int32>,
+    packedIntCount: Int32
+) -> PipelineKey? {
+    if Int(packedIntCount) < kPackedPipelineStateIntCount {
+        return nil
+    }
+
+    var snapshot = RenderStateSnapshot()
+    snapshot.blend = BlendState(
+        enabled: packedState[1] != 0,
+        srcRGB: packedState[2],
+        dstRGB: packedState[3],
+        srcAlpha: packedState[4],
+        dstAlpha: packedState[5],
+        equationRGB: packedState[6],
+        equationAlpha: packedState[7]
+    )
+    snapshot.raster = RasterState(cullEnabled: packedState[8] != 0, cullMode: packedState[9])
+    snapshot.colorOutput = ColorOutputState(
+        writeMask: packedState[10] & 0xF,
+        logicOpEnabled: packedState[11] != 0,
+        logicOp: packedState[12]
+    )
+    snapshot.binding = ShaderBindingState(
+        programHandle: programHandle,
+        vertexDescriptorHandle: vertexDescriptorHandle
+    )
+    return snapshot.makePipelineKey(
+        colorPixelFormat: Int32(bitPattern: UInt32(context.layer.pixelFormat.rawValue)),
+        sampleCount: 1,
+        primitiveType: packedState[0]
+    )
+}
+
+private func makeShaderProgramPipelineDescriptor(
     context: MetalContextState,
     programHandle: Int64,
     vertexDescriptorHandle: Int64
-) -> Int32 {
-    guard var program = context.nativeShaderPrograms[programHandle] else {
-        return kStatusInvalidArgument
+) -> MTLRenderPipelineDescriptor? {
+    guard let program = context.nativeShaderPrograms[programHandle] else {
+        return nil
     }
 
     let descriptor = MTLRenderPipelineDescriptor()
@@ -633,26 +997,18 @@ private func compileShaderProgramPipeline(
     descriptor.fragmentFunction = program.fragmentFunction
     descriptor.rasterSampleCount = 1
     guard let colorAttachment = descriptor.colorAttachments[0] else {
-        return kStatusInitializationFailed
+        return nil
     }
     colorAttachment.pixelFormat = context.layer.pixelFormat
 
     if vertexDescriptorHandle != 0 {
         guard let vertexDescriptorRecord = context.nativeVertexDescriptors[vertexDescriptorHandle]
         else {
-            return kStatusInvalidArgument
+            return nil
         }
         descriptor.vertexDescriptor = vertexDescriptorRecord.descriptor
     }
-
-    guard let compiledPipeline = try? context.device.makeRenderPipelineState(descriptor: descriptor)
-    else {
-        return kStatusInitializationFailed
-    }
-
-    program.pipelineState = compiledPipeline
-    context.nativeShaderPrograms[programHandle] = program
-    return kStatusOk
+    return descriptor
 }
 
 private func createDepthStencilState(context: MetalContextState, key: DepthStencilKey)
@@ -688,6 +1044,47 @@ private func createDepthStencilState(context: MetalContextState, key: DepthStenc
     return depthStencilState
 }
 
+private func bindUniformBlock(
+    context: MetalContextState,
+    encoder: MTLRenderCommandEncoder,
+    programHandle: Int64
+) {
+    guard programHandle > 0, let program = context.nativeShaderPrograms[programHandle],
+        !program.uniformRegions.isEmpty
+    else {
+        return
+    }
+
+    // setVertexBytes/setFragmentBytes copy into the encoder, so the staging bytes can change right after.
+    program.uniformBlock.withUnsafeBytes { block in
+        guard let base = block.baseAddress else {
+            return
+        }
+        for region in program.uniformRegions {
+            let index = kUniformBufferIndexBase + region.binding
+            if region.length <= kMaxInlineUniformBytes {
+                encoder.setVertexBytes(base + region.offset, length: region.length, index: index)
+                encoder.setFragmentBytes(base + region.offset, length: region.length, index: index)
+                continue
+            }
+
+            // Inline bytes are capped at 4 KB; larger blocks are copied into this frame's overflow buffer instead.
+            guard let range = reserveUniformOverflowRange(context: context, byteCount: region.length) else {
+                NSLog(
+                    "event=metal_phase6 phase=uniform_block operation=overflow status=allocation_failed bytes=%ld binding=%ld",
+                    region.length,
+                    region.binding
+                )
+                continue
+            }
+            range.buffer.contents().advanced(by: range.offset)
+                .copyMemory(from: base + region.offset, byteCount: region.length)
+            encoder.setVertexBuffer(range.buffer, offset: range.offset, index: index)
+            encoder.setFragmentBuffer(range.buffer, offset: range.offset, index: index)
+        }
+    }
+}
+
 private func configureEncoderState(
     context: MetalContextState,
     encoder: MTLRenderCommandEncoder,
@@ -701,7 +1098,8 @@ private func configureEncoderState(
     let pipelineKey = context.renderStateTracker.makePipelineKey(
         colorPixelFormat: Int32(bitPattern: UInt32(context.layer.pixelFormat.rawValue)),
         sampleCount: 1,
-        primitiveType: primitiveType
+        primitiveType: primitiveType,
+        includeShaderBinding: context.drawsWithProgramPipelines
     )
     let depthStencilKey = context.renderStateTracker.makeDepthStencilKey()
 
@@ -715,6 +1113,13 @@ private func configureEncoderState(
 
     encoder.setRenderPipelineState(pipelineState)
     encoder.setDepthStencilState(depthStencilState)
+    if context.drawsWithProgramPipelines {
+        bindUniformBlock(
+            context: context,
+            encoder: encoder,
+            programHandle: snapshot.binding.programHandle
+        )
+    }
 
     if snapshot.raster.cullEnabled {
         encoder.setCullMode(mapCullMode(snapshot.raster.cullMode))
@@ -723,6 +1128,16 @@ private func configureEncoderState(
     }
     encoder.setFrontFacing(.counterClockwise)
 
+    if snapshot.depthBias.enabled {
+        encoder.setDepthBias(
+            snapshot.depthBias.constantUnits,
+            slopeScale: snapshot.depthBias.slopeFactor,
+            clamp: 0.0
+        )
+    } else {
+        encoder.setDepthBias(0.0, slopeScale: 0.0, clamp: 0.0)
+    }
+
     if snapshot.scissor.enabled {
         let scissorRect = MTLScissorRect(
             x: max(Int(snapshot.scissor.x), 0),
@@ -731,6 +1146,9 @@ private func configureEncoderState(
             height: max(Int(snapshot.scissor.height), 1)
         )
         encoder.setScissorRect(scissorRect)
+    } else {
+        // A scissored clear may have narrowed the rect earlier in this pass.
+        encoder.setScissorRect(fullTargetScissorRect(context))
     }
 
     let viewport = MTLViewport(
@@ -750,6 +1168,88 @@ private func configureEncoderState(
     return kStatusOk
 }
 
+private func fullTargetScissorRect(_ context: MetalContextState) -> MTLScissorRect {
+    let drawableSize = context.layer.drawableSize
+    return MTLScissorRect(
+        x: 0,
+        y: 0,
+        width: max(Int(drawableSize.width), 1),
+        height: max(Int(drawableSize.height), 1)
+    )
+}
+
+private func createClearPipelineState(context: MetalContextState, colorWriteMask: Int32)
+    -> MTLRenderPipelineState?
+{
+    if let cachedPipeline = context.clearPipelineCache[colorWriteMask] {
+        return cachedPipeline
+    }
+    if context.clearShaderLibrary == nil {
+        context.clearShaderLibrary = try? context.device.makeLibrary(
+            source: kClearShaderSource, options: nil)
+    }
+    guard
+        let library = context.clearShaderLibrary,
+        let vertexFunction = library.makeFunction(name: kClearVertexFunctionName),
+        let fragmentFunction = library.makeFunction(name: kClearFragmentFunctionName)
+    else {
+        return nil
+    }
+
+    let descriptor = MTLRenderPipelineDescriptor()
+    descriptor.vertexFunction = vertexFunction
+    descriptor.fragmentFunction = fragmentFunction
+    guard let colorAttachment = descriptor.colorAttachments[0] else {
+        return nil
+    }
+    colorAttachment.pixelFormat = context.layer.pixelFormat
+    colorAttachment.writeMask = mapColorWriteMask(colorWriteMask)
+    guard let pipelineState = try? context.device.makeRenderPipelineState(descriptor: descriptor)
+    else {
+        return nil
+    }
+
+    context.clearPipelineCache[colorWriteMask] = pipelineState
+    return pipelineState
+}
+
+private func configureScissoredClearState(
+    context: MetalContextState,
+    encoder: MTLRenderCommandEncoder,
+    scissorRect: MTLScissorRect,
+    colorWriteMask: Int32,
+    color: SIMD4<Float>
+) -> Int32 {
+    guard
+        let pipelineState = createClearPipelineState(
+            context: context, colorWriteMask: colorWriteMask),
+        let depthStencilState = createDepthStencilState(
+            context: context, key: RenderStateSnapshot().makeDepthStencilKey())
+    else {
+        return kStatusInitializationFailed
+    }
+
+    encoder.setRenderPipelineState(pipelineState)
+    encoder.setDepthStencilState(depthStencilState)
+    encoder.setCullMode(.none)
+    encoder.setDepthBias(0.0, slopeScale: 0.0, clamp: 0.0)
+    // Clears ignore the viewport: the triangle covers the whole target and the scissor bounds it.
+    let fullRect = fullTargetScissorRect(context)
+    encoder.setViewport(
+        MTLViewport(
+            originX: 0.0,
+            originY: 0.0,
+            width: Double(fullRect.width),
+            height: Double(fullRect.height),
+            znear: 0.0,
+            zfar: 1.0
+        ))
+    encoder.setScissorRect(scissorRect)
+    var clearColor = color
+    encoder.setFragmentBytes(&clearColor, length: MemoryLayout<SIMD4<Float>>.stride, index: 0)
+    return kStatusOk
+}
+
 @_cdecl("mcmetal_swift_initialize")
 public func mcmetal_swift_initialize(
     _ cocoaWindowHandle: Int64,
@@ -895,6 +1395,22 @@ public func mcmetal_swift_render_demo_frame(
         stateLock.unlock()
         return kStatusInitializationFailed
     }
+    if context.currentFrame != nil {
+        // Inside an open frame the demo clear becomes the frame's pending clear.
+        context.pendingClear = PendingClearState(
+            mask: kClearColorBit,
+            color: MTLClearColor(
+                red: clampColor(red),
+                green: clampColor(green),
+                blue: clampColor(blue),
+                alpha: clampColor(alpha)
+            ),
+            depth: 1.0,
+            stencil: 0
+        )
+        stateLock.unlock()
+        return kStatusOk
+    }
     let layer = context.layer
     let commandQueue = context.commandQueue
     let debugFlags = context.debugFlags
@@ -1052,6 +1568,50 @@ public func mcmetal_swift_set_cull_state(
     }
 }
 
+@_cdecl("mcmetal_swift_set_color_output_state")
+public func mcmetal_swift_set_color_output_state(
+    _ colorWriteMask: Int32,
+    _ logicOpEnabled: Int32,
+    _ logicOp: Int32
+) -> Int32 {
+    if (colorWriteMask & ~0xF) != 0 {
+        assertionFailure("Color write mask must only use the RGBA bits.")
+        return kStatusInvalidArgument
+    }
+
+    return withContextState { context in
+        let changed = context.renderStateTracker.setColorOutputState(
+            writeMask: colorWriteMask,
+            logicOpEnabled: logicOpEnabled != 0,
+            logicOp: logicOp
+        )
+        logStateTransition(context: context, operation: "set_color_output_state", changed: changed)
+        return kStatusOk
+    }
+}
+
+@_cdecl("mcmetal_swift_set_depth_bias")
+public func mcmetal_swift_set_depth_bias(
+    _ enabled: Int32,
+    _ slopeFactor: Float,
+    _ constantUnits: Float
+) -> Int32 {
+    if !slopeFactor.isFinite || !constantUnits.isFinite {
+        assertionFailure("Depth bias values must be finite.")
+        return kStatusInvalidArgument
+    }
+
+    return withContextState { context in
+        let changed = context.renderStateTracker.setDepthBias(
+            enabled: enabled != 0,
+            slopeFactor: slopeFactor,
+            constantUnits: constantUnits
+        )
+        logStateTransition(context: context, operation: "set_depth_bias", changed: changed)
+        return kStatusOk
+    }
+}
+
 @_cdecl("mcmetal_swift_set_scissor_state")
 public func mcmetal_swift_set_scissor_state(
     _ scissorEnabled: Int32,
@@ -1110,46 +1670,101 @@ public func mcmetal_swift_set_viewport_state(
     }
 }
 
-@_cdecl("mcmetal_swift_draw")
-public func mcmetal_swift_draw(
-    _ mode: Int32,
-    _ first: Int32,
-    _ count: Int32
-) -> Int32 {
-    if first < 0 || count <= 0 {
-        assertionFailure("Draw range must be valid.")
-        return kStatusInvalidArgument
+private func makeFrameEncoder(
+    frame: NativeFrameState,
+    pendingClear: PendingClearState?,
+    debugFlags: Int32
+) -> MTLRenderCommandEncoder? {
+    if let encoder = frame.encoder {
+        if pendingClear == nil {
+            return encoder
+        }
+        // A clear between draws starts a new pass so it can still be a load action.
+        encoder.endEncoding()
+        frame.encoder = nil
     }
 
-    guard let primitiveType = mapPrimitiveType(mode) else {
-        assertionFailure("Unsupported GL primitive mode.")
-        return kStatusInvalidArgument
+    let renderPass = MTLRenderPassDescriptor()
+    guard let colorAttachment = renderPass.colorAttachments[0] else {
+        return nil
     }
+    colorAttachment.texture = frame.drawable.texture
+    applyLoadAction(pendingClear, to: colorAttachment)
+    colorAttachment.storeAction = .store
 
-    stateLock.lock()
-    guard let context = contextState else {
-        stateLock.unlock()
+    guard let encoder = frame.commandBuffer.makeRenderCommandEncoder(descriptor: renderPass) else {
+        return nil
+    }
+    if (debugFlags & kDebugFlagLabels) != 0 {
+        encoder.label = "MCMetal Frame Encoder \(frame.passCount)"
+    }
+    frame.passCount += 1
+    frame.encoder = encoder
+    return encoder
+}
+
+private func encodeDraw(
+    mode: Int32,
+    debugGroup: String,
+    configure: ((MetalContextState, MTLRenderCommandEncoder) -> Int32)? = nil,
+    _ encode: (MTLRenderCommandEncoder) -> Void
+) -> Int32 {
+    stateLock.lock()
+    guard let context = contextState else {
+        stateLock.unlock()
         return kStatusInitializationFailed
     }
     let layer = context.layer
     let commandQueue = context.commandQueue
     let debugFlags = context.debugFlags
+    let frame = context.currentFrame
+    let pendingClear = takePendingClear(context)
     stateLock.unlock()
 
+    if let frame {
+        guard let encoder = makeFrameEncoder(
+            frame: frame, pendingClear: pendingClear, debugFlags: debugFlags)
+        else {
+            restorePendingClear(context, pendingClear)
+            return kStatusInitializationFailed
+        }
+
+        let setupStatus =
+            configure?(context, encoder)
+            ?? configureEncoderState(context: context, encoder: encoder, primitiveType: mode)
+        if setupStatus != kStatusOk {
+            return setupStatus
+        }
+
+        if (debugFlags & kDebugFlagLabels) != 0 {
+            encoder.pushDebugGroup(debugGroup)
+        }
+        encode(encoder)
+        if (debugFlags & kDebugFlagLabels) != 0 {
+            encoder.popDebugGroup()
+        }
+        frame.drawCount += 1
+        return kStatusOk
+    }
+
+    // Without an open frame every draw is submitted and presented on its own.
     let drawStatus: Int32 = autoreleasepool {
         guard let drawable = layer.nextDrawable() else {
+            restorePendingClear(context, pendingClear)
             return kStatusInitializationFailed
         }
 
         let renderPass = MTLRenderPassDescriptor()
         guard let colorAttachment = renderPass.colorAttachments[0] else {
+            restorePendingClear(context, pendingClear)
             return kStatusInitializationFailed
         }
         colorAttachment.texture = drawable.texture
-        colorAttachment.loadAction = .load
+        applyLoadAction(pendingClear, to: colorAttachment)
         colorAttachment.storeAction = .store
 
         guard let commandBuffer = commandQueue.makeCommandBuffer() else {
+            restorePendingClear(context, pendingClear)
             return kStatusInitializationFailed
         }
         if (debugFlags & kDebugFlagLabels) != 0 {
@@ -1157,11 +1772,13 @@ public func mcmetal_swift_draw(
         }
 
         guard let encoder = commandBuffer.makeRenderCommandEncoder(descriptor: renderPass) else {
+            restorePendingClear(context, pendingClear)
             return kStatusInitializationFailed
         }
 
-        let setupStatus = configureEncoderState(
-            context: context, encoder: encoder, primitiveType: mode)
+        let setupStatus =
+            configure?(context, encoder)
+            ?? configureEncoderState(context: context, encoder: encoder, primitiveType: mode)
         if setupStatus != kStatusOk {
             encoder.endEncoding()
             return setupStatus
@@ -1169,14 +1786,10 @@ public func mcmetal_swift_draw(
 
         if (debugFlags & kDebugFlagLabels) != 0 {
             encoder.label = "MCMetal Draw Encoder"
-            encoder.pushDebugGroup("MCMetal Draw (Non-Indexed)")
+            encoder.pushDebugGroup(debugGroup)
         }
 
-        encoder.drawPrimitives(
-            type: primitiveType,
-            vertexStart: Int(first),
-            vertexCount: max(Int(count), 1)
-        )
+        encode(encoder)
 
         if (debugFlags & kDebugFlagLabels) != 0 {
             encoder.popDebugGroup()
@@ -1192,6 +1805,31 @@ public func mcmetal_swift_draw(
     return drawStatus
 }
 
+@_cdecl("mcmetal_swift_draw")
+public func mcmetal_swift_draw(
+    _ mode: Int32,
+    _ first: Int32,
+    _ count: Int32
+) -> Int32 {
+    if first < 0 || count <= 0 {
+        assertionFailure("Draw range must be valid.")
+        return kStatusInvalidArgument
+    }
+
+    guard let primitiveType = mapPrimitiveType(mode) else {
+        assertionFailure("Unsupported GL primitive mode.")
+        return kStatusInvalidArgument
+    }
+
+    return encodeDraw(mode: mode, debugGroup: "MCMetal Draw (Non-Indexed)") { encoder in
+        encoder.drawPrimitives(
+            type: primitiveType,
+            vertexStart: Int(first),
+            vertexCount: max(Int(count), 1)
+        )
+    }
+}
+
 @_cdecl("mcmetal_swift_draw_indexed")
 public func mcmetal_swift_draw_indexed(
     _ mode: Int32,
@@ -1213,71 +1851,96 @@ public func mcmetal_swift_draw_indexed(
         return kStatusInvalidArgument
     }
 
+    return encodeDraw(mode: mode, debugGroup: "MCMetal Draw Indexed (Simple)") { encoder in
+        encoder.drawPrimitives(
+            type: primitiveType,
+            vertexStart: 0,
+            vertexCount: max(Int(count), 1)
+        )
+    }
+}
+
+@_cdecl("mcmetal_swift_begin_frame")
+public func mcmetal_swift_begin_frame() -> Int32 {
     stateLock.lock()
     guard let context = contextState else {
         stateLock.unlock()
         return kStatusInitializationFailed
     }
+    if context.currentFrame != nil {
+        stateLock.unlock()
+        return kStatusAlreadyInitialized
+    }
     let layer = context.layer
     let commandQueue = context.commandQueue
     let debugFlags = context.debugFlags
+    let framePacer = context.framePacer
     stateLock.unlock()
 
-    let drawStatus: Int32 = autoreleasepool {
-        guard let drawable = layer.nextDrawable() else {
-            return kStatusInitializationFailed
-        }
+    framePacer.acquireSlot()
+    let drawable: CAMetalDrawable? = autoreleasepool { layer.nextDrawable() }
+    guard let drawable else {
+        framePacer.releaseSlot(completed: false)
+        return kStatusInitializationFailed
+    }
+    guard let commandBuffer = commandQueue.makeCommandBuffer() else {
+        framePacer.releaseSlot(completed: false)
+        return kStatusInitializationFailed
+    }
+    if (debugFlags & kDebugFlagLabels) != 0 {
+        commandBuffer.label = "MCMetal Frame Command Buffer"
+    }
 
-        let renderPass = MTLRenderPassDescriptor()
-        guard let colorAttachment = renderPass.colorAttachments[0] else {
-            return kStatusInitializationFailed
-        }
-        colorAttachment.texture = drawable.texture
-        colorAttachment.loadAction = .load
-        colorAttachment.storeAction = .store
+    let frame = NativeFrameState(drawable: drawable, commandBuffer: commandBuffer)
+    return withContextState { context in
+        context.currentFrame = frame
+        return kStatusOk
+    }
+}
 
-        guard let commandBuffer = commandQueue.makeCommandBuffer() else {
-            return kStatusInitializationFailed
-        }
+@_cdecl("mcmetal_swift_end_frame")
+public func mcmetal_swift_end_frame() -> Int32 {
+    stateLock.lock()
+    guard let context = contextState else {
+        stateLock.unlock()
+        return kStatusInitializationFailed
+    }
+    let frame = context.currentFrame
+    context.currentFrame = nil
+    let pendingClear = takePendingClear(context)
+    let debugFlags = context.debugFlags
+    let framePacer = context.framePacer
+    stateLock.unlock()
 
-        if (debugFlags & kDebugFlagLabels) != 0 {
-            commandBuffer.label = "MCMetal Draw Command Buffer"
-        }
+    guard let frame else {
+        return kStatusOk
+    }
 
-        guard let encoder = commandBuffer.makeRenderCommandEncoder(descriptor: renderPass) else {
+    if pendingClear != nil || frame.encoder == nil {
+        guard makeFrameEncoder(frame: frame, pendingClear: pendingClear, debugFlags: debugFlags) != nil
+        else {
+            restorePendingClear(context, pendingClear)
+            framePacer.releaseSlot(completed: false)
             return kStatusInitializationFailed
         }
+    }
+    frame.encoder?.endEncoding()
+    frame.encoder = nil
 
-        let setupStatus = configureEncoderState(
-            context: context, encoder: encoder, primitiveType: mode)
-        if setupStatus != kStatusOk {
-            encoder.endEncoding()
-            return setupStatus
-        }
-
-        if (debugFlags & kDebugFlagLabels) != 0 {
-            encoder.label = "MCMetal Draw Encoder"
-            encoder.pushDebugGroup("MCMetal Draw Indexed (Simple)")
-        }
-
-        encoder.drawPrimitives(
-            type: primitiveType,
-            vertexStart: 0,
-            vertexCount: max(Int(count), 1)
+    frame.commandBuffer.addCompletedHandler { _ in
+        framePacer.releaseSlot(completed: true)
+    }
+    frame.commandBuffer.present(frame.drawable)
+    frame.commandBuffer.commit()
+    markFrameSubmitted()
+    if shouldLogStateTransitions(context) {
+        NSLog(
+            "event=metal_phase6 phase=frame operation=end passes=%ld draws=%ld",
+            frame.passCount,
+            frame.drawCount
         )
-
-        if (debugFlags & kDebugFlagLabels) != 0 {
-            encoder.popDebugGroup()
-        }
-
-        encoder.endEncoding()
-        commandBuffer.present(drawable)
-        commandBuffer.commit()
-        markFrameSubmitted()
-        return kStatusOk
     }
-
-    return drawStatus
+    return kStatusOk
 }
 
 private func createNativeBufferRecord(
@@ -1336,6 +1999,39 @@ private func createNativeBufferRecord(
     )
 }
 
+@_cdecl("mcmetal_swift_set_frames_in_flight")
+public func mcmetal_swift_set_frames_in_flight(_ framesInFlight: Int32) -> Int32 {
+    if framesInFlight < 1 || Int(framesInFlight) > kMaxFramesInFlight {
+        return kStatusInvalidArgument
+    }
+
+    stateLock.lock()
+    guard let context = contextState else {
+        stateLock.unlock()
+        return kStatusInitializationFailed
+    }
+    let framePacer = context.framePacer
+    stateLock.unlock()
+
+    // Lowering the limit may wait for in-flight frames, so it must not hold the state lock.
+    framePacer.configure(framesInFlight: Int(framesInFlight))
+    return kStatusOk
+}
+
+@_cdecl("mcmetal_swift_get_completed_frame_count")
+public func mcmetal_swift_get_completed_frame_count() -> Int64 {
+    return withContextStateValue(-1) { context in
+        Int64(bitPattern: context.framePacer.completedFrameCount)
+    }
+}
+
+@_cdecl("mcmetal_swift_get_last_frame_wait_nanos")
+public func mcmetal_swift_get_last_frame_wait_nanos() -> Int64 {
+    return withContextStateValue(-1) { context in
+        Int64(bitPattern: context.framePacer.lastFrameWaitNanos)
+    }
+}
+
 @_cdecl("mcmetal_swift_create_buffer")
 public func mcmetal_swift_create_buffer(
     _ usage: Int32,
@@ -1509,6 +2205,11 @@ public func mcmetal_swift_register_vertex_descriptor(
             return 0
         }
 
+        let signature = NativeVertexDescriptorSignature(stride: Int(strideBytes), elements: elements)
+        if let existingHandle = context.vertexDescriptorHandlesBySignature[signature] {
+            return existingHandle
+        }
+
         let descriptor = MTLVertexDescriptor()
         for element in elements {
             if element.attributeIndex < 0 {
@@ -1547,10 +2248,54 @@ public func mcmetal_swift_register_vertex_descriptor(
             elements: elements,
             descriptor: descriptor
         )
+        context.vertexDescriptorHandlesBySignature[signature] = handle
         return handle
     }
 }
 
+private func makeShaderFunctionEntry(device: MTLDevice, source: String) -> NativeShaderFunctionEntry? {
+    guard let library = try? device.makeLibrary(source: source, options: nil) else {
+        return nil
+    }
+    var function: MTLFunction?
+    for entryPoint in ["main0", "main"] where function == nil {
+        function = library.makeFunction(name: entryPoint)
+    }
+    guard let function else {
+        return nil
+    }
+    return NativeShaderFunctionEntry(library: library, function: function)
+}
+
+private func acquireShaderFunction(
+    context: MetalContextState,
+    source: String,
+    compiled: NativeShaderFunctionEntry?
+) -> MTLFunction? {
+    if let shared = context.shaderFunctionsBySource[source] {
+        shared.references += 1
+        return shared.function
+    }
+
+    // The entry compiled outside the lock may be missing if another program released the shared one meanwhile.
+    guard let entry = compiled ?? makeShaderFunctionEntry(device: context.device, source: source) else {
+        return nil
+    }
+    entry.references = 1
+    context.shaderFunctionsBySource[source] = entry
+    return entry.function
+}
+
+private func releaseShaderFunction(context: MetalContextState, source: String) {
+    guard let shared = context.shaderFunctionsBySource[source] else {
+        return
+    }
+    shared.references -= 1
+    if shared.references <= 0 {
+        context.shaderFunctionsBySource.removeValue(forKey: source)
+    }
+}
+
 @_cdecl("mcmetal_swift_create_shader_program")
 public func mcmetal_swift_create_shader_program(
     _ programName: UnsafePointer<CChar>?,
@@ -1568,39 +2313,59 @@ public func mcmetal_swift_create_shader_program(
         return 0
     }
 
-    return withContextStateValue(0) { context in
-        guard
-            let vertexLibrary = try? context.device.makeLibrary(source: vertexSource, options: nil)
-        else {
+    stateLock.lock()
+    guard let context = contextState else {
+        stateLock.unlock()
+        return 0
+    }
+    let vertexShared = context.shaderFunctionsBySource[vertexSource] != nil
+    let fragmentShared = context.shaderFunctionsBySource[fragmentSource] != nil
+    let device = context.device
+    stateLock.unlock()
+
+    // MSL compilation is the expensive part; keep it outside the state lock so programs can be
+    // built on worker threads while the render thread keeps drawing.
+    let vertexCompiled = vertexShared ? nil : makeShaderFunctionEntry(device: device, source: vertexSource)
+    if !vertexShared && vertexCompiled == nil {
+        return 0
+    }
+    let fragmentCompiled =
+        fragmentShared ? nil : makeShaderFunctionEntry(device: device, source: fragmentSource)
+    if !fragmentShared && fragmentCompiled == nil {
+        return 0
+    }
+
+    return withContextStateValue(0) { current in
+        guard current === context else {
             return 0
         }
+        // Byte-identical stages across programs share one MTLLibrary/MTLFunction.
         guard
-            let fragmentLibrary = try? context.device.makeLibrary(
-                source: fragmentSource, options: nil)
+            let vertexFunction = acquireShaderFunction(
+                context: current,
+                source: vertexSource,
+                compiled: vertexCompiled
+            )
         else {
             return 0
         }
-
-        let candidateEntryPoints = ["main0", "main"]
-        var vertexFunction: MTLFunction?
-        var fragmentFunction: MTLFunction?
-        for entryPoint in candidateEntryPoints where vertexFunction == nil {
-            vertexFunction = vertexLibrary.makeFunction(name: entryPoint)
-        }
-        for entryPoint in candidateEntryPoints where fragmentFunction == nil {
-            fragmentFunction = fragmentLibrary.makeFunction(name: entryPoint)
-        }
-
-        guard let vertexFunction, let fragmentFunction else {
+        guard
+            let fragmentFunction = acquireShaderFunction(
+                context: current,
+                source: fragmentSource,
+                compiled: fragmentCompiled
+            )
+        else {
+            releaseShaderFunction(context: current, source: vertexSource)
             return 0
         }
 
-        let handle = context.nextShaderProgramHandle
-        context.nextShaderProgramHandle = handle &+ 1
-        context.nativeShaderPrograms[handle] = NativeShaderProgramRecord(
+        let handle = current.nextShaderProgramHandle
+        current.nextShaderProgramHandle = handle &+ 1
+        current.nativeShaderPrograms[handle] = NativeShaderProgramRecord(
             name: name,
-            vertexLibrary: vertexLibrary,
-            fragmentLibrary: fragmentLibrary,
+            vertexSource: vertexSource,
+            fragmentSource: fragmentSource,
             vertexFunction: vertexFunction,
             fragmentFunction: fragmentFunction,
             pipelineState: nil
@@ -1618,12 +2383,36 @@ public func mcmetal_swift_compile_shader_pipeline(
         return kStatusInvalidArgument
     }
 
-    return withContextState { context in
-        return compileShaderProgramPipeline(
+    stateLock.lock()
+    guard let context = contextState else {
+        stateLock.unlock()
+        return kStatusInitializationFailed
+    }
+    guard
+        let descriptor = makeShaderProgramPipelineDescriptor(
             context: context,
             programHandle: programHandle,
             vertexDescriptorHandle: vertexDescriptorHandle
         )
+    else {
+        stateLock.unlock()
+        return kStatusInvalidArgument
+    }
+    let device = context.device
+    stateLock.unlock()
+
+    // Same as precompiled pipelines: compile without the state lock held.
+    guard let compiledPipeline = try? device.makeRenderPipelineState(descriptor: descriptor) else {
+        return kStatusInitializationFailed
+    }
+
+    return withContextState { current in
+        guard current === context, var program = current.nativeShaderPrograms[programHandle] else {
+            return kStatusInvalidArgument
+        }
+        program.pipelineState = compiledPipeline
+        current.nativeShaderPrograms[programHandle] = program
+        return kStatusOk
     }
 }
 
@@ -1683,6 +2472,74 @@ public func mcmetal_swift_update_uniform_float4(
     }
 }
 
+@_cdecl("mcmetal_swift_configure_uniform_block")
+public func mcmetal_swift_configure_uniform_block(
+    _ programHandle: Int64,
+    _ blockByteLength: Int32,
+    _ packedRegions: UnsafePointer<Int32>?,
+    _ packedIntCount: Int32
+) -> Int32 {
+    if programHandle <= 0 || blockByteLength < 0 || packedIntCount < 0
+        || Int(packedIntCount) % kPackedUniformRegionIntCount != 0
+    {
+        return kStatusInvalidArgument
+    }
+    if packedIntCount > 0 && packedRegions == nil {
+        return kStatusInvalidArgument
+    }
+
+    var regions: [NativeUniformRegion] = []
+    for i in 0..<(Int(packedIntCount) / kPackedUniformRegionIntCount) {
+        let base = i * kPackedUniformRegionIntCount
+        let region = NativeUniformRegion(
+            binding: Int(packedRegions![base]),
+            offset: Int(packedRegions![base + 1]),
+            length: Int(packedRegions![base + 2])
+        )
+        if region.binding < 0 || region.offset < 0 || region.length <= 0
+            || region.offset + region.length > Int(blockByteLength)
+        {
+            return kStatusInvalidArgument
+        }
+        regions.append(region)
+    }
+
+    return withContextState { context in
+        guard var program = context.nativeShaderPrograms[programHandle] else {
+            return kStatusInvalidArgument
+        }
+        program.uniformBlock = [UInt8](repeating: 0, count: Int(blockByteLength))
+        program.uniformRegions = regions
+        context.nativeShaderPrograms[programHandle] = program
+        return kStatusOk
+    }
+}
+
+@_cdecl("mcmetal_swift_update_uniform_block")
+public func mcmetal_swift_update_uniform_block(
+    _ programHandle: Int64,
+    _ data: UnsafeRawPointer?,
+    _ dataLength: Int32
+) -> Int32 {
+    guard programHandle > 0, let data, dataLength > 0 else {
+        return kStatusInvalidArgument
+    }
+
+    return withContextState { context in
+        // Written through the dictionary so the block stays uniquely referenced; copying the record out first would
+        // duplicate the whole block on every draw's update.
+        guard let blockByteLength = context.nativeShaderPrograms[programHandle]?.uniformBlock.count,
+            Int(dataLength) <= blockByteLength
+        else {
+            return kStatusInvalidArgument
+        }
+        context.nativeShaderPrograms[programHandle]?.uniformBlock.withUnsafeMutableBytes { block in
+            block.baseAddress!.copyMemory(from: data, byteCount: Int(dataLength))
+        }
+        return kStatusOk
+    }
+}
+
 @_cdecl("mcmetal_swift_destroy_shader_program")
 public func mcmetal_swift_destroy_shader_program(_ programHandle: Int64) -> Int32 {
     if programHandle <= 0 {
@@ -1690,14 +2547,273 @@ public func mcmetal_swift_destroy_shader_program(_ programHandle: Int64) -> Int3
     }
 
     return withContextState { context in
-        guard context.nativeShaderPrograms.removeValue(forKey: programHandle) != nil else {
+        guard let program = context.nativeShaderPrograms.removeValue(forKey: programHandle) else {
             return kStatusInvalidArgument
         }
+        releaseShaderFunction(context: context, source: program.vertexSource)
+        releaseShaderFunction(context: context, source: program.fragmentSource)
         context.nativeUniforms = context.nativeUniforms.filter { _, uniform in
             uniform.programHandle != programHandle
         }
+        context.pipelineCache = context.pipelineCache.filter { key, _ in
+            key.programHandle != programHandle
+        }
+        if context.renderStateTracker.snapshot.binding.programHandle == programHandle {
+            context.renderStateTracker.setShaderBinding(programHandle: 0, vertexDescriptorHandle: 0)
+        }
+        return kStatusOk
+    }
+}
+
+@_cdecl("mcmetal_swift_set_shader_binding")
+public func mcmetal_swift_set_shader_binding(
+    _ programHandle: Int64,
+    _ vertexDescriptorHandle: Int64
+) -> Int32 {
+    if programHandle < 0 || vertexDescriptorHandle < 0 {
+        return kStatusInvalidArgument
+    }
+
+    return withContextState { context in
+        if programHandle != 0 && context.nativeShaderPrograms[programHandle] == nil {
+            return kStatusInvalidArgument
+        }
+        if vertexDescriptorHandle != 0
+            && context.nativeVertexDescriptors[vertexDescriptorHandle] == nil
+        {
+            return kStatusInvalidArgument
+        }
+        let changed = context.renderStateTracker.setShaderBinding(
+            programHandle: programHandle,
+            vertexDescriptorHandle: vertexDescriptorHandle
+        )
+        logStateTransition(context: context, operation: "set_shader_binding", changed: changed)
+        return kStatusOk
+    }
+}
+
+@_cdecl("mcmetal_swift_precompile_pipeline_state")
+public func mcmetal_swift_precompile_pipeline_state(
+    _ programHandle: Int64,
+    _ vertexDescriptorHandle: Int64,
+    _ packedState: UnsafePointer<Int32>?,
+    _ packedIntCount: Int32
+) -> Int32 {
+    guard programHandle > 0, vertexDescriptorHandle >= 0, let packedState else {
+        return kStatusInvalidArgument
+    }
+
+    stateLock.lock()
+    guard let context = contextState else {
+        stateLock.unlock()
+        return kStatusInitializationFailed
+    }
+    guard
+        let key = parsePackedPipelineState(
+            context: context,
+            programHandle: programHandle,
+            vertexDescriptorHandle: vertexDescriptorHandle,
+            packedState: packedState,
+            packedIntCount: packedIntCount
+        )
+    else {
+        stateLock.unlock()
+        return kStatusInvalidArgument
+    }
+    if context.pipelineCache[key] != nil {
+        stateLock.unlock()
         return kStatusOk
     }
+    guard let descriptor = makePipelineDescriptor(context: context, key: key) else {
+        stateLock.unlock()
+        return kStatusInvalidArgument
+    }
+    let device = context.device
+    stateLock.unlock()
+
+    // Pipeline compilation is the expensive part; keep it outside the state lock so the
+    // render thread is not blocked while background warm-up runs.
+    guard let pipelineState = try? device.makeRenderPipelineState(descriptor: descriptor) else {
+        return kStatusInitializationFailed
+    }
+
+    return withContextState { current in
+        guard current === context, current.nativeShaderPrograms[programHandle] != nil else {
+            return kStatusInvalidArgument
+        }
+        if current.pipelineCache[key] == nil {
+            current.pipelineCache[key] = pipelineState
+        }
+        return kStatusOk
+    }
+}
+
+@_cdecl("mcmetal_swift_set_pending_clear")
+public func mcmetal_swift_set_pending_clear(
+    _ clearMask: Int32,
+    _ red: Float,
+    _ green: Float,
+    _ blue: Float,
+    _ alpha: Float,
+    _ depth: Double,
+    _ stencil: Int32
+) -> Int32 {
+    let supportedMask = kClearColorBit | kClearDepthBit | kClearStencilBit
+    if (clearMask & ~supportedMask) != 0 {
+        assertionFailure("Unsupported GL clear mask bits.")
+        return kStatusInvalidArgument
+    }
+
+    return withContextState { context in
+        if clearMask == 0 {
+            context.pendingClear = nil
+            return kStatusOk
+        }
+        context.pendingClear = PendingClearState(
+            mask: clearMask,
+            color: MTLClearColor(
+                red: clampColor(red),
+                green: clampColor(green),
+                blue: clampColor(blue),
+                alpha: clampColor(alpha)
+            ),
+            depth: min(max(depth, 0.0), 1.0),
+            stencil: UInt32(truncatingIfNeeded: stencil) & 0xFF
+        )
+        return kStatusOk
+    }
+}
+
+@_cdecl("mcmetal_swift_execute_pending_clear")
+public func mcmetal_swift_execute_pending_clear() -> Int32 {
+    stateLock.lock()
+    guard let context = contextState else {
+        stateLock.unlock()
+        return kStatusInitializationFailed
+    }
+    let layer = context.layer
+    let commandQueue = context.commandQueue
+    let debugFlags = context.debugFlags
+    let frame = context.currentFrame
+    let pendingClear = takePendingClear(context)
+    stateLock.unlock()
+
+    guard pendingClear != nil else {
+        return kStatusOk
+    }
+    if let frame {
+        guard makeFrameEncoder(frame: frame, pendingClear: pendingClear, debugFlags: debugFlags) != nil
+        else {
+            restorePendingClear(context, pendingClear)
+            return kStatusInitializationFailed
+        }
+        return kStatusOk
+    }
+
+    let clearStatus: Int32 = autoreleasepool {
+        guard let drawable = layer.nextDrawable() else {
+            restorePendingClear(context, pendingClear)
+            return kStatusInitializationFailed
+        }
+
+        let renderPass = MTLRenderPassDescriptor()
+        guard let colorAttachment = renderPass.colorAttachments[0] else {
+            restorePendingClear(context, pendingClear)
+            return kStatusInitializationFailed
+        }
+        colorAttachment.texture = drawable.texture
+        applyLoadAction(pendingClear, to: colorAttachment)
+        colorAttachment.storeAction = .store
+
+        guard let commandBuffer = commandQueue.makeCommandBuffer() else {
+            restorePendingClear(context, pendingClear)
+            return kStatusInitializationFailed
+        }
+        if (debugFlags & kDebugFlagLabels) != 0 {
+            commandBuffer.label = "MCMetal Clear Command Buffer"
+        }
+
+        guard let encoder = commandBuffer.makeRenderCommandEncoder(descriptor: renderPass) else {
+            restorePendingClear(context, pendingClear)
+            return kStatusInitializationFailed
+        }
+        if (debugFlags & kDebugFlagLabels) != 0 {
+            encoder.label = "MCMetal Clear Encoder"
+        }
+
+        encoder.endEncoding()
+        commandBuffer.present(drawable)
+        commandBuffer.commit()
+        markFrameSubmitted()
+        return kStatusOk
+    }
+
+    return clearStatus
+}
+
+@_cdecl("mcmetal_swift_clear_scissored")
+public func mcmetal_swift_clear_scissored(
+    _ clearMask: Int32,
+    _ red: Float,
+    _ green: Float,
+    _ blue: Float,
+    _ alpha: Float,
+    _ depth: Double,
+    _ stencil: Int32
+) -> Int32 {
+    let supportedMask = kClearColorBit | kClearDepthBit | kClearStencilBit
+    if (clearMask & ~supportedMask) != 0 {
+        assertionFailure("Unsupported GL clear mask bits.")
+        return kStatusInvalidArgument
+    }
+    // Passes only have a color attachment; depth and stencil clears have nothing to write yet.
+    if (clearMask & kClearColorBit) == 0 {
+        return kStatusOk
+    }
+
+    let clearTarget = withContextStateValue(ScissoredClearTarget?.none) {
+        context -> ScissoredClearTarget? in
+        let snapshot = context.renderStateTracker.snapshot
+        let fullRect = fullTargetScissorRect(context)
+        let x = min(max(Int(snapshot.scissor.x), 0), fullRect.width)
+        let y = min(max(Int(snapshot.scissor.y), 0), fullRect.height)
+        let width = min(Int(snapshot.scissor.width), fullRect.width - x)
+        let height = min(Int(snapshot.scissor.height), fullRect.height - y)
+        if !snapshot.scissor.enabled || width <= 0 || height <= 0
+            || snapshot.colorOutput.writeMask == 0
+        {
+            return nil
+        }
+        return ScissoredClearTarget(
+            scissorRect: MTLScissorRect(x: x, y: y, width: width, height: height),
+            writeMask: snapshot.colorOutput.writeMask
+        )
+    }
+    guard let clearTarget else {
+        return kStatusOk
+    }
+
+    let color = SIMD4<Float>(
+        Float(clampColor(red)),
+        Float(clampColor(green)),
+        Float(clampColor(blue)),
+        Float(clampColor(alpha))
+    )
+    return encodeDraw(
+        mode: 0x0004,
+        debugGroup: "MCMetal Scissored Clear",
+        configure: { context, encoder in
+            configureScissoredClearState(
+                context: context,
+                encoder: encoder,
+                scissorRect: clearTarget.scissorRect,
+                colorWriteMask: clearTarget.writeMask,
+                color: color
+            )
+        }
+    ) { encoder in
+        encoder.drawPrimitives(type: .triangle, vertexStart: 0, vertexCount: 3)
+    }
 }
 
 @_cdecl("mcmetal_swift_shutdown")
@@ -1710,6 +2826,8 @@ public func mcmetal_swift_shutdown() {
     guard let context else {
         return
     }
+    context.currentFrame?.encoder?.endEncoding()
+    context.currentFrame = nil
 
     runOnMainThread {
         if context.contentView.layer === context.layer {
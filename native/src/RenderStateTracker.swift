@@ -32,6 +32,18 @@ struct RasterState: Equatable {
     var cullMode: Int32 = 0x0405
 }
 
+struct ColorOutputState: Equatable {
+    var writeMask: Int32 = 0xF
+    var logicOpEnabled: Bool = false
+    var logicOp: Int32 = 0x1503
+}
+
+struct DepthBiasState: Equatable {
+    var enabled: Bool = false
+    var slopeFactor: Float = 0.0
+    var constantUnits: Float = 0.0
+}
+
 struct ScissorState: Equatable {
     var enabled: Bool = false
     var x: Int32 = 0
@@ -49,25 +61,48 @@ struct ViewportState: Equatable {
     var maxDepth: Float = 1.0
 }
 
+struct ShaderBindingState: Equatable {
+    var programHandle: Int64 = 0
+    var vertexDescriptorHandle: Int64 = 0
+}
+
 struct RenderStateSnapshot: Equatable {
     var blend = BlendState()
     var depth = DepthState()
     var stencil = StencilState()
     var raster = RasterState()
+    var colorOutput = ColorOutputState()
+    var depthBias = DepthBiasState()
     var scissor = ScissorState()
     var viewport = ViewportState()
+    var binding = ShaderBindingState()
 
-    func makePipelineKey(colorPixelFormat: Int32, sampleCount: Int32, primitiveType: Int32) -> PipelineKey {
+    func makePipelineKey(
+        colorPixelFormat: Int32,
+        sampleCount: Int32,
+        primitiveType: Int32,
+        includeShaderBinding: Bool = true
+    ) -> PipelineKey {
+        // Factors and equations are ignored while blending is off, and the logic op while it is disabled; leaving
+        // them out of the key lets every opaque draw share one pipeline regardless of state left behind by earlier
+        // draws, such as the OR_REVERSE a text highlight leaves set.
+        let keyedBlend = blend.enabled ? blend : BlendState()
+        let keyedLogicOp = colorOutput.logicOpEnabled ? colorOutput.logicOp : ColorOutputState().logicOp
         return PipelineKey(
-            blendEnabled: blend.enabled,
-            blendSrcRGB: blend.srcRGB,
-            blendDstRGB: blend.dstRGB,
-            blendSrcAlpha: blend.srcAlpha,
-            blendDstAlpha: blend.dstAlpha,
-            blendEquationRGB: blend.equationRGB,
-            blendEquationAlpha: blend.equationAlpha,
+            programHandle: includeShaderBinding ? binding.programHandle : 0,
+            vertexDescriptorHandle: includeShaderBinding ? binding.vertexDescriptorHandle : 0,
+            blendEnabled: keyedBlend.enabled,
+            blendSrcRGB: keyedBlend.srcRGB,
+            blendDstRGB: keyedBlend.dstRGB,
+            blendSrcAlpha: keyedBlend.srcAlpha,
+            blendDstAlpha: keyedBlend.dstAlpha,
+            blendEquationRGB: keyedBlend.equationRGB,
+            blendEquationAlpha: keyedBlend.equationAlpha,
             cullEnabled: raster.cullEnabled,
             cullMode: raster.cullMode,
+            colorWriteMask: colorOutput.writeMask,
+            logicOpEnabled: colorOutput.logicOpEnabled,
+            logicOp: keyedLogicOp,
             colorPixelFormat: colorPixelFormat,
             sampleCount: max(sampleCount, 1),
             primitiveType: primitiveType
@@ -92,6 +127,8 @@ struct RenderStateSnapshot: Equatable {
 }
 
 struct PipelineKey: Hashable {
+    let programHandle: Int64
+    let vertexDescriptorHandle: Int64
     let blendEnabled: Bool
     let blendSrcRGB: Int32
     let blendDstRGB: Int32
@@ -101,12 +138,17 @@ struct PipelineKey: Hashable {
     let blendEquationAlpha: Int32
     let cullEnabled: Bool
     let cullMode: Int32
+    let colorWriteMask: Int32
+    let logicOpEnabled: Bool
+    let logicOp: Int32
     let colorPixelFormat: Int32
     let sampleCount: Int32
     let primitiveType: Int32
 
     var stableHash: UInt64 {
         var seed: UInt64 = 0xCBF29CE484222325
+        seed = mixStableHash(seed, programHandle)
+        seed = mixStableHash(seed, vertexDescriptorHandle)
         seed = mixStableHash(seed, blendEnabled ? 1 : 0)
         seed = mixStableHash(seed, Int64(blendSrcRGB))
         seed = mixStableHash(seed, Int64(blendDstRGB))
@@ -116,6 +158,9 @@ struct PipelineKey: Hashable {
         seed = mixStableHash(seed, Int64(blendEquationAlpha))
         seed = mixStableHash(seed, cullEnabled ? 1 : 0)
         seed = mixStableHash(seed, Int64(cullMode))
+        seed = mixStableHash(seed, Int64(colorWriteMask))
+        seed = mixStableHash(seed, logicOpEnabled ? 1 : 0)
+        seed = mixStableHash(seed, Int64(logicOp))
         seed = mixStableHash(seed, Int64(colorPixelFormat))
         seed = mixStableHash(seed, Int64(sampleCount))
         seed = mixStableHash(seed, Int64(primitiveType))
@@ -228,6 +273,24 @@ final class RenderStateTracker {
         }
     }
 
+    @discardableResult
+    func setColorOutputState(writeMask: Int32, logicOpEnabled: Bool, logicOp: Int32) -> Bool {
+        return updateSnapshot { next in
+            next.colorOutput.writeMask = writeMask & 0xF
+            next.colorOutput.logicOpEnabled = logicOpEnabled
+            next.colorOutput.logicOp = logicOp
+        }
+    }
+
+    @discardableResult
+    func setDepthBias(enabled: Bool, slopeFactor: Float, constantUnits: Float) -> Bool {
+        return updateSnapshot { next in
+            next.depthBias.enabled = enabled
+            next.depthBias.slopeFactor = slopeFactor
+            next.depthBias.constantUnits = constantUnits
+        }
+    }
+
     @discardableResult
     func setScissor(enabled: Bool, x: Int32, y: Int32, width: Int32, height: Int32) -> Bool {
         return updateSnapshot { next in
@@ -251,11 +314,25 @@ final class RenderStateTracker {
         }
     }
 
-    func makePipelineKey(colorPixelFormat: Int32, sampleCount: Int32, primitiveType: Int32) -> PipelineKey {
+    @discardableResult
+    func setShaderBinding(programHandle: Int64, vertexDescriptorHandle: Int64) -> Bool {
+        return updateSnapshot { next in
+            next.binding.programHandle = programHandle
+            next.binding.vertexDescriptorHandle = vertexDescriptorHandle
+        }
+    }
+
+    func makePipelineKey(
+        colorPixelFormat: Int32,
+        sampleCount: Int32,
+        primitiveType: Int32,
+        includeShaderBinding: Bool = true
+    ) -> PipelineKey {
         return snapshot.makePipelineKey(
             colorPixelFormat: colorPixelFormat,
             sampleCount: sampleCount,
-            primitiveType: primitiveType
+            primitiveType: primitiveType,
+            includeShaderBinding: includeShaderBinding
         )
     }
 
@@ -154,6 +154,36 @@ JNIEXPORT jint JNICALL Java_io_github_mcmetal_metal_bridge_NativeApi_nativeSetCu
       (int32_t)cull_mode);
 }
 
+JNIEXPORT jint JNICALL Java_io_github_mcmetal_metal_bridge_NativeApi_nativeSetColorOutputState(
+    JNIEnv *env,
+    jclass clazz,
+    jint color_write_mask,
+    jboolean logic_op_enabled,
+    jint logic_op)
+{
+  (void)env;
+  (void)clazz;
+  return (jint)mcmetal_swift_set_color_output_state(
+      (int32_t)color_write_mask,
+      logic_op_enabled == JNI_TRUE ? 1 : 0,
+      (int32_t)logic_op);
+}
+
+JNIEXPORT jint JNICALL Java_io_github_mcmetal_metal_bridge_NativeApi_nativeSetDepthBias(
+    JNIEnv *env,
+    jclass clazz,
+    jboolean enabled,
+    jfloat slope_factor,
+    jfloat constant_units)
+{
+  (void)env;
+  (void)clazz;
+  return (jint)mcmetal_swift_set_depth_bias(
+      enabled == JNI_TRUE ? 1 : 0,
+      (float)slope_factor,
+      (float)constant_units);
+}
+
 JNIEXPORT jint JNICALL Java_io_github_mcmetal_metal_bridge_NativeApi_nativeSetScissorState(
     JNIEnv *env,
     jclass clazz,
@@ -224,6 +254,56 @@ JNIEXPORT jint JNICALL Java_io_github_mcmetal_metal_bridge_NativeApi_nativeDrawI
       (int32_t)index_type);
 }
 
+JNIEXPORT jint JNICALL Java_io_github_mcmetal_metal_bridge_NativeApi_nativeBeginFrame(
+    JNIEnv *env,
+    jclass clazz)
+{
+  (void)env;
+  (void)clazz;
+  return (jint)mcmetal_swift_begin_frame();
+}
+
+JNIEXPORT jint JNICALL Java_io_github_mcmetal_metal_bridge_NativeApi_nativeEndFrame(
+    JNIEnv *env,
+    jclass clazz)
+{
+  (void)env;
+  (void)clazz;
+  return (jint)mcmetal_swift_end_frame();
+}
+
+JNIEXPORT jint JNICALL Java_io_github_mcmetal_metal_bridge_NativeApi_nativeSetFramesInFlight(
+    JNIEnv *env,
+    jclass clazz,
+    jint frames_in_flight)
+{
+  (void)env;
+  (void)clazz;
+  if (frames_in_flight < 1)
+  {
+    return (jint)2;
+  }
+  return (jint)mcmetal_swift_set_frames_in_flight((int32_t)frames_in_flight);
+}
+
+JNIEXPORT jlong JNICALL Java_io_github_mcmetal_metal_bridge_NativeApi_nativeGetCompletedFrameCount(
+    JNIEnv *env,
+    jclass clazz)
+{
+  (void)env;
+  (void)clazz;
+  return (jlong)mcmetal_swift_get_completed_frame_count();
+}
+
+JNIEXPORT jlong JNICALL Java_io_github_mcmetal_metal_bridge_NativeApi_nativeGetLastFrameWaitNanos(
+    JNIEnv *env,
+    jclass clazz)
+{
+  (void)env;
+  (void)clazz;
+  return (jlong)mcmetal_swift_get_last_frame_wait_nanos();
+}
+
 JNIEXPORT jlong JNICALL Java_io_github_mcmetal_metal_bridge_NativeApi_nativeCreateBuffer(
     JNIEnv *env,
     jclass clazz,
@@ -423,6 +503,62 @@ JNIEXPORT jint JNICALL Java_io_github_mcmetal_metal_bridge_NativeApi_nativeUpdat
       (float)w);
 }
 
+JNIEXPORT jint JNICALL Java_io_github_mcmetal_metal_bridge_NativeApi_nativeConfigureUniformBlock(
+    JNIEnv *env,
+    jclass clazz,
+    jlong program_handle,
+    jint block_byte_length,
+    jobject packed_regions,
+    jint packed_byte_length)
+{
+  (void)clazz;
+  if (block_byte_length < 0 || packed_byte_length < 0)
+  {
+    return (jint)2;
+  }
+
+  const int32_t *packed_ptr = NULL;
+  if (packed_regions != NULL)
+  {
+    packed_ptr = (const int32_t *)(*env)->GetDirectBufferAddress(env, packed_regions);
+    if (packed_ptr == NULL && packed_byte_length > 0)
+    {
+      return (jint)2;
+    }
+  }
+
+  return (jint)mcmetal_swift_configure_uniform_block(
+      (int64_t)program_handle,
+      (int32_t)block_byte_length,
+      packed_ptr,
+      (int32_t)(packed_byte_length / (jint)sizeof(int32_t)));
+}
+
+JNIEXPORT jint JNICALL Java_io_github_mcmetal_metal_bridge_NativeApi_nativeUpdateUniformBlock(
+    JNIEnv *env,
+    jclass clazz,
+    jlong program_handle,
+    jobject data,
+    jint data_length)
+{
+  (void)clazz;
+  if (data == NULL || data_length <= 0)
+  {
+    return (jint)2;
+  }
+
+  const void *data_ptr = (*env)->GetDirectBufferAddress(env, data);
+  if (data_ptr == NULL)
+  {
+    return (jint)2;
+  }
+
+  return (jint)mcmetal_swift_update_uniform_block(
+      (int64_t)program_handle,
+      data_ptr,
+      (int32_t)data_length);
+}
+
 JNIEXPORT jint JNICALL Java_io_github_mcmetal_metal_bridge_NativeApi_nativeDestroyShaderProgram(
     JNIEnv *env,
     jclass clazz,
@@ -433,6 +569,102 @@ JNIEXPORT jint JNICALL Java_io_github_mcmetal_metal_bridge_NativeApi_nativeDestr
   return (jint)mcmetal_swift_destroy_shader_program((int64_t)program_handle);
 }
 
+JNIEXPORT jint JNICALL Java_io_github_mcmetal_metal_bridge_NativeApi_nativeSetShaderBinding(
+    JNIEnv *env,
+    jclass clazz,
+    jlong program_handle,
+    jlong vertex_descriptor_handle)
+{
+  (void)env;
+  (void)clazz;
+  return (jint)mcmetal_swift_set_shader_binding(
+      (int64_t)program_handle,
+      (int64_t)vertex_descriptor_handle);
+}
+
+JNIEXPORT jint JNICALL Java_io_github_mcmetal_metal_bridge_NativeApi_nativePrecompilePipelineState(
+    JNIEnv *env,
+    jclass clazz,
+    jlong program_handle,
+    jlong vertex_descriptor_handle,
+    jobject packed_state,
+    jint packed_byte_length)
+{
+  (void)clazz;
+  if (packed_state == NULL || packed_byte_length <= 0)
+  {
+    return (jint)2;
+  }
+
+  const int32_t *packed_ptr = (const int32_t *)(*env)->GetDirectBufferAddress(env, packed_state);
+  if (packed_ptr == NULL)
+  {
+    return (jint)2;
+  }
+
+  int32_t packed_int_count = (int32_t)(packed_byte_length / (jint)sizeof(int32_t));
+  return (jint)mcmetal_swift_precompile_pipeline_state(
+      (int64_t)program_handle,
+      (int64_t)vertex_descriptor_handle,
+      packed_ptr,
+      packed_int_count);
+}
+
+JNIEXPORT jint JNICALL Java_io_github_mcmetal_metal_bridge_NativeApi_nativeSetPendingClear(
+    JNIEnv *env,
+    jclass clazz,
+    jint clear_mask,
+    jfloat red,
+    jfloat green,
+    jfloat blue,
+    jfloat alpha,
+    jdouble depth,
+    jint stencil)
+{
+  (void)env;
+  (void)clazz;
+  return (jint)mcmetal_swift_set_pending_clear(
+      (int32_t)clear_mask,
+      (float)red,
+      (float)green,
+      (float)blue,
+      (float)alpha,
+      (double)depth,
+      (int32_t)stencil);
+}
+
+JNIEXPORT jint JNICALL Java_io_github_mcmetal_metal_bridge_NativeApi_nativeExecutePendingClear(
+    JNIEnv *env,
+    jclass clazz)
+{
+  (void)env;
+  (void)clazz;
+  return (jint)mcmetal_swift_execute_pending_clear();
+}
+
+JNIEXPORT jint JNICALL Java_io_github_mcmetal_metal_bridge_NativeApi_nativeClearScissored(
+    JNIEnv *env,
+    jclass clazz,
+    jint clear_mask,
+    jfloat red,
+    jfloat green,
+    jfloat blue,
+    jfloat alpha,
+    jdouble depth,
+    jint stencil)
+{
+  (void)env;
+  (void)clazz;
+  return (jint)mcmetal_swift_clear_scissored(
+      (int32_t)clear_mask,
+      (float)red,
+      (float)green,
+      (float)blue,
+      (float)alpha,
+      (double)depth,
+      (int32_t)stencil);
+}
+
 JNIEXPORT void JNICALL Java_io_github_mcmetal_metal_bridge_NativeApi_nativeShutdown(
     JNIEnv *env,
     jclass clazz)
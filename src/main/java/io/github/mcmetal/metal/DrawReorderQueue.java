@@ -0,0 +1,131 @@
+package io.github.mcmetal.metal;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Buffers opaque draws for a pass and hands them back grouped by pipeline, vertex descriptor and buffer.
+ *
+ * <p>Sorting is stable, so draws sharing the same state keep their submission order.
+ */
+final class DrawReorderQueue<T> {
+    record PendingDraw<T>(
+        long programHandle,
+        PipelineStateKey pipelineState,
+        long vertexDescriptorHandle,
+        long bufferHandle,
+        T payload
+    ) {
+    }
+
+    record Stats(long flushes, long reorderedDraws, long switchesBeforeSort, long switchesAfterSort) {
+        long switchesAvoided() {
+            return switchesBeforeSort - switchesAfterSort;
+        }
+    }
+
+    // Field by field rather than by hashCode, so distinct states never compare equal and interleave.
+    private static final Comparator<PipelineStateKey> PIPELINE_STATE_ORDER = Comparator
+        .comparingInt(PipelineStateKey::primitiveMode)
+        .thenComparing(PipelineStateKey::blendEnabled)
+        .thenComparingInt(PipelineStateKey::blendSrcRgb)
+        .thenComparingInt(PipelineStateKey::blendDstRgb)
+        .thenComparingInt(PipelineStateKey::blendSrcAlpha)
+        .thenComparingInt(PipelineStateKey::blendDstAlpha)
+        .thenComparingInt(PipelineStateKey::blendEquationRgb)
+        .thenComparingInt(PipelineStateKey::blendEquationAlpha)
+        .thenComparing(PipelineStateKey::cullEnabled)
+        .thenComparingInt(PipelineStateKey::cullMode)
+        .thenComparingInt(PipelineStateKey::colorWriteMask)
+        .thenComparing(PipelineStateKey::logicOpEnabled)
+        .thenComparingInt(PipelineStateKey::logicOp);
+    private static final Comparator<PendingDraw<?>> STATE_ORDER = Comparator
+        .<PendingDraw<?>>comparingLong(PendingDraw::programHandle)
+        .thenComparing(PendingDraw::pipelineState, PIPELINE_STATE_ORDER)
+        .thenComparingLong(PendingDraw::vertexDescriptorHandle)
+        .thenComparingLong(PendingDraw::bufferHandle);
+
+    private final List<PendingDraw<T>> pending = new ArrayList<>();
+    private long flushes;
+    private long reorderedDraws;
+    private long switchesBeforeSort;
+    private long switchesAfterSort;
+
+    void add(
+        long programHandle,
+        PipelineStateKey pipelineState,
+        long vertexDescriptorHandle,
+        long bufferHandle,
+        T payload
+    ) {
+        pending.add(new PendingDraw<>(programHandle, pipelineState, vertexDescriptorHandle, bufferHandle, payload));
+    }
+
+    boolean isEmpty() {
+        return pending.isEmpty();
+    }
+
+    int size() {
+        return pending.size();
+    }
+
+    boolean anyPending(Predicate<T> predicate) {
+        for (PendingDraw<T> draw : pending) {
+            if (predicate.test(draw.payload())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    List<PendingDraw<T>> drainSorted() {
+        List<PendingDraw<T>> drained = new ArrayList<>(pending);
+        pending.clear();
+        if (drained.isEmpty()) {
+            return drained;
+        }
+
+        switchesBeforeSort += countStateSwitches(drained);
+        drained.sort(STATE_ORDER);
+        switchesAfterSort += countStateSwitches(drained);
+        reorderedDraws += drained.size();
+        flushes++;
+        return drained;
+    }
+
+    void clear() {
+        pending.clear();
+    }
+
+    Stats stats() {
+        return new Stats(flushes, reorderedDraws, switchesBeforeSort, switchesAfterSort);
+    }
+
+    void resetStats() {
+        flushes = 0L;
+        reorderedDraws = 0L;
+        switchesBeforeSort = 0L;
+        switchesAfterSort = 0L;
+    }
+
+    static int countStateSwitches(List<? extends PendingDraw<?>> draws) {
+        int switches = 0;
+        for (int i = 1; i < draws.size(); i++) {
+            PendingDraw<?> previous = draws.get(i - 1);
+            PendingDraw<?> current = draws.get(i);
+            if (previous.programHandle() != current.programHandle()
+                || !previous.pipelineState().equals(current.pipelineState())) {
+                switches++;
+            }
+            if (previous.vertexDescriptorHandle() != current.vertexDescriptorHandle()) {
+                switches++;
+            }
+            if (previous.bufferHandle() != current.bufferHandle()) {
+                switches++;
+            }
+        }
+        return switches;
+    }
+}
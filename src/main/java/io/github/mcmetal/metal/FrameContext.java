@@ -0,0 +1,261 @@
+package io.github.mcmetal.metal;
+
+import io.github.mcmetal.metal.bridge.HostPlatform;
+import io.github.mcmetal.metal.bridge.NativeApi;
+import io.github.mcmetal.metal.bridge.NativeBridgeException;
+import io.github.mcmetal.metal.bridge.NativeStatus;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Per-frame state between the begin/end hooks around {@code MinecraftClient.render}.
+ *
+ * <p>While a frame is open, native draws are recorded into one command buffer that is presented once at frame end.
+ */
+public final class FrameContext {
+    interface NativeFrameBackend {
+        int beginFrame();
+
+        int endFrame();
+
+        int setFramesInFlight(int framesInFlight);
+
+        long completedFrameCount();
+
+        long lastFrameWaitNanos();
+    }
+
+    record FramePacingStats(
+        int framesInFlight,
+        long completedFrames,
+        long pacedFrames,
+        long lastWaitNanos,
+        long totalWaitNanos,
+        long maxWaitNanos
+    ) {
+    }
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FrameContext.class);
+    private static final boolean DEBUG_FRAME_LOGS = Boolean.getBoolean("mcmetal.phase6.debugFrameLifecycle");
+    private static final int MAX_FRAMES_IN_FLIGHT = 3;
+    private static final int FRAMES_IN_FLIGHT = Math.min(
+        Math.max(Integer.getInteger("mcmetal.phase6.framesInFlight", 2), 1),
+        MAX_FRAMES_IN_FLIGHT
+    );
+
+    private static volatile NativeFrameBackend nativeFrameBackend = new JniNativeFrameBackend();
+    private static volatile Boolean bridgeActiveOverrideForTests;
+    @Nullable
+    private static volatile FrameContext current;
+    private static volatile long nextFrameIndex;
+    private static volatile long pacedFrames;
+    private static volatile long lastWaitNanos;
+    private static volatile long totalWaitNanos;
+    private static volatile long maxWaitNanos;
+
+    private final long frameIndex;
+    private final long beginNanos;
+    private int drawCount;
+    private int uniformWritesForwarded;
+    private int uniformWritesSuppressed;
+    private int pendingProgramDraws;
+
+    private FrameContext(long frameIndex, long beginNanos) {
+        this.frameIndex = frameIndex;
+        this.beginNanos = beginNanos;
+    }
+
+    static void configurePacing() {
+        int status = nativeFrameBackend.setFramesInFlight(FRAMES_IN_FLIGHT);
+        if (!NativeStatus.isSuccess(status)) {
+            throw new NativeBridgeException(
+                "Native operation nativeSetFramesInFlight failed with status "
+                    + NativeStatus.describe(status) + " (" + status + ")."
+            );
+        }
+        LOGGER.info("event=metal_phase6 phase=frame_pacing frames_in_flight={}", FRAMES_IN_FLIGHT);
+    }
+
+    public static void beginFrame() {
+        if (!isBridgeActive()) {
+            return;
+        }
+        if (current != null) {
+            // The previous render call exited abnormally; close its frame before starting the next one.
+            endFrame();
+        }
+
+        int status = nativeFrameBackend.beginFrame();
+        if (!NativeStatus.isSuccess(status)) {
+            // No drawable this frame (e.g. minimized window); draws fall back to per-draw submission.
+            if (DEBUG_FRAME_LOGS) {
+                LOGGER.debug(
+                    "event=metal_phase6 phase=frame operation=begin_skipped status={}",
+                    NativeStatus.describe(status)
+                );
+            }
+            return;
+        }
+        recordSlotWait(nativeFrameBackend.lastFrameWaitNanos());
+        current = new FrameContext(nextFrameIndex++, System.nanoTime());
+    }
+
+    public static void endFrame() {
+        FrameContext frame = current;
+        if (frame == null) {
+            return;
+        }
+        if (!isBridgeActive()) {
+            current = null;
+            return;
+        }
+
+        MetalBufferUploadBridge.onFrameBoundary();
+        MetalRenderSystemBridge.flushPendingClear();
+        current = null;
+
+        int status = nativeFrameBackend.endFrame();
+        if (!NativeStatus.isSuccess(status)) {
+            throw new NativeBridgeException(
+                "Native operation nativeEndFrame failed with status "
+                    + NativeStatus.describe(status) + " (" + status + ")."
+            );
+        }
+        MetalBufferUploadBridge.onFrameCompleted();
+
+        if (DEBUG_FRAME_LOGS) {
+            LOGGER.debug(
+                "event=metal_phase6 phase=frame operation=end frame={} draws={} uniforms_forwarded={} uniforms_suppressed={} pending_program_draws={} cpu_record_us={} slot_wait_us={}",
+                frame.frameIndex,
+                frame.drawCount,
+                frame.uniformWritesForwarded,
+                frame.uniformWritesSuppressed,
+                frame.pendingProgramDraws,
+                (System.nanoTime() - frame.beginNanos) / 1_000L,
+                lastWaitNanos / 1_000L
+            );
+        }
+    }
+
+    public static long completedFrameCount() {
+        if (!isBridgeActive()) {
+            return 0L;
+        }
+        return Math.max(nativeFrameBackend.completedFrameCount(), 0L);
+    }
+
+    static FramePacingStats pacingStats() {
+        return new FramePacingStats(
+            FRAMES_IN_FLIGHT,
+            completedFrameCount(),
+            pacedFrames,
+            lastWaitNanos,
+            totalWaitNanos,
+            maxWaitNanos
+        );
+    }
+
+    @Nullable
+    static FrameContext current() {
+        return current;
+    }
+
+    long frameIndex() {
+        return frameIndex;
+    }
+
+    int drawCount() {
+        return drawCount;
+    }
+
+    void recordDraw() {
+        drawCount++;
+    }
+
+    int uniformWritesForwarded() {
+        return uniformWritesForwarded;
+    }
+
+    int uniformWritesSuppressed() {
+        return uniformWritesSuppressed;
+    }
+
+    void recordUniformWrite(boolean forwarded) {
+        if (forwarded) {
+            uniformWritesForwarded++;
+        } else {
+            uniformWritesSuppressed++;
+        }
+    }
+
+    int pendingProgramDraws() {
+        return pendingProgramDraws;
+    }
+
+    void recordPendingProgramDraw() {
+        pendingProgramDraws++;
+    }
+
+    static void setNativeFrameBackendForTests(NativeFrameBackend backend) {
+        nativeFrameBackend = backend;
+    }
+
+    static void setBridgeActiveForTests(boolean active) {
+        bridgeActiveOverrideForTests = active;
+    }
+
+    static void resetForTests() {
+        nativeFrameBackend = new JniNativeFrameBackend();
+        bridgeActiveOverrideForTests = null;
+        current = null;
+        nextFrameIndex = 0L;
+        pacedFrames = 0L;
+        lastWaitNanos = 0L;
+        totalWaitNanos = 0L;
+        maxWaitNanos = 0L;
+    }
+
+    private static void recordSlotWait(long waitNanos) {
+        long wait = Math.max(waitNanos, 0L);
+        pacedFrames++;
+        lastWaitNanos = wait;
+        totalWaitNanos += wait;
+        maxWaitNanos = Math.max(maxWaitNanos, wait);
+    }
+
+    private static boolean isBridgeActive() {
+        Boolean bridgeActiveOverride = bridgeActiveOverrideForTests;
+        if (bridgeActiveOverride != null) {
+            return bridgeActiveOverride;
+        }
+        return HostPlatform.isMacOs() && MetalPhaseOneBridge.isInitialized();
+    }
+
+    private static final class JniNativeFrameBackend implements NativeFrameBackend {
+        @Override
+        public int beginFrame() {
+            return NativeApi.nativeBeginFrame();
+        }
+
+        @Override
+        public int endFrame() {
+            return NativeApi.nativeEndFrame();
+        }
+
+        @Override
+        public int setFramesInFlight(int framesInFlight) {
+            return NativeApi.nativeSetFramesInFlight(framesInFlight);
+        }
+
+        @Override
+        public long completedFrameCount() {
+            return NativeApi.nativeGetCompletedFrameCount();
+        }
+
+        @Override
+        public long lastFrameWaitNanos() {
+            return NativeApi.nativeGetLastFrameWaitNanos();
+        }
+    }
+}
@@ -11,7 +11,7 @@ import java.util.Comparator;
 import java.util.List;
 
 /**
- * Compiles GLSL shader source into SPIR-V binaries using glslangValidator.
+ * Compiles GLSL shader source into SPIR-V binaries using shaderc in-process, or glslangValidator as a fallback.
  */
 public class GlslToSpirvCompiler {
     @FunctionalInterface
@@ -54,10 +54,19 @@ public class GlslToSpirvCompiler {
     private static final String TOOL_PATH_PROPERTY = "mcmetal.phase4.glslang.path";
     private static final String DEFAULT_TOOL_PATH = "glslangValidator";
     private static final int SPIRV_VERSION = 0x00010600;
+    static final List<String> TARGET_ARGUMENTS = List.of("-V", "--target-env", "spirv1.6");
 
     private static volatile ProcessExecutor processExecutor = GlslToSpirvCompiler::runProcess;
 
+    static String toolPath() {
+        return System.getProperty(TOOL_PATH_PROPERTY, DEFAULT_TOOL_PATH);
+    }
+
     byte[] compile(String shaderName, ShaderStage stage, String glslSource) {
+        if (InProcessShaderToolchain.isSelected()) {
+            return compileInProcess(shaderName, stage, glslSource);
+        }
+
         Path tempDir = null;
         try {
             tempDir = Files.createTempDirectory("mcmetal-spirv");
@@ -66,10 +75,8 @@ public class GlslToSpirvCompiler {
             Files.writeString(sourcePath, glslSource, StandardCharsets.UTF_8);
 
             List<String> command = new ArrayList<>();
-            command.add(System.getProperty(TOOL_PATH_PROPERTY, DEFAULT_TOOL_PATH));
-            command.add("-V");
-            command.add("--target-env");
-            command.add("spirv1.6");
+            command.add(toolPath());
+            command.addAll(TARGET_ARGUMENTS);
             command.add("-S");
             command.add(stage.glslangStage());
             command.add("-o");
@@ -109,6 +116,21 @@ public class GlslToSpirvCompiler {
         }
     }
 
+    private static byte[] compileInProcess(String shaderName, ShaderStage stage, String glslSource) {
+        byte[] spirvBinary;
+        try {
+            spirvBinary = InProcessShaderToolchain.compileGlsl(shaderName, stage, glslSource);
+        } catch (InProcessShaderToolchain.ToolchainException e) {
+            throw new CompilationException(e.getMessage());
+        }
+        if (!hasSpirvMagicHeader(spirvBinary)) {
+            throw new CompilationException(
+                "Produced output is not a valid SPIR-V module for '" + shaderName + "'."
+            );
+        }
+        return spirvBinary;
+    }
+
     static void setProcessExecutorForTests(ProcessExecutor executor) {
         processExecutor = executor;
     }
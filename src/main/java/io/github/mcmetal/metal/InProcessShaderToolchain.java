@@ -0,0 +1,334 @@
+package io.github.mcmetal.metal;
+
+import org.jetbrains.annotations.Nullable;
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
+import org.lwjgl.util.shaderc.Shaderc;
+import org.lwjgl.util.spvc.Spv;
+import org.lwjgl.util.spvc.Spvc;
+import org.lwjgl.util.spvc.SpvcMslResourceBinding;
+import org.lwjgl.util.spvc.SpvcReflectedResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * GLSL->SPIR-V->MSL toolchain backed by LWJGL's shaderc and SPIRV-Cross bindings, run without child processes.
+ *
+ * <p>Selected with {@code mcmetal.phase6.shaderToolchain=inprocess} (the default); when the bindings or their
+ * natives cannot be loaded, the shader stages fall back to the {@code glslangValidator}/{@code spirv-cross} tools.
+ */
+final class InProcessShaderToolchain {
+    enum Mode {
+        IN_PROCESS,
+        SUBPROCESS
+    }
+
+    static final class ToolchainException extends RuntimeException {
+        ToolchainException(String message) {
+            super(message);
+        }
+    }
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(InProcessShaderToolchain.class);
+    private static final String MODE_PROPERTY = "mcmetal.phase6.shaderToolchain";
+
+    private static volatile Mode mode = parseMode(System.getProperty(MODE_PROPERTY, "inprocess"));
+    @Nullable
+    private static volatile Boolean available;
+    private static long compiler;
+    private static long compileOptions;
+
+    private InProcessShaderToolchain() {
+    }
+
+    static boolean isSelected() {
+        return mode == Mode.IN_PROCESS && isAvailable();
+    }
+
+    static Mode mode() {
+        return mode;
+    }
+
+    static String fingerprint() {
+        Package bindings = Shaderc.class.getPackage();
+        String version = bindings == null ? null : bindings.getImplementationVersion();
+        // Keep in step with the options installed by probe() and compileMsl().
+        return "shaderc+spvc lwjgl=" + (version == null ? "unknown" : version)
+            + " env=vulkan1.3 spirv=1.6 msl=decoration-binding ubo-buffer-base="
+            + SpirvToMslTranslator.UNIFORM_BUFFER_INDEX_BASE;
+    }
+
+    static byte[] compileGlsl(String shaderName, GlslToSpirvCompiler.ShaderStage stage, String glslSource) {
+        int shaderKind = stage == GlslToSpirvCompiler.ShaderStage.VERTEX
+            ? Shaderc.shaderc_glsl_vertex_shader
+            : Shaderc.shaderc_glsl_fragment_shader;
+        long result = Shaderc.shaderc_compile_into_spv(
+            compiler,
+            glslSource,
+            shaderKind,
+            shaderName + "." + stage.glslangStage() + ".glsl",
+            "main",
+            compileOptions
+        );
+        if (result == 0L) {
+            throw new ToolchainException("shaderc returned no result for '" + shaderName + "'.");
+        }
+
+        try {
+            if (Shaderc.shaderc_result_get_compilation_status(result) != Shaderc.shaderc_compilation_status_success) {
+                throw new ToolchainException(
+                    "GLSL->SPIR-V compilation failed for '" + shaderName + "' (stage=" + stage + "): "
+                        + Shaderc.shaderc_result_get_error_message(result)
+                );
+            }
+            ByteBuffer bytes = Shaderc.shaderc_result_get_bytes(result);
+            if (bytes == null) {
+                throw new ToolchainException("shaderc produced no SPIR-V output for '" + shaderName + "'.");
+            }
+            byte[] spirvBinary = new byte[bytes.remaining()];
+            bytes.get(spirvBinary);
+            return spirvBinary;
+        } finally {
+            Shaderc.shaderc_result_release(result);
+        }
+    }
+
+    static String translateToMsl(String shaderName, byte[] spirvBinary) {
+        return withSpvcCompiler(shaderName, spirvBinary, (context, spvcCompiler, stack) -> compileMsl(
+            context,
+            spvcCompiler,
+            stack,
+            shaderName,
+            reflectBindings(context, spvcCompiler, stack, shaderName)
+        ));
+    }
+
+    static ShaderBindingMap reflect(String shaderName, byte[] spirvBinary) {
+        return withSpvcCompiler(shaderName, spirvBinary, (context, spvcCompiler, stack) ->
+            reflectBindings(context, spvcCompiler, stack, shaderName)
+        );
+    }
+
+    static SpirvToMslTranslator.TranslatedShader translateWithReflection(String shaderName, byte[] spirvBinary) {
+        return withSpvcCompiler(shaderName, spirvBinary, (context, spvcCompiler, stack) -> {
+            ShaderBindingMap bindingMap = reflectBindings(context, spvcCompiler, stack, shaderName);
+            return new SpirvToMslTranslator.TranslatedShader(
+                compileMsl(context, spvcCompiler, stack, shaderName, bindingMap),
+                bindingMap
+            );
+        });
+    }
+
+    static void setModeForTests(Mode testMode) {
+        mode = testMode;
+    }
+
+    static void resetModeForTests() {
+        mode = parseMode(System.getProperty(MODE_PROPERTY, "inprocess"));
+    }
+
+    private interface SpvcWork<T> {
+        T run(long context, long spvcCompiler, MemoryStack stack);
+    }
+
+    private interface BindingFactory<T> {
+        T create(String name, int set, int binding);
+    }
+
+    private static <T> T withSpvcCompiler(String shaderName, byte[] spirvBinary, SpvcWork<T> work) {
+        if (spirvBinary.length % Integer.BYTES != 0) {
+            throw new ToolchainException("SPIR-V module for '" + shaderName + "' is not word aligned.");
+        }
+
+        ByteBuffer spirvBytes = MemoryUtil.memAlloc(spirvBinary.length);
+        long context = 0L;
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            spirvBytes.put(spirvBinary).flip();
+            IntBuffer spirvWords = spirvBytes.asIntBuffer();
+
+            PointerBuffer contextPointer = stack.mallocPointer(1);
+            if (Spvc.spvc_context_create(contextPointer) != Spvc.SPVC_SUCCESS) {
+                throw new ToolchainException("Failed to create SPIRV-Cross context for '" + shaderName + "'.");
+            }
+            context = contextPointer.get(0);
+
+            PointerBuffer parsedIr = stack.mallocPointer(1);
+            check(context, Spvc.spvc_context_parse_spirv(context, spirvWords, spirvWords.remaining(), parsedIr), shaderName);
+
+            PointerBuffer spvcCompiler = stack.mallocPointer(1);
+            check(
+                context,
+                Spvc.spvc_context_create_compiler(
+                    context,
+                    Spvc.SPVC_BACKEND_MSL,
+                    parsedIr.get(0),
+                    Spvc.SPVC_CAPTURE_MODE_TAKE_OWNERSHIP,
+                    spvcCompiler
+                ),
+                shaderName
+            );
+            return work.run(context, spvcCompiler.get(0), stack);
+        } finally {
+            if (context != 0L) {
+                Spvc.spvc_context_destroy(context);
+            }
+            MemoryUtil.memFree(spirvBytes);
+        }
+    }
+
+    private static String compileMsl(
+        long context,
+        long spvcCompiler,
+        MemoryStack stack,
+        String shaderName,
+        ShaderBindingMap bindingMap
+    ) {
+        PointerBuffer options = stack.mallocPointer(1);
+        check(context, Spvc.spvc_compiler_create_compiler_options(spvcCompiler, options), shaderName);
+        // Matches --msl-decoration-binding on the spirv-cross path.
+        int decorationBinding = Spvc.SPVC_COMPILER_OPTION_MSL_ENABLE_DECORATION_BINDING;
+        check(context, Spvc.spvc_compiler_options_set_bool(options.get(0), decorationBinding, true), shaderName);
+        check(context, Spvc.spvc_compiler_install_compiler_options(spvcCompiler, options.get(0)), shaderName);
+        remapUniformBuffers(context, spvcCompiler, stack, shaderName, bindingMap);
+
+        PointerBuffer source = stack.mallocPointer(1);
+        check(context, Spvc.spvc_compiler_compile(spvcCompiler, source), shaderName);
+        return MemoryUtil.memUTF8(source.get(0));
+    }
+
+    private static void remapUniformBuffers(
+        long context,
+        long spvcCompiler,
+        MemoryStack stack,
+        String shaderName,
+        ShaderBindingMap bindingMap
+    ) {
+        // Explicit bindings take precedence over decoration bindings, so only uniform blocks move past vertex data.
+        int executionModel = Spvc.spvc_compiler_get_execution_model(spvcCompiler);
+        for (ShaderBindingMap.UniformBinding uniform : bindingMap.uniforms()) {
+            SpvcMslResourceBinding binding = SpvcMslResourceBinding.malloc(stack);
+            Spvc.spvc_msl_resource_binding_init(binding);
+            binding.stage(executionModel)
+                .desc_set(uniform.set())
+                .binding(uniform.binding())
+                .msl_buffer(SpirvToMslTranslator.UNIFORM_BUFFER_INDEX_BASE + uniform.binding());
+            check(context, Spvc.spvc_compiler_msl_add_resource_binding(spvcCompiler, binding), shaderName);
+        }
+    }
+
+    private static ShaderBindingMap reflectBindings(long context, long spvcCompiler, MemoryStack stack, String shaderName) {
+        PointerBuffer resources = stack.mallocPointer(1);
+        check(context, Spvc.spvc_compiler_create_shader_resources(spvcCompiler, resources), shaderName);
+        long resourcesHandle = resources.get(0);
+        return new ShaderBindingMap(
+            List.copyOf(readResources(context, spvcCompiler, resourcesHandle, Spvc.SPVC_RESOURCE_TYPE_UNIFORM_BUFFER,
+                shaderName, stack, ShaderBindingMap.UniformBinding::new)),
+            List.copyOf(readResources(context, spvcCompiler, resourcesHandle, Spvc.SPVC_RESOURCE_TYPE_SEPARATE_IMAGE,
+                shaderName, stack, ShaderBindingMap.TextureBinding::new)),
+            List.copyOf(readResources(context, spvcCompiler, resourcesHandle, Spvc.SPVC_RESOURCE_TYPE_SEPARATE_SAMPLERS,
+                shaderName, stack, ShaderBindingMap.SamplerBinding::new))
+        );
+    }
+
+    private static <T> List<T> readResources(
+        long context,
+        long spvcCompiler,
+        long resources,
+        int resourceType,
+        String shaderName,
+        MemoryStack stack,
+        BindingFactory<T> factory
+    ) {
+        PointerBuffer list = stack.mallocPointer(1);
+        PointerBuffer count = stack.mallocPointer(1);
+        check(context, Spvc.spvc_resources_get_resource_list_for_type(resources, resourceType, list, count), shaderName);
+
+        int resourceCount = (int) count.get(0);
+        List<T> bindings = new ArrayList<>(resourceCount);
+        if (resourceCount == 0) {
+            return bindings;
+        }
+        for (SpvcReflectedResource resource : SpvcReflectedResource.create(list.get(0), resourceCount)) {
+            bindings.add(factory.create(
+                resource.nameString(),
+                Spvc.spvc_compiler_get_decoration(spvcCompiler, resource.id(), Spv.SpvDecorationDescriptorSet),
+                Spvc.spvc_compiler_get_decoration(spvcCompiler, resource.id(), Spv.SpvDecorationBinding)
+            ));
+        }
+        return bindings;
+    }
+
+    private static void check(long context, int status, String shaderName) {
+        if (status != Spvc.SPVC_SUCCESS) {
+            throw new ToolchainException(
+                "SPIRV-Cross failed for '" + shaderName + "' (status=" + status + "): "
+                    + Spvc.spvc_context_get_last_error_string(context)
+            );
+        }
+    }
+
+    private static boolean isAvailable() {
+        Boolean probed = available;
+        if (probed != null) {
+            return probed;
+        }
+        synchronized (InProcessShaderToolchain.class) {
+            if (available == null) {
+                available = probe();
+            }
+            return available;
+        }
+    }
+
+    private static boolean probe() {
+        long probedCompiler = 0L;
+        try {
+            probedCompiler = Shaderc.shaderc_compiler_initialize();
+            if (probedCompiler == 0L) {
+                throw new IllegalStateException("shaderc_compiler_initialize returned null");
+            }
+            long probedOptions = Shaderc.shaderc_compile_options_initialize();
+            // Mirrors the glslangValidator invocation: -V --target-env spirv1.6.
+            Shaderc.shaderc_compile_options_set_target_env(
+                probedOptions,
+                Shaderc.shaderc_target_env_vulkan,
+                Shaderc.shaderc_env_version_vulkan_1_3
+            );
+            Shaderc.shaderc_compile_options_set_target_spirv(probedOptions, Shaderc.shaderc_spirv_version_1_6);
+            try (MemoryStack stack = MemoryStack.stackPush()) {
+                PointerBuffer context = stack.mallocPointer(1);
+                if (Spvc.spvc_context_create(context) != Spvc.SPVC_SUCCESS) {
+                    throw new IllegalStateException("spvc_context_create failed");
+                }
+                Spvc.spvc_context_destroy(context.get(0));
+            }
+            compiler = probedCompiler;
+            compileOptions = probedOptions;
+            LOGGER.info("event=metal_phase6 phase=shader_toolchain backend=inprocess");
+            return true;
+        } catch (LinkageError | RuntimeException exception) {
+            if (probedCompiler != 0L) {
+                Shaderc.shaderc_compiler_release(probedCompiler);
+            }
+            LOGGER.warn(
+                "event=metal_phase6 phase=shader_toolchain backend=subprocess reason=inprocess_unavailable message={}",
+                exception.getMessage()
+            );
+            return false;
+        }
+    }
+
+    private static Mode parseMode(String value) {
+        return switch (value.toLowerCase(Locale.ROOT)) {
+            case "subprocess", "process", "cli" -> Mode.SUBPROCESS;
+            default -> Mode.IN_PROCESS;
+        };
+    }
+}
@@ -41,6 +41,8 @@ public final class MetalBootstrap {
                 expectedBridgeVersion,
                 actualBridgeVersion
             );
+            MetalShaderLifecycleBridge.startShaderCachePrewarm();
+            PipelineStateArchive.load();
         } catch (RuntimeException runtimeException) {
             LOGGER.error(
                 "event=metal_startup phase=failure expected_bridge_version={} error_type={} error_message={}",
@@ -16,6 +16,7 @@ import java.util.ArrayDeque;
 import java.util.Collections;
 import java.util.Deque;
 import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.WeakHashMap;
 
@@ -80,15 +81,22 @@ public final class MetalBufferUploadBridge {
     private static final Logger LOGGER = LoggerFactory.getLogger(MetalBufferUploadBridge.class);
     private static final boolean DEBUG_BUFFER_LOGS = Boolean.getBoolean("mcmetal.phase3.debugBufferBridge");
     private static final boolean DRAW_SUBMISSION_ENABLED = !Boolean.getBoolean("mcmetal.phase3.disableDrawSubmission");
+    private static final boolean DRAW_REORDERING_DEFAULT = Boolean.getBoolean("mcmetal.phase6.enableDrawReordering");
     private static final int DEFERRED_DESTROY_FRAME_LAG = 2;
+    private static final int MAX_REORDERED_DRAWS = Math.max(
+        Integer.getInteger("mcmetal.phase6.maxReorderedDraws", 4096),
+        1
+    );
     private static final Map<Object, UploadSnapshot> SNAPSHOT_CACHE = Collections.synchronizedMap(new WeakHashMap<>());
     private static final Map<Object, NativeBufferRecord> BUFFER_RECORDS = Collections.synchronizedMap(new IdentityHashMap<>());
-    private static final Map<VertexFormat, Long> VERTEX_DESCRIPTOR_CACHE = Collections.synchronizedMap(new WeakHashMap<>());
+    private static final Map<VertexFormat, RegisteredVertexDescriptor> VERTEX_DESCRIPTOR_CACHE = Collections.synchronizedMap(new WeakHashMap<>());
     private static final Deque<DeferredDestroyEntry> DEFERRED_DESTROY_QUEUE = new ArrayDeque<>();
+    private static final DrawReorderQueue<QueuedDraw> REORDER_QUEUE = new DrawReorderQueue<>();
 
     private static volatile NativeBufferBackend nativeBufferBackend = new JniNativeBufferBackend();
     private static volatile Boolean bridgeActiveOverrideForTests;
     private static volatile long submittedFrame;
+    private static volatile boolean drawReorderingEnabled = DRAW_REORDERING_DEFAULT;
 
     private MetalBufferUploadBridge() {
     }
@@ -139,6 +147,55 @@ public final class MetalBufferUploadBridge {
         submitDraw(vertexBuffer);
     }
 
+    public static void onFrameBoundary() {
+        flushReorderedDraws("frame_boundary");
+    }
+
+    static void onFrameCompleted() {
+        completeFrameAndDrainDeferredQueue();
+    }
+
+    static void flushReorderedDraws(String reason) {
+        if (REORDER_QUEUE.isEmpty()) {
+            return;
+        }
+
+        List<DrawReorderQueue.PendingDraw<QueuedDraw>> sorted = REORDER_QUEUE.drainSorted();
+        PipelineStateKey liveState = MetalRenderSystemBridge.currentPipelineState(0);
+        for (DrawReorderQueue.PendingDraw<QueuedDraw> draw : sorted) {
+            MetalRenderSystemBridge.applyPipelineState(draw.pipelineState());
+            QueuedDraw queued = draw.payload();
+            issueDraw(queued.record(), queued.snapshot(), queued.program(), draw.pipelineState());
+        }
+        MetalRenderSystemBridge.applyPipelineState(liveState);
+
+        if (DEBUG_BUFFER_LOGS) {
+            DrawReorderQueue.Stats stats = REORDER_QUEUE.stats();
+            LOGGER.debug(
+                "event=metal_phase6 phase=draw_reorder reason={} draws={} total_flushes={} total_draws={} switches_before={} switches_after={} switches_avoided={}",
+                reason,
+                sorted.size(),
+                stats.flushes(),
+                stats.reorderedDraws(),
+                stats.switchesBeforeSort(),
+                stats.switchesAfterSort(),
+                stats.switchesAvoided()
+            );
+        }
+    }
+
+    static DrawReorderQueue.Stats drawReorderStats() {
+        return REORDER_QUEUE.stats();
+    }
+
+    static void setDrawReorderingEnabledForTests(boolean enabled) {
+        drawReorderingEnabled = enabled;
+    }
+
+    static int pendingReorderedDrawsForTests() {
+        return REORDER_QUEUE.size();
+    }
+
     static void onVertexBufferUploadForTests(
         Object vertexBufferIdentity,
         BufferUsage usage,
@@ -206,6 +263,9 @@ public final class MetalBufferUploadBridge {
         nativeBufferBackend = new JniNativeBufferBackend();
         bridgeActiveOverrideForTests = null;
         submittedFrame = 0L;
+        REORDER_QUEUE.clear();
+        REORDER_QUEUE.resetStats();
+        drawReorderingEnabled = DRAW_REORDERING_DEFAULT;
     }
 
     private static void onVertexBufferUploadInternal(
@@ -221,9 +281,12 @@ public final class MetalBufferUploadBridge {
         if (snapshot.vertexData.remaining() <= 0) {
             return;
         }
+        flushIfPending(vertexBufferIdentity, "buffer_upload");
 
         NativeBufferRecord record = BUFFER_RECORDS.computeIfAbsent(vertexBufferIdentity, key -> new NativeBufferRecord());
-        record.vertexDescriptorHandle = ensureVertexDescriptor(snapshot.format);
+        RegisteredVertexDescriptor vertexDescriptor = ensureVertexDescriptor(snapshot.format);
+        record.vertexDescriptorHandle = vertexDescriptor.handle();
+        record.vertexLayoutSignature = vertexDescriptor.layoutSignature();
         record.vertexAllocation = uploadAllocation(record.vertexAllocation, usage, snapshot.vertexData, "vertex");
 
         if (snapshot.indexData != null && snapshot.indexData.remaining() > 0) {
@@ -251,10 +314,17 @@ public final class MetalBufferUploadBridge {
         }
     }
 
-    private static long ensureVertexDescriptor(VertexFormat format) {
-        Long cachedHandle = VERTEX_DESCRIPTOR_CACHE.get(format);
-        if (cachedHandle != null && cachedHandle > 0L) {
-            return cachedHandle;
+    /**
+     * Native vertex descriptor for {@code format}, registered on first use and shared with uploads.
+     */
+    static long vertexDescriptorHandle(VertexFormat format) {
+        return ensureVertexDescriptor(format).handle();
+    }
+
+    private static RegisteredVertexDescriptor ensureVertexDescriptor(VertexFormat format) {
+        RegisteredVertexDescriptor cached = VERTEX_DESCRIPTOR_CACHE.get(format);
+        if (cached != null) {
+            return cached;
         }
 
         MetalVertexDescriptorMapper.NativeVertexDescriptor descriptor = MetalVertexDescriptorMapper.map(format);
@@ -275,8 +345,12 @@ public final class MetalBufferUploadBridge {
             );
         }
 
-        VERTEX_DESCRIPTOR_CACHE.put(format, descriptorHandle);
-        return descriptorHandle;
+        RegisteredVertexDescriptor registered = new RegisteredVertexDescriptor(
+            descriptorHandle,
+            descriptor.layoutSignature()
+        );
+        VERTEX_DESCRIPTOR_CACHE.put(format, registered);
+        return registered;
     }
 
     private static BufferAllocation uploadAllocation(
@@ -318,6 +392,7 @@ public final class MetalBufferUploadBridge {
     }
 
     private static void closeRecord(Object vertexBufferIdentity) {
+        flushIfPending(vertexBufferIdentity, "buffer_close");
         NativeBufferRecord record = BUFFER_RECORDS.remove(vertexBufferIdentity);
         if (record == null) {
             return;
@@ -341,10 +416,40 @@ public final class MetalBufferUploadBridge {
             return;
         }
         UploadSnapshot snapshot = record.lastSnapshot;
-        if (snapshot.vertexCount <= 0) {
+        int drawCount = shouldUseIndexedPath(snapshot, record) ? snapshot.indexCount : snapshot.vertexCount;
+        if (MetalRenderSystemBridge.elideDraw(drawCount) || !MetalShaderProgramBridge.prepareDrawProgram()) {
             return;
         }
 
+        MetalShaderProgramBridge.BoundProgram program = MetalShaderProgramBridge.boundProgram();
+        PipelineStateKey pipelineState = MetalRenderSystemBridge.currentPipelineState(snapshot.modeGl);
+        if (drawReorderingEnabled) {
+            if (MetalRenderSystemBridge.isOpaquePassState()) {
+                REORDER_QUEUE.add(
+                    program == null ? 0L : program.nativeHandle(),
+                    pipelineState,
+                    record.vertexDescriptorHandle,
+                    record.vertexAllocation.handle,
+                    new QueuedDraw(vertexBufferIdentity, record, snapshot, program)
+                );
+                if (REORDER_QUEUE.size() >= MAX_REORDERED_DRAWS) {
+                    flushReorderedDraws("queue_full");
+                }
+                return;
+            }
+            flushReorderedDraws("translucent_boundary");
+        }
+        issueDraw(record, snapshot, program, pipelineState);
+    }
+
+    private static void issueDraw(
+        NativeBufferRecord record,
+        UploadSnapshot snapshot,
+        @Nullable MetalShaderProgramBridge.BoundProgram program,
+        PipelineStateKey pipelineState
+    ) {
+        MetalRenderSystemBridge.flushPendingClear();
+        bindProgramForDraw(record, program, pipelineState);
         boolean useIndexedPath = shouldUseIndexedPath(snapshot, record);
         if (useIndexedPath) {
             if (!isSupportedIndexType(snapshot.indexTypeGl)) {
@@ -356,7 +461,7 @@ public final class MetalBufferUploadBridge {
                 "nativeDrawIndexed",
                 nativeBufferBackend.drawIndexed(snapshot.modeGl, snapshot.indexCount, snapshot.indexTypeGl)
             );
-            completeFrameAndDrainDeferredQueue();
+            onDrawSubmitted();
             return;
         }
 
@@ -364,9 +469,42 @@ public final class MetalBufferUploadBridge {
             "nativeDraw",
             nativeBufferBackend.draw(snapshot.modeGl, 0, snapshot.vertexCount)
         );
+        onDrawSubmitted();
+    }
+
+    private static void bindProgramForDraw(
+        NativeBufferRecord record,
+        @Nullable MetalShaderProgramBridge.BoundProgram program,
+        PipelineStateKey pipelineState
+    ) {
+        if (program == null) {
+            MetalRenderSystemBridge.onShaderBinding(0L, 0L);
+            return;
+        }
+
+        MetalRenderSystemBridge.onShaderBinding(program.nativeHandle(), record.vertexDescriptorHandle);
+        MetalShaderProgramBridge.flushUniformBlock(program);
+        if (record.vertexLayoutSignature != null) {
+            PipelineStateArchive.recordUse(program, record.vertexLayoutSignature, pipelineState);
+        }
+    }
+
+    private static void onDrawSubmitted() {
+        FrameContext frame = FrameContext.current();
+        if (frame != null) {
+            frame.recordDraw();
+            return;
+        }
+        // Outside a frame each native draw presents on its own, so it also completes a frame.
         completeFrameAndDrainDeferredQueue();
     }
 
+    private static void flushIfPending(Object vertexBufferIdentity, String reason) {
+        if (REORDER_QUEUE.anyPending(queued -> queued.identity() == vertexBufferIdentity)) {
+            flushReorderedDraws(reason);
+        }
+    }
+
     private static boolean shouldUseIndexedPath(UploadSnapshot snapshot, NativeBufferRecord record) {
         if (record.indexAllocation.handle != 0L) {
             return true;
@@ -464,9 +602,22 @@ public final class MetalBufferUploadBridge {
         private BufferAllocation vertexAllocation = new BufferAllocation();
         private BufferAllocation indexAllocation = new BufferAllocation();
         private long vertexDescriptorHandle;
+        @Nullable
+        private String vertexLayoutSignature;
         private UploadSnapshot lastSnapshot;
     }
 
+    private record RegisteredVertexDescriptor(long handle, String layoutSignature) {
+    }
+
+    private record QueuedDraw(
+        Object identity,
+        NativeBufferRecord record,
+        UploadSnapshot snapshot,
+        @Nullable MetalShaderProgramBridge.BoundProgram program
+    ) {
+    }
+
     private static final class BufferAllocation {
         private long handle;
         private int capacityBytes;
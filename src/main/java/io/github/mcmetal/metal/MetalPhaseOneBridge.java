@@ -109,6 +109,7 @@ public final class MetalPhaseOneBridge {
             () -> NativeApi.nativeResize(width, height, windowScaleFactor, windowFullscreen)
         );
         requireSuccess("nativeResize", resizeStatus);
+        FrameContext.configurePacing();
 
         framebufferWidth = width;
         framebufferHeight = height;
@@ -220,6 +221,8 @@ public final class MetalPhaseOneBridge {
             return;
         }
 
+        PipelineStateArchive.save();
+        MetalShaderLifecycleBridge.flushShaderCache();
         callNativeWithoutOpenGlContext(() -> {
             NativeApi.nativeShutdown();
             return NativeStatus.OK;
@@ -23,6 +23,10 @@ public final class MetalRenderSystemBridge {
     private static final Logger LOGGER = LoggerFactory.getLogger(MetalRenderSystemBridge.class);
     private static final boolean DRAW_SUBMISSION_ENABLED = Boolean.getBoolean("mcmetal.phase2.enableDrawSubmission");
     private static final boolean DEBUG_STATE_LOGS = Boolean.getBoolean("mcmetal.phase2.debugStateTransitions");
+    private static final int GL_COLOR_BUFFER_BIT = 0x4000;
+    private static final int GL_DEPTH_BUFFER_BIT = 0x0100;
+    private static final int GL_STENCIL_BUFFER_BIT = 0x0400;
+    private static final int SUPPORTED_CLEAR_MASK = GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT | GL_STENCIL_BUFFER_BIT;
     private static volatile StateSubmissionHook stateSubmissionHook;
     private static volatile Boolean bridgeActiveOverrideForTests;
 
@@ -60,6 +64,56 @@ public final class MetalRenderSystemBridge {
     private static volatile int viewportY;
     private static volatile int viewportWidth = 1;
     private static volatile int viewportHeight = 1;
+    private static volatile int scissorRequestedWidth = 1;
+    private static volatile int scissorRequestedHeight = 1;
+    private static volatile int viewportRequestedWidth = 1;
+    private static volatile int viewportRequestedHeight = 1;
+
+    private static volatile int colorWriteMask = PipelineStateKey.COLOR_WRITE_ALL;
+    private static volatile boolean logicOpEnabled;
+    private static volatile int logicOp = PipelineStateKey.LOGIC_OP_COPY;
+
+    private static volatile boolean polygonOffsetEnabled;
+    private static volatile float polygonOffsetFactor;
+    private static volatile float polygonOffsetUnits;
+    private static volatile float lineWidth = 1.0F;
+
+    private static volatile long boundProgramHandle;
+    private static volatile long boundVertexDescriptorHandle;
+
+    private static volatile float clearRed;
+    private static volatile float clearGreen;
+    private static volatile float clearBlue;
+    private static volatile float clearAlpha;
+    private static volatile double clearDepth = 1.0D;
+    private static volatile int clearStencil;
+    private static volatile int pendingClearMask;
+    private static volatile float pendingClearRed;
+    private static volatile float pendingClearGreen;
+    private static volatile float pendingClearBlue;
+    private static volatile float pendingClearAlpha;
+    private static volatile double pendingClearDepth = 1.0D;
+    private static volatile int pendingClearStencil;
+    private static volatile int pendingClearRequests;
+
+    private static volatile long clearsRequested;
+    private static volatile long clearsFolded;
+    private static volatile long clearsElided;
+    private static volatile long clearsStandalone;
+    private static volatile long clearsScissored;
+
+    private static volatile long drawsElidedEmptyRegion;
+    private static volatile long drawsElidedZeroCount;
+    private static volatile long drawsElidedMaskedWrites;
+
+    record ClearStats(long requested, long folded, long elided, long standalone, long scissored) {
+    }
+
+    record DrawElisionStats(long emptyRegion, long zeroCount, long maskedWrites) {
+        long total() {
+            return emptyRegion + zeroCount + maskedWrites;
+        }
+    }
 
     private MetalRenderSystemBridge() {
     }
@@ -114,6 +168,47 @@ public final class MetalRenderSystemBridge {
         viewportY = 0;
         viewportWidth = 1;
         viewportHeight = 1;
+        scissorRequestedWidth = 1;
+        scissorRequestedHeight = 1;
+        viewportRequestedWidth = 1;
+        viewportRequestedHeight = 1;
+
+        colorWriteMask = PipelineStateKey.COLOR_WRITE_ALL;
+        logicOpEnabled = false;
+        logicOp = PipelineStateKey.LOGIC_OP_COPY;
+
+        polygonOffsetEnabled = false;
+        polygonOffsetFactor = 0.0F;
+        polygonOffsetUnits = 0.0F;
+        lineWidth = 1.0F;
+
+        boundProgramHandle = 0L;
+        boundVertexDescriptorHandle = 0L;
+
+        clearRed = 0.0F;
+        clearGreen = 0.0F;
+        clearBlue = 0.0F;
+        clearAlpha = 0.0F;
+        clearDepth = 1.0D;
+        clearStencil = 0;
+        pendingClearMask = 0;
+        pendingClearRed = 0.0F;
+        pendingClearGreen = 0.0F;
+        pendingClearBlue = 0.0F;
+        pendingClearAlpha = 0.0F;
+        pendingClearDepth = 1.0D;
+        pendingClearStencil = 0;
+        pendingClearRequests = 0;
+
+        clearsRequested = 0L;
+        clearsFolded = 0L;
+        clearsElided = 0L;
+        clearsStandalone = 0L;
+        clearsScissored = 0L;
+
+        drawsElidedEmptyRegion = 0L;
+        drawsElidedZeroCount = 0L;
+        drawsElidedMaskedWrites = 0L;
     }
 
     public static void onEnableBlend() {
@@ -123,6 +218,7 @@ public final class MetalRenderSystemBridge {
         if (blendEnabled) {
             return;
         }
+        MetalBufferUploadBridge.flushReorderedDraws("blend_boundary");
         blendEnabled = true;
         submitState("nativeSetBlendEnabled", () -> NativeApi.nativeSetBlendEnabled(blendEnabled));
     }
@@ -196,6 +292,7 @@ public final class MetalRenderSystemBridge {
         if (depthTestEnabled) {
             return;
         }
+        MetalBufferUploadBridge.flushReorderedDraws("depth_state");
         depthTestEnabled = true;
         submitState(
             "nativeSetDepthState",
@@ -210,6 +307,7 @@ public final class MetalRenderSystemBridge {
         if (!depthTestEnabled) {
             return;
         }
+        MetalBufferUploadBridge.flushReorderedDraws("depth_state");
         depthTestEnabled = false;
         submitState(
             "nativeSetDepthState",
@@ -224,6 +322,7 @@ public final class MetalRenderSystemBridge {
         if (depthCompareFunction == function) {
             return;
         }
+        MetalBufferUploadBridge.flushReorderedDraws("depth_state");
         depthCompareFunction = function;
         submitState(
             "nativeSetDepthState",
@@ -238,6 +337,7 @@ public final class MetalRenderSystemBridge {
         if (depthWriteMask == mask) {
             return;
         }
+        MetalBufferUploadBridge.flushReorderedDraws("depth_state");
         depthWriteMask = mask;
         submitState(
             "nativeSetDepthState",
@@ -271,6 +371,8 @@ public final class MetalRenderSystemBridge {
         if (!isBridgeActive()) {
             return;
         }
+        scissorRequestedWidth = width;
+        scissorRequestedHeight = height;
         int clampedWidth = Math.max(width, 1);
         int clampedHeight = Math.max(height, 1);
         if (DEBUG_STATE_LOGS && (clampedWidth != width || clampedHeight != height)) {
@@ -288,6 +390,7 @@ public final class MetalRenderSystemBridge {
             && scissorWidth == clampedWidth && scissorHeight == clampedHeight) {
             return;
         }
+        MetalBufferUploadBridge.flushReorderedDraws("scissor_state");
         scissorEnabled = true;
         scissorX = x;
         scissorY = y;
@@ -306,6 +409,7 @@ public final class MetalRenderSystemBridge {
         if (!scissorEnabled) {
             return;
         }
+        MetalBufferUploadBridge.flushReorderedDraws("scissor_state");
         scissorEnabled = false;
         submitState(
             "nativeSetScissorState",
@@ -317,6 +421,8 @@ public final class MetalRenderSystemBridge {
         if (!isBridgeActive()) {
             return;
         }
+        viewportRequestedWidth = width;
+        viewportRequestedHeight = height;
         int clampedWidth = Math.max(width, 1);
         int clampedHeight = Math.max(height, 1);
         if (DEBUG_STATE_LOGS && (clampedWidth != width || clampedHeight != height)) {
@@ -333,6 +439,7 @@ public final class MetalRenderSystemBridge {
         if (viewportX == x && viewportY == y && viewportWidth == clampedWidth && viewportHeight == clampedHeight) {
             return;
         }
+        MetalBufferUploadBridge.flushReorderedDraws("viewport_state");
         viewportX = x;
         viewportY = y;
         viewportWidth = clampedWidth;
@@ -351,6 +458,7 @@ public final class MetalRenderSystemBridge {
             && stencilReference == reference && stencilCompareMask == mask) {
             return;
         }
+        MetalBufferUploadBridge.flushReorderedDraws("stencil_state");
         stencilEnabled = true;
         stencilFunction = function;
         stencilReference = reference;
@@ -377,6 +485,7 @@ public final class MetalRenderSystemBridge {
         if (stencilEnabled && stencilWriteMask == mask) {
             return;
         }
+        MetalBufferUploadBridge.flushReorderedDraws("stencil_state");
         stencilEnabled = true;
         stencilWriteMask = mask;
         submitState(
@@ -401,6 +510,7 @@ public final class MetalRenderSystemBridge {
         if (stencilEnabled && stencilSFail == sfail && stencilDpFail == dpfail && stencilDpPass == dppass) {
             return;
         }
+        MetalBufferUploadBridge.flushReorderedDraws("stencil_state");
         stencilEnabled = true;
         stencilSFail = sfail;
         stencilDpFail = dpfail;
@@ -420,13 +530,384 @@ public final class MetalRenderSystemBridge {
         );
     }
 
+    public static void onColorMask(boolean red, boolean green, boolean blue, boolean alpha) {
+        if (!isBridgeActive()) {
+            return;
+        }
+        int mask = (red ? 1 : 0) | (green ? 2 : 0) | (blue ? 4 : 0) | (alpha ? 8 : 0);
+        if (colorWriteMask == mask) {
+            return;
+        }
+        colorWriteMask = mask;
+        submitColorOutputState();
+    }
+
+    public static void onEnableColorLogicOp() {
+        if (!isBridgeActive()) {
+            return;
+        }
+        if (logicOpEnabled) {
+            return;
+        }
+        MetalBufferUploadBridge.flushReorderedDraws("logic_op_boundary");
+        logicOpEnabled = true;
+        submitColorOutputState();
+    }
+
+    public static void onDisableColorLogicOp() {
+        if (!isBridgeActive()) {
+            return;
+        }
+        if (!logicOpEnabled) {
+            return;
+        }
+        logicOpEnabled = false;
+        submitColorOutputState();
+    }
+
+    public static void onLogicOp(int op) {
+        if (!isBridgeActive()) {
+            return;
+        }
+        if (logicOp == op) {
+            return;
+        }
+        logicOp = op;
+        submitColorOutputState();
+    }
+
+    public static void onEnablePolygonOffset() {
+        if (!isBridgeActive()) {
+            return;
+        }
+        if (polygonOffsetEnabled) {
+            return;
+        }
+        MetalBufferUploadBridge.flushReorderedDraws("depth_bias");
+        polygonOffsetEnabled = true;
+        submitDepthBias();
+    }
+
+    public static void onDisablePolygonOffset() {
+        if (!isBridgeActive()) {
+            return;
+        }
+        if (!polygonOffsetEnabled) {
+            return;
+        }
+        MetalBufferUploadBridge.flushReorderedDraws("depth_bias");
+        polygonOffsetEnabled = false;
+        submitDepthBias();
+    }
+
+    public static void onPolygonOffset(float factor, float units) {
+        if (!isBridgeActive()) {
+            return;
+        }
+        if (polygonOffsetFactor == factor && polygonOffsetUnits == units) {
+            return;
+        }
+        MetalBufferUploadBridge.flushReorderedDraws("depth_bias");
+        polygonOffsetFactor = factor;
+        polygonOffsetUnits = units;
+        submitDepthBias();
+    }
+
+    public static void onLineWidth(float width) {
+        if (!isBridgeActive() || lineWidth == width) {
+            return;
+        }
+        // Metal rasterizes lines at one pixel; vanilla widens lines in the rendertype_lines shader instead.
+        lineWidth = width;
+        if (DEBUG_STATE_LOGS) {
+            LOGGER.debug("event=metal_phase6 phase=state_track operation=line_width width={}", width);
+        }
+    }
+
+    public static void onShaderBinding(long programHandle, long vertexDescriptorHandle) {
+        if (!isBridgeActive()) {
+            return;
+        }
+        if (boundProgramHandle == programHandle && boundVertexDescriptorHandle == vertexDescriptorHandle) {
+            return;
+        }
+        boundProgramHandle = programHandle;
+        boundVertexDescriptorHandle = vertexDescriptorHandle;
+        submitState(
+            "nativeSetShaderBinding",
+            () -> NativeApi.nativeSetShaderBinding(boundProgramHandle, boundVertexDescriptorHandle)
+        );
+    }
+
+    static PipelineStateKey currentPipelineState(int primitiveMode) {
+        return new PipelineStateKey(
+            primitiveMode,
+            blendEnabled,
+            blendSrcRgb,
+            blendDstRgb,
+            blendSrcAlpha,
+            blendDstAlpha,
+            blendEquationRgb,
+            blendEquationAlpha,
+            cullEnabled,
+            cullMode,
+            colorWriteMask,
+            logicOpEnabled,
+            logicOp
+        );
+    }
+
+    public static void onClearColor(float red, float green, float blue, float alpha) {
+        clearRed = red;
+        clearGreen = green;
+        clearBlue = blue;
+        clearAlpha = alpha;
+    }
+
+    public static void onClearDepth(double depth) {
+        clearDepth = depth;
+    }
+
+    public static void onClearStencil(int stencil) {
+        clearStencil = stencil;
+    }
+
+    public static void onClear(int mask) {
+        if (!isBridgeActive()) {
+            return;
+        }
+        int clearMask = mask & SUPPORTED_CLEAR_MASK;
+        if (clearMask == 0) {
+            return;
+        }
+        MetalBufferUploadBridge.flushReorderedDraws("clear");
+        clearsRequested++;
+        if (scissorEnabled) {
+            submitScissoredClear(clearMask);
+            return;
+        }
+
+        int previousMask = pendingClearMask;
+        if (previousMask != 0 && (previousMask & ~clearMask) == 0) {
+            clearsElided += pendingClearRequests;
+            pendingClearRequests = 0;
+        }
+        pendingClearMask = previousMask | clearMask;
+        pendingClearRequests++;
+        if ((clearMask & GL_COLOR_BUFFER_BIT) != 0) {
+            pendingClearRed = clearRed;
+            pendingClearGreen = clearGreen;
+            pendingClearBlue = clearBlue;
+            pendingClearAlpha = clearAlpha;
+        }
+        if ((clearMask & GL_DEPTH_BUFFER_BIT) != 0) {
+            pendingClearDepth = clearDepth;
+        }
+        if ((clearMask & GL_STENCIL_BUFFER_BIT) != 0) {
+            pendingClearStencil = clearStencil;
+        }
+        if (DEBUG_STATE_LOGS) {
+            LOGGER.debug(
+                "event=metal_phase6 phase=clear operation=defer mask={} pending_mask={}",
+                clearMask,
+                pendingClearMask
+            );
+        }
+    }
+
+    /**
+     * A load action clears the whole attachment, so a clear under the scissor is drawn as a quad over the scissor
+     * rectangle instead of being folded; any pending full clear is submitted first to keep their order.
+     */
+    private static void submitScissoredClear(int clearMask) {
+        if (scissorRequestedWidth <= 0 || scissorRequestedHeight <= 0) {
+            clearsElided++;
+            return;
+        }
+        flushPendingClear();
+        float red = clearRed;
+        float green = clearGreen;
+        float blue = clearBlue;
+        float alpha = clearAlpha;
+        double depth = clearDepth;
+        int stencil = clearStencil;
+        clearsScissored++;
+        submitState(
+            "nativeClearScissored",
+            () -> NativeApi.nativeClearScissored(clearMask, red, green, blue, alpha, depth, stencil)
+        );
+        if (DEBUG_STATE_LOGS) {
+            LOGGER.debug(
+                "event=metal_phase6 phase=clear operation=scissored mask={} scissor_x={} scissor_y={} scissor_width={} scissor_height={}",
+                clearMask,
+                scissorX,
+                scissorY,
+                scissorWidth,
+                scissorHeight
+            );
+        }
+    }
+
+    static void flushPendingClear() {
+        if (pendingClearMask == 0 || !isBridgeActive()) {
+            return;
+        }
+        submitPendingClear();
+        clearsFolded += pendingClearRequests;
+        pendingClearRequests = 0;
+    }
+
+    public static void onFrameBoundary() {
+        if (pendingClearMask == 0 || !isBridgeActive()) {
+            return;
+        }
+        submitPendingClear();
+        clearsStandalone += pendingClearRequests;
+        pendingClearRequests = 0;
+        submitState("nativeExecutePendingClear", NativeApi::nativeExecutePendingClear);
+    }
+
+    static ClearStats clearStats() {
+        return new ClearStats(clearsRequested, clearsFolded, clearsElided, clearsStandalone, clearsScissored);
+    }
+
+    private static void submitPendingClear() {
+        int clearMask = pendingClearMask;
+        float red = pendingClearRed;
+        float green = pendingClearGreen;
+        float blue = pendingClearBlue;
+        float alpha = pendingClearAlpha;
+        double depth = pendingClearDepth;
+        int stencil = pendingClearStencil;
+        pendingClearMask = 0;
+        submitState(
+            "nativeSetPendingClear",
+            () -> NativeApi.nativeSetPendingClear(clearMask, red, green, blue, alpha, depth, stencil)
+        );
+    }
+
+    static boolean elideDraw(int count) {
+        if (count <= 0) {
+            drawsElidedZeroCount++;
+            return true;
+        }
+        if (isDrawRegionEmpty()) {
+            drawsElidedEmptyRegion++;
+            return true;
+        }
+        if (areAllWritesMasked()) {
+            drawsElidedMaskedWrites++;
+            return true;
+        }
+        return false;
+    }
+
+    static DrawElisionStats drawElisionStats() {
+        return new DrawElisionStats(drawsElidedEmptyRegion, drawsElidedZeroCount, drawsElidedMaskedWrites);
+    }
+
+    private static boolean isDrawRegionEmpty() {
+        if (viewportRequestedWidth <= 0 || viewportRequestedHeight <= 0) {
+            return true;
+        }
+        if (!scissorEnabled) {
+            return false;
+        }
+        if (scissorRequestedWidth <= 0 || scissorRequestedHeight <= 0) {
+            return true;
+        }
+        long left = Math.max(scissorX, viewportX);
+        long bottom = Math.max(scissorY, viewportY);
+        long right = Math.min((long) scissorX + scissorRequestedWidth, (long) viewportX + viewportRequestedWidth);
+        long top = Math.min((long) scissorY + scissorRequestedHeight, (long) viewportY + viewportRequestedHeight);
+        return right <= left || top <= bottom;
+    }
+
+    private static boolean areAllWritesMasked() {
+        if (colorWriteMask != 0) {
+            return false;
+        }
+        boolean depthWrites = depthTestEnabled && depthWriteMask;
+        boolean stencilWrites = stencilEnabled && stencilWriteMask != 0;
+        return !depthWrites && !stencilWrites;
+    }
+
+    /**
+     * Whether draws may be reordered: only when depth testing with LESS or LEQUAL decides visibility instead of
+     * submission order, as it does not for GUI draws with the depth test off.
+     */
+    static boolean isOpaquePassState() {
+        return !blendEnabled
+            && !logicOpEnabled
+            && depthWriteMask
+            && depthTestEnabled
+            && (depthCompareFunction == 0x0201 || depthCompareFunction == 0x0203);
+    }
+
+    static void applyPipelineState(PipelineStateKey state) {
+        if (!isBridgeActive()) {
+            return;
+        }
+        if (blendEnabled != state.blendEnabled()) {
+            blendEnabled = state.blendEnabled();
+            submitState("nativeSetBlendEnabled", () -> NativeApi.nativeSetBlendEnabled(blendEnabled));
+        }
+        if (blendSrcRgb != state.blendSrcRgb() || blendDstRgb != state.blendDstRgb()
+            || blendSrcAlpha != state.blendSrcAlpha() || blendDstAlpha != state.blendDstAlpha()) {
+            blendSrcRgb = state.blendSrcRgb();
+            blendDstRgb = state.blendDstRgb();
+            blendSrcAlpha = state.blendSrcAlpha();
+            blendDstAlpha = state.blendDstAlpha();
+            submitState(
+                "nativeSetBlendFunc",
+                () -> NativeApi.nativeSetBlendFunc(blendSrcRgb, blendDstRgb, blendSrcAlpha, blendDstAlpha)
+            );
+        }
+        if (blendEquationRgb != state.blendEquationRgb() || blendEquationAlpha != state.blendEquationAlpha()) {
+            blendEquationRgb = state.blendEquationRgb();
+            blendEquationAlpha = state.blendEquationAlpha();
+            submitState(
+                "nativeSetBlendEquation",
+                () -> NativeApi.nativeSetBlendEquation(blendEquationRgb, blendEquationAlpha)
+            );
+        }
+        if (cullEnabled != state.cullEnabled() || cullMode != state.cullMode()) {
+            cullEnabled = state.cullEnabled();
+            cullMode = state.cullMode();
+            submitState("nativeSetCullState", () -> NativeApi.nativeSetCullState(cullEnabled, cullMode));
+        }
+        if (colorWriteMask != state.colorWriteMask() || logicOpEnabled != state.logicOpEnabled()
+            || logicOp != state.logicOp()) {
+            colorWriteMask = state.colorWriteMask();
+            logicOpEnabled = state.logicOpEnabled();
+            logicOp = state.logicOp();
+            submitColorOutputState();
+        }
+    }
+
+    private static void submitColorOutputState() {
+        submitState(
+            "nativeSetColorOutputState",
+            () -> NativeApi.nativeSetColorOutputState(colorWriteMask, logicOpEnabled, logicOp)
+        );
+    }
+
+    private static void submitDepthBias() {
+        submitState(
+            "nativeSetDepthBias",
+            () -> NativeApi.nativeSetDepthBias(polygonOffsetEnabled, polygonOffsetFactor, polygonOffsetUnits)
+        );
+    }
+
     public static void onDrawElements(int mode, int count, int indexType) {
-        if (!isBridgeActive() || count <= 0) {
+        if (!isBridgeActive() || !DRAW_SUBMISSION_ENABLED) {
             return;
         }
-        if (!DRAW_SUBMISSION_ENABLED) {
+        if (elideDraw(count)) {
             return;
         }
+        MetalBufferUploadBridge.flushReorderedDraws("direct_draw");
+        flushPendingClear();
         submitState("nativeDrawIndexed", () -> NativeApi.nativeDrawIndexed(mode, count, indexType));
     }
 
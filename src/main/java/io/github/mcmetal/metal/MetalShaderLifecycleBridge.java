@@ -1,6 +1,7 @@
 package io.github.mcmetal.metal;
 
 import io.github.mcmetal.metal.bridge.HostPlatform;
+import net.minecraft.client.render.VertexFormat;
 import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -8,8 +9,14 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -27,6 +34,13 @@ public final class MetalShaderLifecycleBridge {
     private static final boolean MSL_TRANSLATION_ENABLED = !Boolean.getBoolean("mcmetal.phase4.disableMslTranslation");
     private static final boolean DISK_CACHE_ENABLED = !Boolean.getBoolean("mcmetal.phase4.disableShaderDiskCache");
     private static final int SHADER_INPUT_MARK_LIMIT_BYTES = 512 * 1024;
+    private static final int STAGE_COMPILE_THREADS = Math.max(
+        1,
+        Integer.getInteger(
+            "mcmetal.phase6.shaderCompileThreads",
+            Math.min(8, Runtime.getRuntime().availableProcessors() - 1)
+        )
+    );
     private static final AtomicLong EVENT_SEQUENCE = new AtomicLong(1L);
 
     private static volatile @Nullable ShaderLifecycleEventSink eventSink;
@@ -35,31 +49,93 @@ public final class MetalShaderLifecycleBridge {
     private static volatile SpirvToMslTranslator mslTranslator = new SpirvToMslTranslator();
     private static volatile SpirvReflectionExtractor reflectionExtractor = new SpirvReflectionExtractor();
     private static volatile ShaderDiskCache shaderDiskCache = new ShaderDiskCache();
+    @Nullable
+    private static volatile Executor stageExecutor;
+    @Nullable
+    private static volatile Executor defaultStageExecutor;
     private static final Map<String, ShaderBindingMap> REFLECTION_BINDING_MAPS = new ConcurrentHashMap<>();
-    private static final Map<String, ShaderDiagnosticsRecord> SHADER_DIAGNOSTICS = new ConcurrentHashMap<>();
+    private static volatile ShaderDiagnosticsStore shaderDiagnostics = new ShaderDiagnosticsStore();
+    private static final Map<StageContent, CompletableFuture<TranslatedStage>> IN_FLIGHT_STAGES = new ConcurrentHashMap<>();
+    private static volatile ShaderIncludeGraph includeGraph = new ShaderIncludeGraph();
 
-    record ShaderDiagnosticsRecord(
-        String shaderName,
-        String shaderStage,
-        String glslInput,
-        @Nullable String translatedMsl,
-        @Nullable String lastError
+    private record StageContent(String shaderStage, String glslSource) {
+    }
+
+    private record TranslatedStage(
+        @Nullable ShaderBindingMap bindingMap,
+        @Nullable String mslSource,
+        @Nullable UniformBlockLayout uniformLayout
     ) {
     }
 
     private MetalShaderLifecycleBridge() {
     }
 
+    public static void startShaderCachePrewarm() {
+        if (!DISK_CACHE_ENABLED) {
+            return;
+        }
+        ShaderDiskCache cache = shaderDiskCache;
+        stageExecutor().execute(cache::prewarm);
+    }
+
+    /**
+     * Persists shader cache index updates in the background; called once a resource reload has loaded every program.
+     */
+    public static void scheduleShaderCacheFlush() {
+        if (DISK_CACHE_ENABLED) {
+            shaderDiskCache.scheduleFlush();
+        }
+    }
+
+    static void flushShaderCache() {
+        if (DISK_CACHE_ENABLED) {
+            shaderDiskCache.flush();
+        }
+    }
+
+    /**
+     * Writes the shader diagnostics index, plus any sources captured under
+     * {@code -Dmcmetal.phase6.captureShaderSources=true}, into {@code directory} for a bug report.
+     */
+    public static void dumpShaderDiagnostics(Path directory) throws IOException {
+        ShaderDiagnosticsStore store = shaderDiagnostics;
+        int written = store.dump(directory);
+        ShaderDiagnosticsStore.Stats stats = store.stats();
+        LOGGER.info(
+            "event=metal_phase6 phase=shader_diagnostics_dump directory=\"{}\" stages={} source_files={} captured_bytes={} evictions={}",
+            directory,
+            stats.stages(),
+            written,
+            stats.capturedBytes(),
+            stats.evictions()
+        );
+    }
+
     public static void onShaderProgramLoadStart(String shaderName) {
+        onShaderProgramLoadStart(shaderName, null);
+    }
+
+    public static void onShaderProgramLoadStart(String shaderName, @Nullable VertexFormat format) {
+        MetalShaderProgramBridge.onProgramLoadStart(shaderName, format);
         emit("shader_program_load_start", shaderName, "program");
     }
 
     public static void onShaderProgramLoadComplete(String shaderName) {
+        MetalShaderProgramBridge.linkProgram(shaderName);
         emit("shader_program_load_complete", shaderName, "program");
     }
 
+    static void onShaderProgramReady(String shaderName) {
+        emit("shader_program_ready", shaderName, "program");
+    }
+
     public static void onShaderProgramClose(String shaderName) {
-        MetalShaderProgramBridge.onProgramClosed(shaderName);
+        onShaderProgramClose(shaderName, MetalShaderProgramBridge.UNKNOWN_PROGRAM_ID);
+    }
+
+    public static void onShaderProgramClose(String shaderName, int programId) {
+        MetalShaderProgramBridge.onProgramClosed(shaderName, programId);
         emit("shader_program_close", shaderName, "program");
     }
 
@@ -67,116 +143,239 @@ public final class MetalShaderLifecycleBridge {
         emit("shader_stage_compile_start", shaderName, shaderStage);
     }
 
+    /**
+     * Submits a stage whose source has no {@code #moj_import}s to resolve; the stream is left unconsumed.
+     */
     public static void onShaderStageCompileSource(String shaderName, String shaderStage, InputStream shaderSourceStream) {
         if (!isBridgeActive() || !SPIRV_COMPILATION_ENABLED) {
             return;
         }
 
-        GlslToSpirvCompiler.ShaderStage stage = GlslToSpirvCompiler.ShaderStage.fromName(shaderStage);
-        if (stage == null) {
-            emit("shader_stage_spirv_compile_skipped", shaderName, shaderStage);
-            return;
-        }
-
         if (!shaderSourceStream.markSupported()) {
             emit("shader_stage_spirv_compile_skipped", shaderName, shaderStage);
             return;
         }
 
+        String glslSource;
         try {
             shaderSourceStream.mark(SHADER_INPUT_MARK_LIMIT_BYTES);
-            String glslSource = new String(shaderSourceStream.readAllBytes(), StandardCharsets.UTF_8);
+            glslSource = new String(shaderSourceStream.readAllBytes(), StandardCharsets.UTF_8);
             shaderSourceStream.reset();
-            SHADER_DIAGNOSTICS.put(
-                shaderName + ":" + shaderStage,
-                new ShaderDiagnosticsRecord(shaderName, shaderStage, glslSource, null, null)
-            );
-            emit("shader_stage_diagnostics_glsl_captured", shaderName, shaderStage);
-
-            ShaderDiskCache.CachedShaderArtifacts cachedArtifacts = DISK_CACHE_ENABLED
-                ? shaderDiskCache.load(shaderName, shaderStage, glslSource)
-                : null;
-
-            byte[] spirvBinary;
-            ShaderBindingMap bindingMap = null;
-            String mslSource = null;
-            if (cachedArtifacts != null) {
-                spirvBinary = cachedArtifacts.spirvBinary();
-                bindingMap = cachedArtifacts.bindingMap();
-                mslSource = cachedArtifacts.mslSource();
-                emit("shader_stage_disk_cache_hit", shaderName, shaderStage);
-            } else {
-                spirvBinary = spirvCompiler.compile(shaderName, stage, glslSource);
-                emit("shader_stage_spirv_compile_complete", shaderName, shaderStage);
-
-                if (SPIRV_REFLECTION_ENABLED) {
-                    bindingMap = reflectionExtractor.extract(shaderName, spirvBinary);
-                    emit("shader_stage_reflection_complete", shaderName, shaderStage);
-                }
+        } catch (IOException exception) {
+            recordStageFailure(shaderName, shaderStage, "spirv_compile", exception.getMessage(), "shader_stage_spirv_compile_failed");
+            return;
+        }
+        onShaderStageSourceResolved(shaderName, shaderStage, glslSource, Map.of());
+    }
 
-                if (MSL_TRANSLATION_ENABLED) {
-                    mslSource = mslTranslator.translate(shaderName, spirvBinary);
-                    emit("shader_stage_msl_translate_complete", shaderName, shaderStage);
-                }
+    /**
+     * Submits a stage once {@code GlImportProcessor} has flattened it; {@code includes} maps each import it resolved,
+     * transitively, to the content that was spliced in.
+     */
+    public static void onShaderStageSourceResolved(
+        String shaderName,
+        String shaderStage,
+        String glslSource,
+        Map<String, String> includes
+    ) {
+        if (!isBridgeActive() || !SPIRV_COMPILATION_ENABLED) {
+            return;
+        }
 
-                if (DISK_CACHE_ENABLED && bindingMap != null && mslSource != null) {
-                    shaderDiskCache.store(shaderName, shaderStage, glslSource, spirvBinary, mslSource, bindingMap);
+        GlslToSpirvCompiler.ShaderStage stage = GlslToSpirvCompiler.ShaderStage.fromName(shaderStage);
+        if (stage == null) {
+            emit("shader_stage_spirv_compile_skipped", shaderName, shaderStage);
+            return;
+        }
+
+        String stageKey = shaderName + ":" + shaderStage;
+        ShaderIncludeGraph.Decision decision = includeGraph.resolve(stageKey, glslSource, includes);
+        if (decision.reusable() != null) {
+            // Neither the stage nor anything it imports changed since the last load: keep its artifacts as they are.
+            emit("shader_stage_reload_reused", shaderName, shaderStage);
+            MetalShaderProgramBridge.onStageSubmitted(shaderName, decision.reusable());
+            return;
+        }
+        if (decision.reason() != ShaderIncludeGraph.Reason.NEW_STAGE) {
+            LOGGER.info(
+                "event=metal_phase6 phase=shader_reload_rebuild shader_name={} shader_stage={} reason={} changed_includes={}",
+                shaderName,
+                shaderStage,
+                decision.reason().logName(),
+                decision.changedIncludes()
+            );
+            if (DEBUG_SHADER_LOGS) {
+                for (String include : decision.changedIncludes()) {
+                    LOGGER.debug(
+                        "event=metal_phase6 phase=shader_include_changed include={} dependents={}",
+                        include,
+                        includeGraph.dependents(include)
+                    );
                 }
             }
+        }
 
-            if (bindingMap != null) {
-                REFLECTION_BINDING_MAPS.put(shaderName, bindingMap);
-                MetalShaderProgramBridge.onReflectionBindingMap(shaderName, bindingMap);
-            }
+        shaderDiagnostics.recordSource(shaderName, shaderStage, glslSource);
+        emit("shader_stage_diagnostics_glsl_captured", shaderName, shaderStage);
+
+        // The reload thread only reads the source; compile, reflect, translate and cache I/O run on the stage pool
+        // and MetalShaderProgramBridge joins the result when the program links.
+        CompletableFuture<MetalShaderProgramBridge.StageArtifacts> artifacts = translateShared(
+            shaderName,
+            shaderStage,
+            stage,
+            glslSource
+        ).handle((translated, failure) -> completeStage(shaderName, shaderStage, glslSource, translated, failure));
+        includeGraph.attach(stageKey, artifacts);
+        MetalShaderProgramBridge.onStageSubmitted(shaderName, artifacts);
+    }
 
-            if (mslSource != null) {
-                SHADER_DIAGNOSTICS.put(
-                    shaderName + ":" + shaderStage,
-                    new ShaderDiagnosticsRecord(shaderName, shaderStage, glslSource, mslSource, null)
-                );
-                emit("shader_stage_diagnostics_msl_captured", shaderName, shaderStage);
-                MetalShaderProgramBridge.onTranslatedStage(shaderName, shaderStage, mslSource);
+    private static CompletableFuture<TranslatedStage> translateShared(
+        String shaderName,
+        String shaderStage,
+        GlslToSpirvCompiler.ShaderStage stage,
+        String glslSource
+    ) {
+        // Programs that load byte-identical stage source while it is still in flight share the one translation.
+        StageContent content = new StageContent(shaderStage, glslSource);
+        CompletableFuture<TranslatedStage> created = new CompletableFuture<>();
+        CompletableFuture<TranslatedStage> shared = IN_FLIGHT_STAGES.putIfAbsent(content, created);
+        if (shared != null) {
+            emit("shader_stage_dedup_hit", shaderName, shaderStage);
+            return shared;
+        }
+
+        stageExecutor().execute(() -> {
+            try {
+                created.complete(translateStage(shaderName, shaderStage, stage, glslSource));
+            } catch (RuntimeException exception) {
+                created.completeExceptionally(exception);
+            } finally {
+                IN_FLIGHT_STAGES.remove(content, created);
             }
-        } catch (IOException | GlslToSpirvCompiler.CompilationException exception) {
-            LOGGER.warn(
-                "event=metal_phase4 phase=spirv_compile status=failed shader_name={} shader_stage={} message={}",
-                shaderName,
-                shaderStage,
-                exception.getMessage()
-            );
-            SHADER_DIAGNOSTICS.put(
-                shaderName + ":" + shaderStage,
-                new ShaderDiagnosticsRecord(shaderName, shaderStage, "", null, exception.getMessage())
+        });
+        return created;
+    }
+
+    private static TranslatedStage translateStage(
+        String shaderName,
+        String shaderStage,
+        GlslToSpirvCompiler.ShaderStage stage,
+        String glslSource
+    ) {
+        ShaderDiskCache.CachedShaderArtifacts cachedArtifacts = DISK_CACHE_ENABLED
+            ? shaderDiskCache.load(shaderName, shaderStage, glslSource)
+            : null;
+        if (cachedArtifacts != null) {
+            emit("shader_stage_disk_cache_hit", shaderName, shaderStage);
+            return new TranslatedStage(
+                cachedArtifacts.bindingMap(),
+                cachedArtifacts.mslSource(),
+                uniformLayout(shaderName, cachedArtifacts.spirvBinary())
             );
-            emit("shader_stage_diagnostics_compile_failed", shaderName, shaderStage);
-            emit("shader_stage_spirv_compile_failed", shaderName, shaderStage);
+        }
+
+        byte[] spirvBinary = spirvCompiler.compile(shaderName, stage, glslSource);
+        emit("shader_stage_spirv_compile_complete", shaderName, shaderStage);
+
+        ShaderBindingMap bindingMap = null;
+        String mslSource = null;
+        if (SPIRV_REFLECTION_ENABLED && MSL_TRANSLATION_ENABLED && reflectionExtractor.reflectsWithSpirvCross()) {
+            SpirvToMslTranslator.TranslatedShader translated = mslTranslator.translateWithReflection(shaderName, spirvBinary);
+            bindingMap = translated.bindingMap();
+            mslSource = translated.mslSource();
+            emit("shader_stage_reflection_complete", shaderName, shaderStage);
+            emit("shader_stage_msl_translate_complete", shaderName, shaderStage);
+        } else {
+            if (SPIRV_REFLECTION_ENABLED) {
+                bindingMap = reflectionExtractor.extract(shaderName, spirvBinary);
+                emit("shader_stage_reflection_complete", shaderName, shaderStage);
+            }
+            if (MSL_TRANSLATION_ENABLED) {
+                mslSource = mslTranslator.translate(shaderName, spirvBinary);
+                emit("shader_stage_msl_translate_complete", shaderName, shaderStage);
+            }
+        }
+
+        if (DISK_CACHE_ENABLED && bindingMap != null && mslSource != null) {
+            shaderDiskCache.store(shaderName, shaderStage, glslSource, spirvBinary, mslSource, bindingMap);
+        }
+        return new TranslatedStage(bindingMap, mslSource, uniformLayout(shaderName, spirvBinary));
+    }
+
+    @Nullable
+    private static UniformBlockLayout uniformLayout(String shaderName, byte[] spirvBinary) {
+        if (!SPIRV_REFLECTION_ENABLED) {
+            return null;
+        }
+        // Staging offsets always come from the SPIR-V itself, whichever backend produced the binding map. Without
+        // a layout the program keeps the per-uniform native path.
+        try {
+            return SpirvBinaryReflector.reflectUniformLayout(shaderName, spirvBinary);
         } catch (SpirvReflectionExtractor.ReflectionException exception) {
             LOGGER.warn(
-                "event=metal_phase4 phase=spirv_reflect status=failed shader_name={} shader_stage={} message={}",
+                "event=metal_phase6 phase=uniform_layout_reflect status=failed shader_name={} message={}",
                 shaderName,
-                shaderStage,
-                exception.getMessage()
-            );
-            SHADER_DIAGNOSTICS.put(
-                shaderName + ":" + shaderStage,
-                new ShaderDiagnosticsRecord(shaderName, shaderStage, "", null, exception.getMessage())
-            );
-            emit("shader_stage_diagnostics_compile_failed", shaderName, shaderStage);
-            emit("shader_stage_reflection_failed", shaderName, shaderStage);
-        } catch (SpirvToMslTranslator.TranslationException exception) {
-            LOGGER.warn(
-                "event=metal_phase4 phase=msl_translate status=failed shader_name={} shader_stage={} message={}",
-                shaderName,
-                shaderStage,
                 exception.getMessage()
             );
-            SHADER_DIAGNOSTICS.put(
-                shaderName + ":" + shaderStage,
-                new ShaderDiagnosticsRecord(shaderName, shaderStage, "", null, exception.getMessage())
-            );
-            emit("shader_stage_diagnostics_compile_failed", shaderName, shaderStage);
-            emit("shader_stage_msl_translate_failed", shaderName, shaderStage);
+            return null;
+        }
+    }
+
+    @Nullable
+    private static MetalShaderProgramBridge.StageArtifacts completeStage(
+        String shaderName,
+        String shaderStage,
+        String glslSource,
+        @Nullable TranslatedStage translated,
+        @Nullable Throwable failure
+    ) {
+        Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+        if (cause instanceof GlslToSpirvCompiler.CompilationException) {
+            recordStageFailure(shaderName, shaderStage, "spirv_compile", cause.getMessage(), "shader_stage_spirv_compile_failed");
+            return null;
+        } else if (cause instanceof SpirvReflectionExtractor.ReflectionException) {
+            recordStageFailure(shaderName, shaderStage, "spirv_reflect", cause.getMessage(), "shader_stage_reflection_failed");
+            return null;
+        } else if (cause instanceof SpirvToMslTranslator.TranslationException) {
+            recordStageFailure(shaderName, shaderStage, "msl_translate", cause.getMessage(), "shader_stage_msl_translate_failed");
+            return null;
+        } else if (cause != null) {
+            throw cause instanceof RuntimeException runtimeException ? runtimeException : new CompletionException(cause);
         }
+
+        if (translated.bindingMap() != null) {
+            REFLECTION_BINDING_MAPS.put(shaderName, translated.bindingMap());
+        }
+        if (translated.mslSource() != null) {
+            shaderDiagnostics.recordTranslation(shaderName, shaderStage, glslSource, translated.mslSource());
+            emit("shader_stage_diagnostics_msl_captured", shaderName, shaderStage);
+        }
+        return new MetalShaderProgramBridge.StageArtifacts(
+            shaderStage,
+            translated.bindingMap(),
+            translated.mslSource(),
+            translated.uniformLayout()
+        );
+    }
+
+    private static void recordStageFailure(
+        String shaderName,
+        String shaderStage,
+        String phase,
+        @Nullable String message,
+        String failureEvent
+    ) {
+        LOGGER.warn(
+            "event=metal_phase4 phase={} status=failed shader_name={} shader_stage={} message={}",
+            phase,
+            shaderName,
+            shaderStage,
+            message
+        );
+        shaderDiagnostics.recordFailure(shaderName, shaderStage, message);
+        emit("shader_stage_diagnostics_compile_failed", shaderName, shaderStage);
+        emit(failureEvent, shaderName, shaderStage);
     }
 
     public static void onShaderStageCompileComplete(String shaderName, String shaderStage) {
@@ -206,8 +405,11 @@ public final class MetalShaderLifecycleBridge {
         mslTranslator = new SpirvToMslTranslator();
         reflectionExtractor = new SpirvReflectionExtractor();
         shaderDiskCache = new ShaderDiskCache();
+        stageExecutor = null;
         REFLECTION_BINDING_MAPS.clear();
-        SHADER_DIAGNOSTICS.clear();
+        shaderDiagnostics = new ShaderDiagnosticsStore();
+        IN_FLIGHT_STAGES.clear();
+        includeGraph = new ShaderIncludeGraph();
         MetalShaderProgramBridge.resetForTests();
         EVENT_SEQUENCE.set(1L);
     }
@@ -228,12 +430,28 @@ public final class MetalShaderLifecycleBridge {
         shaderDiskCache = cache;
     }
 
+    static void setStageExecutorForTests(Executor executor) {
+        stageExecutor = executor;
+    }
+
+    static ShaderIncludeGraph.Stats includeGraphStats() {
+        return includeGraph.stats();
+    }
+
     static @Nullable ShaderBindingMap getReflectionBindingMapForTests(String shaderName) {
         return REFLECTION_BINDING_MAPS.get(shaderName);
     }
 
-    static @Nullable ShaderDiagnosticsRecord getShaderDiagnosticsForTests(String shaderName, String shaderStage) {
-        return SHADER_DIAGNOSTICS.get(shaderName + ":" + shaderStage);
+    static void setShaderDiagnosticsStoreForTests(ShaderDiagnosticsStore store) {
+        shaderDiagnostics = store;
+    }
+
+    static @Nullable ShaderDiagnosticsStore.Summary getShaderDiagnosticsForTests(String shaderName, String shaderStage) {
+        return shaderDiagnostics.summary(shaderName, shaderStage);
+    }
+
+    static @Nullable ShaderDiagnosticsStore.Sources getShaderSourcesForTests(String shaderName, String shaderStage) {
+        return shaderDiagnostics.sources(shaderName, shaderStage);
     }
 
     private static void emit(String event, String shaderName, String shaderStage) {
@@ -258,6 +476,24 @@ public final class MetalShaderLifecycleBridge {
         }
     }
 
+    private static Executor stageExecutor() {
+        Executor executor = stageExecutor;
+        if (executor != null) {
+            return executor;
+        }
+        synchronized (MetalShaderLifecycleBridge.class) {
+            if (defaultStageExecutor == null) {
+                AtomicInteger threadIndex = new AtomicInteger();
+                defaultStageExecutor = Executors.newFixedThreadPool(STAGE_COMPILE_THREADS, runnable -> {
+                    Thread thread = new Thread(runnable, "MCMetal Shader Compile " + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            return defaultStageExecutor;
+        }
+    }
+
     private static boolean isBridgeActive() {
         Boolean override = bridgeActiveOverrideForTests;
         if (override != null) {
@@ -3,11 +3,30 @@ package io.github.mcmetal.metal;
 import io.github.mcmetal.metal.bridge.NativeApi;
 import io.github.mcmetal.metal.bridge.NativeBridgeException;
 import io.github.mcmetal.metal.bridge.NativeStatus;
+import net.minecraft.client.render.VertexFormat;
 import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Phase 4 shader program bridge for native program creation and pipeline compilation.
@@ -18,10 +37,16 @@ public final class MetalShaderProgramBridge {
 
         int compileShaderPipeline(long programHandle, long vertexDescriptorHandle);
 
+        int precompilePipelineState(long programHandle, long vertexDescriptorHandle, ByteBuffer packedState, int packedByteLength);
+
         long registerUniform(long programHandle, String uniformName, int set, int binding);
 
         int updateUniformFloat4(long uniformHandle, float x, float y, float z, float w);
 
+        int configureUniformBlock(long programHandle, int blockByteLength, ByteBuffer packedRegions, int packedByteLength);
+
+        int updateUniformBlock(long programHandle, ByteBuffer data, int dataLength);
+
         int destroyShaderProgram(long programHandle);
     }
 
@@ -37,22 +62,261 @@ public final class MetalShaderProgramBridge {
         }
     }
 
+    /**
+     * What a draw does while its program is still being built on a worker thread.
+     */
+    enum PendingProgramPolicy {
+        SKIP,
+        FALLBACK,
+        WAIT;
+
+        static PendingProgramPolicy fromProperty(String value) {
+            try {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException exception) {
+                return SKIP;
+            }
+        }
+    }
+
+    /**
+     * Per-uniform native state of a pooled program; {@code shadowBits} mirrors the float4 last written, and
+     * {@code unsent} marks a write made before the program was ready to register the uniform.
+     */
+    private static final class NativeUniform {
+        private final PendingUniform binding;
+        private long handle;
+        private final int[] shadowBits = new int[4];
+        private boolean unsent;
+
+        private NativeUniform(PendingUniform binding) {
+            this.binding = binding;
+        }
+    }
+
+    /**
+     * A (program, uniform) pair resolved at link; {@code member} is set when the uniform lives in the staging block,
+     * otherwise writes go through {@code nativeUniform}.
+     */
+    private record UniformSlot(
+        String shaderName,
+        String uniformName,
+        @Nullable UniformStagingBlock block,
+        @Nullable UniformStagingBlock.Slot member,
+        @Nullable NativeUniform nativeUniform
+    ) {
+    }
+
+    record UniformWriteStats(long forwarded, long suppressed) {
+    }
+
+    record ProgramPoolStats(long created, long reused, long parked, long destroyed) {
+    }
+
+    record ProgramReadinessStats(
+        int pending,
+        long ready,
+        long failed,
+        long skippedDraws,
+        long fallbackDraws,
+        long buildNanos,
+        long stallNanos,
+        long precompiledPipelines
+    ) {
+    }
+
+    record BoundProgram(String name, long nativeHandle, String contentHash, @Nullable UniformStagingBlock uniformBlock) {
+        BoundProgram(String name, long nativeHandle, String contentHash) {
+            this(name, nativeHandle, contentHash, null);
+        }
+    }
+
+    record StageArtifacts(
+        String shaderStage,
+        @Nullable ShaderBindingMap bindingMap,
+        @Nullable String mslSource,
+        @Nullable UniformBlockLayout uniformLayout
+    ) {
+    }
+
+    private record PoolKey(String shaderName, String contentHash) {
+    }
+
+    /**
+     * A native program shared by every record linked from identical sources; parked instead of destroyed when its
+     * last owner closes during a reload. {@code handle} is set on the render thread once {@code creation} completes.
+     */
+    private static final class NativeProgram {
+        private final PoolKey key;
+        private final CompletableFuture<Long> creation;
+        private long handle;
+        private boolean failed;
+        private final Map<String, NativeUniform> uniforms = new HashMap<>();
+        private int owners;
+        private boolean parked;
+
+        private NativeProgram(PoolKey key, CompletableFuture<Long> creation) {
+            this.key = key;
+            this.creation = creation;
+        }
+    }
+
     private static final class ProgramRecord {
+        private final int id = ++nextProgramId;
         @Nullable
         private String vertexMslSource;
         @Nullable
         private String fragmentMslSource;
+        @Nullable
+        private UniformBlockLayout vertexUniformLayout;
+        @Nullable
+        private UniformBlockLayout fragmentUniformLayout;
+        @Nullable
+        private UniformStagingBlock uniformBlock;
+        @Nullable
+        private NativeProgram nativeProgram;
+        @Nullable
+        private String contentHash;
         private long nativeProgramHandle;
-        private final Map<String, Long> uniformHandlesByName = new HashMap<>();
+        @Nullable
+        private BoundProgram boundView;
         private final Map<String, PendingUniform> pendingUniformsByName = new HashMap<>();
+        private final List<Integer> uniformSlotIds = new ArrayList<>();
+        // Uniforms of a ShaderProgram constructed before its stages were applied; resolved once they are.
+        private final List<UniformSlotHolder> unresolvedSlotHolders = new ArrayList<>();
     }
 
+    public static final int UNRESOLVED_UNIFORM_SLOT = -1;
+    public static final int UNKNOWN_PROGRAM_ID = 0;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MetalShaderProgramBridge.class);
+    private static final PendingProgramPolicy PENDING_PROGRAM_POLICY =
+        PendingProgramPolicy.fromProperty(System.getProperty("mcmetal.phase6.pendingProgramPolicy", "skip"));
+    private static final boolean PRECOMPILE_BLEND_STATES =
+        !Boolean.getBoolean("mcmetal.phase6.disableBlendStatePrecompile");
+    // Blend setups vanilla render layers use with cull on and full color writes: opaque, translucent, the default
+    // blend func, additive, and lightning. A translucent variant of an opaque program is cheaper to build unused
+    // than to stall on mid-frame.
+    private static final List<PipelineStateKey> LOAD_TIME_PIPELINE_STATES = List.of(
+        loadTimeState(false, 1, 0, 1, 0),
+        loadTimeState(true, 0x0302, 0x0303, 1, 0x0303),
+        loadTimeState(true, 0x0302, 0x0303, 1, 0),
+        loadTimeState(true, 1, 1, 1, 1),
+        loadTimeState(true, 0x0302, 1, 0x0302, 1)
+    );
+    private static final int PROGRAM_BUILD_THREADS = Math.max(
+        1,
+        Integer.getInteger("mcmetal.phase6.programBuildThreads", Math.min(4, Runtime.getRuntime().availableProcessors() / 2))
+    );
+
     private static final Map<String, ProgramRecord> PROGRAMS = new ConcurrentHashMap<>();
+    private static final Map<String, List<CompletableFuture<StageArtifacts>>> PENDING_STAGES = new ConcurrentHashMap<>();
+    // Vertex format each loading program was constructed with, consumed when its native program is acquired.
+    private static final Map<String, VertexFormat> PENDING_VERTEX_FORMATS = new ConcurrentHashMap<>();
     private static volatile NativeShaderBackend nativeShaderBackend = new JniNativeShaderBackend();
+    @Nullable
+    private static volatile BoundProgram boundProgram;
+    // Render-thread only. Slot ids are handed to GlUniform at link so per-draw updates index an array instead of
+    // hashing program and uniform names.
+    private static UniformSlot[] uniformSlots = new UniformSlot[256];
+    private static int uniformSlotHighWater;
+    private static final ArrayDeque<Integer> FREE_UNIFORM_SLOTS = new ArrayDeque<>();
+    private static long nameLookups;
+    private static long uniformWritesForwarded;
+    private static long uniformWritesSuppressed;
+    // Render-thread only. A reload links the next generation while the previous one is still open, so records that
+    // gain new stages after linking are kept here by id until their ShaderProgram closes.
+    private static int nextProgramId;
+    private static final Map<Integer, ProgramRecord> SUPERSEDED_PROGRAMS = new HashMap<>();
+    private static final Map<PoolKey, NativeProgram> NATIVE_PROGRAMS = new HashMap<>();
+    private static boolean reloadInProgress;
+    private static long reloadGeneration;
+    private static long programsCreated;
+    private static long programsReused;
+    private static long programsParked;
+    private static long programsDestroyed;
+    // Render-thread only. Records linked but not yet ready, and pooled programs released while still building.
+    private static final List<ProgramRecord> PENDING_RECORDS = new ArrayList<>();
+    private static final List<NativeProgram> ORPHANED_PROGRAMS = new ArrayList<>();
+    @Nullable
+    private static ProgramRecord pendingBoundRecord;
+    private static long programsReady;
+    private static long programsFailed;
+    private static long skippedDraws;
+    private static long fallbackDraws;
+    private static long stallNanos;
+    private static final AtomicLong BUILD_NANOS = new AtomicLong();
+    private static final AtomicLong PRECOMPILED_PIPELINES = new AtomicLong();
+    @Nullable
+    private static volatile Executor programExecutor;
+    @Nullable
+    private static volatile Executor defaultProgramExecutor;
 
     private MetalShaderProgramBridge() {
     }
 
+    /**
+     * Remembers the vertex format a program is being constructed with so its pipeline is compiled for that layout.
+     */
+    public static void onProgramLoadStart(String shaderName, @Nullable VertexFormat format) {
+        if (format == null) {
+            PENDING_VERTEX_FORMATS.remove(shaderName);
+        } else {
+            PENDING_VERTEX_FORMATS.put(shaderName, format);
+        }
+    }
+
+    static void onStageSubmitted(String shaderName, CompletableFuture<StageArtifacts> artifacts) {
+        if (artifacts.isDone() && !PENDING_STAGES.containsKey(shaderName)) {
+            applyStage(shaderName, artifacts.join());
+            return;
+        }
+        PENDING_STAGES.computeIfAbsent(shaderName, ignored -> new ArrayList<>()).add(artifacts);
+    }
+
+    /**
+     * Called when a ShaderProgram finishes constructing. Stages still compiling are left in flight and joined at
+     * first bind or when the reload completes, so every program's stages compile concurrently.
+     */
+    public static void linkProgram(String shaderName) {
+        List<CompletableFuture<StageArtifacts>> pending = PENDING_STAGES.get(shaderName);
+        if (pending == null || pending.stream().allMatch(CompletableFuture::isDone)) {
+            applyPendingStages(shaderName);
+        } else {
+            generationRecord(shaderName);
+        }
+
+        // Stages loaded under a name other than their program's are applied as soon as they are done.
+        Iterator<Map.Entry<String, List<CompletableFuture<StageArtifacts>>>> iterator = PENDING_STAGES.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, List<CompletableFuture<StageArtifacts>>> entry = iterator.next();
+            if (entry.getValue().stream().allMatch(CompletableFuture::isDone)) {
+                iterator.remove();
+                for (CompletableFuture<StageArtifacts> artifacts : entry.getValue()) {
+                    applyStage(entry.getKey(), artifacts.join());
+                }
+            }
+        }
+    }
+
+    /**
+     * Gives each uniform of a constructed ShaderProgram its slot, now if the program's stages are applied or
+     * otherwise when they are.
+     */
+    public static void attachUniformSlots(String shaderName, List<? extends UniformSlotHolder> uniforms) {
+        ProgramRecord record = PROGRAMS.get(shaderName);
+        if (record == null) {
+            return;
+        }
+        if (record.nativeProgram == null) {
+            record.unresolvedSlotHolders.addAll(uniforms);
+            return;
+        }
+        for (UniformSlotHolder uniform : uniforms) {
+            uniform.mcmetal$setUniformSlot(resolveUniformSlot(shaderName, uniform.mcmetal$uniformName()));
+        }
+    }
+
     public static void onTranslatedStage(String shaderName, String shaderStage, String mslSource) {
         ProgramRecord record = PROGRAMS.computeIfAbsent(shaderName, ignored -> new ProgramRecord());
         if ("VERTEX".equals(shaderStage)) {
@@ -63,29 +327,24 @@ public final class MetalShaderProgramBridge {
             return;
         }
 
-        if (record.vertexMslSource == null || record.fragmentMslSource == null || record.nativeProgramHandle != 0L) {
+        if (record.vertexMslSource == null || record.fragmentMslSource == null || record.nativeProgram != null) {
             return;
         }
 
-        long programHandle = nativeShaderBackend.createShaderProgram(
-            shaderName,
-            record.vertexMslSource,
-            record.fragmentMslSource
+        // The staging block only needs the reflected layout, so uniform slots resolve at link while the native
+        // program is still building.
+        record.contentHash = ShaderDiskCache.sha256(record.vertexMslSource + "\n" + record.fragmentMslSource);
+        record.uniformBlock = UniformStagingBlock.create(
+            UniformBlockLayout.merge(record.vertexUniformLayout, record.fragmentUniformLayout)
         );
-        if (programHandle <= 0L) {
-            throw new NativeBridgeException("Native shader program creation failed for '" + shaderName + "'.");
+        record.nativeProgram = acquireNativeProgram(shaderName, record.contentHash, record);
+        PENDING_RECORDS.add(record);
+        finishProgram(record);
+        if (!record.unresolvedSlotHolders.isEmpty()) {
+            List<UniformSlotHolder> holders = List.copyOf(record.unresolvedSlotHolders);
+            record.unresolvedSlotHolders.clear();
+            attachUniformSlots(shaderName, holders);
         }
-
-        int compileStatus = nativeShaderBackend.compileShaderPipeline(programHandle, 0L);
-        if (!NativeStatus.isSuccess(compileStatus)) {
-            throw new NativeBridgeException(
-                "Native shader pipeline compilation failed for '" + shaderName + "' with status "
-                    + NativeStatus.describe(compileStatus) + " (" + compileStatus + ")."
-            );
-        }
-
-        record.nativeProgramHandle = programHandle;
-        registerPendingUniforms(shaderName, record);
     }
 
     public static void onReflectionBindingMap(String shaderName, ShaderBindingMap bindingMap) {
@@ -102,53 +361,376 @@ public final class MetalShaderProgramBridge {
         }
     }
 
+    /**
+     * Name-keyed update for callers without a resolved slot; prefer {@link #resolveUniformSlot} on hot paths.
+     */
     public static void setUniformFloat4(String shaderName, String uniformName, float x, float y, float z, float w) {
-        ProgramRecord record = PROGRAMS.get(shaderName);
+        ProgramRecord record = programByName(shaderName);
         if (record == null) {
             return;
         }
 
-        Long uniformHandle = record.uniformHandlesByName.get(uniformName);
-        if (uniformHandle == null || uniformHandle == 0L) {
-            PendingUniform pendingUniform = record.pendingUniformsByName.get(uniformName);
-            if (pendingUniform != null && record.nativeProgramHandle != 0L) {
-                uniformHandle = registerUniform(shaderName, record, pendingUniform);
-            } else {
+        UniformStagingBlock block = record.uniformBlock;
+        UniformStagingBlock.Slot slot = block == null ? null : block.slot(uniformName);
+        if (slot != null) {
+            if (block.matchesFloat4(slot, x, y, z, w)) {
+                recordUniformWrite(false);
                 return;
             }
+            MetalBufferUploadBridge.flushReorderedDraws("uniform_update");
+            block.writeFloat4(slot, x, y, z, w);
+            recordUniformWrite(true);
+            return;
+        }
+
+        NativeUniform nativeUniform = nativeUniform(shaderName, record, uniformName);
+        if (nativeUniform != null) {
+            updateNativeUniform(shaderName, uniformName, nativeUniform, x, y, z, w);
+        }
+    }
+
+    /**
+     * Resolves a uniform of a linked program to a dense slot id, or {@link #UNRESOLVED_UNIFORM_SLOT} if it has no
+     * staging member or native uniform to write to.
+     */
+    public static int resolveUniformSlot(String shaderName, String uniformName) {
+        ProgramRecord record = programByName(shaderName);
+        if (record == null || record.nativeProgram == null) {
+            return UNRESOLVED_UNIFORM_SLOT;
+        }
+
+        UniformStagingBlock block = record.uniformBlock;
+        UniformStagingBlock.Slot member = block == null ? null : block.slot(uniformName);
+        NativeUniform nativeUniform = null;
+        if (member == null) {
+            nativeUniform = nativeUniform(shaderName, record, uniformName);
+            if (nativeUniform == null) {
+                return UNRESOLVED_UNIFORM_SLOT;
+            }
+        }
+
+        Integer freeId = FREE_UNIFORM_SLOTS.poll();
+        int slotId = freeId != null ? freeId : uniformSlotHighWater++;
+        if (slotId >= uniformSlots.length) {
+            uniformSlots = Arrays.copyOf(uniformSlots, uniformSlots.length * 2);
         }
+        uniformSlots[slotId] = new UniformSlot(shaderName, uniformName, block, member, nativeUniform);
+        record.uniformSlotIds.add(slotId);
+        return slotId;
+    }
 
-        int status = nativeShaderBackend.updateUniformFloat4(uniformHandle, x, y, z, w);
+    /**
+     * Stages a float, vector or column-major matrix uniform; it reaches the GPU with the next draw of the program.
+     */
+    public static void setUniformFloats(int uniformSlot, FloatBuffer values, int count) {
+        UniformSlot slot = uniformSlot(uniformSlot);
+        if (slot == null) {
+            return;
+        }
+        if (slot.member() != null) {
+            if (slot.block().matchesFloats(slot.member(), values, count)) {
+                recordUniformWrite(false);
+                return;
+            }
+            MetalBufferUploadBridge.flushReorderedDraws("uniform_update");
+            slot.block().writeFloats(slot.member(), values, count);
+            recordUniformWrite(true);
+            return;
+        }
+        updateNativeUniform(
+            slot.shaderName(),
+            slot.uniformName(),
+            slot.nativeUniform(),
+            values.get(0),
+            count > 1 ? values.get(1) : 0.0F,
+            count > 2 ? values.get(2) : 0.0F,
+            count > 3 ? values.get(3) : 0.0F
+        );
+    }
+
+    public static void setUniformInts(int uniformSlot, IntBuffer values, int count) {
+        UniformSlot slot = uniformSlot(uniformSlot);
+        if (slot == null || slot.member() == null) {
+            return;
+        }
+        if (slot.block().matchesInts(slot.member(), values, count)) {
+            recordUniformWrite(false);
+            return;
+        }
+        MetalBufferUploadBridge.flushReorderedDraws("uniform_update");
+        slot.block().writeInts(slot.member(), values, count);
+        recordUniformWrite(true);
+    }
+
+    public static void setUniformFloat4(int uniformSlot, float x, float y, float z, float w) {
+        UniformSlot slot = uniformSlot(uniformSlot);
+        if (slot == null) {
+            return;
+        }
+        if (slot.member() != null) {
+            if (slot.block().matchesFloat4(slot.member(), x, y, z, w)) {
+                recordUniformWrite(false);
+                return;
+            }
+            MetalBufferUploadBridge.flushReorderedDraws("uniform_update");
+            slot.block().writeFloat4(slot.member(), x, y, z, w);
+            recordUniformWrite(true);
+            return;
+        }
+        updateNativeUniform(slot.shaderName(), slot.uniformName(), slot.nativeUniform(), x, y, z, w);
+    }
+
+    static void flushUniformBlock(BoundProgram program) {
+        UniformStagingBlock block = program.uniformBlock();
+        if (block == null || !block.isDirty()) {
+            return;
+        }
+
+        int status = nativeShaderBackend.updateUniformBlock(program.nativeHandle(), block.data(), block.byteLength());
         if (!NativeStatus.isSuccess(status)) {
             throw new NativeBridgeException(
-                "Native uniform update failed for '" + shaderName + ":" + uniformName + "' with status "
+                "Native uniform block update failed for '" + program.name() + "' with status "
                     + NativeStatus.describe(status) + " (" + status + ")."
             );
         }
+        block.markClean();
+    }
+
+    public static void onProgramBound(String shaderName) {
+        if (PENDING_STAGES.containsKey(shaderName)) {
+            applyPendingStages(shaderName);
+        }
+        pollPendingPrograms();
+        ProgramRecord record = programByName(shaderName);
+        boolean pending = record != null && record.nativeProgram != null && record.nativeProgramHandle == 0L;
+        pendingBoundRecord = pending ? record : null;
+        boundProgram = record == null ? null : record.boundView;
+    }
+
+    public static void onProgramUnbound() {
+        boundProgram = null;
+        pendingBoundRecord = null;
+    }
+
+    /**
+     * Called before each draw; returns false when the draw must be skipped because its program is still building.
+     * Under {@link PendingProgramPolicy#FALLBACK} the draw proceeds with no program bound, which selects the native
+     * built-in pipeline.
+     */
+    static boolean prepareDrawProgram() {
+        ProgramRecord pending = pendingBoundRecord;
+        if (pending == null) {
+            return true;
+        }
+        if (!finishProgram(pending) && PENDING_PROGRAM_POLICY == PendingProgramPolicy.WAIT) {
+            long waitStart = System.nanoTime();
+            pending.nativeProgram.creation.handle((handle, failure) -> null).join();
+            stallNanos += System.nanoTime() - waitStart;
+            finishProgram(pending);
+        }
+        if (pending.nativeProgramHandle != 0L) {
+            pendingBoundRecord = null;
+            boundProgram = pending.boundView;
+            return true;
+        }
+
+        FrameContext frame = FrameContext.current();
+        if (frame != null) {
+            frame.recordPendingProgramDraw();
+        }
+        if (PENDING_PROGRAM_POLICY == PendingProgramPolicy.FALLBACK) {
+            fallbackDraws++;
+            return true;
+        }
+        skippedDraws++;
+        return false;
+    }
+
+    /**
+     * Finishes every program whose native build has completed, emitting its ready event.
+     */
+    static void pollPendingPrograms() {
+        if (!PENDING_RECORDS.isEmpty()) {
+            for (ProgramRecord record : new ArrayList<>(PENDING_RECORDS)) {
+                finishProgram(record);
+            }
+        }
+        if (!ORPHANED_PROGRAMS.isEmpty()) {
+            Iterator<NativeProgram> iterator = ORPHANED_PROGRAMS.iterator();
+            while (iterator.hasNext()) {
+                NativeProgram nativeProgram = iterator.next();
+                if (nativeProgram.creation.isDone()) {
+                    iterator.remove();
+                    destroyNativeProgram(nativeProgram);
+                }
+            }
+        }
+    }
+
+    @Nullable
+    static BoundProgram boundProgram() {
+        return boundProgram;
     }
 
     public static void onProgramClosed(String shaderName) {
-        ProgramRecord record = PROGRAMS.remove(shaderName);
-        if (record == null || record.nativeProgramHandle == 0L) {
+        onProgramClosed(shaderName, UNKNOWN_PROGRAM_ID);
+    }
+
+    /**
+     * Releases the record a ShaderProgram linked to; {@link #UNKNOWN_PROGRAM_ID} releases the current record by name.
+     */
+    public static void onProgramClosed(String shaderName, int programId) {
+        ProgramRecord record = SUPERSEDED_PROGRAMS.remove(programId);
+        if (record == null) {
+            ProgramRecord current = PROGRAMS.get(shaderName);
+            if (current == null || programId != UNKNOWN_PROGRAM_ID && current.id != programId) {
+                return;
+            }
+            PENDING_STAGES.remove(shaderName);
+            PROGRAMS.remove(shaderName);
+            record = current;
+        }
+        for (int slotId : record.uniformSlotIds) {
+            uniformSlots[slotId] = null;
+            FREE_UNIFORM_SLOTS.push(slotId);
+        }
+        if (record.nativeProgram == null) {
             return;
         }
+        PENDING_RECORDS.remove(record);
+        if (pendingBoundRecord == record) {
+            pendingBoundRecord = null;
+        }
+        MetalBufferUploadBridge.flushReorderedDraws("program_close");
+        BoundProgram currentBinding = boundProgram;
+        if (currentBinding != null && currentBinding == record.boundView) {
+            boundProgram = null;
+        }
+        releaseNativeProgram(record.nativeProgram);
+    }
 
-        int destroyStatus = nativeShaderBackend.destroyShaderProgram(record.nativeProgramHandle);
-        if (!NativeStatus.isSuccess(destroyStatus)) {
-            throw new NativeBridgeException(
-                "Native shader program destruction failed for '" + shaderName + "' with status "
-                    + NativeStatus.describe(destroyStatus) + " (" + destroyStatus + ")."
-            );
+    /**
+     * Identifies the record a ShaderProgram linked to, so closing it after a newer generation has linked under the
+     * same name releases the right one.
+     */
+    public static int programId(String shaderName) {
+        ProgramRecord record = PROGRAMS.get(shaderName);
+        return record == null ? UNKNOWN_PROGRAM_ID : record.id;
+    }
+
+    /**
+     * Starts a reload generation; programs closed until {@link #completeProgramReload()} are parked for reuse.
+     */
+    public static void beginProgramReload() {
+        if (reloadInProgress) {
+            // The previous reload threw before completing.
+            completeProgramReload();
         }
+        reloadInProgress = true;
+        reloadGeneration++;
+    }
+
+    /**
+     * Destroys programs parked during the reload that the new generation did not reattach.
+     */
+    public static void completeProgramReload() {
+        // Programs still waiting on stages reattach to parked natives when applied, so join before destroying.
+        for (String shaderName : List.copyOf(PENDING_STAGES.keySet())) {
+            applyPendingStages(shaderName);
+        }
+        if (!reloadInProgress) {
+            return;
+        }
+        reloadInProgress = false;
+
+        int destroyed = 0;
+        Iterator<NativeProgram> iterator = NATIVE_PROGRAMS.values().iterator();
+        while (iterator.hasNext()) {
+            NativeProgram nativeProgram = iterator.next();
+            if (nativeProgram.parked) {
+                iterator.remove();
+                destroyNativeProgram(nativeProgram);
+                destroyed++;
+            }
+        }
+        LOGGER.info(
+            "event=metal_phase6 phase=shader_program_pool generation={} live={} created={} reused={} destroyed={}",
+            reloadGeneration,
+            NATIVE_PROGRAMS.size(),
+            programsCreated,
+            programsReused,
+            destroyed
+        );
     }
 
     static void setNativeShaderBackendForTests(NativeShaderBackend backend) {
         nativeShaderBackend = backend;
     }
 
+    static int pendingStageCountForTests() {
+        return PENDING_STAGES.values().stream().mapToInt(List::size).sum();
+    }
+
+    static UniformWriteStats uniformWriteStats() {
+        return new UniformWriteStats(uniformWritesForwarded, uniformWritesSuppressed);
+    }
+
+    static long nameLookupsForTests() {
+        return nameLookups;
+    }
+
+    static ProgramPoolStats programPoolStats() {
+        return new ProgramPoolStats(programsCreated, programsReused, programsParked, programsDestroyed);
+    }
+
+    static ProgramReadinessStats programReadinessStats() {
+        return new ProgramReadinessStats(
+            PENDING_RECORDS.size(),
+            programsReady,
+            programsFailed,
+            skippedDraws,
+            fallbackDraws,
+            BUILD_NANOS.get(),
+            stallNanos,
+            PRECOMPILED_PIPELINES.get()
+        );
+    }
+
+    static void setProgramExecutorForTests(@Nullable Executor executor) {
+        programExecutor = executor;
+    }
+
     static void resetForTests() {
         PROGRAMS.clear();
+        PENDING_STAGES.clear();
+        PENDING_VERTEX_FORMATS.clear();
+        SUPERSEDED_PROGRAMS.clear();
+        NATIVE_PROGRAMS.clear();
+        reloadInProgress = false;
+        reloadGeneration = 0L;
+        programsCreated = 0L;
+        programsReused = 0L;
+        programsParked = 0L;
+        programsDestroyed = 0L;
+        PENDING_RECORDS.clear();
+        ORPHANED_PROGRAMS.clear();
+        pendingBoundRecord = null;
+        programsReady = 0L;
+        programsFailed = 0L;
+        skippedDraws = 0L;
+        fallbackDraws = 0L;
+        stallNanos = 0L;
+        BUILD_NANOS.set(0L);
+        PRECOMPILED_PIPELINES.set(0L);
+        programExecutor = null;
+        Arrays.fill(uniformSlots, null);
+        uniformSlotHighWater = 0;
+        FREE_UNIFORM_SLOTS.clear();
+        nameLookups = 0L;
+        uniformWritesForwarded = 0L;
+        uniformWritesSuppressed = 0L;
         nativeShaderBackend = new JniNativeShaderBackend();
+        boundProgram = null;
     }
 
     private static final class JniNativeShaderBackend implements NativeShaderBackend {
@@ -162,6 +744,11 @@ public final class MetalShaderProgramBridge {
             return NativeApi.nativeCompileShaderPipeline(programHandle, vertexDescriptorHandle);
         }
 
+        @Override
+        public int precompilePipelineState(long programHandle, long vertexDescriptorHandle, ByteBuffer packedState, int packedByteLength) {
+            return NativeApi.nativePrecompilePipelineState(programHandle, vertexDescriptorHandle, packedState, packedByteLength);
+        }
+
         @Override
         public long registerUniform(long programHandle, String uniformName, int set, int binding) {
             return NativeApi.nativeRegisterUniform(programHandle, uniformName, set, binding);
@@ -172,41 +759,440 @@ public final class MetalShaderProgramBridge {
             return NativeApi.nativeUpdateUniformFloat4(uniformHandle, x, y, z, w);
         }
 
+        @Override
+        public int configureUniformBlock(
+            long programHandle,
+            int blockByteLength,
+            ByteBuffer packedRegions,
+            int packedByteLength
+        ) {
+            return NativeApi.nativeConfigureUniformBlock(programHandle, blockByteLength, packedRegions, packedByteLength);
+        }
+
+        @Override
+        public int updateUniformBlock(long programHandle, ByteBuffer data, int dataLength) {
+            return NativeApi.nativeUpdateUniformBlock(programHandle, data, dataLength);
+        }
+
         @Override
         public int destroyShaderProgram(long programHandle) {
             return NativeApi.nativeDestroyShaderProgram(programHandle);
         }
     }
 
+    private static void applyStage(String shaderName, @Nullable StageArtifacts artifacts) {
+        if (artifacts == null) {
+            return;
+        }
+        generationRecord(shaderName);
+        if (artifacts.bindingMap() != null) {
+            onReflectionBindingMap(shaderName, artifacts.bindingMap());
+        }
+        if (artifacts.uniformLayout() != null) {
+            ProgramRecord record = PROGRAMS.computeIfAbsent(shaderName, ignored -> new ProgramRecord());
+            if ("VERTEX".equals(artifacts.shaderStage())) {
+                record.vertexUniformLayout = artifacts.uniformLayout();
+            } else if ("FRAGMENT".equals(artifacts.shaderStage())) {
+                record.fragmentUniformLayout = artifacts.uniformLayout();
+            }
+        }
+        if (artifacts.mslSource() != null) {
+            onTranslatedStage(shaderName, artifacts.shaderStage(), artifacts.mslSource());
+        }
+    }
+
+    private static void applyPendingStages(String shaderName) {
+        List<CompletableFuture<StageArtifacts>> pending = PENDING_STAGES.remove(shaderName);
+        if (pending == null) {
+            return;
+        }
+        for (CompletableFuture<StageArtifacts> artifacts : pending) {
+            applyStage(shaderName, artifacts.join());
+        }
+    }
+
+    /**
+     * Record the loading generation of {@code shaderName} links to; a linked record still open is superseded.
+     */
+    private static ProgramRecord generationRecord(String shaderName) {
+        ProgramRecord linked = PROGRAMS.get(shaderName);
+        if (linked != null && linked.nativeProgram != null) {
+            // A new generation of this program is loading while the linked one is still open.
+            PROGRAMS.remove(shaderName);
+            SUPERSEDED_PROGRAMS.put(linked.id, linked);
+        }
+        return PROGRAMS.computeIfAbsent(shaderName, ignored -> new ProgramRecord());
+    }
+
+    private static NativeProgram acquireNativeProgram(String shaderName, String contentHash, ProgramRecord record) {
+        PoolKey key = new PoolKey(shaderName, contentHash);
+        NativeProgram nativeProgram = NATIVE_PROGRAMS.get(key);
+        if (nativeProgram != null) {
+            nativeProgram.owners++;
+            nativeProgram.parked = false;
+            programsReused++;
+            return nativeProgram;
+        }
+
+        NativeShaderBackend backend = nativeShaderBackend;
+        String vertexMslSource = record.vertexMslSource;
+        String fragmentMslSource = record.fragmentMslSource;
+        long vertexDescriptorHandle = vertexDescriptorHandle(shaderName);
+        CompletableFuture<Long> creation = CompletableFuture.supplyAsync(
+            () -> buildNativeProgram(backend, shaderName, vertexMslSource, fragmentMslSource, vertexDescriptorHandle),
+            programExecutor()
+        );
+        nativeProgram = new NativeProgram(key, creation);
+        nativeProgram.owners = 1;
+        NATIVE_PROGRAMS.put(key, nativeProgram);
+        programsCreated++;
+        return nativeProgram;
+    }
+
+    private static long buildNativeProgram(
+        NativeShaderBackend backend,
+        String shaderName,
+        String vertexMslSource,
+        String fragmentMslSource,
+        long vertexDescriptorHandle
+    ) {
+        long buildStart = System.nanoTime();
+        long programHandle = backend.createShaderProgram(shaderName, vertexMslSource, fragmentMslSource);
+        if (programHandle <= 0L) {
+            throw new NativeBridgeException("Native shader program creation failed for '" + shaderName + "'.");
+        }
+
+        int compileStatus = backend.compileShaderPipeline(programHandle, vertexDescriptorHandle);
+        if (!NativeStatus.isSuccess(compileStatus)) {
+            backend.destroyShaderProgram(programHandle);
+            throw new NativeBridgeException(
+                "Native shader pipeline compilation failed for '" + shaderName + "' with status "
+                    + NativeStatus.describe(compileStatus) + " (" + compileStatus + ")."
+            );
+        }
+        if (vertexDescriptorHandle != 0L && PRECOMPILE_BLEND_STATES) {
+            precompileLoadTimeStates(backend, shaderName, programHandle, vertexDescriptorHandle);
+        }
+        BUILD_NANOS.addAndGet(System.nanoTime() - buildStart);
+        return programHandle;
+    }
+
+    private static long vertexDescriptorHandle(String shaderName) {
+        VertexFormat format = PENDING_VERTEX_FORMATS.remove(shaderName);
+        if (format == null) {
+            return 0L;
+        }
+        try {
+            return MetalBufferUploadBridge.vertexDescriptorHandle(format);
+        } catch (RuntimeException runtimeException) {
+            // Without a descriptor the program still builds; draws compile their pipeline on first use.
+            LOGGER.warn(
+                "event=metal_phase6 phase=shader_program_build operation=vertex_descriptor status=failed shader_name={} error_message={}",
+                shaderName,
+                runtimeException.getMessage()
+            );
+            return 0L;
+        }
+    }
+
+    /**
+     * Builds the draw-time pipelines for the common blend states so a program's first draws hit the pipeline cache;
+     * failures only cost the later compile they would have saved.
+     */
+    private static void precompileLoadTimeStates(
+        NativeShaderBackend backend,
+        String shaderName,
+        long programHandle,
+        long vertexDescriptorHandle
+    ) {
+        int precompiled = 0;
+        int failed = 0;
+        for (PipelineStateKey state : LOAD_TIME_PIPELINE_STATES) {
+            ByteBuffer packedState = state.toPackedBuffer();
+            int status = backend.precompilePipelineState(
+                programHandle,
+                vertexDescriptorHandle,
+                packedState,
+                packedState.remaining()
+            );
+            if (NativeStatus.isSuccess(status)) {
+                precompiled++;
+            } else {
+                failed++;
+            }
+        }
+        PRECOMPILED_PIPELINES.addAndGet(precompiled);
+        LOGGER.debug(
+            "event=metal_phase6 phase=shader_program_build operation=precompile_blend_states shader_name={} precompiled={} failed={}",
+            shaderName,
+            precompiled,
+            failed
+        );
+    }
+
+    private static PipelineStateKey loadTimeState(
+        boolean blendEnabled,
+        int blendSrcRgb,
+        int blendDstRgb,
+        int blendSrcAlpha,
+        int blendDstAlpha
+    ) {
+        return new PipelineStateKey(
+            0x0004,
+            blendEnabled,
+            blendSrcRgb,
+            blendDstRgb,
+            blendSrcAlpha,
+            blendDstAlpha,
+            0x8006,
+            0x8006,
+            true,
+            0x0405,
+            PipelineStateKey.COLOR_WRITE_ALL,
+            false,
+            PipelineStateKey.LOGIC_OP_COPY
+        );
+    }
+
+    /**
+     * Completes a record whose native program has finished building; returns whether the record is ready.
+     */
+    private static boolean finishProgram(ProgramRecord record) {
+        if (record.nativeProgramHandle != 0L) {
+            return true;
+        }
+        NativeProgram nativeProgram = record.nativeProgram;
+        if (nativeProgram == null || !observeCreation(nativeProgram)) {
+            if (nativeProgram != null && nativeProgram.failed) {
+                PENDING_RECORDS.remove(record);
+            }
+            return false;
+        }
+
+        String shaderName = nativeProgram.key.shaderName();
+        long programHandle = nativeProgram.handle;
+        record.nativeProgramHandle = programHandle;
+        configureUniformBlock(shaderName, record);
+        record.boundView = new BoundProgram(shaderName, programHandle, record.contentHash, record.uniformBlock);
+        registerPendingUniforms(shaderName, record);
+        PENDING_RECORDS.remove(record);
+        PipelineStateArchive.onProgramReady(shaderName, record.contentHash, programHandle);
+        MetalShaderLifecycleBridge.onShaderProgramReady(shaderName);
+        return true;
+    }
+
+    private static boolean observeCreation(NativeProgram nativeProgram) {
+        if (nativeProgram.handle != 0L) {
+            return true;
+        }
+        if (nativeProgram.failed || !nativeProgram.creation.isDone()) {
+            return false;
+        }
+        try {
+            nativeProgram.handle = nativeProgram.creation.join();
+            programsReady++;
+            return true;
+        } catch (CompletionException | CancellationException exception) {
+            Throwable cause = exception.getCause() != null ? exception.getCause() : exception;
+            nativeProgram.failed = true;
+            programsFailed++;
+            LOGGER.error(
+                "event=metal_phase6 phase=shader_program_build status=failed shader_name={} error_message={}",
+                nativeProgram.key.shaderName(),
+                cause.getMessage()
+            );
+            return false;
+        }
+    }
+
+    private static void releaseNativeProgram(NativeProgram nativeProgram) {
+        if (--nativeProgram.owners > 0) {
+            return;
+        }
+        if (reloadInProgress) {
+            nativeProgram.parked = true;
+            programsParked++;
+            return;
+        }
+        NATIVE_PROGRAMS.remove(nativeProgram.key);
+        destroyNativeProgram(nativeProgram);
+    }
+
+    private static void destroyNativeProgram(NativeProgram nativeProgram) {
+        if (!nativeProgram.creation.isDone()) {
+            // Still building; destroyed by pollPendingPrograms once the worker hands the handle back.
+            ORPHANED_PROGRAMS.add(nativeProgram);
+            return;
+        }
+        if (!observeCreation(nativeProgram)) {
+            return;
+        }
+        int destroyStatus = nativeShaderBackend.destroyShaderProgram(nativeProgram.handle);
+        if (!NativeStatus.isSuccess(destroyStatus)) {
+            throw new NativeBridgeException(
+                "Native shader program destruction failed for '" + nativeProgram.key.shaderName() + "' with status "
+                    + NativeStatus.describe(destroyStatus) + " (" + destroyStatus + ")."
+            );
+        }
+        programsDestroyed++;
+    }
+
+    @Nullable
+    private static ProgramRecord programByName(String shaderName) {
+        nameLookups++;
+        return PROGRAMS.get(shaderName);
+    }
+
+    @Nullable
+    private static UniformSlot uniformSlot(int uniformSlot) {
+        return uniformSlot >= 0 && uniformSlot < uniformSlots.length ? uniformSlots[uniformSlot] : null;
+    }
+
+    private static void updateNativeUniform(
+        String shaderName,
+        String uniformName,
+        NativeUniform nativeUniform,
+        float x,
+        float y,
+        float z,
+        float w
+    ) {
+        int[] shadow = nativeUniform.shadowBits;
+        int xBits = Float.floatToRawIntBits(x);
+        int yBits = Float.floatToRawIntBits(y);
+        int zBits = Float.floatToRawIntBits(z);
+        int wBits = Float.floatToRawIntBits(w);
+        // Native uniforms start zeroed, which is also the initial shadow.
+        if (shadow[0] == xBits && shadow[1] == yBits && shadow[2] == zBits && shadow[3] == wBits) {
+            recordUniformWrite(false);
+            return;
+        }
+
+        shadow[0] = xBits;
+        shadow[1] = yBits;
+        shadow[2] = zBits;
+        shadow[3] = wBits;
+        recordUniformWrite(true);
+        if (nativeUniform.handle == 0L) {
+            // Sent by registerPendingUniforms when the program becomes ready.
+            nativeUniform.unsent = true;
+            return;
+        }
+        MetalBufferUploadBridge.flushReorderedDraws("uniform_update");
+        sendNativeUniform(shaderName, uniformName, nativeUniform);
+    }
+
+    private static void sendNativeUniform(String shaderName, String uniformName, NativeUniform nativeUniform) {
+        int[] shadow = nativeUniform.shadowBits;
+        int status = nativeShaderBackend.updateUniformFloat4(
+            nativeUniform.handle,
+            Float.intBitsToFloat(shadow[0]),
+            Float.intBitsToFloat(shadow[1]),
+            Float.intBitsToFloat(shadow[2]),
+            Float.intBitsToFloat(shadow[3])
+        );
+        if (!NativeStatus.isSuccess(status)) {
+            throw new NativeBridgeException(
+                "Native uniform update failed for '" + shaderName + ":" + uniformName + "' with status "
+                    + NativeStatus.describe(status) + " (" + status + ")."
+            );
+        }
+        nativeUniform.unsent = false;
+    }
+
+    private static void recordUniformWrite(boolean forwarded) {
+        if (forwarded) {
+            uniformWritesForwarded++;
+        } else {
+            uniformWritesSuppressed++;
+        }
+        FrameContext frame = FrameContext.current();
+        if (frame != null) {
+            frame.recordUniformWrite(forwarded);
+        }
+    }
+
+    private static void configureUniformBlock(String shaderName, ProgramRecord record) {
+        UniformStagingBlock block = record.uniformBlock;
+        if (block == null) {
+            return;
+        }
+
+        ByteBuffer packedRegions = block.packedRegions();
+        int status = nativeShaderBackend.configureUniformBlock(
+            record.nativeProgramHandle,
+            block.byteLength(),
+            packedRegions,
+            packedRegions.remaining()
+        );
+        if (!NativeStatus.isSuccess(status)) {
+            throw new NativeBridgeException(
+                "Native uniform block configuration failed for '" + shaderName + "' with status "
+                    + NativeStatus.describe(status) + " (" + status + ")."
+            );
+        }
+    }
+
     private static void registerPendingUniforms(String shaderName, ProgramRecord record) {
         if (record.nativeProgramHandle == 0L || record.pendingUniformsByName.isEmpty()) {
             return;
         }
 
-        for (PendingUniform pendingUniform : record.pendingUniformsByName.values()) {
-            registerUniform(shaderName, record, pendingUniform);
+        for (String uniformName : record.pendingUniformsByName.keySet()) {
+            NativeUniform nativeUniform = nativeUniform(shaderName, record, uniformName);
+            if (nativeUniform != null && nativeUniform.unsent) {
+                sendNativeUniform(shaderName, uniformName, nativeUniform);
+            }
         }
     }
 
-    private static long registerUniform(String shaderName, ProgramRecord record, PendingUniform pendingUniform) {
-        Long existingHandle = record.uniformHandlesByName.get(pendingUniform.name);
-        if (existingHandle != null && existingHandle > 0L) {
-            return existingHandle;
+    /**
+     * Returns the pooled native uniform for a reflected binding, registering it once the program is ready.
+     */
+    @Nullable
+    private static NativeUniform nativeUniform(String shaderName, ProgramRecord record, String uniformName) {
+        PendingUniform pendingUniform = record.pendingUniformsByName.get(uniformName);
+        if (record.nativeProgram == null || pendingUniform == null) {
+            return null;
+        }
+        NativeUniform nativeUniform = record.nativeProgram.uniforms.computeIfAbsent(
+            uniformName,
+            ignored -> new NativeUniform(pendingUniform)
+        );
+        if (nativeUniform.handle != 0L || record.nativeProgramHandle == 0L) {
+            return nativeUniform;
         }
 
         long uniformHandle = nativeShaderBackend.registerUniform(
             record.nativeProgramHandle,
-            pendingUniform.name,
-            pendingUniform.set,
-            pendingUniform.binding
+            nativeUniform.binding.name,
+            nativeUniform.binding.set,
+            nativeUniform.binding.binding
         );
         if (uniformHandle <= 0L) {
             throw new NativeBridgeException(
-                "Native uniform registration failed for '" + shaderName + ":" + pendingUniform.name + "'."
+                "Native uniform registration failed for '" + shaderName + ":" + uniformName + "'."
             );
         }
+        nativeUniform.handle = uniformHandle;
+        return nativeUniform;
+    }
 
-        record.uniformHandlesByName.put(pendingUniform.name, uniformHandle);
-        return uniformHandle;
+    private static Executor programExecutor() {
+        Executor executor = programExecutor;
+        if (executor != null) {
+            return executor;
+        }
+        synchronized (MetalShaderProgramBridge.class) {
+            if (defaultProgramExecutor == null) {
+                AtomicInteger threadIndex = new AtomicInteger();
+                defaultProgramExecutor = Executors.newFixedThreadPool(PROGRAM_BUILD_THREADS, runnable -> {
+                    Thread thread = new Thread(runnable, "MCMetal Program Build " + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            return defaultProgramExecutor;
+        }
     }
 }
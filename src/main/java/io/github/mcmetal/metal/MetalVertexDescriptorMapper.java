@@ -2,6 +2,7 @@ package io.github.mcmetal.metal;
 
 import net.minecraft.client.render.VertexFormat;
 import net.minecraft.client.render.VertexFormatElement;
+import org.jetbrains.annotations.Nullable;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
@@ -50,6 +51,37 @@ public final class MetalVertexDescriptorMapper {
         );
     }
 
+    /**
+     * Rebuilds a descriptor payload from {@link NativeVertexDescriptor#layoutSignature()}.
+     */
+    @Nullable
+    public static NativeVertexDescriptor fromLayoutSignature(String layoutSignature) {
+        String[] header = layoutSignature.split(":", 2);
+        if (header.length != 2) {
+            return null;
+        }
+        try {
+            int strideBytes = Integer.parseInt(header[0]);
+            String[] values = header[1].split(",");
+            int attributeCount = Integer.parseInt(values[0]);
+            int packedIntCount = values.length - 1;
+            if (strideBytes <= 0 || attributeCount <= 0 || packedIntCount != attributeCount * PACKED_INTS_PER_ATTRIBUTE) {
+                return null;
+            }
+
+            ByteBuffer packedElements = ByteBuffer
+                .allocateDirect(packedIntCount * Integer.BYTES)
+                .order(ByteOrder.nativeOrder());
+            for (int i = 1; i < values.length; i++) {
+                packedElements.putInt(Integer.parseInt(values[i]));
+            }
+            packedElements.flip();
+            return new NativeVertexDescriptor(strideBytes, attributeCount, packedElements, packedElements.remaining());
+        } catch (NumberFormatException ignored) {
+            return null;
+        }
+    }
+
     private static int mapUsage(VertexFormatElement.Usage usage) {
         return switch (usage) {
             case POSITION -> USAGE_POSITION;
@@ -73,5 +105,20 @@ public final class MetalVertexDescriptorMapper {
         ByteBuffer packedElements,
         int byteLength
     ) {
+        /**
+         * Stable textual identity of the layout, independent of native handle numbering.
+         */
+        public String layoutSignature() {
+            StringBuilder builder = new StringBuilder()
+                .append(strideBytes)
+                .append(':')
+                .append(attributeCount);
+            ByteBuffer elements = packedElements.duplicate().order(ByteOrder.nativeOrder());
+            elements.position(0);
+            while (elements.remaining() >= Integer.BYTES) {
+                builder.append(',').append(elements.getInt());
+            }
+            return builder.toString();
+        }
     }
 }
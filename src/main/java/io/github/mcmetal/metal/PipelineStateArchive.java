@@ -0,0 +1,403 @@
+package io.github.mcmetal.metal;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import io.github.mcmetal.metal.bridge.NativeApi;
+import io.github.mcmetal.metal.bridge.NativeStatus;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Phase 6 on-disk archive of pipeline states used at draw time, replayed on later launches so
+ * native pipelines are compiled in the background before their first draw.
+ */
+public final class PipelineStateArchive {
+    interface PipelinePrecompileBackend {
+        long registerVertexDescriptor(int strideBytes, int attributeCount, ByteBuffer packedElements, int packedByteLength);
+
+        int precompilePipelineState(long programHandle, long vertexDescriptorHandle, ByteBuffer packedState, int packedByteLength);
+    }
+
+    private record ArchiveKey(String programName, String vertexLayout, PipelineStateKey state) {
+    }
+
+    private static final class ArchiveEntry {
+        private volatile String programHash;
+        private volatile long lastUsedSession;
+        private volatile long replayedProgramHandle;
+
+        private ArchiveEntry(String programHash, long lastUsedSession) {
+            this.programHash = programHash;
+            this.lastUsedSession = lastUsedSession;
+        }
+    }
+
+    private record StoredArchive(int formatVersion, long session, List<StoredEntry> entries) {
+    }
+
+    private record StoredEntry(
+        String program,
+        String programHash,
+        String vertexLayout,
+        int[] state,
+        long lastUsedSession
+    ) {
+    }
+
+    static final int FORMAT_VERSION = 2;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PipelineStateArchive.class);
+    private static final Gson GSON = new GsonBuilder().create();
+    private static final String ARCHIVE_FILE_NAME = "pipeline-archive-v" + FORMAT_VERSION + ".json";
+    private static final boolean ENABLED = !Boolean.getBoolean("mcmetal.phase6.disablePipelineArchive");
+    private static final int MAX_IDLE_SESSIONS = Math.max(1, Integer.getInteger("mcmetal.phase6.pipelineArchiveMaxIdleSessions", 8));
+    private static final int MAX_ENTRIES = Math.max(1, Integer.getInteger("mcmetal.phase6.pipelineArchiveMaxEntries", 4096));
+    private static final int PRECOMPILE_THREADS = Math.max(1, Math.min(2, Runtime.getRuntime().availableProcessors() / 4));
+    private static final Map<ArchiveKey, ArchiveEntry> ENTRIES = new ConcurrentHashMap<>();
+    private static final AtomicInteger PRECOMPILED_PIPELINES = new AtomicInteger();
+    private static final AtomicInteger FAILED_PIPELINES = new AtomicInteger();
+
+    private static volatile PipelinePrecompileBackend precompileBackend = new JniPipelinePrecompileBackend();
+    @Nullable
+    private static volatile Executor precompileExecutor;
+    @Nullable
+    private static volatile Path archiveFileOverrideForTests;
+    private static volatile long session = 1L;
+    private static volatile boolean dirty;
+    // Render-thread only. Consecutive draws mostly repeat the previous program, layout and state, so the
+    // last recorded use is compared against the already-built state key before allocating an archive key.
+    @Nullable
+    private static MetalShaderProgramBridge.BoundProgram lastUsedProgram;
+    @Nullable
+    private static String lastUsedVertexLayout;
+    @Nullable
+    private static PipelineStateKey lastUsedState;
+    private static long lastUsedSession;
+
+    private PipelineStateArchive() {
+    }
+
+    public static void load() {
+        if (!ENABLED) {
+            return;
+        }
+
+        Path archiveFile = archiveFile();
+        if (!Files.isRegularFile(archiveFile)) {
+            return;
+        }
+
+        StoredArchive archive;
+        try {
+            archive = GSON.fromJson(Files.readString(archiveFile, StandardCharsets.UTF_8), StoredArchive.class);
+        } catch (IOException | JsonParseException exception) {
+            LOGGER.warn(
+                "event=metal_phase6 phase=pipeline_archive operation=load status=failed path={} error_message={}",
+                archiveFile,
+                exception.getMessage()
+            );
+            return;
+        }
+        if (archive == null || archive.formatVersion() != FORMAT_VERSION || archive.entries() == null) {
+            LOGGER.info(
+                "event=metal_phase6 phase=pipeline_archive operation=load status=discarded reason=format_mismatch path={}",
+                archiveFile
+            );
+            dirty = true;
+            return;
+        }
+
+        session = archive.session() + 1L;
+        int pruned = 0;
+        for (StoredEntry stored : archive.entries()) {
+            PipelineStateKey state = stored == null ? null : PipelineStateKey.fromPackedInts(stored.state());
+            if (state == null || stored.program() == null || stored.programHash() == null || stored.vertexLayout() == null
+                || session - stored.lastUsedSession() > MAX_IDLE_SESSIONS) {
+                pruned++;
+                continue;
+            }
+            ENTRIES.put(
+                new ArchiveKey(stored.program(), stored.vertexLayout(), state),
+                new ArchiveEntry(stored.programHash(), stored.lastUsedSession())
+            );
+        }
+        dirty = pruned > 0;
+        LOGGER.info(
+            "event=metal_phase6 phase=pipeline_archive operation=load status=ok entries={} pruned={} session={}",
+            ENTRIES.size(),
+            pruned,
+            session
+        );
+    }
+
+    public static void save() {
+        if (!ENABLED || !dirty) {
+            return;
+        }
+
+        long currentSession = session;
+        List<StoredEntry> storedEntries = new ArrayList<>();
+        ENTRIES.entrySet().stream()
+            .filter(entry -> currentSession - entry.getValue().lastUsedSession <= MAX_IDLE_SESSIONS)
+            .sorted(Comparator.comparingLong(
+                (Map.Entry<ArchiveKey, ArchiveEntry> entry) -> entry.getValue().lastUsedSession
+            ).reversed())
+            .limit(MAX_ENTRIES)
+            .forEach(entry -> storedEntries.add(new StoredEntry(
+                entry.getKey().programName(),
+                entry.getValue().programHash,
+                entry.getKey().vertexLayout(),
+                entry.getKey().state().toPackedInts(),
+                entry.getValue().lastUsedSession
+            )));
+
+        Path archiveFile = archiveFile();
+        Path tempFile = archiveFile.resolveSibling(archiveFile.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(archiveFile.getParent());
+            Files.writeString(
+                tempFile,
+                GSON.toJson(new StoredArchive(FORMAT_VERSION, currentSession, storedEntries)),
+                StandardCharsets.UTF_8
+            );
+            Files.move(tempFile, archiveFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            dirty = false;
+            LOGGER.info(
+                "event=metal_phase6 phase=pipeline_archive operation=save status=ok entries={} session={} precompiled={} failed={}",
+                storedEntries.size(),
+                currentSession,
+                PRECOMPILED_PIPELINES.get(),
+                FAILED_PIPELINES.get()
+            );
+        } catch (IOException exception) {
+            LOGGER.warn(
+                "event=metal_phase6 phase=pipeline_archive operation=save status=failed path={} error_message={}",
+                archiveFile,
+                exception.getMessage()
+            );
+        } finally {
+            try {
+                Files.deleteIfExists(tempFile);
+            } catch (IOException ignored) {
+                // Best-effort cleanup.
+            }
+        }
+    }
+
+    static void recordUse(MetalShaderProgramBridge.BoundProgram program, String vertexLayout, PipelineStateKey state) {
+        if (!ENABLED) {
+            return;
+        }
+
+        long currentSession = session;
+        if (program == lastUsedProgram
+            && currentSession == lastUsedSession
+            && vertexLayout.equals(lastUsedVertexLayout)
+            && state.equals(lastUsedState)) {
+            return;
+        }
+        lastUsedProgram = program;
+        lastUsedVertexLayout = vertexLayout;
+        lastUsedState = state;
+        lastUsedSession = currentSession;
+
+        ArchiveKey key = new ArchiveKey(program.name(), vertexLayout, state);
+        ArchiveEntry entry = ENTRIES.get(key);
+        if (entry == null) {
+            ENTRIES.putIfAbsent(key, new ArchiveEntry(program.contentHash(), currentSession));
+            dirty = true;
+            return;
+        }
+        if (entry.lastUsedSession != currentSession || !entry.programHash.equals(program.contentHash())) {
+            entry.lastUsedSession = currentSession;
+            entry.programHash = program.contentHash();
+            dirty = true;
+        }
+    }
+
+    static void onProgramReady(String programName, String programHash, long programHandle) {
+        if (!ENABLED || programHandle <= 0L) {
+            return;
+        }
+
+        List<ArchiveKey> replayKeys = new ArrayList<>();
+        for (Map.Entry<ArchiveKey, ArchiveEntry> entry : ENTRIES.entrySet()) {
+            if (!entry.getKey().programName().equals(programName)) {
+                continue;
+            }
+            ArchiveEntry archiveEntry = entry.getValue();
+            if (!archiveEntry.programHash.equals(programHash)) {
+                ENTRIES.remove(entry.getKey(), archiveEntry);
+                dirty = true;
+                continue;
+            }
+            if (archiveEntry.replayedProgramHandle == programHandle) {
+                continue;
+            }
+            archiveEntry.replayedProgramHandle = programHandle;
+            replayKeys.add(entry.getKey());
+        }
+        if (replayKeys.isEmpty()) {
+            return;
+        }
+
+        precompileExecutor().execute(() -> replay(programName, programHandle, replayKeys));
+    }
+
+    static int entryCountForTests() {
+        return ENTRIES.size();
+    }
+
+    static int precompiledCountForTests() {
+        return PRECOMPILED_PIPELINES.get();
+    }
+
+    static void setPrecompileBackendForTests(PipelinePrecompileBackend backend) {
+        precompileBackend = backend;
+    }
+
+    static void setPrecompileExecutorForTests(Executor executor) {
+        precompileExecutor = executor;
+    }
+
+    static void setArchiveFileForTests(Path archiveFile) {
+        archiveFileOverrideForTests = archiveFile;
+    }
+
+    static void clearEntriesForTests() {
+        ENTRIES.clear();
+        session = 1L;
+        dirty = false;
+        lastUsedProgram = null;
+        lastUsedVertexLayout = null;
+        lastUsedState = null;
+        lastUsedSession = 0L;
+    }
+
+    static void resetForTests() {
+        clearEntriesForTests();
+        PRECOMPILED_PIPELINES.set(0);
+        FAILED_PIPELINES.set(0);
+        precompileBackend = new JniPipelinePrecompileBackend();
+        precompileExecutor = null;
+        archiveFileOverrideForTests = null;
+    }
+
+    private static void replay(String programName, long programHandle, List<ArchiveKey> replayKeys) {
+        PipelinePrecompileBackend backend = precompileBackend;
+        Map<String, Long> descriptorHandles = new HashMap<>();
+        int precompiled = 0;
+        int failed = 0;
+        for (ArchiveKey key : replayKeys) {
+            try {
+                long descriptorHandle = descriptorHandles.computeIfAbsent(
+                    key.vertexLayout(),
+                    layout -> registerVertexDescriptor(backend, layout)
+                );
+                if (descriptorHandle <= 0L) {
+                    failed++;
+                    continue;
+                }
+                ByteBuffer packedState = key.state().toPackedBuffer();
+                int status = backend.precompilePipelineState(
+                    programHandle,
+                    descriptorHandle,
+                    packedState,
+                    packedState.remaining()
+                );
+                if (NativeStatus.isSuccess(status)) {
+                    precompiled++;
+                } else {
+                    failed++;
+                }
+            } catch (RuntimeException runtimeException) {
+                failed++;
+                LOGGER.debug(
+                    "event=metal_phase6 phase=pipeline_archive operation=replay status=failed program={} error_message={}",
+                    programName,
+                    runtimeException.getMessage()
+                );
+            }
+        }
+
+        PRECOMPILED_PIPELINES.addAndGet(precompiled);
+        FAILED_PIPELINES.addAndGet(failed);
+        LOGGER.debug(
+            "event=metal_phase6 phase=pipeline_archive operation=replay program={} precompiled={} failed={}",
+            programName,
+            precompiled,
+            failed
+        );
+    }
+
+    private static long registerVertexDescriptor(PipelinePrecompileBackend backend, String layoutSignature) {
+        MetalVertexDescriptorMapper.NativeVertexDescriptor descriptor =
+            MetalVertexDescriptorMapper.fromLayoutSignature(layoutSignature);
+        if (descriptor == null) {
+            return 0L;
+        }
+        return backend.registerVertexDescriptor(
+            descriptor.strideBytes(),
+            descriptor.attributeCount(),
+            descriptor.packedElements().duplicate(),
+            descriptor.byteLength()
+        );
+    }
+
+    private static Executor precompileExecutor() {
+        Executor executor = precompileExecutor;
+        if (executor != null) {
+            return executor;
+        }
+        synchronized (PipelineStateArchive.class) {
+            if (precompileExecutor == null) {
+                AtomicInteger threadIndex = new AtomicInteger();
+                precompileExecutor = Executors.newFixedThreadPool(PRECOMPILE_THREADS, runnable -> {
+                    Thread thread = new Thread(runnable, "MCMetal Pipeline Precompile " + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                });
+            }
+            return precompileExecutor;
+        }
+    }
+
+    private static Path archiveFile() {
+        Path override = archiveFileOverrideForTests;
+        if (override != null) {
+            return override;
+        }
+        return ShaderDiskCache.baseDirectory().resolve(ARCHIVE_FILE_NAME);
+    }
+
+    private static final class JniPipelinePrecompileBackend implements PipelinePrecompileBackend {
+        @Override
+        public long registerVertexDescriptor(int strideBytes, int attributeCount, ByteBuffer packedElements, int packedByteLength) {
+            return NativeApi.nativeRegisterVertexDescriptor(strideBytes, attributeCount, packedElements, packedByteLength);
+        }
+
+        @Override
+        public int precompilePipelineState(long programHandle, long vertexDescriptorHandle, ByteBuffer packedState, int packedByteLength) {
+            return NativeApi.nativePrecompilePipelineState(programHandle, vertexDescriptorHandle, packedState, packedByteLength);
+        }
+    }
+}
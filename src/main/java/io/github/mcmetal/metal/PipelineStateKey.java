@@ -0,0 +1,100 @@
+package io.github.mcmetal.metal;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Pipeline-affecting fixed-function state captured for a draw.
+ *
+ * <p>The packed int layout mirrors {@code parsePackedPipelineState} on the native side. The color write
+ * mask uses bit 0 for red through bit 3 for alpha.
+ */
+public record PipelineStateKey(
+    int primitiveMode,
+    boolean blendEnabled,
+    int blendSrcRgb,
+    int blendDstRgb,
+    int blendSrcAlpha,
+    int blendDstAlpha,
+    int blendEquationRgb,
+    int blendEquationAlpha,
+    boolean cullEnabled,
+    int cullMode,
+    int colorWriteMask,
+    boolean logicOpEnabled,
+    int logicOp
+) {
+    public static final int PACKED_INT_COUNT = 13;
+    public static final int COLOR_WRITE_ALL = 0xF;
+    public static final int LOGIC_OP_COPY = 0x1503;
+    private static final int BLEND_FACTOR_ONE = 1;
+    private static final int BLEND_FACTOR_ZERO = 0;
+    private static final int BLEND_EQUATION_ADD = 0x8006;
+
+    public PipelineStateKey {
+        // Matches makePipelineKey natively: state left behind by earlier draws does not split one pipeline into many.
+        if (!blendEnabled) {
+            blendSrcRgb = BLEND_FACTOR_ONE;
+            blendDstRgb = BLEND_FACTOR_ZERO;
+            blendSrcAlpha = BLEND_FACTOR_ONE;
+            blendDstAlpha = BLEND_FACTOR_ZERO;
+            blendEquationRgb = BLEND_EQUATION_ADD;
+            blendEquationAlpha = BLEND_EQUATION_ADD;
+        }
+        if (!logicOpEnabled) {
+            logicOp = LOGIC_OP_COPY;
+        }
+    }
+
+    int[] toPackedInts() {
+        return new int[] {
+            primitiveMode,
+            blendEnabled ? 1 : 0,
+            blendSrcRgb,
+            blendDstRgb,
+            blendSrcAlpha,
+            blendDstAlpha,
+            blendEquationRgb,
+            blendEquationAlpha,
+            cullEnabled ? 1 : 0,
+            cullMode,
+            colorWriteMask,
+            logicOpEnabled ? 1 : 0,
+            logicOp
+        };
+    }
+
+    ByteBuffer toPackedBuffer() {
+        ByteBuffer packed = ByteBuffer
+            .allocateDirect(PACKED_INT_COUNT * Integer.BYTES)
+            .order(ByteOrder.nativeOrder());
+        for (int value : toPackedInts()) {
+            packed.putInt(value);
+        }
+        packed.flip();
+        return packed;
+    }
+
+    static @Nullable PipelineStateKey fromPackedInts(@Nullable int[] packed) {
+        if (packed == null || packed.length != PACKED_INT_COUNT) {
+            return null;
+        }
+        return new PipelineStateKey(
+            packed[0],
+            packed[1] != 0,
+            packed[2],
+            packed[3],
+            packed[4],
+            packed[5],
+            packed[6],
+            packed[7],
+            packed[8] != 0,
+            packed[9],
+            packed[10],
+            packed[11] != 0,
+            packed[12]
+        );
+    }
+}
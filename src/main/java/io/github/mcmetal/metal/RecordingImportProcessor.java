@@ -0,0 +1,33 @@
+package io.github.mcmetal.metal;
+
+import net.minecraft.client.gl.GlImportProcessor;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Delegating {@link GlImportProcessor} that records every {@code #moj_import} it resolves, nested ones included.
+ */
+public final class RecordingImportProcessor extends GlImportProcessor {
+    private final GlImportProcessor delegate;
+    private final Map<String, String> includes = new LinkedHashMap<>();
+
+    public RecordingImportProcessor(GlImportProcessor delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    @Nullable
+    public String loadImport(boolean inline, String name) {
+        String content = this.delegate.loadImport(inline, name);
+        if (content != null) {
+            this.includes.put(name, content);
+        }
+        return content;
+    }
+
+    public Map<String, String> includes() {
+        return Map.copyOf(this.includes);
+    }
+}
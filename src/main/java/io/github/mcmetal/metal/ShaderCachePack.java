@@ -0,0 +1,435 @@
+package io.github.mcmetal.metal;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only shader artifact pack: one data file of checksummed records plus a small key index.
+ *
+ * <p>The data file is memory-mapped and records are served as slices of the mapping. Index and data share a generation
+ * number; when they disagree, or the index lags the data file, the records are rescanned and a torn tail is truncated.
+ * Appends are indexed in batches, so a crash costs at most a rescan of the unindexed tail. The index also carries each
+ * entry's last access time, which drives LRU eviction.
+ */
+final class ShaderCachePack {
+    record Entry(long offset, int length, long lastAccessMillis) {
+    }
+
+    record Record(ByteBuffer spirv, ByteBuffer msl, ByteBuffer bindings) {
+    }
+
+    static final String DATA_FILE_NAME = "shaders.pack";
+    static final String INDEX_FILE_NAME = "shaders.idx";
+
+    private static final int DATA_MAGIC = 0x4D43504B;
+    private static final int INDEX_MAGIC = 0x4D435049;
+    private static final int RECORD_MAGIC = 0x4D435352;
+    private static final int FORMAT_VERSION = 1;
+    private static final int INDEX_VERSION = 2;
+    private static final int DATA_HEADER_BYTES = Integer.BYTES * 2 + Long.BYTES;
+    private static final int RECORD_HEADER_BYTES = Integer.BYTES * 5;
+    private static final long MIN_COMPACTION_DEAD_BYTES = 1L << 20;
+    private static final int INDEX_BATCH_APPENDS = 32;
+
+    private final Path dataFile;
+    private final Path indexFile;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private FileChannel channel;
+    private MappedByteBuffer mapping;
+    private long generation;
+    private long deadBytes;
+    private boolean accessTimesDirty;
+    private int unindexedAppends;
+
+    private ShaderCachePack(Path directory) {
+        this.dataFile = directory.resolve(DATA_FILE_NAME);
+        this.indexFile = directory.resolve(INDEX_FILE_NAME);
+    }
+
+    static ShaderCachePack open(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        Files.deleteIfExists(directory.resolve(DATA_FILE_NAME + ".tmp"));
+        Files.deleteIfExists(directory.resolve(INDEX_FILE_NAME + ".tmp"));
+
+        ShaderCachePack pack = new ShaderCachePack(directory);
+        pack.openDataFile();
+        long indexedLength = pack.readIndex();
+        long scanned = pack.scan(indexedLength);
+        if (scanned != indexedLength) {
+            pack.writeIndex();
+        }
+        pack.remap();
+        if (pack.deadBytes > Math.max(MIN_COMPACTION_DEAD_BYTES, pack.liveBytes())) {
+            pack.compact();
+        }
+        return pack;
+    }
+
+    synchronized @Nullable Record find(String key) throws IOException {
+        Record record = peek(key);
+        if (record != null) {
+            touch(key);
+        }
+        return record;
+    }
+
+    synchronized @Nullable Record peek(String key) throws IOException {
+        // Unlike find(), this does not count as a use, so speculative reads leave eviction order alone.
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.offset + entry.length > mapping.capacity()) {
+            remap();
+        }
+
+        ByteBuffer record = mapping.slice((int) entry.offset, entry.length);
+        int keyLength = record.getInt(Integer.BYTES);
+        int spirvLength = record.getInt(Integer.BYTES * 2);
+        int mslLength = record.getInt(Integer.BYTES * 3);
+        int bindingsLength = record.getInt(Integer.BYTES * 4);
+        int spirvOffset = RECORD_HEADER_BYTES + keyLength;
+        int mslOffset = spirvOffset + spirvLength;
+        int bindingsOffset = mslOffset + mslLength;
+        return new Record(
+            record.slice(spirvOffset, spirvLength),
+            record.slice(mslOffset, mslLength),
+            record.slice(bindingsOffset, bindingsLength)
+        );
+    }
+
+    synchronized void touch(String key) {
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            // Access times only reach disk with the next index write; a crash merely skews eviction order.
+            entries.put(key, new Entry(entry.offset, entry.length, System.currentTimeMillis()));
+            accessTimesDirty = true;
+        }
+    }
+
+    synchronized void append(String key, byte[] spirv, byte[] msl, byte[] bindings) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int length = RECORD_HEADER_BYTES + keyBytes.length + spirv.length + msl.length + bindings.length + Integer.BYTES;
+        ByteBuffer record = ByteBuffer.allocate(length);
+        record.putInt(RECORD_MAGIC)
+            .putInt(keyBytes.length)
+            .putInt(spirv.length)
+            .putInt(msl.length)
+            .putInt(bindings.length)
+            .put(keyBytes)
+            .put(spirv)
+            .put(msl)
+            .put(bindings);
+        CRC32C crc = new CRC32C();
+        crc.update(record.array(), Integer.BYTES, length - Integer.BYTES * 2);
+        record.putInt((int) crc.getValue());
+        record.flip();
+
+        long offset;
+        try (FileLock ignored = channel.lock()) {
+            offset = channel.size();
+            writeFully(channel, record, offset);
+        }
+        Entry previous = entries.put(key, new Entry(offset, length, System.currentTimeMillis()));
+        if (previous != null) {
+            deadBytes += previous.length;
+        }
+        if (++unindexedAppends >= INDEX_BATCH_APPENDS) {
+            writeIndex();
+        }
+    }
+
+    synchronized int evictLeastRecentlyUsed(long maxLiveBytes, int maxEntries) throws IOException {
+        long live = liveBytes();
+        if (live <= maxLiveBytes && entries.size() <= maxEntries) {
+            return 0;
+        }
+
+        List<Map.Entry<String, Entry>> byAccess = new ArrayList<>(entries.entrySet());
+        byAccess.sort(Comparator.comparingLong(entry -> entry.getValue().lastAccessMillis()));
+        int evicted = 0;
+        for (Map.Entry<String, Entry> candidate : byAccess) {
+            if (live <= maxLiveBytes && entries.size() <= maxEntries) {
+                break;
+            }
+            entries.remove(candidate.getKey());
+            live -= candidate.getValue().length;
+            deadBytes += candidate.getValue().length;
+            evicted++;
+        }
+        writeIndex();
+        return evicted;
+    }
+
+    synchronized List<String> keysByRecentUse(int limit) {
+        List<Map.Entry<String, Entry>> byAccess = new ArrayList<>(entries.entrySet());
+        byAccess.sort(Comparator.comparingLong((Map.Entry<String, Entry> entry) -> entry.getValue().lastAccessMillis())
+            .reversed());
+        List<String> keys = new ArrayList<>(Math.min(limit, byAccess.size()));
+        for (int i = 0; i < byAccess.size() && i < limit; i++) {
+            keys.add(byAccess.get(i).getKey());
+        }
+        return keys;
+    }
+
+    synchronized boolean needsCompaction() {
+        return deadBytes > Math.max(MIN_COMPACTION_DEAD_BYTES, liveBytes() / 4);
+    }
+
+    synchronized void flush() throws IOException {
+        if (unindexedAppends > 0 || accessTimesDirty) {
+            writeIndex();
+        }
+    }
+
+    synchronized void compact() throws IOException {
+        remap();
+        Path compactedData = dataFile.resolveSibling(DATA_FILE_NAME + ".tmp");
+        long compactedGeneration = nextGeneration();
+        Map<String, Entry> compactedEntries = new LinkedHashMap<>();
+        try (FileChannel out = FileChannel.open(
+            compactedData,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.WRITE
+        )) {
+            long position = writeFully(out, dataHeader(compactedGeneration), 0L);
+            for (Map.Entry<String, Entry> live : entries.entrySet()) {
+                Entry entry = live.getValue();
+                ByteBuffer record = mapping.slice((int) entry.offset, entry.length);
+                compactedEntries.put(live.getKey(), new Entry(position, entry.length, entry.lastAccessMillis));
+                position += writeFully(out, record, position);
+            }
+            out.force(true);
+        }
+
+        channel.close();
+        Files.move(compactedData, dataFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        // A crash here leaves an index from the old generation, which open() rejects in favour of a full rescan.
+        entries.clear();
+        entries.putAll(compactedEntries);
+        generation = compactedGeneration;
+        deadBytes = 0L;
+        channel = FileChannel.open(dataFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        writeIndex();
+        remap();
+    }
+
+    synchronized int entryCount() {
+        return entries.size();
+    }
+
+    synchronized long liveBytes() {
+        long live = 0L;
+        for (Entry entry : entries.values()) {
+            live += entry.length;
+        }
+        return live;
+    }
+
+    synchronized long deadBytes() {
+        return deadBytes;
+    }
+
+    synchronized long fileBytes() throws IOException {
+        return channel.size();
+    }
+
+    synchronized void close() throws IOException {
+        flush();
+        channel.close();
+    }
+
+    private void openDataFile() throws IOException {
+        channel = FileChannel.open(dataFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() >= DATA_HEADER_BYTES) {
+            ByteBuffer header = ByteBuffer.allocate(DATA_HEADER_BYTES);
+            readFully(channel, header, 0L);
+            if (header.getInt(0) == DATA_MAGIC && header.getInt(Integer.BYTES) == FORMAT_VERSION) {
+                generation = header.getLong(Integer.BYTES * 2);
+                return;
+            }
+        }
+        generation = nextGeneration();
+        channel.truncate(0L);
+        writeFully(channel, dataHeader(generation), 0L);
+        channel.force(true);
+    }
+
+    private long readIndex() {
+        ByteBuffer index;
+        try {
+            index = ByteBuffer.wrap(Files.readAllBytes(indexFile));
+        } catch (IOException ignored) {
+            return DATA_HEADER_BYTES;
+        }
+
+        try {
+            if (index.getInt() != INDEX_MAGIC || index.getInt() != INDEX_VERSION || index.getLong() != generation) {
+                return DATA_HEADER_BYTES;
+            }
+            long indexedLength = index.getLong();
+            long indexedDeadBytes = index.getLong();
+            int count = index.getInt();
+            if (indexedLength > channel.size()) {
+                return DATA_HEADER_BYTES;
+            }
+            Map<String, Entry> indexed = new HashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                byte[] key = new byte[index.getInt()];
+                index.get(key);
+                indexed.put(
+                    new String(key, StandardCharsets.UTF_8),
+                    new Entry(index.getLong(), index.getInt(), index.getLong())
+                );
+            }
+            entries.putAll(indexed);
+            deadBytes = indexedDeadBytes;
+            return indexedLength;
+        } catch (RuntimeException | IOException ignored) {
+            entries.clear();
+            deadBytes = 0L;
+            return DATA_HEADER_BYTES;
+        }
+    }
+
+    private long scan(long from) throws IOException {
+        long size = channel.size();
+        long position = from;
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_BYTES);
+        while (position + RECORD_HEADER_BYTES + Integer.BYTES <= size) {
+            header.clear();
+            readFully(channel, header, position);
+            int keyLength = header.getInt(Integer.BYTES);
+            int spirvLength = header.getInt(Integer.BYTES * 2);
+            int mslLength = header.getInt(Integer.BYTES * 3);
+            int bindingsLength = header.getInt(Integer.BYTES * 4);
+            long length = (long) RECORD_HEADER_BYTES + keyLength + spirvLength + mslLength + bindingsLength + Integer.BYTES;
+            if (header.getInt(0) != RECORD_MAGIC || (keyLength | spirvLength | mslLength | bindingsLength) < 0
+                || length > Integer.MAX_VALUE || position + length > size) {
+                break;
+            }
+
+            ByteBuffer record = ByteBuffer.allocate((int) length);
+            readFully(channel, record, position);
+            CRC32C crc = new CRC32C();
+            crc.update(record.array(), Integer.BYTES, (int) length - Integer.BYTES * 2);
+            if ((int) crc.getValue() != record.getInt((int) length - Integer.BYTES)) {
+                break;
+            }
+
+            String key = new String(record.array(), RECORD_HEADER_BYTES, keyLength, StandardCharsets.UTF_8);
+            Entry previous = entries.put(key, new Entry(position, (int) length, System.currentTimeMillis()));
+            if (previous != null) {
+                deadBytes += previous.length;
+            }
+            position += length;
+        }
+
+        if (position < size) {
+            // Torn or corrupt tail from an interrupted append.
+            channel.truncate(position);
+            channel.force(true);
+        }
+        return position;
+    }
+
+    private void writeIndex() throws IOException {
+        if (unindexedAppends > 0) {
+            // One data sync per batch; the records are durable before the index points at them.
+            channel.force(false);
+            unindexedAppends = 0;
+        }
+
+        int size = Integer.BYTES * 3 + Long.BYTES * 3;
+        Map<String, byte[]> keys = new HashMap<>(entries.size() * 2);
+        for (String key : entries.keySet()) {
+            byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            keys.put(key, keyBytes);
+            size += Integer.BYTES + keyBytes.length + Long.BYTES + Integer.BYTES + Long.BYTES;
+        }
+
+        ByteBuffer index = ByteBuffer.allocate(size);
+        index.putInt(INDEX_MAGIC)
+            .putInt(INDEX_VERSION)
+            .putLong(generation)
+            .putLong(channel.size())
+            .putLong(deadBytes)
+            .putInt(entries.size());
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            byte[] keyBytes = keys.get(entry.getKey());
+            index.putInt(keyBytes.length)
+                .put(keyBytes)
+                .putLong(entry.getValue().offset)
+                .putInt(entry.getValue().length)
+                .putLong(entry.getValue().lastAccessMillis);
+        }
+        index.flip();
+
+        Path tempIndex = indexFile.resolveSibling(INDEX_FILE_NAME + ".tmp");
+        try (FileChannel out = FileChannel.open(
+            tempIndex,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.WRITE
+        )) {
+            writeFully(out, index, 0L);
+            out.force(true);
+        }
+        Files.move(tempIndex, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        accessTimesDirty = false;
+    }
+
+    private void remap() throws IOException {
+        mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size());
+    }
+
+    private static ByteBuffer dataHeader(long generation) {
+        return ByteBuffer.allocate(DATA_HEADER_BYTES)
+            .putInt(DATA_MAGIC)
+            .putInt(FORMAT_VERSION)
+            .putLong(generation)
+            .flip();
+    }
+
+    private static long nextGeneration() {
+        return ThreadLocalRandom.current().nextLong();
+    }
+
+    private static int writeFully(FileChannel target, ByteBuffer buffer, long position) throws IOException {
+        int written = 0;
+        while (buffer.hasRemaining()) {
+            written += target.write(buffer, position + written);
+        }
+        return written;
+    }
+
+    private static void readFully(FileChannel source, ByteBuffer buffer, long position) throws IOException {
+        long offset = position;
+        while (buffer.hasRemaining()) {
+            int read = source.read(buffer, offset);
+            if (read < 0) {
+                throw new IOException("Unexpected end of shader cache pack at " + offset + ".");
+            }
+            offset += read;
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package io.github.mcmetal.metal;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Per-stage shader diagnostics: hashes, sizes and the last error always, full sources only when capture is enabled.
+ */
+final class ShaderDiagnosticsStore {
+    record Summary(
+        String shaderName,
+        String shaderStage,
+        @Nullable String glslHash,
+        int glslBytes,
+        @Nullable String mslHash,
+        int mslBytes,
+        @Nullable String lastError
+    ) {
+    }
+
+    record Sources(String glslInput, @Nullable String translatedMsl) {
+    }
+
+    record Stats(int stages, int capturedStages, long capturedBytes, long evictions) {
+    }
+
+    private record CapturedSources(byte[] glsl, int glslLength, @Nullable byte[] msl, int mslLength) {
+        long bytes() {
+            return (long) glsl.length + (msl == null ? 0 : msl.length);
+        }
+    }
+
+    private static final String CAPTURE_PROPERTY = "mcmetal.phase6.captureShaderSources";
+    private static final String CAPTURE_MAX_BYTES_PROPERTY = "mcmetal.phase6.shaderSourceCaptureMaxBytes";
+    private static final long DEFAULT_CAPTURE_MAX_BYTES = 4L << 20;
+
+    private final boolean captureSources;
+    private final long captureMaxBytes;
+    private final Map<String, Summary> summaries = new TreeMap<>();
+    // Deflated sources in access order; the eldest are dropped once the compressed total exceeds the cap.
+    private final LinkedHashMap<String, CapturedSources> captured = new LinkedHashMap<>(64, 0.75f, true);
+    private long capturedBytes;
+    private long evictions;
+
+    ShaderDiagnosticsStore() {
+        this(Boolean.getBoolean(CAPTURE_PROPERTY), Long.getLong(CAPTURE_MAX_BYTES_PROPERTY, DEFAULT_CAPTURE_MAX_BYTES));
+    }
+
+    ShaderDiagnosticsStore(boolean captureSources, long captureMaxBytes) {
+        this.captureSources = captureSources;
+        this.captureMaxBytes = captureMaxBytes;
+    }
+
+    synchronized void recordSource(String shaderName, String shaderStage, String glslSource) {
+        String key = key(shaderName, shaderStage);
+        summaries.put(key, new Summary(
+            shaderName,
+            shaderStage,
+            ShaderDiskCache.sha256(glslSource),
+            utf8Length(glslSource),
+            null,
+            0,
+            null
+        ));
+        if (captureSources) {
+            capture(key, glslSource, null);
+        }
+    }
+
+    synchronized void recordTranslation(String shaderName, String shaderStage, String glslSource, String mslSource) {
+        String key = key(shaderName, shaderStage);
+        summaries.put(key, new Summary(
+            shaderName,
+            shaderStage,
+            ShaderDiskCache.sha256(glslSource),
+            utf8Length(glslSource),
+            ShaderDiskCache.sha256(mslSource),
+            utf8Length(mslSource),
+            null
+        ));
+        if (captureSources) {
+            capture(key, glslSource, mslSource);
+        }
+    }
+
+    synchronized void recordFailure(String shaderName, String shaderStage, @Nullable String message) {
+        String key = key(shaderName, shaderStage);
+        Summary previous = summaries.get(key);
+        summaries.put(key, previous == null
+            ? new Summary(shaderName, shaderStage, null, 0, null, 0, message)
+            : new Summary(shaderName, shaderStage, previous.glslHash(), previous.glslBytes(), null, 0, message));
+    }
+
+    synchronized @Nullable Summary summary(String shaderName, String shaderStage) {
+        return summaries.get(key(shaderName, shaderStage));
+    }
+
+    synchronized @Nullable Sources sources(String shaderName, String shaderStage) {
+        CapturedSources sources = captured.get(key(shaderName, shaderStage));
+        if (sources == null) {
+            return null;
+        }
+        return new Sources(
+            inflate(sources.glsl(), sources.glslLength()),
+            sources.msl() == null ? null : inflate(sources.msl(), sources.mslLength())
+        );
+    }
+
+    synchronized Stats stats() {
+        return new Stats(summaries.size(), captured.size(), capturedBytes, evictions);
+    }
+
+    /**
+     * Writes an index of every stage plus the captured sources still held into {@code directory}; returns the number
+     * of source files written.
+     */
+    int dump(Path directory) throws IOException {
+        List<Summary> summarySnapshot;
+        Map<String, Sources> sourceSnapshot = new LinkedHashMap<>();
+        synchronized (this) {
+            summarySnapshot = new ArrayList<>(summaries.values());
+            for (Summary summary : summarySnapshot) {
+                Sources sources = sources(summary.shaderName(), summary.shaderStage());
+                if (sources != null) {
+                    sourceSnapshot.put(fileStem(summary), sources);
+                }
+            }
+        }
+
+        Files.createDirectories(directory);
+        StringBuilder index = new StringBuilder(summarySnapshot.size() * 160);
+        for (Summary summary : summarySnapshot) {
+            index.append("shader_name=").append(summary.shaderName())
+                .append(" shader_stage=").append(summary.shaderStage())
+                .append(" glsl_sha256=").append(summary.glslHash())
+                .append(" glsl_bytes=").append(summary.glslBytes())
+                .append(" msl_sha256=").append(summary.mslHash())
+                .append(" msl_bytes=").append(summary.mslBytes())
+                .append(" captured=").append(sourceSnapshot.containsKey(fileStem(summary)));
+            if (summary.lastError() != null) {
+                index.append(" last_error=\"").append(summary.lastError().replace('\n', ' ')).append('"');
+            }
+            index.append('\n');
+        }
+        Files.writeString(directory.resolve("index.txt"), index, StandardCharsets.UTF_8);
+
+        int written = 0;
+        for (Map.Entry<String, Sources> entry : sourceSnapshot.entrySet()) {
+            Files.writeString(directory.resolve(entry.getKey() + ".glsl"), entry.getValue().glslInput(), StandardCharsets.UTF_8);
+            written++;
+            if (entry.getValue().translatedMsl() != null) {
+                Files.writeString(
+                    directory.resolve(entry.getKey() + ".metal"),
+                    entry.getValue().translatedMsl(),
+                    StandardCharsets.UTF_8
+                );
+                written++;
+            }
+        }
+        return written;
+    }
+
+    private void capture(String key, String glslSource, @Nullable String mslSource) {
+        byte[] glsl = glslSource.getBytes(StandardCharsets.UTF_8);
+        byte[] msl = mslSource == null ? null : mslSource.getBytes(StandardCharsets.UTF_8);
+        CapturedSources sources = new CapturedSources(
+            deflate(glsl),
+            glsl.length,
+            msl == null ? null : deflate(msl),
+            msl == null ? 0 : msl.length
+        );
+        CapturedSources previous = captured.remove(key);
+        if (previous != null) {
+            capturedBytes -= previous.bytes();
+        }
+        if (sources.bytes() > captureMaxBytes) {
+            return;
+        }
+
+        captured.put(key, sources);
+        capturedBytes += sources.bytes();
+        Iterator<CapturedSources> eldest = captured.values().iterator();
+        while (capturedBytes > captureMaxBytes && eldest.hasNext()) {
+            capturedBytes -= eldest.next().bytes();
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    private static String key(String shaderName, String shaderStage) {
+        return shaderName + ":" + shaderStage;
+    }
+
+    private static String fileStem(Summary summary) {
+        return (summary.shaderName() + "." + summary.shaderStage().toLowerCase(Locale.ROOT))
+            .replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+
+    private static int utf8Length(String source) {
+        return source.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private static byte[] deflate(byte[] input) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(input);
+            deflater.finish();
+            ByteArrayOutputStream output = new ByteArrayOutputStream(Math.max(input.length / 4, 64));
+            byte[] chunk = new byte[8192];
+            while (!deflater.finished()) {
+                output.write(chunk, 0, deflater.deflate(chunk));
+            }
+            return output.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static String inflate(byte[] input, int length) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(input);
+            byte[] output = new byte[length];
+            int offset = 0;
+            while (offset < length && !inflater.finished()) {
+                offset += inflater.inflate(output, offset, length - offset);
+            }
+            return new String(output, 0, offset, StandardCharsets.UTF_8);
+        } catch (DataFormatException exception) {
+            throw new IllegalStateException("Captured shader source is corrupt.", exception);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -1,46 +1,138 @@
 package io.github.mcmetal.metal;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
 
 /**
- * Disk cache for phase-4 shader transpilation artifacts.
+ * Disk cache for phase-4 shader transpilation artifacts, kept in a single memory-mapped {@link ShaderCachePack} behind
+ * a byte-bounded in-memory LRU of decoded artifacts.
  */
 public class ShaderDiskCache {
     record CachedShaderArtifacts(byte[] spirvBinary, String mslSource, ShaderBindingMap bindingMap) {
     }
 
-    private static final Gson GSON = new GsonBuilder().create();
+    private record MemoryEntry(CachedShaderArtifacts artifacts, long bytes, boolean prewarmed) {
+    }
+
+    record Stats(
+        long fileBytes,
+        long liveBytes,
+        int entries,
+        long hits,
+        long misses,
+        long evictions,
+        long memoryHits,
+        long memoryBytes,
+        long prewarmedEntries,
+        long prewarmHits
+    ) {
+        long onDemandLoads() {
+            return hits + misses;
+        }
+
+        double hitRate() {
+            long lookups = memoryHits + hits + misses;
+            return lookups == 0L ? 0.0 : (double) (memoryHits + hits) / lookups;
+        }
+    }
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ShaderDiskCache.class);
+    private static final HexFormat HEX = HexFormat.of();
     private static final String CACHE_DIR_PROPERTY = "mcmetal.phase4.cacheDir";
-    private static final String CACHE_NAMESPACE = "shader-pipeline-v1";
+    private static final String CACHE_NAMESPACE = "shader-pipeline-v4";
+    private static final String FINGERPRINT_FILE_NAME = "toolchain.fingerprint";
     private static final Path DEFAULT_CACHE_DIR = Path.of(System.getProperty("user.home"), ".mcmetal", "cache");
+    private static final List<String> LEGACY_NAMESPACES = List.of("shader-pipeline-v1", "shader-pipeline-v2", "shader-pipeline-v3");
+    private static final String MAX_BYTES_PROPERTY = "mcmetal.phase6.shaderCacheMaxBytes";
+    private static final String MAX_ENTRIES_PROPERTY = "mcmetal.phase6.shaderCacheMaxEntries";
+    private static final long DEFAULT_MAX_BYTES = 256L << 20;
+    private static final int DEFAULT_MAX_ENTRIES = 8192;
+    private static final String MEMORY_CACHE_BYTES_PROPERTY = "mcmetal.phase6.shaderMemoryCacheBytes";
+    private static final long DEFAULT_MEMORY_CACHE_BYTES = 32L << 20;
+    private static final int MEMORY_ENTRY_OVERHEAD_BYTES = 128;
+    private static final int PREWARM_MAX_ENTRIES = Integer.getInteger("mcmetal.phase6.shaderCachePrewarmEntries", 1024);
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(30L);
+    private static final long FLUSH_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5L);
+    private static final long ORPHAN_MIN_AGE_MILLIS = TimeUnit.HOURS.toMillis(1L);
+
+    @Nullable
+    private static volatile Executor sweepExecutor;
+
+    private final long maxBytes = Long.getLong(MAX_BYTES_PROPERTY, DEFAULT_MAX_BYTES);
+    private final int maxEntries = Integer.getInteger(MAX_ENTRIES_PROPERTY, DEFAULT_MAX_ENTRIES);
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong prewarmedEntries = new AtomicLong();
+    private final AtomicLong prewarmHits = new AtomicLong();
+    private final long memoryCacheMaxBytes = Long.getLong(MEMORY_CACHE_BYTES_PROPERTY, DEFAULT_MEMORY_CACHE_BYTES);
+    private final LinkedHashMap<String, MemoryEntry> memoryCache = new LinkedHashMap<>(256, 0.75f, true);
+    private long memoryCacheBytes;
+    private final AtomicBoolean sweepQueued = new AtomicBoolean();
+    private volatile long lastSweepNanos = System.nanoTime();
+    private final AtomicBoolean flushQueued = new AtomicBoolean();
+    private volatile long lastFlushNanos = System.nanoTime();
+
+    @Nullable
+    private ShaderCachePack pack;
+    private boolean packUnavailable;
+    @Nullable
+    private String toolchainFingerprint;
 
     @Nullable
     CachedShaderArtifacts load(String shaderName, String shaderStage, String glslSource) {
-        Path entryDirectory = entryDirectory(shaderName, shaderStage, glslSource);
-        if (!Files.isDirectory(entryDirectory)) {
+        ShaderCachePack openPack = pack();
+        if (openPack == null) {
             return null;
         }
 
+        String key = cacheKey(shaderStage, glslSource, toolchainFingerprint);
+        MemoryEntry remembered = recall(key);
+        if (remembered != null) {
+            memoryHits.incrementAndGet();
+            if (remembered.prewarmed()) {
+                prewarmHits.incrementAndGet();
+            }
+            openPack.touch(key);
+            maybeScheduleFlush();
+            return remembered.artifacts();
+        }
+
         try {
-            byte[] spirvBinary = Files.readAllBytes(entryDirectory.resolve("shader.spv"));
-            String mslSource = Files.readString(entryDirectory.resolve("shader.msl"), StandardCharsets.UTF_8);
-            String reflectionJson = Files.readString(entryDirectory.resolve("reflection.json"), StandardCharsets.UTF_8);
-            ShaderBindingMap bindingMap = GSON.fromJson(reflectionJson, ShaderBindingMap.class);
-            if (bindingMap == null) {
+            ShaderCachePack.Record record = openPack.find(key);
+            if (record == null) {
+                misses.incrementAndGet();
                 return null;
             }
-            return new CachedShaderArtifacts(spirvBinary, mslSource, bindingMap);
-        } catch (IOException ignored) {
+            hits.incrementAndGet();
+            maybeScheduleSweep(false);
+            CachedShaderArtifacts artifacts = decode(record);
+            remember(key, artifacts, false);
+            return artifacts;
+        } catch (IOException | RuntimeException ignored) {
             return null;
         }
     }
@@ -53,54 +145,409 @@ public class ShaderDiskCache {
         String mslSource,
         ShaderBindingMap bindingMap
     ) {
-        Path entryDirectory = entryDirectory(shaderName, shaderStage, glslSource);
-        Path tempDirectory = entryDirectory.resolveSibling(entryDirectory.getFileName() + ".tmp");
+        ShaderCachePack openPack = pack();
+        if (openPack == null) {
+            return;
+        }
+
+        String key = cacheKey(shaderStage, glslSource, toolchainFingerprint);
+        remember(key, new CachedShaderArtifacts(spirvBinary, mslSource, bindingMap), false);
         try {
-            Files.createDirectories(tempDirectory);
-            Files.write(tempDirectory.resolve("shader.spv"), spirvBinary);
-            Files.writeString(tempDirectory.resolve("shader.msl"), mslSource, StandardCharsets.UTF_8);
-            Files.writeString(tempDirectory.resolve("reflection.json"), GSON.toJson(bindingMap), StandardCharsets.UTF_8);
-            Files.move(tempDirectory, entryDirectory, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            openPack.append(
+                key,
+                spirvBinary,
+                mslSource.getBytes(StandardCharsets.UTF_8),
+                writeBindingMap(bindingMap)
+            );
+            maybeScheduleSweep(openPack.liveBytes() > maxBytes || openPack.entryCount() > maxEntries);
         } catch (IOException ignored) {
             // Best-effort caching; runtime shader path still succeeds without cache writes.
-        } finally {
+        }
+    }
+
+    int prewarm() {
+        ShaderCachePack openPack = pack();
+        if (openPack == null) {
+            return 0;
+        }
+
+        // Last-access times in the pack index are the usage log: entries the previous session touched come first.
+        long startNanos = System.nanoTime();
+        List<String> keys = new ArrayList<>();
+        List<CachedShaderArtifacts> decoded = new ArrayList<>();
+        long bytes = 0L;
+        for (String key : openPack.keysByRecentUse(PREWARM_MAX_ENTRIES)) {
+            if (recall(key) != null) {
+                continue;
+            }
+            try {
+                ShaderCachePack.Record record = openPack.peek(key);
+                if (record == null) {
+                    continue;
+                }
+                CachedShaderArtifacts artifacts = decode(record);
+                bytes += estimateBytes(artifacts);
+                if (bytes > memoryCacheMaxBytes) {
+                    break;
+                }
+                keys.add(key);
+                decoded.add(artifacts);
+            } catch (IOException | RuntimeException ignored) {
+                // Skipped; the stage hook loads or recompiles it on demand.
+            }
+        }
+
+        // Least likely first, so the memory LRU evicts those before the entries the next reload is sure to ask for.
+        int prewarmed = 0;
+        for (int i = keys.size() - 1; i >= 0; i--) {
+            if (recall(keys.get(i)) == null) {
+                remember(keys.get(i), decoded.get(i), true);
+                prewarmed++;
+            }
+        }
+        prewarmedEntries.addAndGet(prewarmed);
+        LOGGER.info(
+            "event=metal_phase6 phase=shader_cache_prewarm entries={} bytes={} duration_ms={}",
+            prewarmed,
+            bytes,
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos)
+        );
+        return prewarmed;
+    }
+
+    Stats stats() {
+        ShaderCachePack openPack;
+        synchronized (this) {
+            openPack = pack;
+        }
+        long fileBytes = 0L;
+        long liveBytes = 0L;
+        int entries = 0;
+        if (openPack != null) {
             try {
-                if (Files.isDirectory(tempDirectory)) {
-                    Files.walk(tempDirectory)
-                        .sorted((a, b) -> b.compareTo(a))
-                        .forEach(path -> {
-                            try {
-                                Files.deleteIfExists(path);
-                            } catch (IOException ignoredDelete) {
-                                // Best-effort cleanup.
-                            }
-                        });
+                fileBytes = openPack.fileBytes();
+            } catch (IOException ignored) {
+                // Reported as zero; the next sweep logs the real size.
+            }
+            liveBytes = openPack.liveBytes();
+            entries = openPack.entryCount();
+        }
+        long memoryBytes;
+        synchronized (memoryCache) {
+            memoryBytes = memoryCacheBytes;
+        }
+        return new Stats(
+            fileBytes,
+            liveBytes,
+            entries,
+            hits.get(),
+            misses.get(),
+            evictions.get(),
+            memoryHits.get(),
+            memoryBytes,
+            prewarmedEntries.get(),
+            prewarmHits.get()
+        );
+    }
+
+    /**
+     * Writes pending pack index updates, including access times from memory hits, which prewarm ranks by next session.
+     */
+    void flush() {
+        flushQueued.set(false);
+        lastFlushNanos = System.nanoTime();
+        ShaderCachePack openPack;
+        synchronized (this) {
+            openPack = pack;
+        }
+        if (openPack == null) {
+            return;
+        }
+        try {
+            openPack.flush();
+        } catch (IOException ignored) {
+            // Best-effort; the next flush retries.
+        }
+    }
+
+    void scheduleFlush() {
+        if (flushQueued.compareAndSet(false, true)) {
+            sweepExecutor().execute(this::flush);
+        }
+    }
+
+    void sweep() {
+        sweepQueued.set(false);
+        lastSweepNanos = System.nanoTime();
+        lastFlushNanos = lastSweepNanos;
+        ShaderCachePack openPack = pack();
+        if (openPack == null) {
+            return;
+        }
+
+        deleteOrphans(baseDirectory());
+        try {
+            evictions.addAndGet(openPack.evictLeastRecentlyUsed(maxBytes, maxEntries));
+            if (openPack.needsCompaction()) {
+                openPack.compact();
+            } else {
+                openPack.flush();
+            }
+        } catch (IOException ignored) {
+            // Best-effort; the next sweep retries.
+        }
+
+        Stats stats = stats();
+        LOGGER.info(
+            "event=metal_phase6 phase=shader_cache_sweep file_bytes={} live_bytes={} entries={} evictions={} hits={} "
+                + "misses={} memory_hits={} memory_bytes={} prewarmed={} prewarm_hits={} on_demand_loads={} hit_rate={}",
+            stats.fileBytes(),
+            stats.liveBytes(),
+            stats.entries(),
+            stats.evictions(),
+            stats.hits(),
+            stats.misses(),
+            stats.memoryHits(),
+            stats.memoryBytes(),
+            stats.prewarmedEntries(),
+            stats.prewarmHits(),
+            stats.onDemandLoads(),
+            String.format(Locale.ROOT, "%.3f", stats.hitRate())
+        );
+    }
+
+    @Nullable
+    private MemoryEntry recall(String key) {
+        synchronized (memoryCache) {
+            return memoryCache.get(key);
+        }
+    }
+
+    private void remember(String key, CachedShaderArtifacts artifacts, boolean prewarmed) {
+        long bytes = estimateBytes(artifacts);
+        if (bytes > memoryCacheMaxBytes) {
+            return;
+        }
+        synchronized (memoryCache) {
+            MemoryEntry previous = memoryCache.put(key, new MemoryEntry(artifacts, bytes, prewarmed));
+            memoryCacheBytes += bytes - (previous == null ? 0L : previous.bytes());
+            Iterator<MemoryEntry> eldest = memoryCache.values().iterator();
+            while (memoryCacheBytes > memoryCacheMaxBytes && eldest.hasNext()) {
+                memoryCacheBytes -= eldest.next().bytes();
+                eldest.remove();
+            }
+        }
+    }
+
+    private static CachedShaderArtifacts decode(ShaderCachePack.Record record) {
+        byte[] spirvBinary = new byte[record.spirv().remaining()];
+        record.spirv().get(spirvBinary);
+        String mslSource = StandardCharsets.UTF_8.decode(record.msl()).toString();
+        return new CachedShaderArtifacts(spirvBinary, mslSource, readBindingMap(record.bindings()));
+    }
+
+    private static long estimateBytes(CachedShaderArtifacts artifacts) {
+        ShaderBindingMap bindingMap = artifacts.bindingMap();
+        int bindings = bindingMap.uniforms().size() + bindingMap.textures().size() + bindingMap.samplers().size();
+        return MEMORY_ENTRY_OVERHEAD_BYTES
+            + artifacts.spirvBinary().length
+            + (long) artifacts.mslSource().length() * Character.BYTES
+            + (long) bindings * MEMORY_ENTRY_OVERHEAD_BYTES;
+    }
+
+    static void setSweepExecutorForTests(@Nullable Executor executor) {
+        sweepExecutor = executor;
+    }
+
+    private void maybeScheduleSweep(boolean overCapacity) {
+        if (!overCapacity && System.nanoTime() - lastSweepNanos < SWEEP_INTERVAL_NANOS) {
+            return;
+        }
+        if (sweepQueued.compareAndSet(false, true)) {
+            sweepExecutor().execute(this::sweep);
+        }
+    }
+
+    private void maybeScheduleFlush() {
+        if (System.nanoTime() - lastFlushNanos >= FLUSH_INTERVAL_NANOS) {
+            scheduleFlush();
+        }
+    }
+
+    private static Executor sweepExecutor() {
+        Executor executor = sweepExecutor;
+        if (executor != null) {
+            return executor;
+        }
+        synchronized (ShaderDiskCache.class) {
+            if (sweepExecutor == null) {
+                sweepExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "MCMetal Shader Cache Sweeper");
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                });
+            }
+            return sweepExecutor;
+        }
+    }
+
+    private static void deleteOrphans(Path baseDirectory) {
+        for (String legacyNamespace : LEGACY_NAMESPACES) {
+            deleteRecursively(baseDirectory.resolve(legacyNamespace));
+        }
+
+        long cutoff = System.currentTimeMillis() - ORPHAN_MIN_AGE_MILLIS;
+        try (Stream<Path> paths = Files.walk(baseDirectory, 2)) {
+            for (Path path : paths.filter(candidate -> candidate.getFileName().toString().endsWith(".tmp")).toList()) {
+                // Fresh temp files may belong to a write in flight from another game instance.
+                if (Files.getLastModifiedTime(path).toMillis() < cutoff) {
+                    deleteRecursively(path);
                 }
-            } catch (IOException ignoredCleanup) {
-                // Best-effort cleanup.
             }
+        } catch (IOException ignored) {
+            // Best-effort cleanup.
+        }
+    }
+
+    private static void deleteRecursively(Path root) {
+        if (!Files.exists(root)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        } catch (IOException ignored) {
+            // Best-effort cleanup.
+        }
+    }
+
+    @Nullable
+    synchronized ShaderCachePack pack() {
+        if (pack == null && !packUnavailable) {
+            try {
+                toolchainFingerprint = ShaderToolchainFingerprint.current();
+                Path namespace = baseDirectory().resolve(CACHE_NAMESPACE);
+                resetNamespaceIfToolchainChanged(namespace, toolchainFingerprint);
+                pack = ShaderCachePack.open(namespace);
+                maybeScheduleSweep(true);
+            } catch (IOException | RuntimeException ignored) {
+                // An unreadable cache directory disables caching for this session instead of failing every stage.
+                packUnavailable = true;
+            }
+        }
+        return pack;
+    }
+
+    private static void resetNamespaceIfToolchainChanged(Path namespace, String fingerprint) throws IOException {
+        Path fingerprintFile = namespace.resolve(FINGERPRINT_FILE_NAME);
+        String recorded = Files.isRegularFile(fingerprintFile)
+            ? Files.readString(fingerprintFile, StandardCharsets.UTF_8)
+            : null;
+        if (fingerprint.equals(recorded)) {
+            return;
+        }
+
+        // Every key embeds the fingerprint, so entries from another toolchain are unreachable; drop them wholesale.
+        if (recorded != null) {
+            LOGGER.info(
+                "event=metal_phase6 phase=shader_cache_namespace action=reset previous=\"{}\" current=\"{}\"",
+                recorded,
+                fingerprint
+            );
         }
+        Files.createDirectories(namespace);
+        Files.deleteIfExists(namespace.resolve(ShaderCachePack.DATA_FILE_NAME));
+        Files.deleteIfExists(namespace.resolve(ShaderCachePack.INDEX_FILE_NAME));
+        Files.writeString(fingerprintFile, fingerprint, StandardCharsets.UTF_8);
     }
 
-    private static Path entryDirectory(String shaderName, String shaderStage, String glslSource) {
-        Path baseDirectory = Path.of(System.getProperty(CACHE_DIR_PROPERTY, DEFAULT_CACHE_DIR.toString()));
-        String cacheKey = sanitize(shaderName) + "__" + sanitize(shaderStage) + "__" + sha256(glslSource);
-        return baseDirectory.resolve(CACHE_NAMESPACE).resolve(cacheKey);
+    static Path baseDirectory() {
+        return Path.of(System.getProperty(CACHE_DIR_PROPERTY, DEFAULT_CACHE_DIR.toString()));
+    }
+
+    private static String cacheKey(String shaderStage, String glslSource, String fingerprint) {
+        // Content-addressed: programs with byte-identical stages share one entry regardless of their names.
+        MessageDigest digest = sha256Digest();
+        digest.update(fingerprint.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(shaderStage.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(glslSource.getBytes(StandardCharsets.UTF_8));
+        return sanitize(shaderStage) + "__" + HEX.formatHex(digest.digest());
+    }
+
+    private static byte[] writeBindingMap(ShaderBindingMap bindingMap) {
+        List<byte[]> names = new ArrayList<>();
+        int size = Integer.BYTES * 3;
+        for (ShaderBindingMap.UniformBinding uniform : bindingMap.uniforms()) {
+            names.add(uniform.name().getBytes(StandardCharsets.UTF_8));
+        }
+        for (ShaderBindingMap.TextureBinding texture : bindingMap.textures()) {
+            names.add(texture.name().getBytes(StandardCharsets.UTF_8));
+        }
+        for (ShaderBindingMap.SamplerBinding sampler : bindingMap.samplers()) {
+            names.add(sampler.name().getBytes(StandardCharsets.UTF_8));
+        }
+        for (byte[] name : names) {
+            size += Integer.BYTES * 3 + name.length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        int nameIndex = 0;
+        buffer.putInt(bindingMap.uniforms().size());
+        for (ShaderBindingMap.UniformBinding uniform : bindingMap.uniforms()) {
+            writeBinding(buffer, names.get(nameIndex++), uniform.set(), uniform.binding());
+        }
+        buffer.putInt(bindingMap.textures().size());
+        for (ShaderBindingMap.TextureBinding texture : bindingMap.textures()) {
+            writeBinding(buffer, names.get(nameIndex++), texture.set(), texture.binding());
+        }
+        buffer.putInt(bindingMap.samplers().size());
+        for (ShaderBindingMap.SamplerBinding sampler : bindingMap.samplers()) {
+            writeBinding(buffer, names.get(nameIndex++), sampler.set(), sampler.binding());
+        }
+        return buffer.array();
+    }
+
+    private static void writeBinding(ByteBuffer buffer, byte[] name, int set, int binding) {
+        buffer.putInt(name.length).put(name).putInt(set).putInt(binding);
+    }
+
+    private static ShaderBindingMap readBindingMap(ByteBuffer buffer) {
+        List<ShaderBindingMap.UniformBinding> uniforms = new ArrayList<>();
+        for (int count = buffer.getInt(); count > 0; count--) {
+            uniforms.add(new ShaderBindingMap.UniformBinding(readName(buffer), buffer.getInt(), buffer.getInt()));
+        }
+        List<ShaderBindingMap.TextureBinding> textures = new ArrayList<>();
+        for (int count = buffer.getInt(); count > 0; count--) {
+            textures.add(new ShaderBindingMap.TextureBinding(readName(buffer), buffer.getInt(), buffer.getInt()));
+        }
+        List<ShaderBindingMap.SamplerBinding> samplers = new ArrayList<>();
+        for (int count = buffer.getInt(); count > 0; count--) {
+            samplers.add(new ShaderBindingMap.SamplerBinding(readName(buffer), buffer.getInt(), buffer.getInt()));
+        }
+        return new ShaderBindingMap(List.copyOf(uniforms), List.copyOf(textures), List.copyOf(samplers));
+    }
+
+    private static String readName(ByteBuffer buffer) {
+        byte[] name = new byte[buffer.getInt()];
+        buffer.get(name);
+        return new String(name, StandardCharsets.UTF_8);
     }
 
     private static String sanitize(String value) {
         return value.replaceAll("[^A-Za-z0-9_.-]", "_");
     }
 
-    private static String sha256(String value) {
+    static String sha256(String value) {
+        return HEX.formatHex(sha256Digest().digest(value.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static MessageDigest sha256Digest() {
         try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] bytes = digest.digest(value.getBytes(StandardCharsets.UTF_8));
-            StringBuilder builder = new StringBuilder(bytes.length * 2);
-            for (byte b : bytes) {
-                builder.append(String.format("%02x", b));
-            }
-            return builder.toString();
+            return MessageDigest.getInstance("SHA-256");
         } catch (NoSuchAlgorithmException e) {
             throw new IllegalStateException("SHA-256 digest is unavailable", e);
         }
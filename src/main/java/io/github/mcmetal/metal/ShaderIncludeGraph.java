@@ -0,0 +1,140 @@
+package io.github.mcmetal.metal;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Dependency graph from shader stages to the {@code #moj_import} includes they resolved, tracked by content hash.
+ */
+final class ShaderIncludeGraph {
+    enum Reason {
+        NEW_STAGE("new_stage"),
+        SOURCE_CHANGED("source_changed"),
+        INCLUDE_CHANGED("include_changed"),
+        IMPORTS_CHANGED("imports_changed"),
+        PREVIOUS_FAILED("previous_failed");
+
+        private final String logName;
+
+        Reason(String logName) {
+            this.logName = logName;
+        }
+
+        String logName() {
+            return logName;
+        }
+    }
+
+    /**
+     * Outcome for one stage load; {@code reusable} is set when nothing it depends on changed since the last load.
+     */
+    record Decision(
+        @Nullable Reason reason,
+        List<String> changedIncludes,
+        @Nullable CompletableFuture<MetalShaderProgramBridge.StageArtifacts> reusable
+    ) {
+    }
+
+    record Stats(int stages, int includes, long rebuilt, long reused) {
+    }
+
+    private static final class StageNode {
+        private final String sourceHash;
+        private final Map<String, String> includeHashes;
+        @Nullable
+        private CompletableFuture<MetalShaderProgramBridge.StageArtifacts> artifacts;
+
+        private StageNode(String sourceHash, Map<String, String> includeHashes) {
+            this.sourceHash = sourceHash;
+            this.includeHashes = includeHashes;
+        }
+    }
+
+    private final Map<String, StageNode> stages = new HashMap<>();
+    private final Map<String, String> includeHashes = new HashMap<>();
+    private final Map<String, Set<String>> dependents = new HashMap<>();
+    private long rebuilt;
+    private long reused;
+
+    /**
+     * Compares a stage's flattened source and resolved includes against its previous load and records the new state.
+     */
+    synchronized Decision resolve(String stageKey, String glslSource, Map<String, String> includeSources) {
+        String sourceHash = ShaderDiskCache.sha256(glslSource);
+        Map<String, String> hashes = new LinkedHashMap<>();
+        for (Map.Entry<String, String> include : includeSources.entrySet()) {
+            hashes.put(include.getKey(), ShaderDiskCache.sha256(include.getValue()));
+        }
+
+        StageNode previous = stages.get(stageKey);
+        if (previous != null && previous.sourceHash.equals(sourceHash) && isReusable(previous.artifacts)) {
+            reused++;
+            return new Decision(null, List.of(), previous.artifacts);
+        }
+
+        Reason reason;
+        List<String> changedIncludes = new ArrayList<>();
+        if (previous == null) {
+            reason = Reason.NEW_STAGE;
+        } else if (previous.sourceHash.equals(sourceHash)) {
+            reason = Reason.PREVIOUS_FAILED;
+        } else if (!previous.includeHashes.keySet().equals(hashes.keySet())) {
+            reason = Reason.IMPORTS_CHANGED;
+        } else {
+            for (Map.Entry<String, String> include : hashes.entrySet()) {
+                if (!include.getValue().equals(previous.includeHashes.get(include.getKey()))) {
+                    changedIncludes.add(include.getKey());
+                }
+            }
+            reason = changedIncludes.isEmpty() ? Reason.SOURCE_CHANGED : Reason.INCLUDE_CHANGED;
+        }
+
+        if (previous != null) {
+            for (String include : previous.includeHashes.keySet()) {
+                Set<String> stagesUsingInclude = dependents.get(include);
+                if (stagesUsingInclude != null) {
+                    stagesUsingInclude.remove(stageKey);
+                }
+            }
+        }
+        for (String include : hashes.keySet()) {
+            dependents.computeIfAbsent(include, ignored -> new TreeSet<>()).add(stageKey);
+        }
+        includeHashes.putAll(hashes);
+        stages.put(stageKey, new StageNode(sourceHash, Map.copyOf(hashes)));
+        rebuilt++;
+        return new Decision(reason, List.copyOf(changedIncludes), null);
+    }
+
+    synchronized void attach(String stageKey, CompletableFuture<MetalShaderProgramBridge.StageArtifacts> artifacts) {
+        StageNode node = stages.get(stageKey);
+        if (node != null) {
+            node.artifacts = artifacts;
+        }
+    }
+
+    synchronized List<String> dependents(String include) {
+        Set<String> stagesUsingInclude = dependents.get(include);
+        return stagesUsingInclude == null ? List.of() : List.copyOf(stagesUsingInclude);
+    }
+
+    synchronized Stats stats() {
+        return new Stats(stages.size(), includeHashes.size(), rebuilt, reused);
+    }
+
+    private static boolean isReusable(@Nullable CompletableFuture<MetalShaderProgramBridge.StageArtifacts> artifacts) {
+        if (artifacts == null) {
+            return false;
+        }
+        // A load still in flight is shared; a finished one only if it produced artifacts.
+        return !artifacts.isDone() || !artifacts.isCompletedExceptionally() && artifacts.join() != null;
+    }
+}
@@ -0,0 +1,96 @@
+package io.github.mcmetal.metal;
+
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Identity of the GLSL->SPIR-V->MSL toolchain and its options, probed once per session for shader cache keys.
+ */
+final class ShaderToolchainFingerprint {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ShaderToolchainFingerprint.class);
+    private static final long VERSION_PROBE_TIMEOUT_SECONDS = 5L;
+
+    @Nullable
+    private static volatile String current;
+
+    private ShaderToolchainFingerprint() {
+    }
+
+    static String current() {
+        String probed = current;
+        if (probed != null) {
+            return probed;
+        }
+        synchronized (ShaderToolchainFingerprint.class) {
+            if (current == null) {
+                current = probe();
+                LOGGER.info("event=metal_phase6 phase=shader_toolchain_fingerprint fingerprint=\"{}\"", current);
+            }
+            return current;
+        }
+    }
+
+    static void setForTests(String fingerprint) {
+        current = fingerprint;
+    }
+
+    static void resetForTests() {
+        current = null;
+    }
+
+    private static String probe() {
+        StringBuilder fingerprint = new StringBuilder(256);
+        if (InProcessShaderToolchain.isSelected()) {
+            fingerprint.append(InProcessShaderToolchain.fingerprint());
+        } else {
+            String glslang = GlslToSpirvCompiler.toolPath();
+            String spirvCross = SpirvToMslTranslator.toolPath();
+            fingerprint.append("glslang=").append(toolVersion(glslang, "--version"))
+                .append(" args=").append(String.join(" ", GlslToSpirvCompiler.TARGET_ARGUMENTS))
+                .append("; spirv-cross=").append(toolVersion(spirvCross, "--revision"))
+                .append(" args=").append(String.join(" ", SpirvToMslTranslator.MSL_ARGUMENTS));
+        }
+        fingerprint.append("; reflection=").append(SpirvReflectionExtractor.mode());
+        return fingerprint.toString();
+    }
+
+    private static String toolVersion(String toolPath, String versionArgument) {
+        Path output = null;
+        try {
+            // Output goes to a file rather than a pipe, so the timeout still applies when the tool hangs mid-write.
+            output = Files.createTempFile("mcmetal-tool-version", ".txt");
+            Process process = new ProcessBuilder(List.of(toolPath, versionArgument))
+                .redirectErrorStream(true)
+                .redirectOutput(output.toFile())
+                .start();
+            process.getOutputStream().close();
+            if (!process.waitFor(VERSION_PROBE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+                return toolPath + "@timeout";
+            }
+            String version = new String(Files.readAllBytes(output), StandardCharsets.UTF_8);
+            return toolPath + "@" + version.strip().replaceAll("\\s+", " ");
+        } catch (IOException exception) {
+            return toolPath + "@unavailable";
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            return toolPath + "@interrupted";
+        } finally {
+            if (output != null) {
+                try {
+                    Files.deleteIfExists(output);
+                } catch (IOException ignored) {
+                    // Best-effort cleanup.
+                }
+            }
+        }
+    }
+}
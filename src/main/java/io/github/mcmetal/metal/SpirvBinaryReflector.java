@@ -0,0 +1,541 @@
+package io.github.mcmetal.metal;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads UBO, separate image and separate sampler bindings straight from a SPIR-V word stream.
+ *
+ * <p>Classification follows SPIRV-Cross's shader resource lists, so the result matches {@code spirv-cross --reflect}.
+ * {@link #reflectUniformLayout} additionally walks UBO member decorations for the std140 staging layout.
+ */
+final class SpirvBinaryReflector {
+    private static final int MAGIC = 0x07230203;
+    private static final int HEADER_WORDS = 5;
+
+    private static final int OP_NAME = 5;
+    private static final int OP_MEMBER_NAME = 6;
+    private static final int OP_TYPE_INT = 21;
+    private static final int OP_TYPE_FLOAT = 22;
+    private static final int OP_TYPE_VECTOR = 23;
+    private static final int OP_TYPE_MATRIX = 24;
+    private static final int OP_TYPE_IMAGE = 25;
+    private static final int OP_TYPE_SAMPLER = 26;
+    private static final int OP_TYPE_ARRAY = 28;
+    private static final int OP_TYPE_RUNTIME_ARRAY = 29;
+    private static final int OP_TYPE_STRUCT = 30;
+    private static final int OP_TYPE_POINTER = 32;
+    private static final int OP_VARIABLE = 59;
+    private static final int OP_CONSTANT = 43;
+    private static final int OP_DECORATE = 71;
+    private static final int OP_MEMBER_DECORATE = 72;
+
+    private static final int DECORATION_BLOCK = 2;
+    private static final int DECORATION_ARRAY_STRIDE = 6;
+    private static final int DECORATION_MATRIX_STRIDE = 7;
+    private static final int DECORATION_OFFSET = 35;
+    private static final int DECORATION_BINDING = 33;
+    private static final int DECORATION_DESCRIPTOR_SET = 34;
+
+    private static final int STORAGE_UNIFORM_CONSTANT = 0;
+    private static final int STORAGE_UNIFORM = 2;
+
+    private static final int DIM_SUBPASS_DATA = 6;
+    private static final int IMAGE_SAMPLED_STORAGE = 2;
+
+    private static final int KIND_IMAGE = 1;
+    private static final int KIND_SAMPLER = 2;
+    private static final int KIND_ARRAY = 3;
+    private static final int KIND_STRUCT = 4;
+    private static final int KIND_POINTER = 5;
+    private static final int KIND_FLOAT = 6;
+    private static final int KIND_INT = 7;
+    private static final int KIND_VECTOR = 8;
+    private static final int KIND_MATRIX = 9;
+
+    private SpirvBinaryReflector() {
+    }
+
+    static ShaderBindingMap reflect(String shaderName, byte[] spirvBinary) {
+        boolean littleEndian = littleEndian(shaderName, spirvBinary);
+        int wordCount = spirvBinary.length / Integer.BYTES;
+        int bound = bound(shaderName, spirvBinary, littleEndian);
+
+        // Per-id tables; names are kept as word offsets and only decoded for ids that end up in the map.
+        int[] nameWord = new int[bound];
+        int[] descriptorSet = new int[bound];
+        int[] binding = new int[bound];
+        boolean[] block = new boolean[bound];
+        byte[] kind = new byte[bound];
+        int[] operand = new int[bound];
+        int[] imageDim = new int[bound];
+        int[] imageSampled = new int[bound];
+        Arrays.fill(binding, -1);
+        Arrays.fill(nameWord, -1);
+        int[] variables = new int[16];
+        int variableCount = 0;
+
+        int word = HEADER_WORDS;
+        while (word < wordCount) {
+            int instruction = readWord(spirvBinary, word, littleEndian);
+            int length = instruction >>> 16;
+            int opcode = instruction & 0xFFFF;
+            if (length < minimumLength(opcode) || word + length > wordCount) {
+                throw new SpirvReflectionExtractor.ReflectionException(
+                    "SPIR-V module for '" + shaderName + "' has a malformed instruction at word " + word + "."
+                );
+            }
+
+            switch (opcode) {
+                case OP_NAME -> {
+                    int target = id(spirvBinary, word + 1, littleEndian, bound, shaderName);
+                    nameWord[target] = word + 2;
+                }
+                case OP_DECORATE -> {
+                    int target = id(spirvBinary, word + 1, littleEndian, bound, shaderName);
+                    int decoration = readWord(spirvBinary, word + 2, littleEndian);
+                    if (decoration == DECORATION_BLOCK) {
+                        block[target] = true;
+                    } else if (decoration == DECORATION_BINDING && length > 3) {
+                        binding[target] = readWord(spirvBinary, word + 3, littleEndian);
+                    } else if (decoration == DECORATION_DESCRIPTOR_SET && length > 3) {
+                        descriptorSet[target] = readWord(spirvBinary, word + 3, littleEndian);
+                    }
+                }
+                case OP_TYPE_IMAGE -> {
+                    int result = id(spirvBinary, word + 1, littleEndian, bound, shaderName);
+                    kind[result] = KIND_IMAGE;
+                    imageDim[result] = readWord(spirvBinary, word + 3, littleEndian);
+                    imageSampled[result] = readWord(spirvBinary, word + 7, littleEndian);
+                }
+                case OP_TYPE_SAMPLER -> kind[id(spirvBinary, word + 1, littleEndian, bound, shaderName)] = KIND_SAMPLER;
+                case OP_TYPE_ARRAY, OP_TYPE_RUNTIME_ARRAY -> {
+                    int result = id(spirvBinary, word + 1, littleEndian, bound, shaderName);
+                    kind[result] = KIND_ARRAY;
+                    operand[result] = id(spirvBinary, word + 2, littleEndian, bound, shaderName);
+                }
+                case OP_TYPE_STRUCT -> kind[id(spirvBinary, word + 1, littleEndian, bound, shaderName)] = KIND_STRUCT;
+                case OP_TYPE_POINTER -> {
+                    int result = id(spirvBinary, word + 1, littleEndian, bound, shaderName);
+                    kind[result] = KIND_POINTER;
+                    operand[result] = id(spirvBinary, word + 3, littleEndian, bound, shaderName);
+                }
+                case OP_VARIABLE -> {
+                    int storageClass = readWord(spirvBinary, word + 3, littleEndian);
+                    if (storageClass == STORAGE_UNIFORM || storageClass == STORAGE_UNIFORM_CONSTANT) {
+                        if (variableCount == variables.length) {
+                            variables = Arrays.copyOf(variables, variables.length * 2);
+                        }
+                        variables[variableCount++] = word;
+                    }
+                }
+                default -> {
+                }
+            }
+            word += length;
+        }
+
+        List<ShaderBindingMap.UniformBinding> uniforms = new ArrayList<>();
+        List<ShaderBindingMap.TextureBinding> textures = new ArrayList<>();
+        List<ShaderBindingMap.SamplerBinding> samplers = new ArrayList<>();
+        for (int i = 0; i < variableCount; i++) {
+            int variableWord = variables[i];
+            int pointerType = id(spirvBinary, variableWord + 1, littleEndian, bound, shaderName);
+            int variable = id(spirvBinary, variableWord + 2, littleEndian, bound, shaderName);
+            int storageClass = readWord(spirvBinary, variableWord + 3, littleEndian);
+            if (kind[pointerType] != KIND_POINTER) {
+                continue;
+            }
+            int type = operand[pointerType];
+            for (int hops = 0; kind[type] == KIND_ARRAY && hops < bound; hops++) {
+                type = operand[type];
+            }
+
+            if (storageClass == STORAGE_UNIFORM && kind[type] == KIND_STRUCT && block[type]) {
+                // SPIRV-Cross names UBOs after their block type, not the instance variable.
+                String name = nameWord[type] >= 0 ? decodeName(spirvBinary, nameWord[type], littleEndian) : "_" + type;
+                uniforms.add(new ShaderBindingMap.UniformBinding(name, descriptorSet[variable], binding[variable]));
+            } else if (storageClass == STORAGE_UNIFORM_CONSTANT && kind[type] == KIND_IMAGE
+                && imageSampled[type] != IMAGE_SAMPLED_STORAGE && imageDim[type] != DIM_SUBPASS_DATA) {
+                textures.add(new ShaderBindingMap.TextureBinding(
+                    variableName(spirvBinary, nameWord, variable, littleEndian),
+                    descriptorSet[variable],
+                    binding[variable]
+                ));
+            } else if (storageClass == STORAGE_UNIFORM_CONSTANT && kind[type] == KIND_SAMPLER) {
+                samplers.add(new ShaderBindingMap.SamplerBinding(
+                    variableName(spirvBinary, nameWord, variable, littleEndian),
+                    descriptorSet[variable],
+                    binding[variable]
+                ));
+            }
+        }
+        return new ShaderBindingMap(List.copyOf(uniforms), List.copyOf(textures), List.copyOf(samplers));
+    }
+
+    static UniformBlockLayout reflectUniformLayout(String shaderName, byte[] spirvBinary) {
+        boolean littleEndian = littleEndian(shaderName, spirvBinary);
+        int wordCount = spirvBinary.length / Integer.BYTES;
+        int bound = bound(shaderName, spirvBinary, littleEndian);
+
+        int[] nameWord = new int[bound];
+        int[] descriptorSet = new int[bound];
+        int[] binding = new int[bound];
+        boolean[] block = new boolean[bound];
+        byte[] kind = new byte[bound];
+        int[] operand = new int[bound];
+        // Vector component count, matrix column count or array length id, depending on kind.
+        int[] count = new int[bound];
+        int[] typeWord = new int[bound];
+        int[] arrayStride = new int[bound];
+        int[] constantValue = new int[bound];
+        Arrays.fill(nameWord, -1);
+        Arrays.fill(binding, -1);
+        Map<Long, Integer> memberNameWord = new HashMap<>();
+        Map<Long, Integer> memberOffset = new HashMap<>();
+        Map<Long, Integer> memberMatrixStride = new HashMap<>();
+        List<Integer> blockVariables = new ArrayList<>();
+
+        int word = HEADER_WORDS;
+        while (word < wordCount) {
+            int instruction = readWord(spirvBinary, word, littleEndian);
+            int length = instruction >>> 16;
+            int opcode = instruction & 0xFFFF;
+            if (length < minimumLength(opcode) || word + length > wordCount) {
+                throw new SpirvReflectionExtractor.ReflectionException(
+                    "SPIR-V module for '" + shaderName + "' has a malformed instruction at word " + word + "."
+                );
+            }
+
+            switch (opcode) {
+                case OP_NAME -> nameWord[id(spirvBinary, word + 1, littleEndian, bound, shaderName)] = word + 2;
+                case OP_MEMBER_NAME -> {
+                    int target = id(spirvBinary, word + 1, littleEndian, bound, shaderName);
+                    memberNameWord.put(memberKey(target, readWord(spirvBinary, word + 2, littleEndian)), word + 3);
+                }
+                case OP_DECORATE -> {
+                    int target = id(spirvBinary, word + 1, littleEndian, bound, shaderName);
+                    int decoration = readWord(spirvBinary, word + 2, littleEndian);
+                    if (decoration == DECORATION_BLOCK) {
+                        block[target] = true;
+                    } else if (decoration == DECORATION_BINDING && length > 3) {
+                        binding[target] = readWord(spirvBinary, word + 3, littleEndian);
+                    } else if (decoration == DECORATION_DESCRIPTOR_SET && length > 3) {
+                        descriptorSet[target] = readWord(spirvBinary, word + 3, littleEndian);
+                    } else if (decoration == DECORATION_ARRAY_STRIDE && length > 3) {
+                        arrayStride[target] = readWord(spirvBinary, word + 3, littleEndian);
+                    }
+                }
+                case OP_MEMBER_DECORATE -> {
+                    long key = memberKey(
+                        id(spirvBinary, word + 1, littleEndian, bound, shaderName),
+                        readWord(spirvBinary, word + 2, littleEndian)
+                    );
+                    int decoration = readWord(spirvBinary, word + 3, littleEndian);
+                    if (decoration == DECORATION_OFFSET && length > 4) {
+                        memberOffset.put(key, readWord(spirvBinary, word + 4, littleEndian));
+                    } else if (decoration == DECORATION_MATRIX_STRIDE && length > 4) {
+                        memberMatrixStride.put(key, readWord(spirvBinary, word + 4, littleEndian));
+                    }
+                }
+                case OP_TYPE_INT -> kind[id(spirvBinary, word + 1, littleEndian, bound, shaderName)] = KIND_INT;
+                case OP_TYPE_FLOAT -> kind[id(spirvBinary, word + 1, littleEndian, bound, shaderName)] = KIND_FLOAT;
+                case OP_TYPE_VECTOR, OP_TYPE_MATRIX, OP_TYPE_ARRAY -> {
+                    int result = id(spirvBinary, word + 1, littleEndian, bound, shaderName);
+                    kind[result] = (byte) (opcode == OP_TYPE_VECTOR ? KIND_VECTOR : opcode == OP_TYPE_MATRIX ? KIND_MATRIX : KIND_ARRAY);
+                    operand[result] = id(spirvBinary, word + 2, littleEndian, bound, shaderName);
+                    count[result] = readWord(spirvBinary, word + 3, littleEndian);
+                }
+                case OP_TYPE_STRUCT -> {
+                    int result = id(spirvBinary, word + 1, littleEndian, bound, shaderName);
+                    kind[result] = KIND_STRUCT;
+                    typeWord[result] = word;
+                }
+                case OP_TYPE_POINTER -> {
+                    int result = id(spirvBinary, word + 1, littleEndian, bound, shaderName);
+                    kind[result] = KIND_POINTER;
+                    operand[result] = id(spirvBinary, word + 3, littleEndian, bound, shaderName);
+                }
+                case OP_CONSTANT -> constantValue[id(spirvBinary, word + 2, littleEndian, bound, shaderName)] =
+                    readWord(spirvBinary, word + 3, littleEndian);
+                case OP_VARIABLE -> {
+                    if (readWord(spirvBinary, word + 3, littleEndian) == STORAGE_UNIFORM) {
+                        blockVariables.add(word);
+                    }
+                }
+                default -> {
+                }
+            }
+            word += length;
+        }
+
+        SpirvTypes types = new SpirvTypes(
+            spirvBinary, littleEndian, bound, shaderName, kind, operand, count, typeWord, arrayStride, constantValue,
+            memberOffset, memberMatrixStride
+        );
+        List<UniformBlockLayout.Block> blocks = new ArrayList<>();
+        for (int variableWord : blockVariables) {
+            int pointerType = id(spirvBinary, variableWord + 1, littleEndian, bound, shaderName);
+            int variable = id(spirvBinary, variableWord + 2, littleEndian, bound, shaderName);
+            if (kind[pointerType] != KIND_POINTER) {
+                continue;
+            }
+            int type = operand[pointerType];
+            if (kind[type] != KIND_STRUCT || !block[type]) {
+                continue;
+            }
+
+            List<UniformBlockLayout.Member> members = new ArrayList<>();
+            int memberCount = (readWord(spirvBinary, typeWord[type], littleEndian) >>> 16) - 2;
+            for (int member = 0; member < memberCount; member++) {
+                long key = memberKey(type, member);
+                Integer offset = memberOffset.get(key);
+                if (offset == null) {
+                    continue;
+                }
+                int memberType = id(spirvBinary, typeWord[type] + 2 + member, littleEndian, bound, shaderName);
+                UniformBlockLayout.MemberType layoutType = types.memberType(memberType);
+                if (layoutType == null) {
+                    // Arrays and nested structs still count towards the block size but get no typed setter.
+                    continue;
+                }
+                Integer nameAt = memberNameWord.get(key);
+                members.add(new UniformBlockLayout.Member(
+                    nameAt != null ? decodeName(spirvBinary, nameAt, littleEndian) : "_m" + member,
+                    layoutType,
+                    offset,
+                    memberMatrixStride.getOrDefault(key, 0)
+                ));
+            }
+            String name = nameWord[type] >= 0 ? decodeName(spirvBinary, nameWord[type], littleEndian) : "_" + type;
+            blocks.add(new UniformBlockLayout.Block(
+                name,
+                descriptorSet[variable],
+                binding[variable],
+                types.size(type, 0, 0),
+                List.copyOf(members)
+            ));
+        }
+        return blocks.isEmpty() ? UniformBlockLayout.EMPTY : new UniformBlockLayout(List.copyOf(blocks));
+    }
+
+    private record SpirvTypes(
+        byte[] spirvBinary,
+        boolean littleEndian,
+        int bound,
+        String shaderName,
+        byte[] kind,
+        int[] operand,
+        int[] count,
+        int[] typeWord,
+        int[] arrayStride,
+        int[] constantValue,
+        Map<Long, Integer> memberOffset,
+        Map<Long, Integer> memberMatrixStride
+    ) {
+        @Nullable
+        UniformBlockLayout.MemberType memberType(int type) {
+            return switch (kind[type]) {
+                case KIND_FLOAT -> UniformBlockLayout.MemberType.FLOAT;
+                case KIND_INT -> UniformBlockLayout.MemberType.INT;
+                case KIND_VECTOR -> UniformBlockLayout.MemberType.of(kind[operand[type]] == KIND_INT, count[type], 1);
+                case KIND_MATRIX -> {
+                    int column = operand[type];
+                    yield kind[column] == KIND_VECTOR && kind[operand[column]] == KIND_FLOAT
+                        ? UniformBlockLayout.MemberType.of(false, count[column], count[type])
+                        : null;
+                }
+                default -> null;
+            };
+        }
+
+        /**
+         * Std140 size of a type; structs round up to 16 bytes and matrices use the stride of the member holding them.
+         */
+        int size(int type, int matrixStride, int depth) {
+            if (depth > bound) {
+                throw new SpirvReflectionExtractor.ReflectionException(
+                    "SPIR-V module for '" + shaderName + "' has a recursive type " + type + "."
+                );
+            }
+            return switch (kind[type]) {
+                case KIND_FLOAT, KIND_INT -> Integer.BYTES;
+                case KIND_VECTOR -> count[type] * Integer.BYTES;
+                case KIND_MATRIX -> count[type] * matrixStride;
+                case KIND_ARRAY -> {
+                    int lengthId = count[type];
+                    int length = lengthId > 0 && lengthId < bound ? constantValue[lengthId] : 0;
+                    yield Math.max(length, 0) * arrayStride[type];
+                }
+                case KIND_STRUCT -> {
+                    int memberCount = (readWord(spirvBinary, typeWord[type], littleEndian) >>> 16) - 2;
+                    int end = 0;
+                    for (int member = 0; member < memberCount; member++) {
+                        long key = memberKey(type, member);
+                        Integer offset = memberOffset.get(key);
+                        if (offset == null) {
+                            continue;
+                        }
+                        int memberType = id(spirvBinary, typeWord[type] + 2 + member, littleEndian, bound, shaderName);
+                        end = Math.max(end, offset + size(memberType, memberMatrixStride.getOrDefault(key, 0), depth + 1));
+                    }
+                    yield (end + 15) & ~15;
+                }
+                default -> 0;
+            };
+        }
+    }
+
+    /**
+     * Returns a copy of the module with every uniform buffer's binding decoration raised by {@code offset}.
+     */
+    static byte[] offsetUniformBufferBindings(String shaderName, byte[] spirvBinary, int offset) {
+        boolean littleEndian = littleEndian(shaderName, spirvBinary);
+        int wordCount = spirvBinary.length / Integer.BYTES;
+        int bound = bound(shaderName, spirvBinary, littleEndian);
+
+        // Decorations precede the variables they target, so binding words are collected first and patched after.
+        boolean[] uniformBuffer = new boolean[bound];
+        int[] bindingWords = new int[16];
+        int bindingCount = 0;
+        int word = HEADER_WORDS;
+        while (word < wordCount) {
+            int instruction = readWord(spirvBinary, word, littleEndian);
+            int length = instruction >>> 16;
+            int opcode = instruction & 0xFFFF;
+            if (length < minimumLength(opcode) || word + length > wordCount) {
+                throw new SpirvReflectionExtractor.ReflectionException(
+                    "SPIR-V module for '" + shaderName + "' has a malformed instruction at word " + word + "."
+                );
+            }
+
+            if (opcode == OP_DECORATE && length > 3 && readWord(spirvBinary, word + 2, littleEndian) == DECORATION_BINDING) {
+                if (bindingCount == bindingWords.length) {
+                    bindingWords = Arrays.copyOf(bindingWords, bindingWords.length * 2);
+                }
+                bindingWords[bindingCount++] = word + 3;
+            } else if (opcode == OP_VARIABLE && readWord(spirvBinary, word + 3, littleEndian) == STORAGE_UNIFORM) {
+                uniformBuffer[id(spirvBinary, word + 2, littleEndian, bound, shaderName)] = true;
+            }
+            word += length;
+        }
+
+        byte[] patched = spirvBinary.clone();
+        for (int i = 0; i < bindingCount; i++) {
+            int bindingWord = bindingWords[i];
+            if (uniformBuffer[id(spirvBinary, bindingWord - 2, littleEndian, bound, shaderName)]) {
+                int binding = readWord(spirvBinary, bindingWord, littleEndian);
+                writeWord(patched, bindingWord, littleEndian, binding + offset);
+            }
+        }
+        return patched;
+    }
+
+    private static long memberKey(int structType, int member) {
+        return ((long) structType << 32) | (member & 0xFFFFFFFFL);
+    }
+
+    private static boolean littleEndian(String shaderName, byte[] spirvBinary) {
+        if (spirvBinary.length < HEADER_WORDS * Integer.BYTES || spirvBinary.length % Integer.BYTES != 0) {
+            throw new SpirvReflectionExtractor.ReflectionException(
+                "SPIR-V module for '" + shaderName + "' is truncated (" + spirvBinary.length + " bytes)."
+            );
+        }
+        if (readWord(spirvBinary, 0, true) == MAGIC) {
+            return true;
+        } else if (readWord(spirvBinary, 0, false) == MAGIC) {
+            return false;
+        }
+        throw new SpirvReflectionExtractor.ReflectionException(
+            "Input for '" + shaderName + "' is not a SPIR-V module."
+        );
+    }
+
+    private static int bound(String shaderName, byte[] spirvBinary, boolean littleEndian) {
+        int bound = readWord(spirvBinary, 3, littleEndian);
+        if (bound <= 0 || bound > spirvBinary.length / Integer.BYTES + 1) {
+            throw new SpirvReflectionExtractor.ReflectionException(
+                "SPIR-V module for '" + shaderName + "' has an invalid id bound " + bound + "."
+            );
+        }
+        return bound;
+    }
+
+    private static String variableName(byte[] spirvBinary, int[] nameWord, int variable, boolean littleEndian) {
+        return nameWord[variable] >= 0 ? decodeName(spirvBinary, nameWord[variable], littleEndian) : "_" + variable;
+    }
+
+    private static String decodeName(byte[] spirvBinary, int word, boolean littleEndian) {
+        if (littleEndian) {
+            // Literal strings pack the first byte into the low-order byte of each word, so they read straight through.
+            int start = word * Integer.BYTES;
+            int end = start;
+            while (end < spirvBinary.length && spirvBinary[end] != 0) {
+                end++;
+            }
+            return new String(spirvBinary, start, end - start, StandardCharsets.UTF_8);
+        }
+
+        byte[] name = new byte[spirvBinary.length - word * Integer.BYTES];
+        int length = 0;
+        for (int current = word; current < spirvBinary.length / Integer.BYTES; current++) {
+            int value = readWord(spirvBinary, current, false);
+            for (int shift = 0; shift < Integer.SIZE; shift += Byte.SIZE) {
+                byte character = (byte) (value >>> shift);
+                if (character == 0) {
+                    return new String(name, 0, length, StandardCharsets.UTF_8);
+                }
+                name[length++] = character;
+            }
+        }
+        return new String(name, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private static int minimumLength(int opcode) {
+        return switch (opcode) {
+            case OP_NAME, OP_DECORATE, OP_TYPE_RUNTIME_ARRAY, OP_TYPE_FLOAT -> 3;
+            case OP_MEMBER_NAME, OP_MEMBER_DECORATE, OP_TYPE_INT, OP_TYPE_VECTOR, OP_TYPE_MATRIX, OP_CONSTANT,
+                OP_TYPE_ARRAY, OP_TYPE_POINTER, OP_VARIABLE -> 4;
+            case OP_TYPE_IMAGE -> 9;
+            default -> 1;
+        };
+    }
+
+    private static int id(byte[] spirvBinary, int word, boolean littleEndian, int bound, String shaderName) {
+        int value = readWord(spirvBinary, word, littleEndian);
+        if (value <= 0 || value >= bound) {
+            throw new SpirvReflectionExtractor.ReflectionException(
+                "SPIR-V module for '" + shaderName + "' references id " + value + " outside bound " + bound + "."
+            );
+        }
+        return value;
+    }
+
+    private static int readWord(byte[] bytes, int word, boolean littleEndian) {
+        int offset = word * Integer.BYTES;
+        if (littleEndian) {
+            return (bytes[offset] & 0xFF)
+                | ((bytes[offset + 1] & 0xFF) << 8)
+                | ((bytes[offset + 2] & 0xFF) << 16)
+                | ((bytes[offset + 3] & 0xFF) << 24);
+        }
+        return ((bytes[offset] & 0xFF) << 24)
+            | ((bytes[offset + 1] & 0xFF) << 16)
+            | ((bytes[offset + 2] & 0xFF) << 8)
+            | (bytes[offset + 3] & 0xFF);
+    }
+
+    private static void writeWord(byte[] bytes, int word, boolean littleEndian, int value) {
+        int offset = word * Integer.BYTES;
+        for (int i = 0; i < Integer.BYTES; i++) {
+            int shift = littleEndian ? i * Byte.SIZE : (Integer.BYTES - 1 - i) * Byte.SIZE;
+            bytes[offset + i] = (byte) (value >>> shift);
+        }
+    }
+}
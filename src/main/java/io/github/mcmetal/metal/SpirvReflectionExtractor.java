@@ -4,6 +4,8 @@ import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.nio.file.Files;
@@ -11,9 +13,13 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Locale;
 
 /**
- * Extracts uniform/texture/sampler bindings from SPIR-V via spirv-cross reflection JSON.
+ * Extracts uniform/texture/sampler bindings from SPIR-V.
+ *
+ * <p>The word stream is parsed in Java by default; {@code mcmetal.phase6.spirvReflection=spirvcross} uses SPIRV-Cross
+ * reflection instead and {@code crosscheck} runs both and logs any disagreement.
  */
 public class SpirvReflectionExtractor {
     @FunctionalInterface
@@ -24,17 +30,64 @@ public class SpirvReflectionExtractor {
     record ProcessOutput(int exitCode, String stdout, String stderr) {
     }
 
+    enum Mode {
+        JAVA,
+        SPIRV_CROSS,
+        CROSS_CHECK
+    }
+
     static final class ReflectionException extends RuntimeException {
         ReflectionException(String message) {
             super(message);
         }
     }
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(SpirvReflectionExtractor.class);
+    private static final String MODE_PROPERTY = "mcmetal.phase6.spirvReflection";
     private static final String TOOL_PATH_PROPERTY = "mcmetal.phase4.spirvcross.path";
     private static final String DEFAULT_TOOL_PATH = "spirv-cross";
     private static volatile ProcessExecutor processExecutor = SpirvReflectionExtractor::runProcess;
+    private static volatile Mode mode = parseMode(System.getProperty(MODE_PROPERTY, "java"));
 
     ShaderBindingMap extract(String shaderName, byte[] spirvBinary) {
+        return switch (mode) {
+            case JAVA -> SpirvBinaryReflector.reflect(shaderName, spirvBinary);
+            case SPIRV_CROSS -> extractWithSpirvCross(shaderName, spirvBinary);
+            case CROSS_CHECK -> crossCheck(shaderName, spirvBinary);
+        };
+    }
+
+    static Mode mode() {
+        return mode;
+    }
+
+    boolean reflectsWithSpirvCross() {
+        return mode == Mode.SPIRV_CROSS;
+    }
+
+    private static ShaderBindingMap crossCheck(String shaderName, byte[] spirvBinary) {
+        ShaderBindingMap reference = extractWithSpirvCross(shaderName, spirvBinary);
+        ShaderBindingMap parsed = SpirvBinaryReflector.reflect(shaderName, spirvBinary);
+        if (!reference.equals(parsed)) {
+            LOGGER.warn(
+                "event=metal_phase6 phase=spirv_reflect status=mismatch shader_name={} spirv_cross={} java={}",
+                shaderName,
+                reference,
+                parsed
+            );
+        }
+        return reference;
+    }
+
+    private static ShaderBindingMap extractWithSpirvCross(String shaderName, byte[] spirvBinary) {
+        if (InProcessShaderToolchain.isSelected()) {
+            try {
+                return InProcessShaderToolchain.reflect(shaderName, spirvBinary);
+            } catch (InProcessShaderToolchain.ToolchainException e) {
+                throw new ReflectionException(e.getMessage());
+            }
+        }
+
         Path tempDir = null;
         try {
             tempDir = Files.createTempDirectory("mcmetal-reflect");
@@ -75,6 +128,22 @@ public class SpirvReflectionExtractor {
         processExecutor = SpirvReflectionExtractor::runProcess;
     }
 
+    static void setModeForTests(Mode testMode) {
+        mode = testMode;
+    }
+
+    static void resetModeForTests() {
+        mode = parseMode(System.getProperty(MODE_PROPERTY, "java"));
+    }
+
+    private static Mode parseMode(String value) {
+        return switch (value.toLowerCase(Locale.ROOT)) {
+            case "spirvcross", "spirv-cross" -> Mode.SPIRV_CROSS;
+            case "crosscheck", "cross-check" -> Mode.CROSS_CHECK;
+            default -> Mode.JAVA;
+        };
+    }
+
     private static ShaderBindingMap parseReflectionJson(String reflectionJson) {
         JsonObject root = JsonParser.parseString(reflectionJson).getAsJsonObject();
         List<ShaderBindingMap.UniformBinding> uniforms = readBindings(root, "ubos", ShaderBindingMap.UniformBinding::new);
@@ -1,25 +1,38 @@
 package io.github.mcmetal.metal;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
- * Translates SPIR-V binaries to MSL source via spirv-cross.
+ * Translates SPIR-V binaries to MSL source via SPIRV-Cross, in-process or through the spirv-cross tool.
+ *
+ * <p>The subprocess path pipes SPIR-V over stdin and reads MSL from stdout; {@link #translateWithReflection} also reads
+ * bindings from the {@code --dump-resources} listing on stderr, so one pass yields both artifacts.
+ *
+ * <p>Vertex data occupies MSL buffer 0, so both paths emit uniform block binding N as {@code [[buffer(N + 1)]]}, the
+ * index the native layer binds it at. Textures and samplers keep their SPIR-V bindings.
  */
 public class SpirvToMslTranslator {
     @FunctionalInterface
     interface ProcessExecutor {
-        ProcessOutput run(List<String> command) throws IOException, InterruptedException;
+        ProcessOutput run(List<String> command, byte[] stdin) throws IOException, InterruptedException;
     }
 
     record ProcessOutput(int exitCode, String stdout, String stderr) {
     }
 
+    record TranslatedShader(String mslSource, ShaderBindingMap bindingMap) {
+    }
+
     static final class TranslationException extends RuntimeException {
         TranslationException(String message) {
             super(message);
@@ -28,54 +41,105 @@ public class SpirvToMslTranslator {
 
     private static final String TOOL_PATH_PROPERTY = "mcmetal.phase4.spirvcross.path";
     private static final String DEFAULT_TOOL_PATH = "spirv-cross";
+    static final List<String> MSL_ARGUMENTS = List.of("--msl", "--msl-decoration-binding");
+    static final int UNIFORM_BUFFER_INDEX_BASE = 1;
+    private static final String RESOURCE_SECTION_RULE = "=============";
+    private static final Pattern RESOURCE_LINE = Pattern.compile("^\\s*ID \\d+ : ([^\\s\\[(]+)(.*)$");
+    private static final Pattern RESOURCE_SET = Pattern.compile("\\(Set : (\\d+)\\)");
+    private static final Pattern RESOURCE_BINDING = Pattern.compile("\\(Binding : (\\d+)\\)");
     private static volatile ProcessExecutor processExecutor = SpirvToMslTranslator::runProcess;
 
+    TranslatedShader translateWithReflection(String shaderName, byte[] spirvBinary) {
+        if (InProcessShaderToolchain.isSelected()) {
+            TranslatedShader translated;
+            try {
+                translated = InProcessShaderToolchain.translateWithReflection(shaderName, spirvBinary);
+            } catch (InProcessShaderToolchain.ToolchainException e) {
+                throw new TranslationException(e.getMessage());
+            }
+            requireNonBlank(shaderName, translated.mslSource());
+            return translated;
+        }
+
+        byte[] remapped = withNativeUniformBufferIndices(shaderName, spirvBinary);
+        ProcessOutput output = runSpirvCross(shaderName, remapped, "--dump-resources");
+        ShaderBindingMap bindingMap = parseResourceDump(shaderName, output.stderr);
+        // The listing describes the remapped module; callers expect the bindings the GLSL declared.
+        return new TranslatedShader(
+            output.stdout,
+            remapped == spirvBinary ? bindingMap : withDeclaredUniformBindings(bindingMap)
+        );
+    }
+
+    static String toolPath() {
+        return System.getProperty(TOOL_PATH_PROPERTY, DEFAULT_TOOL_PATH);
+    }
+
     String translate(String shaderName, byte[] spirvBinary) {
-        Path tempDir = null;
+        if (InProcessShaderToolchain.isSelected()) {
+            return translateInProcess(shaderName, spirvBinary);
+        }
+
+        return runSpirvCross(shaderName, withNativeUniformBufferIndices(shaderName, spirvBinary)).stdout;
+    }
+
+    private static byte[] withNativeUniformBufferIndices(String shaderName, byte[] spirvBinary) {
+        // spirv-cross has no per-binding remap flag, so the bindings are raised in the module it translates.
         try {
-            tempDir = Files.createTempDirectory("mcmetal-msl");
-            Path spirvPath = tempDir.resolve(shaderName + ".spv");
-            Path mslPath = tempDir.resolve(shaderName + ".metal");
-            Files.write(spirvPath, spirvBinary);
-
-            List<String> command = new ArrayList<>();
-            command.add(System.getProperty(TOOL_PATH_PROPERTY, DEFAULT_TOOL_PATH));
-            command.add(spirvPath.toString());
-            command.add("--msl");
-            command.add("--output");
-            command.add(mslPath.toString());
-
-            ProcessOutput output = processExecutor.run(command);
-            if (output.exitCode != 0) {
-                throw new TranslationException(
-                    "SPIR-V->MSL translation failed for '" + shaderName + "' (exitCode="
-                        + output.exitCode + "): " + output.stderr
-                );
-            }
+            return SpirvBinaryReflector.offsetUniformBufferBindings(shaderName, spirvBinary, UNIFORM_BUFFER_INDEX_BASE);
+        } catch (SpirvReflectionExtractor.ReflectionException ignored) {
+            // Left as is; spirv-cross rejects the malformed module with its own diagnostics.
+            return spirvBinary;
+        }
+    }
 
-            if (!Files.exists(mslPath)) {
-                throw new TranslationException(
-                    "spirv-cross reported success but produced no MSL output for '" + shaderName + "'."
-                );
-            }
+    private static ShaderBindingMap withDeclaredUniformBindings(ShaderBindingMap bindingMap) {
+        List<ShaderBindingMap.UniformBinding> uniforms = new ArrayList<>(bindingMap.uniforms().size());
+        for (ShaderBindingMap.UniformBinding uniform : bindingMap.uniforms()) {
+            uniforms.add(new ShaderBindingMap.UniformBinding(
+                uniform.name(),
+                uniform.set(),
+                uniform.binding() - UNIFORM_BUFFER_INDEX_BASE
+            ));
+        }
+        return new ShaderBindingMap(List.copyOf(uniforms), bindingMap.textures(), bindingMap.samplers());
+    }
 
-            String mslSource = Files.readString(mslPath, StandardCharsets.UTF_8);
-            if (mslSource.isBlank()) {
-                throw new TranslationException(
-                    "spirv-cross produced an empty MSL shader for '" + shaderName + "'."
-                );
-            }
-            return mslSource;
+    private static ProcessOutput runSpirvCross(String shaderName, byte[] spirvBinary, String... extraArguments) {
+        List<String> command = new ArrayList<>();
+        command.add(toolPath());
+        command.add("-");
+        command.addAll(MSL_ARGUMENTS);
+        command.addAll(List.of(extraArguments));
+
+        ProcessOutput output;
+        try {
+            output = processExecutor.run(command, spirvBinary);
         } catch (IOException e) {
             throw new TranslationException("Failed to translate shader '" + shaderName + "': " + e.getMessage());
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             throw new TranslationException("Interrupted while translating shader '" + shaderName + "'.");
-        } finally {
-            if (tempDir != null) {
-                deleteRecursively(tempDir);
-            }
         }
+        if (output.exitCode != 0) {
+            throw new TranslationException(
+                "SPIR-V->MSL translation failed for '" + shaderName + "' (exitCode="
+                    + output.exitCode + "): " + output.stderr
+            );
+        }
+        requireNonBlank(shaderName, output.stdout);
+        return output;
+    }
+
+    private static String translateInProcess(String shaderName, byte[] spirvBinary) {
+        String mslSource;
+        try {
+            mslSource = InProcessShaderToolchain.translateToMsl(shaderName, spirvBinary);
+        } catch (InProcessShaderToolchain.ToolchainException e) {
+            throw new TranslationException(e.getMessage());
+        }
+        requireNonBlank(shaderName, mslSource);
+        return mslSource;
     }
 
     static void setProcessExecutorForTests(ProcessExecutor executor) {
@@ -86,25 +150,80 @@ public class SpirvToMslTranslator {
         processExecutor = SpirvToMslTranslator::runProcess;
     }
 
-    private static ProcessOutput runProcess(List<String> command) throws IOException, InterruptedException {
+    static ShaderBindingMap parseResourceDump(String shaderName, String resourceDump) {
+        List<ShaderBindingMap.UniformBinding> uniforms = new ArrayList<>();
+        List<ShaderBindingMap.TextureBinding> textures = new ArrayList<>();
+        List<ShaderBindingMap.SamplerBinding> samplers = new ArrayList<>();
+        boolean sawSection = false;
+        String section = null;
+        String previousLine = "";
+        for (String line : resourceDump.split("\\R")) {
+            String trimmed = line.trim();
+            if (trimmed.equals(RESOURCE_SECTION_RULE)) {
+                // Each listing is "<tag>", a rule, the resources, then a closing rule.
+                section = section == null ? previousLine : null;
+                sawSection = true;
+            } else if (section != null) {
+                Matcher resource = RESOURCE_LINE.matcher(line);
+                if (resource.matches()) {
+                    String name = resource.group(1);
+                    int set = decoration(RESOURCE_SET, resource.group(2), 0);
+                    int binding = decoration(RESOURCE_BINDING, resource.group(2), -1);
+                    switch (section) {
+                        case "ubos" -> uniforms.add(new ShaderBindingMap.UniformBinding(name, set, binding));
+                        case "separate images" -> textures.add(new ShaderBindingMap.TextureBinding(name, set, binding));
+                        case "separate samplers" -> samplers.add(new ShaderBindingMap.SamplerBinding(name, set, binding));
+                        default -> {
+                        }
+                    }
+                }
+            }
+            if (!trimmed.isEmpty()) {
+                previousLine = trimmed;
+            }
+        }
+
+        if (!sawSection) {
+            throw new SpirvReflectionExtractor.ReflectionException(
+                "spirv-cross produced no resource listing for '" + shaderName + "'."
+            );
+        }
+        return new ShaderBindingMap(List.copyOf(uniforms), List.copyOf(textures), List.copyOf(samplers));
+    }
+
+    private static ProcessOutput runProcess(List<String> command, byte[] stdin) throws IOException, InterruptedException {
         Process process = new ProcessBuilder(command).start();
-        String stdout = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
-        String stderr = new String(process.getErrorStream().readAllBytes(), StandardCharsets.UTF_8);
+        CompletableFuture<String> stderr = CompletableFuture.supplyAsync(() -> readUtf8(process.getErrorStream()));
+        try (OutputStream processInput = process.getOutputStream()) {
+            processInput.write(stdin);
+        }
+        String stdout = readUtf8(process.getInputStream());
         int exitCode = process.waitFor();
-        return new ProcessOutput(exitCode, stdout, stderr);
+        try {
+            return new ProcessOutput(exitCode, stdout, stderr.join());
+        } catch (CompletionException e) {
+            throw new IOException(e.getCause());
+        }
     }
 
-    private static void deleteRecursively(Path root) {
-        try (var walk = Files.walk(root)) {
-            walk.sorted(Comparator.reverseOrder()).forEach(path -> {
-                try {
-                    Files.deleteIfExists(path);
-                } catch (IOException ignored) {
-                    // Best-effort temporary directory cleanup.
-                }
-            });
-        } catch (IOException ignored) {
-            // Best-effort temporary directory cleanup.
+    private static String readUtf8(InputStream stream) {
+        try {
+            return new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static int decoration(Pattern pattern, String decorations, int fallback) {
+        Matcher matcher = pattern.matcher(decorations);
+        return matcher.find() ? Integer.parseInt(matcher.group(1)) : fallback;
+    }
+
+    private static void requireNonBlank(String shaderName, String mslSource) {
+        if (mslSource.isBlank()) {
+            throw new TranslationException(
+                "spirv-cross produced an empty MSL shader for '" + shaderName + "'."
+            );
         }
     }
 }
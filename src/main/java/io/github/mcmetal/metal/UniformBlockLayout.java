@@ -0,0 +1,116 @@
+package io.github.mcmetal.metal;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Std140 member offsets of the uniform blocks a shader stage declares, as reflected from its SPIR-V.
+ */
+record UniformBlockLayout(List<Block> blocks) {
+    static final UniformBlockLayout EMPTY = new UniformBlockLayout(List.of());
+
+    enum MemberType {
+        FLOAT(1, 1, false),
+        VEC2(2, 1, false),
+        VEC3(3, 1, false),
+        VEC4(4, 1, false),
+        INT(1, 1, true),
+        IVEC2(2, 1, true),
+        IVEC3(3, 1, true),
+        IVEC4(4, 1, true),
+        MAT2(2, 2, false),
+        MAT3(3, 3, false),
+        MAT4(4, 4, false);
+
+        private final int rows;
+        private final int columns;
+        private final boolean integer;
+
+        MemberType(int rows, int columns, boolean integer) {
+            this.rows = rows;
+            this.columns = columns;
+            this.integer = integer;
+        }
+
+        int rows() {
+            return rows;
+        }
+
+        int columns() {
+            return columns;
+        }
+
+        int componentCount() {
+            return rows * columns;
+        }
+
+        boolean isInteger() {
+            return integer;
+        }
+
+        boolean isMatrix() {
+            return columns > 1;
+        }
+
+        @Nullable
+        static MemberType of(boolean integer, int rows, int columns) {
+            for (MemberType type : values()) {
+                if (type.integer == integer && type.rows == rows && type.columns == columns) {
+                    return type;
+                }
+            }
+            return null;
+        }
+    }
+
+    record Member(String name, MemberType type, int offset, int matrixStride) {
+        int byteLength() {
+            return type.isMatrix() ? type.columns() * matrixStride : type.rows() * Float.BYTES;
+        }
+    }
+
+    record Block(String name, int set, int binding, int byteSize, List<Member> members) {
+    }
+
+    /**
+     * Combines the layouts of a program's stages; blocks both stages declare at the same set/binding are unioned.
+     */
+    static UniformBlockLayout merge(@Nullable UniformBlockLayout first, @Nullable UniformBlockLayout second) {
+        if (first == null || first.blocks.isEmpty()) {
+            return second == null ? EMPTY : second;
+        }
+        if (second == null || second.blocks.isEmpty()) {
+            return first;
+        }
+
+        Map<Long, Block> blocksBySlot = new LinkedHashMap<>();
+        for (UniformBlockLayout layout : List.of(first, second)) {
+            for (Block block : layout.blocks) {
+                long slot = ((long) block.set << 32) | (block.binding & 0xFFFFFFFFL);
+                Block existing = blocksBySlot.get(slot);
+                if (existing == null) {
+                    blocksBySlot.put(slot, block);
+                    continue;
+                }
+                List<Member> members = new ArrayList<>(existing.members);
+                for (Member member : block.members) {
+                    if (existing.members.stream().noneMatch(known -> known.name.equals(member.name))) {
+                        members.add(member);
+                    }
+                }
+                blocksBySlot.put(slot, new Block(
+                    existing.name,
+                    existing.set,
+                    existing.binding,
+                    Math.max(existing.byteSize, block.byteSize),
+                    List.copyOf(members)
+                ));
+            }
+        }
+        return new UniformBlockLayout(List.copyOf(blocksBySlot.values()));
+    }
+}
@@ -0,0 +1,12 @@
+package io.github.mcmetal.metal;
+
+/**
+ * Implemented on {@code GlUniform} by mixin to carry the slot {@link MetalShaderProgramBridge} resolves for it.
+ */
+public interface UniformSlotHolder {
+    String mcmetal$uniformName();
+
+    int mcmetal$uniformSlot();
+
+    void mcmetal$setUniformSlot(int uniformSlot);
+}
@@ -0,0 +1,173 @@
+package io.github.mcmetal.metal;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Direct-memory std140 staging copy of a program's uniform blocks, uploaded with one native call per draw when dirty.
+ */
+final class UniformStagingBlock {
+    private static final int REGION_ALIGNMENT = 16;
+
+    record Slot(UniformBlockLayout.MemberType type, int offset, int matrixStride) {
+        /**
+         * Byte position of the {@code component}-th value in column-major order; matrix columns sit on the stride.
+         */
+        int position(int component) {
+            int rows = type.rows();
+            int columnStride = type.isMatrix() ? matrixStride : rows * Float.BYTES;
+            return offset + (component / rows) * columnStride + (component % rows) * Float.BYTES;
+        }
+    }
+
+    private final ByteBuffer data;
+    private final ByteBuffer packedRegions;
+    private final Map<String, Slot> slotsByName;
+    private boolean dirty;
+
+    private UniformStagingBlock(ByteBuffer data, ByteBuffer packedRegions, Map<String, Slot> slotsByName) {
+        this.data = data;
+        this.packedRegions = packedRegions;
+        this.slotsByName = slotsByName;
+    }
+
+    @Nullable
+    static UniformStagingBlock create(UniformBlockLayout layout) {
+        List<UniformBlockLayout.Block> blocks = layout.blocks();
+        if (blocks.isEmpty()) {
+            return null;
+        }
+
+        // Blocks are laid out back to back at 16-byte boundaries; each one becomes a (binding, offset, length) region.
+        ByteBuffer packedRegions = ByteBuffer.allocateDirect(blocks.size() * 3 * Integer.BYTES).order(ByteOrder.nativeOrder());
+        Map<String, Slot> slotsByName = new HashMap<>();
+        int byteLength = 0;
+        for (UniformBlockLayout.Block block : blocks) {
+            int regionOffset = byteLength;
+            packedRegions.putInt(block.binding()).putInt(regionOffset).putInt(block.byteSize());
+            for (UniformBlockLayout.Member member : block.members()) {
+                slotsByName.putIfAbsent(
+                    member.name(),
+                    new Slot(member.type(), regionOffset + member.offset(), member.matrixStride())
+                );
+            }
+            byteLength = align(regionOffset + block.byteSize());
+        }
+        packedRegions.flip();
+        ByteBuffer data = ByteBuffer.allocateDirect(Math.max(byteLength, REGION_ALIGNMENT)).order(ByteOrder.nativeOrder());
+        return new UniformStagingBlock(data, packedRegions, Map.copyOf(slotsByName));
+    }
+
+    @Nullable
+    Slot slot(String name) {
+        return slotsByName.get(name);
+    }
+
+    // The staging bytes double as the shadow copy: the matches* checks compare raw bits against what was last staged,
+    // and the block starts zeroed on both sides.
+    boolean matchesFloat4(Slot slot, float x, float y, float z, float w) {
+        int rows = slot.type().rows();
+        return matches(slot, 0, floatBits(slot, x))
+            && (rows < 2 || matches(slot, 1, floatBits(slot, y)))
+            && (rows < 3 || matches(slot, 2, floatBits(slot, z)))
+            && (rows < 4 || matches(slot, 3, floatBits(slot, w)));
+    }
+
+    void writeFloat4(Slot slot, float x, float y, float z, float w) {
+        int rows = slot.type().rows();
+        put(slot, 0, floatBits(slot, x));
+        if (rows > 1) {
+            put(slot, 1, floatBits(slot, y));
+        }
+        if (rows > 2) {
+            put(slot, 2, floatBits(slot, z));
+        }
+        if (rows > 3) {
+            put(slot, 3, floatBits(slot, w));
+        }
+        dirty = true;
+    }
+
+    boolean matchesFloats(Slot slot, FloatBuffer values, int count) {
+        int limit = Math.min(count, slot.type().componentCount());
+        for (int i = 0; i < limit; i++) {
+            if (!matches(slot, i, floatBits(slot, values.get(i)))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void writeFloats(Slot slot, FloatBuffer values, int count) {
+        int limit = Math.min(count, slot.type().componentCount());
+        for (int i = 0; i < limit; i++) {
+            put(slot, i, floatBits(slot, values.get(i)));
+        }
+        dirty = true;
+    }
+
+    boolean matchesInts(Slot slot, IntBuffer values, int count) {
+        int limit = Math.min(count, slot.type().isMatrix() ? 0 : slot.type().rows());
+        for (int i = 0; i < limit; i++) {
+            if (!matches(slot, i, intBits(slot, values.get(i)))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void writeInts(Slot slot, IntBuffer values, int count) {
+        int limit = Math.min(count, slot.type().isMatrix() ? 0 : slot.type().rows());
+        for (int i = 0; i < limit; i++) {
+            put(slot, i, intBits(slot, values.get(i)));
+        }
+        dirty = true;
+    }
+
+    boolean isDirty() {
+        return dirty;
+    }
+
+    void markClean() {
+        dirty = false;
+    }
+
+    ByteBuffer data() {
+        return data;
+    }
+
+    int byteLength() {
+        return data.capacity();
+    }
+
+    ByteBuffer packedRegions() {
+        return packedRegions;
+    }
+
+    private boolean matches(Slot slot, int component, int bits) {
+        return data.getInt(slot.position(component)) == bits;
+    }
+
+    private void put(Slot slot, int component, int bits) {
+        data.putInt(slot.position(component), bits);
+    }
+
+    private static int floatBits(Slot slot, float value) {
+        return slot.type().isInteger() ? (int) value : Float.floatToRawIntBits(value);
+    }
+
+    private static int intBits(Slot slot, int value) {
+        return slot.type().isInteger() ? value : Float.floatToRawIntBits((float) value);
+    }
+
+    private static int align(int value) {
+        return (value + REGION_ALIGNMENT - 1) & -REGION_ALIGNMENT;
+    }
+}
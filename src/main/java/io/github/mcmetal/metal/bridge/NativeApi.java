@@ -40,6 +40,10 @@ public final class NativeApi {
 
     public static native int nativeSetCullState(boolean cullEnabled, int cullMode);
 
+    public static native int nativeSetColorOutputState(int colorWriteMask, boolean logicOpEnabled, int logicOp);
+
+    public static native int nativeSetDepthBias(boolean enabled, float slopeFactor, float constantUnits);
+
     public static native int nativeSetScissorState(boolean scissorEnabled, int x, int y, int width, int height);
 
     public static native int nativeSetViewportState(int x, int y, int width, int height, float minDepth, float maxDepth);
@@ -48,6 +52,16 @@ public final class NativeApi {
 
     public static native int nativeDrawIndexed(int mode, int count, int indexType);
 
+    public static native int nativeBeginFrame();
+
+    public static native int nativeEndFrame();
+
+    public static native int nativeSetFramesInFlight(int framesInFlight);
+
+    public static native long nativeGetCompletedFrameCount();
+
+    public static native long nativeGetLastFrameWaitNanos();
+
     public static native long nativeCreateBuffer(int usage, int size, ByteBuffer initialData, int initialDataLength);
 
     public static native int nativeUpdateBuffer(long handle, int offset, ByteBuffer data, int dataLength);
@@ -73,7 +87,47 @@ public final class NativeApi {
 
     public static native int nativeUpdateUniformFloat4(long uniformHandle, float x, float y, float z, float w);
 
+    public static native int nativeConfigureUniformBlock(
+        long programHandle,
+        int blockByteLength,
+        ByteBuffer packedRegions,
+        int packedByteLength
+    );
+
+    public static native int nativeUpdateUniformBlock(long programHandle, ByteBuffer data, int dataLength);
+
     public static native int nativeDestroyShaderProgram(long programHandle);
 
+    public static native int nativeSetShaderBinding(long programHandle, long vertexDescriptorHandle);
+
+    public static native int nativePrecompilePipelineState(
+        long programHandle,
+        long vertexDescriptorHandle,
+        ByteBuffer packedState,
+        int packedByteLength
+    );
+
+    public static native int nativeSetPendingClear(
+        int clearMask,
+        float red,
+        float green,
+        float blue,
+        float alpha,
+        double depth,
+        int stencil
+    );
+
+    public static native int nativeExecutePendingClear();
+
+    public static native int nativeClearScissored(
+        int clearMask,
+        float red,
+        float green,
+        float blue,
+        float alpha,
+        double depth,
+        int stencil
+    );
+
     public static native void nativeShutdown();
 }
@@ -0,0 +1,24 @@
+package io.github.mcmetal.mixin;
+
+import io.github.mcmetal.metal.MetalShaderLifecycleBridge;
+import io.github.mcmetal.metal.MetalShaderProgramBridge;
+import net.minecraft.client.render.GameRenderer;
+import net.minecraft.resource.ResourceFactory;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+@Mixin(GameRenderer.class)
+abstract class GameRendererMixin {
+    @Inject(method = "loadPrograms", at = @At("HEAD"))
+    private void mcmetal$beginProgramReload(ResourceFactory factory, CallbackInfo ci) {
+        MetalShaderProgramBridge.beginProgramReload();
+    }
+
+    @Inject(method = "loadPrograms", at = @At("RETURN"))
+    private void mcmetal$completeProgramReload(ResourceFactory factory, CallbackInfo ci) {
+        MetalShaderProgramBridge.completeProgramReload();
+        MetalShaderLifecycleBridge.scheduleShaderCacheFlush();
+    }
+}
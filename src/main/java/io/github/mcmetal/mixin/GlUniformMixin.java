@@ -0,0 +1,72 @@
+package io.github.mcmetal.mixin;
+
+import io.github.mcmetal.metal.MetalShaderProgramBridge;
+import io.github.mcmetal.metal.UniformSlotHolder;
+import net.minecraft.client.gl.GlUniform;
+import org.spongepowered.asm.mixin.Final;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.Unique;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+@Mixin(GlUniform.class)
+abstract class GlUniformMixin implements UniformSlotHolder {
+    // GlUniform data types 0-3 are int/ivecN; everything above is float, vector or matrix data.
+    private static final int LAST_INT_DATA_TYPE = 3;
+
+    @Shadow
+    @Final
+    private String name;
+
+    @Shadow
+    @Final
+    private int count;
+
+    @Shadow
+    @Final
+    private int dataType;
+
+    @Shadow
+    @Final
+    private IntBuffer intData;
+
+    @Shadow
+    @Final
+    private FloatBuffer floatData;
+
+    @Unique
+    private int mcmetal$uniformSlot = MetalShaderProgramBridge.UNRESOLVED_UNIFORM_SLOT;
+
+    @Override
+    public String mcmetal$uniformName() {
+        return this.name;
+    }
+
+    @Override
+    public int mcmetal$uniformSlot() {
+        return this.mcmetal$uniformSlot;
+    }
+
+    @Override
+    public void mcmetal$setUniformSlot(int uniformSlot) {
+        this.mcmetal$uniformSlot = uniformSlot;
+    }
+
+    @Inject(method = "upload", at = @At("HEAD"))
+    private void mcmetal$onUpload(CallbackInfo ci) {
+        int uniformSlot = this.mcmetal$uniformSlot;
+        if (uniformSlot == MetalShaderProgramBridge.UNRESOLVED_UNIFORM_SLOT) {
+            return;
+        }
+        if (this.dataType <= LAST_INT_DATA_TYPE) {
+            MetalShaderProgramBridge.setUniformInts(uniformSlot, this.intData, this.count);
+        } else {
+            MetalShaderProgramBridge.setUniformFloats(uniformSlot, this.floatData, this.count);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package io.github.mcmetal.mixin;
+
+import io.github.mcmetal.metal.FrameContext;
+import net.minecraft.client.MinecraftClient;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+@Mixin(MinecraftClient.class)
+abstract class MinecraftClientMixin {
+    @Inject(method = "render", at = @At("HEAD"))
+    private void mcmetal$beginFrame(boolean tick, CallbackInfo ci) {
+        FrameContext.beginFrame();
+    }
+
+    @Inject(method = "render", at = @At("RETURN"))
+    private void mcmetal$endFrame(boolean tick, CallbackInfo ci) {
+        FrameContext.endFrame();
+    }
+}
@@ -1,6 +1,8 @@
 package io.github.mcmetal.mixin;
 
+import com.mojang.blaze3d.platform.GlStateManager;
 import com.mojang.blaze3d.systems.RenderSystem;
+import io.github.mcmetal.metal.MetalBufferUploadBridge;
 import io.github.mcmetal.metal.MetalRenderSystemBridge;
 import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.injection.At;
@@ -100,8 +102,74 @@ abstract class RenderSystemMixin {
         MetalRenderSystemBridge.onStencilOp(sfail, dpfail, dppass);
     }
 
+    @Inject(method = "colorMask", at = @At("TAIL"))
+    private static void mcmetal$colorMask(boolean red, boolean green, boolean blue, boolean alpha, CallbackInfo ci) {
+        MetalRenderSystemBridge.onColorMask(red, green, blue, alpha);
+    }
+
+    @Inject(method = "enableColorLogicOp", at = @At("TAIL"))
+    private static void mcmetal$enableColorLogicOp(CallbackInfo ci) {
+        MetalRenderSystemBridge.onEnableColorLogicOp();
+    }
+
+    @Inject(method = "disableColorLogicOp", at = @At("TAIL"))
+    private static void mcmetal$disableColorLogicOp(CallbackInfo ci) {
+        MetalRenderSystemBridge.onDisableColorLogicOp();
+    }
+
+    @Inject(method = "logicOp", at = @At("TAIL"))
+    private static void mcmetal$logicOp(GlStateManager.LogicOp op, CallbackInfo ci) {
+        MetalRenderSystemBridge.onLogicOp(op.value);
+    }
+
+    @Inject(method = "enablePolygonOffset", at = @At("TAIL"))
+    private static void mcmetal$enablePolygonOffset(CallbackInfo ci) {
+        MetalRenderSystemBridge.onEnablePolygonOffset();
+    }
+
+    @Inject(method = "disablePolygonOffset", at = @At("TAIL"))
+    private static void mcmetal$disablePolygonOffset(CallbackInfo ci) {
+        MetalRenderSystemBridge.onDisablePolygonOffset();
+    }
+
+    @Inject(method = "polygonOffset", at = @At("TAIL"))
+    private static void mcmetal$polygonOffset(float factor, float units, CallbackInfo ci) {
+        MetalRenderSystemBridge.onPolygonOffset(factor, units);
+    }
+
+    @Inject(method = "lineWidth", at = @At("TAIL"))
+    private static void mcmetal$lineWidth(float width, CallbackInfo ci) {
+        MetalRenderSystemBridge.onLineWidth(width);
+    }
+
     @Inject(method = "drawElements", at = @At("TAIL"))
     private static void mcmetal$drawElements(int mode, int count, int indexType, CallbackInfo ci) {
         MetalRenderSystemBridge.onDrawElements(mode, count, indexType);
     }
+
+    @Inject(method = "clearColor", at = @At("TAIL"))
+    private static void mcmetal$clearColor(float red, float green, float blue, float alpha, CallbackInfo ci) {
+        MetalRenderSystemBridge.onClearColor(red, green, blue, alpha);
+    }
+
+    @Inject(method = "clearDepth", at = @At("TAIL"))
+    private static void mcmetal$clearDepth(double depth, CallbackInfo ci) {
+        MetalRenderSystemBridge.onClearDepth(depth);
+    }
+
+    @Inject(method = "clearStencil", at = @At("TAIL"))
+    private static void mcmetal$clearStencil(int stencil, CallbackInfo ci) {
+        MetalRenderSystemBridge.onClearStencil(stencil);
+    }
+
+    @Inject(method = "clear", at = @At("TAIL"))
+    private static void mcmetal$clear(int mask, boolean getError, CallbackInfo ci) {
+        MetalRenderSystemBridge.onClear(mask);
+    }
+
+    @Inject(method = "flipFrame", at = @At("HEAD"))
+    private static void mcmetal$flipFrame(long window, CallbackInfo ci) {
+        MetalBufferUploadBridge.onFrameBoundary();
+        MetalRenderSystemBridge.onFrameBoundary();
+    }
 }
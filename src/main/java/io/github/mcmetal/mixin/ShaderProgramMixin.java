@@ -1,6 +1,9 @@
 package io.github.mcmetal.mixin;
 
 import io.github.mcmetal.metal.MetalShaderLifecycleBridge;
+import io.github.mcmetal.metal.MetalShaderProgramBridge;
+import io.github.mcmetal.metal.UniformSlotHolder;
+import net.minecraft.client.gl.GlUniform;
 import net.minecraft.client.gl.ShaderProgram;
 import net.minecraft.client.gl.ShaderStage;
 import net.minecraft.client.render.VertexFormat;
@@ -8,23 +11,34 @@ import net.minecraft.resource.ResourceFactory;
 import org.spongepowered.asm.mixin.Final;
 import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.Unique;
 import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Inject;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Mixin(ShaderProgram.class)
 abstract class ShaderProgramMixin {
     @Shadow
     @Final
     private String name;
 
+    @Shadow
+    @Final
+    private List<GlUniform> uniforms;
+
+    @Unique
+    private int mcmetal$programId = MetalShaderProgramBridge.UNKNOWN_PROGRAM_ID;
+
     @Inject(
         method = "<init>(Lnet/minecraft/resource/ResourceFactory;Ljava/lang/String;Lnet/minecraft/client/render/VertexFormat;)V",
         at = @At("HEAD")
     )
     private void mcmetal$onProgramLoadStart(ResourceFactory factory, String name, VertexFormat format, CallbackInfo ci) {
-        MetalShaderLifecycleBridge.onShaderProgramLoadStart(name);
+        MetalShaderLifecycleBridge.onShaderProgramLoadStart(name, format);
     }
 
     @Inject(
@@ -33,6 +47,12 @@ abstract class ShaderProgramMixin {
     )
     private void mcmetal$onProgramLoadComplete(ResourceFactory factory, String name, VertexFormat format, CallbackInfo ci) {
         MetalShaderLifecycleBridge.onShaderProgramLoadComplete(name);
+        this.mcmetal$programId = MetalShaderProgramBridge.programId(name);
+        List<UniformSlotHolder> slotHolders = new ArrayList<>(this.uniforms.size());
+        for (GlUniform uniform : this.uniforms) {
+            slotHolders.add((UniformSlotHolder) uniform);
+        }
+        MetalShaderProgramBridge.attachUniformSlots(name, slotHolders);
     }
 
     @Inject(
@@ -63,8 +83,18 @@ abstract class ShaderProgramMixin {
         MetalShaderLifecycleBridge.onShaderStageCompileComplete(name, type.name());
     }
 
+    @Inject(method = "bind", at = @At("TAIL"))
+    private void mcmetal$onProgramBind(CallbackInfo ci) {
+        MetalShaderProgramBridge.onProgramBound(this.name);
+    }
+
+    @Inject(method = "unbind", at = @At("HEAD"))
+    private void mcmetal$onProgramUnbind(CallbackInfo ci) {
+        MetalShaderProgramBridge.onProgramUnbound();
+    }
+
     @Inject(method = "close", at = @At("HEAD"))
     private void mcmetal$onProgramClose(CallbackInfo ci) {
-        MetalShaderLifecycleBridge.onShaderProgramClose(this.name);
+        MetalShaderLifecycleBridge.onShaderProgramClose(this.name, this.mcmetal$programId);
     }
 }
@@ -1,6 +1,7 @@
 package io.github.mcmetal.mixin;
 
 import io.github.mcmetal.metal.MetalShaderLifecycleBridge;
+import io.github.mcmetal.metal.RecordingImportProcessor;
 import net.minecraft.client.gl.GlImportProcessor;
 import net.minecraft.client.gl.ShaderStage;
 import org.spongepowered.asm.mixin.Final;
@@ -8,10 +9,12 @@ import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.Shadow;
 import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.Redirect;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
 
 import java.io.InputStream;
+import java.util.List;
 
 @Mixin(ShaderStage.class)
 abstract class ShaderStageMixin {
@@ -36,9 +39,37 @@ abstract class ShaderStageMixin {
         GlImportProcessor loader,
         CallbackInfoReturnable<Integer> cir
     ) {
-        String stageName = type.name();
-        MetalShaderLifecycleBridge.onShaderStageCompileStart(name, stageName);
-        MetalShaderLifecycleBridge.onShaderStageCompileSource(name, stageName, stream);
+        MetalShaderLifecycleBridge.onShaderStageCompileStart(name, type.name());
+    }
+
+    // The bridge takes the stage only after imports are spliced in, together with what each import resolved to.
+    // This is its only source of stage text, so a missing target fails at startup instead of disabling translation.
+    @Redirect(
+        method = "load(Lnet/minecraft/client/gl/ShaderStage$Type;Ljava/lang/String;Ljava/io/InputStream;Ljava/lang/String;Lnet/minecraft/client/gl/GlImportProcessor;)I",
+        at = @At(
+            value = "INVOKE",
+            target = "Lnet/minecraft/client/gl/GlImportProcessor;readSource(Ljava/lang/String;)Ljava/util/List;"
+        ),
+        require = 1
+    )
+    private static List<String> mcmetal$resolveImports(
+        GlImportProcessor loader,
+        String source,
+        ShaderStage.Type type,
+        String name,
+        InputStream stream,
+        String domain,
+        GlImportProcessor originalLoader
+    ) {
+        RecordingImportProcessor recordingLoader = new RecordingImportProcessor(loader);
+        List<String> resolved = recordingLoader.readSource(source);
+        MetalShaderLifecycleBridge.onShaderStageSourceResolved(
+            name,
+            type.name(),
+            String.join("", resolved),
+            recordingLoader.includes()
+        );
+        return resolved;
     }
 
     @Inject(
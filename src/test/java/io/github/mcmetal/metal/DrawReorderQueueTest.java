@@ -0,0 +1,91 @@
+package io.github.mcmetal.metal;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DrawReorderQueueTest {
+    private static final PipelineStateKey SOLID = new PipelineStateKey(4, false, 1, 0, 1, 0, 0x8006, 0x8006, true, 0x0405, 0xF, false, 0x1503);
+    private static final PipelineStateKey NO_CULL = new PipelineStateKey(4, false, 1, 0, 1, 0, 0x8006, 0x8006, false, 0x0405, 0xF, false, 0x1503);
+
+    @Test
+    void drainGroupsDrawsByProgramStateDescriptorAndBuffer() {
+        DrawReorderQueue<String> queue = new DrawReorderQueue<>();
+        queue.add(2L, SOLID, 7L, 100L, "a");
+        queue.add(1L, SOLID, 7L, 101L, "b");
+        queue.add(2L, SOLID, 7L, 100L, "c");
+        queue.add(1L, SOLID, 7L, 101L, "d");
+
+        List<DrawReorderQueue.PendingDraw<String>> sorted = queue.drainSorted();
+
+        assertEquals(List.of("b", "d", "a", "c"), sorted.stream().map(DrawReorderQueue.PendingDraw::payload).toList());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    void statsReportSwitchesAvoidedBySorting() {
+        DrawReorderQueue<String> queue = new DrawReorderQueue<>();
+        queue.add(1L, SOLID, 7L, 100L, "a");
+        queue.add(1L, NO_CULL, 8L, 101L, "b");
+        queue.add(1L, SOLID, 7L, 100L, "c");
+        queue.add(1L, NO_CULL, 8L, 101L, "d");
+
+        queue.drainSorted();
+        DrawReorderQueue.Stats stats = queue.stats();
+
+        assertEquals(1L, stats.flushes());
+        assertEquals(4L, stats.reorderedDraws());
+        assertEquals(9L, stats.switchesBeforeSort());
+        assertEquals(3L, stats.switchesAfterSort());
+        assertEquals(6L, stats.switchesAvoided());
+    }
+
+    @Test
+    void drainKeepsDistinctStatesWithEqualHashesApart() {
+        PipelineStateKey colliding = hashCollision(SOLID);
+        DrawReorderQueue<String> queue = new DrawReorderQueue<>();
+        queue.add(1L, SOLID, 7L, 100L, "a");
+        queue.add(1L, colliding, 7L, 100L, "b");
+        queue.add(1L, SOLID, 7L, 100L, "c");
+        queue.add(1L, colliding, 7L, 100L, "d");
+
+        List<String> order = queue.drainSorted().stream().map(DrawReorderQueue.PendingDraw::payload).toList();
+
+        assertTrue(order.equals(List.of("a", "c", "b", "d")) || order.equals(List.of("b", "d", "a", "c")), order.toString());
+    }
+
+    @Test
+    void emptyDrainDoesNotCountAsFlush() {
+        DrawReorderQueue<String> queue = new DrawReorderQueue<>();
+
+        assertTrue(queue.drainSorted().isEmpty());
+        assertEquals(0L, queue.stats().flushes());
+    }
+
+    private static PipelineStateKey hashCollision(PipelineStateKey state) {
+        for (int colorWriteMask = -4096; colorWriteMask <= 4096; colorWriteMask++) {
+            PipelineStateKey candidate = new PipelineStateKey(
+                state.primitiveMode(),
+                state.blendEnabled(),
+                state.blendSrcRgb(),
+                state.blendDstRgb(),
+                state.blendSrcAlpha(),
+                state.blendDstAlpha(),
+                state.blendEquationRgb(),
+                state.blendEquationAlpha(),
+                state.cullEnabled(),
+                state.cullMode() + 1,
+                colorWriteMask,
+                state.logicOpEnabled(),
+                state.logicOp()
+            );
+            if (candidate.hashCode() == state.hashCode()) {
+                return candidate;
+            }
+        }
+        throw new AssertionError("No hash collision found for " + state);
+    }
+}
@@ -0,0 +1,184 @@
+package io.github.mcmetal.metal;
+
+import io.github.mcmetal.metal.bridge.NativeStatus;
+import net.minecraft.client.render.VertexFormat;
+import net.minecraft.client.render.VertexFormats;
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class FrameContextTest {
+    private final RecordingFrameBackend frameBackend = new RecordingFrameBackend();
+    private final RecordingBufferBackend bufferBackend = new RecordingBufferBackend();
+
+    @BeforeEach
+    void setUp() {
+        FrameContext.resetForTests();
+        FrameContext.setBridgeActiveForTests(true);
+        FrameContext.setNativeFrameBackendForTests(frameBackend);
+        MetalBufferUploadBridge.resetForTests();
+        MetalBufferUploadBridge.setBridgeActiveForTests(true);
+        MetalBufferUploadBridge.setNativeBufferBackendForTests(bufferBackend);
+    }
+
+    @AfterEach
+    void tearDown() {
+        FrameContext.resetForTests();
+        MetalBufferUploadBridge.resetForTests();
+    }
+
+    @Test
+    void drawsInsideFrameShareOneNativeFrameAndDeferDestroysToFrameEnd() {
+        Object vertexBuffer = new Object();
+        upload(vertexBuffer, 32);
+        upload(vertexBuffer, 96);
+
+        FrameContext.beginFrame();
+        for (int i = 0; i < 5; i++) {
+            MetalBufferUploadBridge.onVertexBufferDrawForTests(vertexBuffer);
+        }
+        assertEquals(5, FrameContext.current().drawCount());
+        FrameContext.endFrame();
+
+        assertEquals(5, bufferBackend.drawCalls);
+        assertEquals(1, frameBackend.beginCalls);
+        assertEquals(1, frameBackend.endCalls);
+        assertEquals(0, bufferBackend.destroyCalls);
+        assertNull(FrameContext.current());
+
+        FrameContext.beginFrame();
+        FrameContext.endFrame();
+
+        assertEquals(1, bufferBackend.destroyCalls);
+    }
+
+    @Test
+    void failedBeginLeavesDrawsOnPerDrawSubmission() {
+        frameBackend.beginStatus = NativeStatus.INITIALIZATION_FAILED;
+
+        FrameContext.beginFrame();
+        FrameContext.endFrame();
+
+        assertNull(FrameContext.current());
+        assertEquals(0, frameBackend.endCalls);
+    }
+
+    @Test
+    void pacingRecordsSlotWaitsAndExposesCompletedFrames() {
+        FrameContext.configurePacing();
+        frameBackend.nextWaitNanos = 4_000L;
+        FrameContext.beginFrame();
+        FrameContext.endFrame();
+        frameBackend.nextWaitNanos = 1_000L;
+        FrameContext.beginFrame();
+        FrameContext.endFrame();
+
+        FrameContext.FramePacingStats stats = FrameContext.pacingStats();
+        assertEquals(2, frameBackend.configuredFramesInFlight);
+        assertEquals(2L, FrameContext.completedFrameCount());
+        assertEquals(2L, stats.pacedFrames());
+        assertEquals(1_000L, stats.lastWaitNanos());
+        assertEquals(5_000L, stats.totalWaitNanos());
+        assertEquals(4_000L, stats.maxWaitNanos());
+    }
+
+    private static void upload(Object vertexBuffer, int vertexBytes) {
+        ByteBuffer vertexData = ByteBuffer.allocateDirect(vertexBytes);
+        MetalBufferUploadBridge.onVertexBufferUploadForTests(
+            vertexBuffer,
+            MetalBufferUploadBridge.BufferUsage.DYNAMIC,
+            new Object(),
+            MetalBufferUploadBridge.createSnapshotForTests(
+                vertexData,
+                null,
+                VertexFormats.POSITION_COLOR,
+                VertexFormat.DrawMode.TRIANGLES,
+                3,
+                3,
+                VertexFormat.IndexType.SHORT
+            )
+        );
+    }
+
+    private static final class RecordingFrameBackend implements FrameContext.NativeFrameBackend {
+        private int beginStatus = NativeStatus.OK;
+        private int beginCalls;
+        private int endCalls;
+        private int configuredFramesInFlight;
+        private long completedFrames;
+        private long nextWaitNanos;
+
+        @Override
+        public int beginFrame() {
+            beginCalls++;
+            return beginStatus;
+        }
+
+        @Override
+        public int endFrame() {
+            endCalls++;
+            completedFrames++;
+            return NativeStatus.OK;
+        }
+
+        @Override
+        public int setFramesInFlight(int framesInFlight) {
+            configuredFramesInFlight = framesInFlight;
+            return NativeStatus.OK;
+        }
+
+        @Override
+        public long completedFrameCount() {
+            return completedFrames;
+        }
+
+        @Override
+        public long lastFrameWaitNanos() {
+            return nextWaitNanos;
+        }
+    }
+
+    private static final class RecordingBufferBackend implements MetalBufferUploadBridge.NativeBufferBackend {
+        private long nextHandle = 1;
+        private int destroyCalls;
+        private int drawCalls;
+
+        @Override
+        public long createBuffer(int usage, int size, @Nullable ByteBuffer initialData, int initialDataLength) {
+            return nextHandle++;
+        }
+
+        @Override
+        public int updateBuffer(long handle, int offset, ByteBuffer data, int dataLength) {
+            return NativeStatus.OK;
+        }
+
+        @Override
+        public int destroyBuffer(long handle) {
+            destroyCalls++;
+            return NativeStatus.OK;
+        }
+
+        @Override
+        public long registerVertexDescriptor(int strideBytes, int attributeCount, ByteBuffer packedElements, int packedByteLength) {
+            return nextHandle++;
+        }
+
+        @Override
+        public int draw(int mode, int first, int count) {
+            drawCalls++;
+            return NativeStatus.OK;
+        }
+
+        @Override
+        public int drawIndexed(int mode, int count, int indexType) {
+            return NativeStatus.OK;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package io.github.mcmetal.metal;
 
 import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.nio.file.Files;
@@ -14,9 +15,15 @@ class GlslToSpirvCompilerTest {
     private static final byte[] VALID_SPIRV =
         new byte[] {(byte) 0x03, (byte) 0x02, (byte) 0x23, (byte) 0x07, 0x00, 0x06, 0x01, 0x00};
 
+    @BeforeEach
+    void setUp() {
+        InProcessShaderToolchain.setModeForTests(InProcessShaderToolchain.Mode.SUBPROCESS);
+    }
+
     @AfterEach
     void tearDown() {
         GlslToSpirvCompiler.resetProcessExecutorForTests();
+        InProcessShaderToolchain.resetModeForTests();
     }
 
     @Test
@@ -1,5 +1,6 @@
 package io.github.mcmetal.metal;
 
+import io.github.mcmetal.metal.bridge.NativeStatus;
 import net.minecraft.client.render.VertexFormat;
 import net.minecraft.client.render.VertexFormats;
 import org.jetbrains.annotations.Nullable;
@@ -28,6 +29,7 @@ class MetalBufferUploadBridgeTest {
     @AfterEach
     void tearDown() {
         MetalBufferUploadBridge.resetForTests();
+        MetalRenderSystemBridge.resetForTests();
     }
 
     @Test
@@ -216,6 +218,63 @@ class MetalBufferUploadBridgeTest {
         );
     }
 
+    @Test
+    void reorderingBuffersOpaqueDrawsUntilFrameBoundary() {
+        MetalBufferUploadBridge.setDrawReorderingEnabledForTests(true);
+        enableDepthTestedState();
+        Object first = new Object();
+        Object second = new Object();
+        MetalBufferUploadBridge.onVertexBufferUploadForTests(
+            first,
+            MetalBufferUploadBridge.BufferUsage.DYNAMIC,
+            new Object(),
+            snapshot(48, 0, VertexFormat.DrawMode.TRIANGLES, 3, 3, VertexFormat.IndexType.SHORT)
+        );
+        MetalBufferUploadBridge.onVertexBufferUploadForTests(
+            second,
+            MetalBufferUploadBridge.BufferUsage.DYNAMIC,
+            new Object(),
+            snapshot(48, 0, VertexFormat.DrawMode.TRIANGLES, 3, 3, VertexFormat.IndexType.SHORT)
+        );
+
+        MetalBufferUploadBridge.onVertexBufferDrawForTests(second);
+        MetalBufferUploadBridge.onVertexBufferDrawForTests(first);
+        MetalBufferUploadBridge.onVertexBufferDrawForTests(second);
+
+        assertEquals(0, backend.drawCalls);
+        assertEquals(3, MetalBufferUploadBridge.pendingReorderedDrawsForTests());
+
+        MetalBufferUploadBridge.onFrameBoundary();
+
+        assertEquals(3, backend.drawCalls);
+        assertEquals(0, MetalBufferUploadBridge.pendingReorderedDrawsForTests());
+        assertEquals(1L, MetalBufferUploadBridge.drawReorderStats().switchesAvoided());
+    }
+
+    @Test
+    void reorderingFlushesPendingDrawsBeforeReuploadingTheirBuffer() {
+        MetalBufferUploadBridge.setDrawReorderingEnabledForTests(true);
+        enableDepthTestedState();
+        Object vertexBuffer = new Object();
+        MetalBufferUploadBridge.onVertexBufferUploadForTests(
+            vertexBuffer,
+            MetalBufferUploadBridge.BufferUsage.DYNAMIC,
+            new Object(),
+            snapshot(48, 0, VertexFormat.DrawMode.TRIANGLES, 3, 3, VertexFormat.IndexType.SHORT)
+        );
+        MetalBufferUploadBridge.onVertexBufferDrawForTests(vertexBuffer);
+
+        MetalBufferUploadBridge.onVertexBufferUploadForTests(
+            vertexBuffer,
+            MetalBufferUploadBridge.BufferUsage.DYNAMIC,
+            new Object(),
+            snapshot(48, 0, VertexFormat.DrawMode.TRIANGLES, 3, 3, VertexFormat.IndexType.SHORT)
+        );
+
+        assertEquals(1, backend.drawCalls);
+        assertEquals(0, MetalBufferUploadBridge.pendingReorderedDrawsForTests());
+    }
+
     @Test
     void stressTestBufferChurnAndHighDrawCount() {
         List<Object> vertexBuffers = new ArrayList<>();
@@ -267,6 +326,12 @@ class MetalBufferUploadBridgeTest {
         assertTrue(backend.destroyCalls > 0);
     }
 
+    private static void enableDepthTestedState() {
+        MetalRenderSystemBridge.setBridgeActiveForTests(true);
+        MetalRenderSystemBridge.setStateSubmissionHookForTests((operation, nativeCall) -> NativeStatus.OK);
+        MetalRenderSystemBridge.onEnableDepthTest();
+    }
+
     private static MetalBufferUploadBridge.UploadSnapshot snapshot(int vertexBytes, int indexBytes) {
         return snapshot(
             vertexBytes,
@@ -9,6 +9,9 @@ import java.util.HashMap;
 import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class MetalRenderSystemBridgeTest {
     private final Map<String, Integer> operationCounts = new HashMap<>();
@@ -79,6 +82,140 @@ class MetalRenderSystemBridgeTest {
         assertEquals(2, count("nativeSetStencilState"));
     }
 
+    @Test
+    void colorMaskLogicOpAndPolygonOffsetFeedPipelineKeyAndDepthBias() {
+        MetalRenderSystemBridge.onColorMask(true, true, true, false);
+        MetalRenderSystemBridge.onColorMask(true, true, true, false);
+        MetalRenderSystemBridge.onEnableColorLogicOp();
+        MetalRenderSystemBridge.onLogicOp(0x150B);
+        MetalRenderSystemBridge.onEnablePolygonOffset();
+        MetalRenderSystemBridge.onPolygonOffset(-1.0F, -10.0F);
+        MetalRenderSystemBridge.onPolygonOffset(-1.0F, -10.0F);
+        MetalRenderSystemBridge.onLineWidth(2.5F);
+
+        PipelineStateKey state = MetalRenderSystemBridge.currentPipelineState(4);
+        assertEquals(0x7, state.colorWriteMask());
+        assertTrue(state.logicOpEnabled());
+        assertEquals(0x150B, state.logicOp());
+        assertFalse(MetalRenderSystemBridge.isOpaquePassState());
+        assertEquals(3, count("nativeSetColorOutputState"));
+        assertEquals(2, count("nativeSetDepthBias"));
+    }
+
+    @Test
+    void disabledBlendFunctionsDoNotSplitPipelineState() {
+        PipelineStateKey opaque = MetalRenderSystemBridge.currentPipelineState(4);
+        MetalRenderSystemBridge.onEnableBlend();
+        MetalRenderSystemBridge.onBlendFunc(0x0302, 0x0303);
+        PipelineStateKey translucent = MetalRenderSystemBridge.currentPipelineState(4);
+        MetalRenderSystemBridge.onDisableBlend();
+
+        assertNotEquals(opaque, translucent);
+        assertEquals(opaque, MetalRenderSystemBridge.currentPipelineState(4));
+    }
+
+    @Test
+    void logicOpLeftSetWhileDisabledDoesNotSplitPipelineState() {
+        PipelineStateKey opaque = MetalRenderSystemBridge.currentPipelineState(4);
+        MetalRenderSystemBridge.onEnableColorLogicOp();
+        MetalRenderSystemBridge.onLogicOp(0x150B);
+        MetalRenderSystemBridge.onDisableColorLogicOp();
+
+        PipelineStateKey afterHighlight = MetalRenderSystemBridge.currentPipelineState(4);
+        assertEquals(PipelineStateKey.LOGIC_OP_COPY, afterHighlight.logicOp());
+        assertEquals(opaque, afterHighlight);
+    }
+
+    @Test
+    void opaquePassRequiresLessOrLequalDepthTest() {
+        assertFalse(MetalRenderSystemBridge.isOpaquePassState());
+
+        MetalRenderSystemBridge.onEnableDepthTest();
+        assertTrue(MetalRenderSystemBridge.isOpaquePassState());
+        MetalRenderSystemBridge.onDepthFunc(0x0201);
+        assertTrue(MetalRenderSystemBridge.isOpaquePassState());
+        MetalRenderSystemBridge.onDepthFunc(0x0207);
+        assertFalse(MetalRenderSystemBridge.isOpaquePassState());
+    }
+
+    @Test
+    void drawsUnderEmptyScissorZeroCountOrMaskedWritesAreElided() {
+        MetalRenderSystemBridge.onViewport(0, 0, 1920, 1080);
+        assertFalse(MetalRenderSystemBridge.elideDraw(6));
+        assertTrue(MetalRenderSystemBridge.elideDraw(0));
+
+        MetalRenderSystemBridge.onEnableScissor(100, 100, 0, 40);
+        assertTrue(MetalRenderSystemBridge.elideDraw(6));
+        MetalRenderSystemBridge.onEnableScissor(2000, 100, 50, 40);
+        assertTrue(MetalRenderSystemBridge.elideDraw(6));
+        MetalRenderSystemBridge.onEnableScissor(100, 100, 50, 40);
+        assertFalse(MetalRenderSystemBridge.elideDraw(6));
+        MetalRenderSystemBridge.onDisableScissor();
+
+        MetalRenderSystemBridge.onColorMask(false, false, false, false);
+        assertTrue(MetalRenderSystemBridge.elideDraw(6));
+        MetalRenderSystemBridge.onEnableDepthTest();
+        assertFalse(MetalRenderSystemBridge.elideDraw(6));
+
+        MetalRenderSystemBridge.DrawElisionStats stats = MetalRenderSystemBridge.drawElisionStats();
+        assertEquals(1L, stats.zeroCount());
+        assertEquals(2L, stats.emptyRegion());
+        assertEquals(1L, stats.maskedWrites());
+        assertEquals(4L, stats.total());
+    }
+
+    @Test
+    void consecutiveClearsFoldIntoSinglePendingLoadAction() {
+        MetalRenderSystemBridge.onClearColor(0.1F, 0.2F, 0.3F, 1.0F);
+        MetalRenderSystemBridge.onClear(0x4000 | 0x0100);
+        MetalRenderSystemBridge.onClear(0x4000 | 0x0100);
+        MetalRenderSystemBridge.onClear(0x0100);
+
+        assertEquals(0, count("nativeSetPendingClear"));
+
+        MetalRenderSystemBridge.flushPendingClear();
+        MetalRenderSystemBridge.flushPendingClear();
+
+        MetalRenderSystemBridge.ClearStats stats = MetalRenderSystemBridge.clearStats();
+        assertEquals(1, count("nativeSetPendingClear"));
+        assertEquals(3L, stats.requested());
+        assertEquals(1L, stats.elided());
+        assertEquals(2L, stats.folded());
+        assertEquals(0L, stats.standalone());
+    }
+
+    @Test
+    void clearWithoutFollowingDrawExecutesAtFrameBoundary() {
+        MetalRenderSystemBridge.onClear(0x4000);
+        MetalRenderSystemBridge.onFrameBoundary();
+        MetalRenderSystemBridge.onFrameBoundary();
+
+        assertEquals(1, count("nativeSetPendingClear"));
+        assertEquals(1, count("nativeExecutePendingClear"));
+        assertEquals(1L, MetalRenderSystemBridge.clearStats().standalone());
+    }
+
+    @Test
+    void scissoredClearIsDrawnInsteadOfFoldedIntoLoadAction() {
+        MetalRenderSystemBridge.onClear(0x4000);
+        MetalRenderSystemBridge.onEnableScissor(10, 20, 300, 400);
+        MetalRenderSystemBridge.onClear(0x4000);
+        MetalRenderSystemBridge.onClear(0x4000);
+        MetalRenderSystemBridge.onEnableScissor(10, 20, 0, 400);
+        MetalRenderSystemBridge.onClear(0x4000);
+        MetalRenderSystemBridge.onDisableScissor();
+        MetalRenderSystemBridge.onFrameBoundary();
+
+        MetalRenderSystemBridge.ClearStats stats = MetalRenderSystemBridge.clearStats();
+        assertEquals(2, count("nativeClearScissored"));
+        assertEquals(1, count("nativeSetPendingClear"));
+        assertEquals(0, count("nativeExecutePendingClear"));
+        assertEquals(4L, stats.requested());
+        assertEquals(1L, stats.folded());
+        assertEquals(1L, stats.elided());
+        assertEquals(2L, stats.scissored());
+    }
+
     private int count(String operation) {
         return operationCounts.getOrDefault(operation, 0);
     }
@@ -5,11 +5,14 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -23,8 +26,10 @@ class MetalShaderLifecycleBridgeTest {
         MetalShaderLifecycleBridge.resetForTests();
         MetalShaderProgramBridge.resetForTests();
         MetalShaderProgramBridge.setNativeShaderBackendForTests(new NoopShaderBackend());
+        MetalShaderProgramBridge.setProgramExecutorForTests(Runnable::run);
         MetalShaderLifecycleBridge.setShaderDiskCacheForTests(new RecordingDiskCache());
         MetalShaderLifecycleBridge.setBridgeActiveForTests(true);
+        MetalShaderLifecycleBridge.setStageExecutorForTests(Runnable::run);
         MetalShaderLifecycleBridge.setEventSinkForTests((event, shaderName, shaderStage, sequenceId) -> {
             events.add(event + "|" + shaderName + "|" + shaderStage);
             sequenceIds.add(sequenceId);
@@ -90,6 +95,7 @@ class MetalShaderLifecycleBridgeTest {
         MetalShaderLifecycleBridge.setSpirvCompilerForTests(compiler);
         MetalShaderLifecycleBridge.setReflectionExtractorForTests(reflectionExtractor);
         MetalShaderLifecycleBridge.setMslTranslatorForTests(translator);
+        MetalShaderLifecycleBridge.setShaderDiagnosticsStoreForTests(new ShaderDiagnosticsStore(true, 1L << 20));
         ByteArrayInputStream stream = new ByteArrayInputStream(
             "#version 150\nvoid main() { gl_Position = vec4(0.0); }".getBytes(StandardCharsets.UTF_8)
         );
@@ -105,11 +111,12 @@ class MetalShaderLifecycleBridgeTest {
         assertEquals(1, cachedBindingMap.uniforms().size());
         assertEquals("rendertype_solid", translator.lastShaderName);
         assertTrue(translator.lastSpirvBinary.length > 0);
-        MetalShaderLifecycleBridge.ShaderDiagnosticsRecord diagnostics =
-            MetalShaderLifecycleBridge.getShaderDiagnosticsForTests("rendertype_solid", "VERTEX");
-        assertNotNull(diagnostics);
-        assertTrue(diagnostics.glslInput().contains("gl_Position"));
-        assertTrue(diagnostics.translatedMsl().contains("main0"));
+        assertNotNull(MetalShaderLifecycleBridge.getShaderDiagnosticsForTests("rendertype_solid", "VERTEX").mslHash());
+        ShaderDiagnosticsStore.Sources sources =
+            MetalShaderLifecycleBridge.getShaderSourcesForTests("rendertype_solid", "VERTEX");
+        assertNotNull(sources);
+        assertTrue(sources.glslInput().contains("gl_Position"));
+        assertTrue(sources.translatedMsl().contains("main0"));
 
         String replay = new String(stream.readAllBytes(), StandardCharsets.UTF_8);
         assertTrue(replay.contains("gl_Position"));
@@ -142,7 +149,7 @@ class MetalShaderLifecycleBridgeTest {
         );
 
         assertTrue(events.contains("shader_stage_msl_translate_failed|rendertype_lines|FRAGMENT"));
-        MetalShaderLifecycleBridge.ShaderDiagnosticsRecord diagnostics =
+        ShaderDiagnosticsStore.Summary diagnostics =
             MetalShaderLifecycleBridge.getShaderDiagnosticsForTests("rendertype_lines", "FRAGMENT");
         assertNotNull(diagnostics);
         assertNotNull(diagnostics.lastError());
@@ -188,6 +195,97 @@ class MetalShaderLifecycleBridgeTest {
         assertNull(compiler.lastShaderName);
     }
 
+    @Test
+    void leavesStagesCompilingUntilProgramIsBound() {
+        List<Runnable> queuedStages = new ArrayList<>();
+        MetalShaderLifecycleBridge.setStageExecutorForTests(queuedStages::add);
+        MetalShaderLifecycleBridge.setSpirvCompilerForTests(new RecordingCompiler());
+        MetalShaderLifecycleBridge.setReflectionExtractorForTests(new RecordingReflectionExtractor());
+        MetalShaderLifecycleBridge.setMslTranslatorForTests(new RecordingTranslator());
+
+        MetalShaderLifecycleBridge.onShaderStageCompileSource(
+            "rendertype_async",
+            "VERTEX",
+            new ByteArrayInputStream("void main() {}".getBytes(StandardCharsets.UTF_8))
+        );
+        MetalShaderLifecycleBridge.onShaderStageCompileSource(
+            "rendertype_async",
+            "FRAGMENT",
+            new ByteArrayInputStream("void main() {}".getBytes(StandardCharsets.UTF_8))
+        );
+
+        assertEquals(2, queuedStages.size());
+        assertEquals(2, MetalShaderProgramBridge.pendingStageCountForTests());
+        assertNull(MetalShaderLifecycleBridge.getReflectionBindingMapForTests("rendertype_async"));
+
+        // Load completion must not join, or programs would compile one after another during a reload.
+        MetalShaderLifecycleBridge.onShaderProgramLoadComplete("rendertype_async");
+        assertEquals(2, MetalShaderProgramBridge.pendingStageCountForTests());
+        assertNotEquals(MetalShaderProgramBridge.UNKNOWN_PROGRAM_ID, MetalShaderProgramBridge.programId("rendertype_async"));
+
+        queuedStages.forEach(Runnable::run);
+        MetalShaderProgramBridge.onProgramBound("rendertype_async");
+
+        assertEquals(0, MetalShaderProgramBridge.pendingStageCountForTests());
+        assertNotNull(MetalShaderLifecycleBridge.getReflectionBindingMapForTests("rendertype_async"));
+        assertNotNull(MetalShaderProgramBridge.boundProgram());
+    }
+
+    @Test
+    void sharesInFlightTranslationAcrossProgramsWithIdenticalStages() {
+        List<Runnable> queuedStages = new ArrayList<>();
+        MetalShaderLifecycleBridge.setStageExecutorForTests(queuedStages::add);
+        RecordingCompiler compiler = new RecordingCompiler();
+        MetalShaderLifecycleBridge.setSpirvCompilerForTests(compiler);
+        MetalShaderLifecycleBridge.setReflectionExtractorForTests(new RecordingReflectionExtractor());
+        MetalShaderLifecycleBridge.setMslTranslatorForTests(new RecordingTranslator());
+
+        for (String program : List.of("rendertype_solid", "rendertype_cutout")) {
+            MetalShaderLifecycleBridge.onShaderStageCompileSource(
+                program,
+                "VERTEX",
+                new ByteArrayInputStream("void main() {}".getBytes(StandardCharsets.UTF_8))
+            );
+        }
+
+        assertEquals(1, queuedStages.size());
+        assertTrue(events.contains("shader_stage_dedup_hit|rendertype_cutout|VERTEX"));
+        queuedStages.forEach(Runnable::run);
+
+        assertEquals(1, compiler.compileCount);
+        assertNotNull(MetalShaderLifecycleBridge.getShaderDiagnosticsForTests("rendertype_solid", "VERTEX").mslHash());
+        assertNotNull(MetalShaderLifecycleBridge.getShaderDiagnosticsForTests("rendertype_cutout", "VERTEX").mslHash());
+    }
+
+    @Test
+    void recompilesOnlyStagesWhoseIncludesChangedOnReload() {
+        RecordingCompiler compiler = new RecordingCompiler();
+        MetalShaderLifecycleBridge.setSpirvCompilerForTests(compiler);
+        MetalShaderLifecycleBridge.setReflectionExtractorForTests(new RecordingReflectionExtractor());
+        MetalShaderLifecycleBridge.setMslTranslatorForTests(new RecordingTranslator());
+
+        loadIncludingStage("rendertype_solid", "fog.glsl", "float fog() { return 0.0; }");
+        loadIncludingStage("rendertype_cutout", "light.glsl", "float light() { return 1.0; }");
+        assertEquals(2, compiler.compileCount);
+
+        // Resource reload where only fog.glsl was edited.
+        loadIncludingStage("rendertype_solid", "fog.glsl", "float fog() { return 0.5; }");
+        loadIncludingStage("rendertype_cutout", "light.glsl", "float light() { return 1.0; }");
+
+        assertEquals(3, compiler.compileCount);
+        assertTrue(events.contains("shader_stage_reload_reused|rendertype_cutout|VERTEX"));
+        assertEquals(new ShaderIncludeGraph.Stats(2, 2, 3, 1), MetalShaderLifecycleBridge.includeGraphStats());
+    }
+
+    private static void loadIncludingStage(String shaderName, String include, String includeSource) {
+        MetalShaderLifecycleBridge.onShaderStageSourceResolved(
+            shaderName,
+            "VERTEX",
+            "#version 150\n" + includeSource + "\nvoid main() {}",
+            Map.of(include, includeSource)
+        );
+    }
+
     private static void assertStrictlyIncreasing(List<Long> values) {
         for (int i = 1; i < values.size(); i++) {
             long previous = values.get(i - 1);
@@ -200,9 +298,11 @@ class MetalShaderLifecycleBridgeTest {
         private String lastShaderName;
         private ShaderStage lastStage;
         private String lastSource;
+        private int compileCount;
 
         @Override
         byte[] compile(String shaderName, ShaderStage stage, String glslSource) {
+            this.compileCount++;
             this.lastShaderName = shaderName;
             this.lastStage = stage;
             this.lastSource = glslSource;
@@ -220,6 +320,18 @@ class MetalShaderLifecycleBridgeTest {
             this.lastSpirvBinary = spirvBinary;
             return "fragment float4 main0() { return float4(1.0); }";
         }
+
+        @Override
+        TranslatedShader translateWithReflection(String shaderName, byte[] spirvBinary) {
+            return new TranslatedShader(
+                translate(shaderName, spirvBinary),
+                new ShaderBindingMap(
+                    List.of(new ShaderBindingMap.UniformBinding("Globals", 0, 0)),
+                    List.of(new ShaderBindingMap.TextureBinding("Diffuse", 0, 1)),
+                    List.of(new ShaderBindingMap.SamplerBinding("Linear", 0, 2))
+                )
+            );
+        }
     }
 
     private static final class FailingTranslator extends SpirvToMslTranslator {
@@ -227,6 +339,11 @@ class MetalShaderLifecycleBridgeTest {
         String translate(String shaderName, byte[] spirvBinary) {
             throw new SpirvToMslTranslator.TranslationException("test failure");
         }
+
+        @Override
+        TranslatedShader translateWithReflection(String shaderName, byte[] spirvBinary) {
+            throw new SpirvToMslTranslator.TranslationException("test failure");
+        }
     }
 
     private static final class RecordingReflectionExtractor extends SpirvReflectionExtractor {
@@ -281,6 +398,11 @@ class MetalShaderLifecycleBridgeTest {
             return 0;
         }
 
+        @Override
+        public int precompilePipelineState(long programHandle, long vertexDescriptorHandle, ByteBuffer packedState, int packedByteLength) {
+            return 0;
+        }
+
         @Override
         public long registerUniform(long programHandle, String uniformName, int set, int binding) {
             return 1L;
@@ -291,6 +413,21 @@ class MetalShaderLifecycleBridgeTest {
             return 0;
         }
 
+        @Override
+        public int configureUniformBlock(
+            long programHandle,
+            int blockByteLength,
+            ByteBuffer packedRegions,
+            int packedByteLength
+        ) {
+            return 0;
+        }
+
+        @Override
+        public int updateUniformBlock(long programHandle, ByteBuffer data, int dataLength) {
+            return 0;
+        }
+
         @Override
         public int destroyShaderProgram(long programHandle) {
             return 0;
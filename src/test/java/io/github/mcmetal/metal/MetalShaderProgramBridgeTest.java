@@ -1,11 +1,23 @@
 package io.github.mcmetal.metal;
 
 import io.github.mcmetal.metal.bridge.NativeStatus;
+import net.minecraft.client.render.VertexFormats;
+import org.jetbrains.annotations.Nullable;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class MetalShaderProgramBridgeTest {
     private final RecordingBackend backend = new RecordingBackend();
@@ -14,11 +26,13 @@ class MetalShaderProgramBridgeTest {
     void setUp() {
         MetalShaderProgramBridge.resetForTests();
         MetalShaderProgramBridge.setNativeShaderBackendForTests(backend);
+        MetalShaderProgramBridge.setProgramExecutorForTests(Runnable::run);
     }
 
     @AfterEach
     void tearDown() {
         MetalShaderProgramBridge.resetForTests();
+        MetalBufferUploadBridge.resetForTests();
     }
 
     @Test
@@ -60,12 +74,263 @@ class MetalShaderProgramBridgeTest {
         assertEquals(2, backend.updateUniformFloat4Calls);
     }
 
+    @Test
+    void stagesUniformsAndFlushesOncePerDirtyDraw() {
+        linkStagedEntityProgram();
+        MetalShaderProgramBridge.onProgramBound("rendertype_entity");
+        MetalShaderProgramBridge.BoundProgram program = MetalShaderProgramBridge.boundProgram();
+
+        MetalShaderProgramBridge.setUniformFloat4("rendertype_entity", "ColorModulator", 1.0F, 0.5F, 0.25F, 1.0F);
+        FloatBuffer identity = FloatBuffer.wrap(new float[] {1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1});
+        int modelViewSlot = MetalShaderProgramBridge.resolveUniformSlot("rendertype_entity", "ModelViewMat");
+        MetalShaderProgramBridge.setUniformFloats(modelViewSlot, identity, 16);
+        MetalShaderProgramBridge.flushUniformBlock(program);
+        MetalShaderProgramBridge.flushUniformBlock(program);
+
+        assertEquals(1, backend.configureUniformBlockCalls);
+        assertEquals(80, backend.configuredBlockByteLength);
+        assertEquals(0, backend.updateUniformFloat4Calls);
+        assertEquals(1, backend.updateUniformBlockCalls);
+        assertEquals(0.5F, backend.lastUniformBlock.getFloat(68));
+        assertEquals(1.0F, backend.lastUniformBlock.getFloat(20));
+
+        MetalShaderProgramBridge.setUniformFloat4("rendertype_entity", "ColorModulator", 0.9F, 0.4F, 0.2F, 1.0F);
+        MetalShaderProgramBridge.flushUniformBlock(program);
+
+        assertEquals(2, backend.updateUniformBlockCalls);
+        assertEquals(0.4F, backend.lastUniformBlock.getFloat(68));
+    }
+
+    @Test
+    void resolvedSlotsUpdateWithoutNameLookups() {
+        linkStagedEntityProgram();
+        MetalShaderProgramBridge.onProgramBound("rendertype_entity");
+        MetalShaderProgramBridge.BoundProgram program = MetalShaderProgramBridge.boundProgram();
+        int colorSlot = MetalShaderProgramBridge.resolveUniformSlot("rendertype_entity", "ColorModulator");
+        int fogSlot = MetalShaderProgramBridge.resolveUniformSlot("rendertype_entity", "FogColor");
+        long lookupsAfterLink = MetalShaderProgramBridge.nameLookupsForTests();
+
+        for (int frame = 0; frame < 3; frame++) {
+            MetalShaderProgramBridge.setUniformFloat4(colorSlot, 1.0F, 0.5F, frame, 1.0F);
+            MetalShaderProgramBridge.setUniformFloats(fogSlot, FloatBuffer.wrap(new float[] {0.1F, 0.2F, frame, 1.0F}), 4);
+            MetalShaderProgramBridge.flushUniformBlock(program);
+        }
+
+        assertEquals(lookupsAfterLink, MetalShaderProgramBridge.nameLookupsForTests());
+        assertEquals(3, backend.updateUniformBlockCalls);
+        assertEquals(3, backend.updateUniformFloat4Calls);
+        assertEquals(
+            MetalShaderProgramBridge.UNRESOLVED_UNIFORM_SLOT,
+            MetalShaderProgramBridge.resolveUniformSlot("rendertype_entity", "Missing")
+        );
+    }
+
+    @Test
+    void suppressesUniformWritesWithUnchangedBits() {
+        linkStagedEntityProgram();
+        MetalShaderProgramBridge.onProgramBound("rendertype_entity");
+        MetalShaderProgramBridge.BoundProgram program = MetalShaderProgramBridge.boundProgram();
+        int colorSlot = MetalShaderProgramBridge.resolveUniformSlot("rendertype_entity", "ColorModulator");
+        int fogSlot = MetalShaderProgramBridge.resolveUniformSlot("rendertype_entity", "FogColor");
+
+        for (int frame = 0; frame < 3; frame++) {
+            MetalShaderProgramBridge.setUniformFloat4(colorSlot, 1.0F, 0.5F, 0.25F, 1.0F);
+            MetalShaderProgramBridge.setUniformFloat4(fogSlot, 0.1F, 0.2F, 0.3F, 1.0F);
+            MetalShaderProgramBridge.flushUniformBlock(program);
+        }
+        // Zero is already what both the staging block and the native uniform hold after link.
+        MetalShaderProgramBridge.setUniformFloats(
+            MetalShaderProgramBridge.resolveUniformSlot("rendertype_entity", "ModelViewMat"),
+            FloatBuffer.wrap(new float[16]),
+            16
+        );
+        MetalShaderProgramBridge.setUniformFloat4(colorSlot, -0.0F, 0.5F, 0.25F, 1.0F);
+        MetalShaderProgramBridge.flushUniformBlock(program);
+
+        assertEquals(new MetalShaderProgramBridge.UniformWriteStats(3, 5), MetalShaderProgramBridge.uniformWriteStats());
+        assertEquals(1, backend.updateUniformFloat4Calls);
+        assertEquals(2, backend.updateUniformBlockCalls);
+    }
+
+    @Test
+    void reattachesIdenticalProgramsAcrossReload() {
+        linkStagedEntityProgram();
+        submitStage("rendertype_solid", "VERTEX", "vertex float4 main0() { return 0; }");
+        submitStage("rendertype_solid", "FRAGMENT", "fragment float4 main0() { return 0; }");
+        int entityId = MetalShaderProgramBridge.programId("rendertype_entity");
+        int solidId = MetalShaderProgramBridge.programId("rendertype_solid");
+        MetalShaderProgramBridge.onProgramBound("rendertype_entity");
+        long entityHandle = MetalShaderProgramBridge.boundProgram().nativeHandle();
+
+        // Vanilla links the next generation before closing the previous one.
+        MetalShaderProgramBridge.beginProgramReload();
+        linkStagedEntityProgram();
+        submitStage("rendertype_solid", "VERTEX", "vertex float4 main0() { return 0; }");
+        submitStage("rendertype_solid", "FRAGMENT", "fragment float4 main0() { return 1; }");
+        MetalShaderProgramBridge.onProgramClosed("rendertype_entity", entityId);
+        MetalShaderProgramBridge.onProgramClosed("rendertype_solid", solidId);
+        MetalShaderProgramBridge.completeProgramReload();
+
+        MetalShaderProgramBridge.onProgramBound("rendertype_entity");
+        assertEquals(entityHandle, MetalShaderProgramBridge.boundProgram().nativeHandle());
+        assertEquals(3, backend.createCalls);
+        assertEquals(3, backend.compileCalls);
+        assertEquals(1, backend.destroyCalls);
+
+        // A program closed before its replacement loads is parked and reattached.
+        MetalShaderProgramBridge.beginProgramReload();
+        MetalShaderProgramBridge.onProgramClosed("rendertype_entity", MetalShaderProgramBridge.programId("rendertype_entity"));
+        linkStagedEntityProgram();
+        MetalShaderProgramBridge.completeProgramReload();
+
+        MetalShaderProgramBridge.onProgramBound("rendertype_entity");
+        assertEquals(entityHandle, MetalShaderProgramBridge.boundProgram().nativeHandle());
+        assertEquals(1, backend.destroyCalls);
+        assertEquals(new MetalShaderProgramBridge.ProgramPoolStats(3, 2, 2, 1), MetalShaderProgramBridge.programPoolStats());
+    }
+
+    @Test
+    void skipsDrawsUntilAsyncProgramIsReady() {
+        List<Runnable> queuedBuilds = new ArrayList<>();
+        MetalShaderProgramBridge.setProgramExecutorForTests(queuedBuilds::add);
+        linkStagedEntityProgram();
+        int fogSlot = MetalShaderProgramBridge.resolveUniformSlot("rendertype_entity", "FogColor");
+        MetalShaderProgramBridge.setUniformFloat4(fogSlot, 0.1F, 0.2F, 0.3F, 1.0F);
+        MetalShaderProgramBridge.onProgramBound("rendertype_entity");
+
+        assertEquals(1, queuedBuilds.size());
+        assertNull(MetalShaderProgramBridge.boundProgram());
+        assertFalse(MetalShaderProgramBridge.prepareDrawProgram());
+        assertEquals(0, backend.updateUniformFloat4Calls);
+
+        queuedBuilds.forEach(Runnable::run);
+
+        assertTrue(MetalShaderProgramBridge.prepareDrawProgram());
+        assertNotNull(MetalShaderProgramBridge.boundProgram());
+        assertEquals(1, backend.updateUniformFloat4Calls);
+        MetalShaderProgramBridge.ProgramReadinessStats stats = MetalShaderProgramBridge.programReadinessStats();
+        assertEquals(0, stats.pending());
+        assertEquals(1L, stats.ready());
+        assertEquals(1L, stats.skippedDraws());
+        assertEquals(0L, stats.stallNanos());
+    }
+
+    @Test
+    void compilesPipelineForProgramVertexFormatAtLoad() {
+        MetalBufferUploadBridge.setNativeBufferBackendForTests(new DescriptorBackend(42L));
+        MetalShaderProgramBridge.onProgramLoadStart("rendertype_lines", VertexFormats.POSITION_COLOR);
+        MetalShaderProgramBridge.onTranslatedStage("rendertype_lines", "VERTEX", "vertex float4 main0() { return 0; }");
+        MetalShaderProgramBridge.onTranslatedStage("rendertype_lines", "FRAGMENT", "fragment float4 main0() { return 0; }");
+
+        assertEquals(List.of(42L), backend.compiledDescriptorHandles);
+        assertEquals(5, backend.precompileCalls);
+        assertEquals(5L, MetalShaderProgramBridge.programReadinessStats().precompiledPipelines());
+
+        // Programs without a known format still compile, against the default layout and without blend states.
+        MetalShaderProgramBridge.onTranslatedStage("rendertype_solid", "VERTEX", "vertex float4 main0() { return 0; }");
+        MetalShaderProgramBridge.onTranslatedStage("rendertype_solid", "FRAGMENT", "fragment float4 main0() { return 0; }");
+
+        assertEquals(List.of(42L, 0L), backend.compiledDescriptorHandles);
+        assertEquals(5, backend.precompileCalls);
+    }
+
+    @Test
+    void drawWithStaleDisabledLogicOpHitsLoadTimePipeline() {
+        MetalBufferUploadBridge.setNativeBufferBackendForTests(new DescriptorBackend(42L));
+        MetalShaderProgramBridge.onProgramLoadStart("rendertype_solid", VertexFormats.POSITION_COLOR);
+        MetalShaderProgramBridge.onTranslatedStage("rendertype_solid", "VERTEX", "vertex float4 main0() { return 0; }");
+        MetalShaderProgramBridge.onTranslatedStage("rendertype_solid", "FRAGMENT", "fragment float4 main0() { return 0; }");
+
+        MetalRenderSystemBridge.resetForTests();
+        MetalRenderSystemBridge.setBridgeActiveForTests(true);
+        MetalRenderSystemBridge.setStateSubmissionHookForTests((operation, nativeCall) -> NativeStatus.OK);
+        try {
+            // A text highlight leaves OR_REVERSE set after disabling the logic op.
+            MetalRenderSystemBridge.onEnableColorLogicOp();
+            MetalRenderSystemBridge.onLogicOp(0x150B);
+            MetalRenderSystemBridge.onDisableColorLogicOp();
+
+            assertTrue(backend.precompiledStates.contains(MetalRenderSystemBridge.currentPipelineState(0x0004)));
+        } finally {
+            MetalRenderSystemBridge.resetForTests();
+        }
+    }
+
+    @Test
+    void joinsPendingStagesAndResolvesUniformSlotsWhenReloadCompletes() {
+        CompletableFuture<MetalShaderProgramBridge.StageArtifacts> vertex = new CompletableFuture<>();
+        CompletableFuture<MetalShaderProgramBridge.StageArtifacts> fragment = new CompletableFuture<>();
+        MetalShaderProgramBridge.beginProgramReload();
+        MetalShaderProgramBridge.onStageSubmitted("rendertype_entity", vertex);
+        MetalShaderProgramBridge.onStageSubmitted("rendertype_entity", fragment);
+        MetalShaderProgramBridge.linkProgram("rendertype_entity");
+        RecordingSlotHolder colorModulator = new RecordingSlotHolder("ColorModulator");
+        MetalShaderProgramBridge.attachUniformSlots("rendertype_entity", List.of(colorModulator));
+
+        assertEquals(2, MetalShaderProgramBridge.pendingStageCountForTests());
+        assertEquals(MetalShaderProgramBridge.UNRESOLVED_UNIFORM_SLOT, colorModulator.slot);
+        assertEquals(0, backend.createCalls);
+
+        UniformBlockLayout layout = new UniformBlockLayout(List.of(new UniformBlockLayout.Block(
+            "Globals",
+            0,
+            0,
+            16,
+            List.of(new UniformBlockLayout.Member("ColorModulator", UniformBlockLayout.MemberType.VEC4, 0, 0))
+        )));
+        vertex.complete(new MetalShaderProgramBridge.StageArtifacts("VERTEX", null, "vertex float4 main0() { return 0; }", layout));
+        fragment.complete(new MetalShaderProgramBridge.StageArtifacts("FRAGMENT", null, "fragment float4 main0() { return 0; }", layout));
+        MetalShaderProgramBridge.completeProgramReload();
+
+        assertEquals(0, MetalShaderProgramBridge.pendingStageCountForTests());
+        assertEquals(1, backend.createCalls);
+        assertTrue(colorModulator.slot >= 0);
+    }
+
+    private static void submitStage(String shaderName, String shaderStage, String mslSource) {
+        MetalShaderProgramBridge.onStageSubmitted(shaderName, CompletableFuture.completedFuture(
+            new MetalShaderProgramBridge.StageArtifacts(shaderStage, null, mslSource, null)
+        ));
+    }
+
+    private static void linkStagedEntityProgram() {
+        UniformBlockLayout layout = new UniformBlockLayout(List.of(new UniformBlockLayout.Block(
+            "Globals",
+            0,
+            0,
+            80,
+            List.of(
+                new UniformBlockLayout.Member("ModelViewMat", UniformBlockLayout.MemberType.MAT4, 0, 16),
+                new UniformBlockLayout.Member("ColorModulator", UniformBlockLayout.MemberType.VEC4, 64, 0)
+            )
+        )));
+        // FogColor has a binding but no reflected layout, so it stays on the per-uniform native path.
+        ShaderBindingMap bindings = new ShaderBindingMap(
+            List.of(new ShaderBindingMap.UniformBinding("FogColor", 0, 1)),
+            List.of(),
+            List.of()
+        );
+        MetalShaderProgramBridge.onStageSubmitted("rendertype_entity", CompletableFuture.completedFuture(
+            new MetalShaderProgramBridge.StageArtifacts("VERTEX", bindings, "vertex float4 main0() { return 0; }", layout)
+        ));
+        MetalShaderProgramBridge.onStageSubmitted("rendertype_entity", CompletableFuture.completedFuture(
+            new MetalShaderProgramBridge.StageArtifacts("FRAGMENT", null, "fragment float4 main0() { return 0; }", layout)
+        ));
+    }
+
     private static final class RecordingBackend implements MetalShaderProgramBridge.NativeShaderBackend {
         private long nextHandle = 1L;
         private int createCalls;
         private int compileCalls;
+        private final List<Long> compiledDescriptorHandles = new ArrayList<>();
+        private int precompileCalls;
+        private final List<PipelineStateKey> precompiledStates = new ArrayList<>();
         private int registerUniformCalls;
         private int updateUniformFloat4Calls;
+        private int configureUniformBlockCalls;
+        private int configuredBlockByteLength;
+        private int updateUniformBlockCalls;
+        private ByteBuffer lastUniformBlock;
         private int destroyCalls;
 
         @Override
@@ -77,6 +342,19 @@ class MetalShaderProgramBridgeTest {
         @Override
         public int compileShaderPipeline(long programHandle, long vertexDescriptorHandle) {
             compileCalls++;
+            compiledDescriptorHandles.add(vertexDescriptorHandle);
+            return NativeStatus.OK;
+        }
+
+        @Override
+        public int precompilePipelineState(long programHandle, long vertexDescriptorHandle, ByteBuffer packedState, int packedByteLength) {
+            precompileCalls++;
+            ByteBuffer ordered = packedState.duplicate().order(packedState.order());
+            int[] packed = new int[packedByteLength / Integer.BYTES];
+            for (int index = 0; index < packed.length; index++) {
+                packed[index] = ordered.getInt();
+            }
+            precompiledStates.add(PipelineStateKey.fromPackedInts(packed));
             return NativeStatus.OK;
         }
 
@@ -92,10 +370,91 @@ class MetalShaderProgramBridgeTest {
             return NativeStatus.OK;
         }
 
+        @Override
+        public int configureUniformBlock(
+            long programHandle,
+            int blockByteLength,
+            ByteBuffer packedRegions,
+            int packedByteLength
+        ) {
+            configureUniformBlockCalls++;
+            configuredBlockByteLength = blockByteLength;
+            return NativeStatus.OK;
+        }
+
+        @Override
+        public int updateUniformBlock(long programHandle, ByteBuffer data, int dataLength) {
+            updateUniformBlockCalls++;
+            lastUniformBlock = data;
+            return NativeStatus.OK;
+        }
+
         @Override
         public int destroyShaderProgram(long programHandle) {
             destroyCalls++;
             return NativeStatus.OK;
         }
     }
+
+    private static final class DescriptorBackend implements MetalBufferUploadBridge.NativeBufferBackend {
+        private final long descriptorHandle;
+
+        private DescriptorBackend(long descriptorHandle) {
+            this.descriptorHandle = descriptorHandle;
+        }
+
+        @Override
+        public long createBuffer(int usage, int size, @Nullable ByteBuffer initialData, int initialDataLength) {
+            return 0L;
+        }
+
+        @Override
+        public int updateBuffer(long handle, int offset, ByteBuffer data, int dataLength) {
+            return NativeStatus.OK;
+        }
+
+        @Override
+        public int destroyBuffer(long handle) {
+            return NativeStatus.OK;
+        }
+
+        @Override
+        public long registerVertexDescriptor(int strideBytes, int attributeCount, ByteBuffer packedElements, int packedByteLength) {
+            return descriptorHandle;
+        }
+
+        @Override
+        public int draw(int mode, int first, int count) {
+            return NativeStatus.OK;
+        }
+
+        @Override
+        public int drawIndexed(int mode, int count, int indexType) {
+            return NativeStatus.OK;
+        }
+    }
+
+    private static final class RecordingSlotHolder implements UniformSlotHolder {
+        private final String name;
+        private int slot = MetalShaderProgramBridge.UNRESOLVED_UNIFORM_SLOT;
+
+        private RecordingSlotHolder(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String mcmetal$uniformName() {
+            return name;
+        }
+
+        @Override
+        public int mcmetal$uniformSlot() {
+            return slot;
+        }
+
+        @Override
+        public void mcmetal$setUniformSlot(int uniformSlot) {
+            slot = uniformSlot;
+        }
+    }
 }
@@ -0,0 +1,138 @@
+package io.github.mcmetal.metal;
+
+import io.github.mcmetal.metal.bridge.NativeStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PipelineStateArchiveTest {
+    private static final String POSITION_LAYOUT = "12:1,0,0,5126,3,0,0,0";
+
+    private final RecordingBackend backend = new RecordingBackend();
+    private Path tempDir;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        tempDir = Files.createTempDirectory("mcmetal-pipeline-archive-test");
+        PipelineStateArchive.resetForTests();
+        PipelineStateArchive.setArchiveFileForTests(tempDir.resolve("pipeline-archive.json"));
+        PipelineStateArchive.setPrecompileBackendForTests(backend);
+        PipelineStateArchive.setPrecompileExecutorForTests(Runnable::run);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        PipelineStateArchive.resetForTests();
+        try (var walk = Files.walk(tempDir)) {
+            walk.sorted((a, b) -> b.compareTo(a)).forEach(path -> {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (Exception ignored) {
+                    // Best-effort cleanup.
+                }
+            });
+        }
+    }
+
+    @Test
+    void replaysRecordedPipelinesWhenProgramBecomesReadyInNextSession() {
+        PipelineStateKey translucent = new PipelineStateKey(4, true, 0x0302, 0x0303, 1, 0x0303, 0x8006, 0x8006, true, 0x0405, 0xF, false, 0x1503);
+        PipelineStateArchive.recordUse(
+            new MetalShaderProgramBridge.BoundProgram("rendertype_translucent", 3L, "hash-a"),
+            POSITION_LAYOUT,
+            translucent
+        );
+        PipelineStateArchive.save();
+
+        PipelineStateArchive.clearEntriesForTests();
+        PipelineStateArchive.load();
+        PipelineStateArchive.onProgramReady("rendertype_translucent", "hash-a", 11L);
+
+        assertEquals(1, backend.registeredLayouts.size());
+        assertEquals(1, backend.precompiledStates.size());
+        assertEquals(11L, (long) backend.precompiledProgramHandles.get(0));
+        assertArrayEquals(translucent.toPackedInts(), backend.precompiledStates.get(0));
+        assertEquals(1, PipelineStateArchive.precompiledCountForTests());
+    }
+
+    @Test
+    void prunesEntriesWhenProgramSourcesChanged() {
+        PipelineStateArchive.recordUse(
+            new MetalShaderProgramBridge.BoundProgram("rendertype_solid", 3L, "hash-a"),
+            POSITION_LAYOUT,
+            new PipelineStateKey(4, false, 1, 0, 1, 0, 0x8006, 0x8006, true, 0x0405, 0xF, false, 0x1503)
+        );
+
+        PipelineStateArchive.onProgramReady("rendertype_solid", "hash-b", 5L);
+
+        assertEquals(0, backend.precompiledStates.size());
+        assertEquals(0, PipelineStateArchive.entryCountForTests());
+    }
+
+    @Test
+    void dropsEntriesIdleForTooManySessionsOnLoad() throws Exception {
+        Files.writeString(
+            tempDir.resolve("pipeline-archive.json"),
+            "{\"formatVersion\":" + PipelineStateArchive.FORMAT_VERSION + ",\"session\":40,\"entries\":["
+                + "{\"program\":\"stale\",\"programHash\":\"h\",\"vertexLayout\":\"" + POSITION_LAYOUT + "\","
+                + "\"state\":[4,0,1,0,1,0,32774,32774,1,1029,15,0,5379],\"lastUsedSession\":2},"
+                + "{\"program\":\"fresh\",\"programHash\":\"h\",\"vertexLayout\":\"" + POSITION_LAYOUT + "\","
+                + "\"state\":[4,0,1,0,1,0,32774,32774,1,1029,15,0,5379],\"lastUsedSession\":40}]}",
+            StandardCharsets.UTF_8
+        );
+
+        PipelineStateArchive.load();
+
+        assertEquals(1, PipelineStateArchive.entryCountForTests());
+    }
+
+    @Test
+    void discardsArchivesWithDifferentFormatVersion() throws Exception {
+        Files.writeString(
+            tempDir.resolve("pipeline-archive.json"),
+            "{\"formatVersion\":999,\"session\":1,\"entries\":["
+                + "{\"program\":\"fresh\",\"programHash\":\"h\",\"vertexLayout\":\"" + POSITION_LAYOUT + "\","
+                + "\"state\":[4,0,1,0,1,0,32774,32774,1,1029,15,0,5379],\"lastUsedSession\":1}]}",
+            StandardCharsets.UTF_8
+        );
+
+        PipelineStateArchive.load();
+
+        assertEquals(0, PipelineStateArchive.entryCountForTests());
+    }
+
+    private static final class RecordingBackend implements PipelineStateArchive.PipelinePrecompileBackend {
+        private final List<Integer> registeredLayouts = new ArrayList<>();
+        private final List<Long> precompiledProgramHandles = new ArrayList<>();
+        private final List<int[]> precompiledStates = new ArrayList<>();
+
+        @Override
+        public long registerVertexDescriptor(int strideBytes, int attributeCount, ByteBuffer packedElements, int packedByteLength) {
+            registeredLayouts.add(strideBytes);
+            return 21L;
+        }
+
+        @Override
+        public int precompilePipelineState(long programHandle, long vertexDescriptorHandle, ByteBuffer packedState, int packedByteLength) {
+            ByteBuffer state = packedState.duplicate().order(ByteOrder.nativeOrder());
+            int[] values = new int[packedByteLength / Integer.BYTES];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = state.getInt();
+            }
+            precompiledProgramHandles.add(programHandle);
+            precompiledStates.add(values);
+            return NativeStatus.OK;
+        }
+    }
+}
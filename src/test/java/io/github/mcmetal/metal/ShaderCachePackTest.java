@@ -0,0 +1,118 @@
+package io.github.mcmetal.metal;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShaderCachePackTest {
+    private Path packDirectory;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        packDirectory = Files.createTempDirectory("mcmetal-pack-test");
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        try (var walk = Files.walk(packDirectory)) {
+            walk.sorted((a, b) -> b.compareTo(a)).forEach(path -> {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (Exception ignored) {
+                    // Best-effort cleanup.
+                }
+            });
+        }
+    }
+
+    @Test
+    void servesAppendedRecordsAfterReopen() throws Exception {
+        ShaderCachePack pack = ShaderCachePack.open(packDirectory);
+        pack.append("blit__VERTEX__a", new byte[] {1, 2, 3, 4}, utf8("vertex main0"), new byte[] {9});
+        pack.close();
+
+        ShaderCachePack reopened = ShaderCachePack.open(packDirectory);
+        ShaderCachePack.Record record = reopened.find("blit__VERTEX__a");
+
+        assertNotNull(record);
+        assertEquals(ByteBuffer.wrap(new byte[] {1, 2, 3, 4}), record.spirv());
+        assertEquals("vertex main0", StandardCharsets.UTF_8.decode(record.msl()).toString());
+        assertEquals(ByteBuffer.wrap(new byte[] {9}), record.bindings());
+        assertNull(reopened.find("blit__FRAGMENT__a"));
+    }
+
+    @Test
+    void truncatesTornAppendAndRecoversUnindexedRecords() throws Exception {
+        ShaderCachePack pack = ShaderCachePack.open(packDirectory);
+        pack.append("first", new byte[] {1}, utf8("a"), new byte[0]);
+        pack.append("second", new byte[] {2}, utf8("b"), new byte[0]);
+        pack.close();
+        long intactLength = Files.size(packDirectory.resolve(ShaderCachePack.DATA_FILE_NAME));
+        // Simulate a crash after the second append reached disk but before the index was replaced, then a torn write.
+        Files.delete(packDirectory.resolve(ShaderCachePack.INDEX_FILE_NAME));
+        Files.write(
+            packDirectory.resolve(ShaderCachePack.DATA_FILE_NAME),
+            new byte[] {0x4D, 0x43, 0x53, 0x52, 0, 0, 0, 8, 1, 2},
+            StandardOpenOption.APPEND
+        );
+
+        ShaderCachePack reopened = ShaderCachePack.open(packDirectory);
+
+        assertEquals(2, reopened.entryCount());
+        assertNotNull(reopened.find("second"));
+        assertEquals(intactLength, Files.size(packDirectory.resolve(ShaderCachePack.DATA_FILE_NAME)));
+        reopened.append("third", new byte[] {3}, utf8("c"), new byte[0]);
+        assertEquals("c", StandardCharsets.UTF_8.decode(reopened.find("third").msl()).toString());
+    }
+
+    @Test
+    void batchesIndexWritesAndRecoversAppendsTheIndexHasNotCaughtUpWith() throws Exception {
+        ShaderCachePack pack = ShaderCachePack.open(packDirectory);
+        pack.append("first", new byte[] {1}, utf8("a"), new byte[0]);
+        pack.append("second", new byte[] {2}, utf8("b"), new byte[0]);
+
+        assertFalse(Files.exists(packDirectory.resolve(ShaderCachePack.INDEX_FILE_NAME)));
+        // Reopening without a flush stands in for a crash: the unindexed tail is rescanned.
+        ShaderCachePack recovered = ShaderCachePack.open(packDirectory);
+        assertEquals(2, recovered.entryCount());
+        assertEquals("b", StandardCharsets.UTF_8.decode(recovered.find("second").msl()).toString());
+        recovered.close();
+
+        pack.flush();
+        assertTrue(Files.exists(packDirectory.resolve(ShaderCachePack.INDEX_FILE_NAME)));
+        pack.close();
+    }
+
+    @Test
+    void compactionDropsSupersededRecordsAndKeepsLatestValue() throws Exception {
+        ShaderCachePack pack = ShaderCachePack.open(packDirectory);
+        pack.append("rendertype_solid__VERTEX__a", new byte[64], utf8("old"), new byte[0]);
+        pack.append("rendertype_solid__VERTEX__a", new byte[] {7}, utf8("new"), new byte[0]);
+        long before = Files.size(packDirectory.resolve(ShaderCachePack.DATA_FILE_NAME));
+        assertTrue(pack.deadBytes() > 0L);
+
+        pack.compact();
+        pack.close();
+        ShaderCachePack reopened = ShaderCachePack.open(packDirectory);
+
+        assertEquals(0L, reopened.deadBytes());
+        assertTrue(Files.size(packDirectory.resolve(ShaderCachePack.DATA_FILE_NAME)) < before);
+        assertEquals("new", StandardCharsets.UTF_8.decode(reopened.find("rendertype_solid__VERTEX__a").msl()).toString());
+    }
+
+    private static byte[] utf8(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,92 @@
+package io.github.mcmetal.metal;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShaderDiagnosticsStoreTest {
+    private Path tempDumpDir;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (tempDumpDir != null) {
+            try (var walk = Files.walk(tempDumpDir)) {
+                walk.sorted((a, b) -> b.compareTo(a)).forEach(path -> {
+                    try {
+                        Files.deleteIfExists(path);
+                    } catch (Exception ignored) {
+                        // Best-effort cleanup.
+                    }
+                });
+            }
+        }
+    }
+
+    @Test
+    void keepsOnlyHashesAndSizesByDefault() {
+        ShaderDiagnosticsStore store = new ShaderDiagnosticsStore(false, 1L << 20);
+
+        store.recordTranslation("rendertype_solid", "VERTEX", glsl(0), msl(0));
+
+        ShaderDiagnosticsStore.Summary summary = store.summary("rendertype_solid", "VERTEX");
+        assertNotNull(summary);
+        assertEquals(ShaderDiskCache.sha256(glsl(0)), summary.glslHash());
+        assertEquals(glsl(0).getBytes(StandardCharsets.UTF_8).length, summary.glslBytes());
+        assertEquals(ShaderDiskCache.sha256(msl(0)), summary.mslHash());
+        assertNull(store.sources("rendertype_solid", "VERTEX"));
+        assertEquals(0, store.stats().capturedStages());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedSourcesPastTheCap() {
+        ShaderDiagnosticsStore probe = new ShaderDiagnosticsStore(true, 1L << 20);
+        probe.recordTranslation("probe", "VERTEX", glsl(0), msl(0));
+        long entryBytes = probe.stats().capturedBytes();
+        ShaderDiagnosticsStore store = new ShaderDiagnosticsStore(true, entryBytes * 5 / 2);
+
+        store.recordTranslation("rendertype_solid", "VERTEX", glsl(1), msl(1));
+        store.recordTranslation("rendertype_cutout", "VERTEX", glsl(2), msl(2));
+        assertEquals(msl(1), store.sources("rendertype_solid", "VERTEX").translatedMsl());
+        store.recordTranslation("rendertype_lines", "VERTEX", glsl(3), msl(3));
+
+        assertNotNull(store.sources("rendertype_solid", "VERTEX"));
+        assertNull(store.sources("rendertype_cutout", "VERTEX"));
+        assertEquals(glsl(3), store.sources("rendertype_lines", "VERTEX").glslInput());
+        assertNotNull(store.summary("rendertype_cutout", "VERTEX"));
+        assertEquals(new ShaderDiagnosticsStore.Stats(3, 2, store.stats().capturedBytes(), 1L), store.stats());
+    }
+
+    @Test
+    void dumpsIndexAndCapturedSources() throws Exception {
+        tempDumpDir = Files.createTempDirectory("mcmetal-diagnostics-test");
+        ShaderDiagnosticsStore store = new ShaderDiagnosticsStore(true, 1L << 20);
+        store.recordTranslation("rendertype_solid", "VERTEX", glsl(0), msl(0));
+        store.recordSource("rendertype_lines", "FRAGMENT", glsl(1));
+        store.recordFailure("rendertype_lines", "FRAGMENT", "unknown identifier");
+
+        store.dump(tempDumpDir);
+
+        assertEquals(glsl(0), Files.readString(tempDumpDir.resolve("rendertype_solid.vertex.glsl")));
+        assertEquals(msl(0), Files.readString(tempDumpDir.resolve("rendertype_solid.vertex.metal")));
+        assertEquals(glsl(1), Files.readString(tempDumpDir.resolve("rendertype_lines.fragment.glsl")));
+        String index = Files.readString(tempDumpDir.resolve("index.txt"));
+        assertTrue(index.contains("shader_name=rendertype_lines shader_stage=FRAGMENT"));
+        assertTrue(index.contains("last_error=\"unknown identifier\""));
+    }
+
+    private static String glsl(int variant) {
+        return "#version 150\nuniform vec4 ColorModulator;\nvoid main() { gl_Position = vec4(" + variant + ".0); }\n";
+    }
+
+    private static String msl(int variant) {
+        return "#include <metal_stdlib>\nvertex float4 main0() { return float4(" + variant + ".0); }\n";
+    }
+}
@@ -1,6 +1,7 @@
 package io.github.mcmetal.metal;
 
 import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.nio.file.Files;
@@ -9,12 +10,26 @@ import java.nio.file.Path;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class ShaderDiskCacheTest {
     private Path tempCacheDir;
 
+    @BeforeEach
+    void setUp() {
+        ShaderToolchainFingerprint.setForTests("glslang=test; spirv-cross=test");
+        ShaderDiskCache.setSweepExecutorForTests(Runnable::run);
+    }
+
     @AfterEach
     void tearDown() throws Exception {
+        ShaderToolchainFingerprint.resetForTests();
+        ShaderDiskCache.setSweepExecutorForTests(null);
+        System.clearProperty("mcmetal.phase6.shaderCacheMaxEntries");
+        System.clearProperty("mcmetal.phase6.shaderMemoryCacheBytes");
         if (tempCacheDir != null) {
             try (var walk = Files.walk(tempCacheDir)) {
                 walk.sorted((a, b) -> b.compareTo(a)).forEach(path -> {
@@ -60,4 +75,144 @@ class ShaderDiskCacheTest {
         assertEquals("vertex float4 main0() { return 0; }", cached.mslSource());
         assertEquals("Globals", cached.bindingMap().uniforms().get(0).name());
     }
+
+    @Test
+    void toolchainFingerprintChangeStartsAFreshNamespace() throws Exception {
+        tempCacheDir = Files.createTempDirectory("mcmetal-cache-test");
+        System.setProperty("mcmetal.phase4.cacheDir", tempCacheDir.toString());
+        ShaderBindingMap bindingMap = new ShaderBindingMap(java.util.List.of(), java.util.List.of(), java.util.List.of());
+        new ShaderDiskCache().store("blit", "FRAGMENT", "void main(){}", new byte[] {1}, "fragment main0", bindingMap);
+        assertNotNull(new ShaderDiskCache().load("blit", "FRAGMENT", "void main(){}"));
+
+        ShaderToolchainFingerprint.setForTests("glslang=upgraded; spirv-cross=test");
+
+        assertNull(new ShaderDiskCache().load("blit", "FRAGMENT", "void main(){}"));
+    }
+
+    @Test
+    void formatsSha256AsLowercaseHex() {
+        assertEquals(
+            "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad",
+            ShaderDiskCache.sha256("abc")
+        );
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedEntriesPastTheEntryCap() throws Exception {
+        tempCacheDir = Files.createTempDirectory("mcmetal-cache-test");
+        System.setProperty("mcmetal.phase4.cacheDir", tempCacheDir.toString());
+        System.setProperty("mcmetal.phase6.shaderCacheMaxEntries", "2");
+        System.setProperty("mcmetal.phase6.shaderMemoryCacheBytes", "0");
+        ShaderDiskCache cache = new ShaderDiskCache();
+        ShaderBindingMap bindingMap = new ShaderBindingMap(java.util.List.of(), java.util.List.of(), java.util.List.of());
+
+        cache.store("first", "VERTEX", "a", new byte[] {1}, "first", bindingMap);
+        Thread.sleep(5L);
+        cache.store("second", "VERTEX", "b", new byte[] {2}, "second", bindingMap);
+        Thread.sleep(5L);
+        assertNotNull(cache.load("first", "VERTEX", "a"));
+        Thread.sleep(5L);
+        cache.store("third", "VERTEX", "c", new byte[] {3}, "third", bindingMap);
+
+        assertNotNull(cache.load("first", "VERTEX", "a"));
+        assertNull(cache.load("second", "VERTEX", "b"));
+        assertNotNull(cache.load("third", "VERTEX", "c"));
+        ShaderDiskCache.Stats stats = cache.stats();
+        assertEquals(2, stats.entries());
+        assertEquals(1L, stats.evictions());
+        assertEquals(3L, stats.hits());
+        assertEquals(1L, stats.misses());
+        assertEquals(0.75, stats.hitRate());
+    }
+
+    @Test
+    void sweepRemovesLegacyNamespacesAndStaleTempDirectories() throws Exception {
+        tempCacheDir = Files.createTempDirectory("mcmetal-cache-test");
+        System.setProperty("mcmetal.phase4.cacheDir", tempCacheDir.toString());
+        Path legacyEntry = Files.createDirectories(tempCacheDir.resolve("shader-pipeline-v1").resolve("blit__VERTEX__a.tmp"));
+        Files.writeString(legacyEntry.resolve("shader.msl"), "stale");
+        Path staleTemp = Files.createDirectories(tempCacheDir.resolve("pipeline-archive.json.tmp"));
+        Files.setLastModifiedTime(staleTemp, java.nio.file.attribute.FileTime.fromMillis(0L));
+
+        new ShaderDiskCache().sweep();
+
+        assertFalse(Files.exists(tempCacheDir.resolve("shader-pipeline-v1")));
+        assertFalse(Files.exists(staleTemp));
+    }
+
+    @Test
+    void servesRepeatLoadsFromMemoryWithinTheByteBudget() throws Exception {
+        tempCacheDir = Files.createTempDirectory("mcmetal-cache-test");
+        System.setProperty("mcmetal.phase4.cacheDir", tempCacheDir.toString());
+        System.setProperty("mcmetal.phase6.shaderMemoryCacheBytes", "600");
+        ShaderDiskCache cache = new ShaderDiskCache();
+        ShaderBindingMap bindingMap = new ShaderBindingMap(java.util.List.of(), java.util.List.of(), java.util.List.of());
+
+        cache.store("first", "VERTEX", "a", new byte[] {1}, "x".repeat(100), bindingMap);
+        ShaderDiskCache.CachedShaderArtifacts first = cache.load("first", "VERTEX", "a");
+        assertSame(first, cache.load("first", "VERTEX", "a"));
+        cache.store("second", "VERTEX", "b", new byte[] {2}, "y".repeat(200), bindingMap);
+
+        assertEquals("x".repeat(100), cache.load("first", "VERTEX", "a").mslSource());
+        ShaderDiskCache.Stats stats = cache.stats();
+        assertEquals(2L, stats.memoryHits());
+        assertEquals(1L, stats.hits());
+        assertTrue(stats.memoryBytes() <= 600L);
+    }
+
+    @Test
+    void prewarmServesRecentlyUsedEntriesFromMemory() throws Exception {
+        tempCacheDir = Files.createTempDirectory("mcmetal-cache-test");
+        System.setProperty("mcmetal.phase4.cacheDir", tempCacheDir.toString());
+        ShaderBindingMap bindingMap = new ShaderBindingMap(
+            java.util.List.of(),
+            java.util.List.of(new ShaderBindingMap.TextureBinding("Sampler0", 0, 1)),
+            java.util.List.of()
+        );
+        ShaderDiskCache previousSession = new ShaderDiskCache();
+        previousSession.store("blit", "VERTEX", "a", new byte[] {1}, "vertex main0", bindingMap);
+        previousSession.store("blit", "FRAGMENT", "b", new byte[] {2}, "fragment main0", bindingMap);
+        previousSession.sweep();
+
+        ShaderDiskCache cache = new ShaderDiskCache();
+        assertEquals(2, cache.prewarm());
+        ShaderDiskCache.CachedShaderArtifacts cached = cache.load("blit", "FRAGMENT", "b");
+
+        assertEquals("fragment main0", cached.mslSource());
+        assertEquals("Sampler0", cached.bindingMap().textures().get(0).name());
+        ShaderDiskCache.Stats stats = cache.stats();
+        assertEquals(2L, stats.prewarmedEntries());
+        assertEquals(1L, stats.prewarmHits());
+        assertEquals(0L, stats.onDemandLoads());
+    }
+
+    @Test
+    void prewarmRanksByTheMostRecentSessionsMemoryHits() throws Exception {
+        tempCacheDir = Files.createTempDirectory("mcmetal-cache-test");
+        System.setProperty("mcmetal.phase4.cacheDir", tempCacheDir.toString());
+        ShaderBindingMap bindingMap = new ShaderBindingMap(java.util.List.of(), java.util.List.of(), java.util.List.of());
+        ShaderDiskCache firstSession = new ShaderDiskCache();
+        firstSession.store("first", "VERTEX", "a", new byte[] {1}, "first", bindingMap);
+        Thread.sleep(5L);
+        firstSession.store("second", "VERTEX", "b", new byte[] {2}, "second", bindingMap);
+        Thread.sleep(5L);
+        firstSession.store("third", "VERTEX", "c", new byte[] {3}, "third", bindingMap);
+        firstSession.flush();
+
+        ShaderDiskCache secondSession = new ShaderDiskCache();
+        assertEquals(3, secondSession.prewarm());
+        Thread.sleep(5L);
+        // Only a memory hit; the access time must still reach the index for the next session's ranking.
+        assertNotNull(secondSession.load("first", "VERTEX", "a"));
+        secondSession.scheduleFlush();
+
+        // Room for one entry, so prewarm keeps only the top-ranked one.
+        System.setProperty("mcmetal.phase6.shaderMemoryCacheBytes", "200");
+        ShaderDiskCache thirdSession = new ShaderDiskCache();
+        assertEquals(1, thirdSession.prewarm());
+        assertEquals("first", thirdSession.load("first", "VERTEX", "a").mslSource());
+        ShaderDiskCache.Stats stats = thirdSession.stats();
+        assertEquals(1L, stats.prewarmHits());
+        assertEquals(0L, stats.onDemandLoads());
+    }
 }
@@ -0,0 +1,156 @@
+package io.github.mcmetal.metal;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Reloads every vanilla core shader stage through each toolchain backend; run with {@code ./gradlew shaderToolchainBenchmark}.
+ */
+@Tag("benchmark")
+class ShaderToolchainBenchmarkTest {
+    private static final String CORE_SHADER_PROBE = "assets/minecraft/shaders/core/position.vsh";
+    private static final Pattern MOJ_IMPORT = Pattern.compile("#moj_import <([^>]+)>");
+    private static final int MEASURED_RELOADS = 3;
+
+    private record StageSource(String shaderName, GlslToSpirvCompiler.ShaderStage stage, String glslSource) {
+    }
+
+    private record ReloadResult(long nanos, int succeeded, int failed) {
+    }
+
+    @AfterEach
+    void tearDown() {
+        InProcessShaderToolchain.resetModeForTests();
+    }
+
+    @Test
+    void comparesVanillaReloadAcrossToolchainBackends() throws Exception {
+        List<StageSource> corpus = loadVanillaCorpus();
+        Assumptions.assumeTrue(!corpus.isEmpty(), "vanilla core shaders are not on the test classpath");
+
+        InProcessShaderToolchain.setModeForTests(InProcessShaderToolchain.Mode.IN_PROCESS);
+        boolean inProcessAvailable = InProcessShaderToolchain.isSelected();
+        ReloadResult inProcess = inProcessAvailable ? measure(corpus) : null;
+
+        InProcessShaderToolchain.setModeForTests(InProcessShaderToolchain.Mode.SUBPROCESS);
+        ReloadResult subprocess = measure(corpus);
+
+        report("subprocess", corpus.size(), subprocess);
+        if (inProcess != null) {
+            report("inprocess", corpus.size(), inProcess);
+            System.out.printf(
+                "event=metal_phase6 phase=shader_toolchain_benchmark speedup=%.2f%n",
+                (double) subprocess.nanos() / Math.max(inProcess.nanos(), 1L)
+            );
+        } else {
+            System.out.println("event=metal_phase6 phase=shader_toolchain_benchmark backend=inprocess status=unavailable");
+        }
+        assertTrue(subprocess.succeeded() + subprocess.failed() == corpus.size());
+    }
+
+    private static ReloadResult measure(List<StageSource> corpus) {
+        reload(corpus);
+        long best = Long.MAX_VALUE;
+        ReloadResult last = null;
+        for (int i = 0; i < MEASURED_RELOADS; i++) {
+            last = reload(corpus);
+            best = Math.min(best, last.nanos());
+        }
+        return new ReloadResult(best, last.succeeded(), last.failed());
+    }
+
+    private static ReloadResult reload(List<StageSource> corpus) {
+        GlslToSpirvCompiler compiler = new GlslToSpirvCompiler();
+        SpirvReflectionExtractor reflectionExtractor = new SpirvReflectionExtractor();
+        SpirvToMslTranslator translator = new SpirvToMslTranslator();
+        int succeeded = 0;
+        int failed = 0;
+        long start = System.nanoTime();
+        for (StageSource source : corpus) {
+            try {
+                byte[] spirvBinary = compiler.compile(source.shaderName(), source.stage(), source.glslSource());
+                reflectionExtractor.extract(source.shaderName(), spirvBinary);
+                translator.translate(source.shaderName(), spirvBinary);
+                succeeded++;
+            } catch (RuntimeException exception) {
+                failed++;
+            }
+        }
+        return new ReloadResult(System.nanoTime() - start, succeeded, failed);
+    }
+
+    private static void report(String backend, int stages, ReloadResult result) {
+        System.out.printf(
+            "event=metal_phase6 phase=shader_toolchain_benchmark backend=%s stages=%d succeeded=%d failed=%d reload_ms=%.1f%n",
+            backend,
+            stages,
+            result.succeeded(),
+            result.failed(),
+            result.nanos() / 1_000_000.0
+        );
+    }
+
+    private static List<StageSource> loadVanillaCorpus() throws IOException, URISyntaxException {
+        URL probe = ShaderToolchainBenchmarkTest.class.getClassLoader().getResource(CORE_SHADER_PROBE);
+        if (probe == null) {
+            return List.of();
+        }
+
+        URI uri = probe.toURI();
+        FileSystem jarFileSystem = "jar".equals(uri.getScheme()) ? FileSystems.newFileSystem(uri, Map.of()) : null;
+        try {
+            Path coreDirectory = Path.of(uri).getParent();
+            Path includeDirectory = coreDirectory.resolveSibling("include");
+            List<StageSource> corpus = new ArrayList<>();
+            try (var files = Files.list(coreDirectory)) {
+                for (Path file : files.sorted().toList()) {
+                    String fileName = file.getFileName().toString();
+                    GlslToSpirvCompiler.ShaderStage stage = fileName.endsWith(".vsh")
+                        ? GlslToSpirvCompiler.ShaderStage.VERTEX
+                        : fileName.endsWith(".fsh") ? GlslToSpirvCompiler.ShaderStage.FRAGMENT : null;
+                    if (stage == null) {
+                        continue;
+                    }
+                    String shaderName = fileName.substring(0, fileName.length() - 4);
+                    corpus.add(new StageSource(shaderName, stage, resolveImports(Files.readString(file), includeDirectory)));
+                }
+            }
+            return corpus;
+        } finally {
+            if (jarFileSystem != null) {
+                jarFileSystem.close();
+            }
+        }
+    }
+
+    private static String resolveImports(String source, Path includeDirectory) throws IOException {
+        Matcher matcher = MOJ_IMPORT.matcher(source);
+        StringBuilder resolved = new StringBuilder(source.length());
+        while (matcher.find()) {
+            Path include = includeDirectory.resolve(matcher.group(1));
+            String replacement = Files.exists(include) ? Files.readString(include, StandardCharsets.UTF_8) : "";
+            matcher.appendReplacement(resolved, Matcher.quoteReplacement(replacement));
+        }
+        matcher.appendTail(resolved);
+        return resolved.toString();
+    }
+}
@@ -0,0 +1,187 @@
+package io.github.mcmetal.metal;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SpirvBinaryReflectorTest {
+    @Test
+    void reflectsUniformBlockSeparateImageAndSampler() {
+        ShaderBindingMap bindingMap = SpirvBinaryReflector.reflect("rendertype_solid", sampleModule(ByteOrder.LITTLE_ENDIAN));
+
+        assertEquals(List.of(new ShaderBindingMap.UniformBinding("Globals", 0, 0)), bindingMap.uniforms());
+        assertEquals(List.of(new ShaderBindingMap.TextureBinding("DiffuseSampler", 0, 1)), bindingMap.textures());
+        assertEquals(List.of(new ShaderBindingMap.SamplerBinding("LinearClamp", 1, 2)), bindingMap.samplers());
+    }
+
+    @Test
+    void readsBigEndianModules() {
+        ShaderBindingMap bindingMap = SpirvBinaryReflector.reflect("rendertype_solid", sampleModule(ByteOrder.BIG_ENDIAN));
+
+        assertEquals("Globals", bindingMap.uniforms().get(0).name());
+        assertEquals("LinearClamp", bindingMap.samplers().get(0).name());
+    }
+
+    @Test
+    void offsetsOnlyUniformBufferBindings() {
+        for (ByteOrder order : List.of(ByteOrder.LITTLE_ENDIAN, ByteOrder.BIG_ENDIAN)) {
+            byte[] module = sampleModule(order);
+            byte[] remapped = SpirvBinaryReflector.offsetUniformBufferBindings("rendertype_solid", module, 1);
+            ShaderBindingMap bindingMap = SpirvBinaryReflector.reflect("rendertype_solid", remapped);
+
+            assertEquals(1, bindingMap.uniforms().get(0).binding());
+            assertEquals(1, bindingMap.textures().get(0).binding());
+            assertEquals(2, bindingMap.samplers().get(0).binding());
+            assertEquals(0, SpirvBinaryReflector.reflect("rendertype_solid", module).uniforms().get(0).binding());
+        }
+    }
+
+    @Test
+    void rejectsInputWithoutSpirvMagic() {
+        assertThrows(
+            SpirvReflectionExtractor.ReflectionException.class,
+            () -> SpirvBinaryReflector.reflect("broken_shader", new byte[20])
+        );
+    }
+
+    @Test
+    void rejectsTruncatedInstructions() {
+        byte[] module = sampleModule(ByteOrder.LITTLE_ENDIAN);
+        byte[] truncated = new byte[module.length - Integer.BYTES];
+        System.arraycopy(module, 0, truncated, 0, truncated.length);
+
+        assertThrows(
+            SpirvReflectionExtractor.ReflectionException.class,
+            () -> SpirvBinaryReflector.reflect("truncated_shader", truncated)
+        );
+    }
+
+    @Test
+    void reflectsStd140MemberLayout() {
+        UniformBlockLayout layout = SpirvBinaryReflector.reflectUniformLayout("rendertype_solid", layoutModule());
+
+        UniformBlockLayout.Block globals = layout.blocks().get(0);
+        assertEquals("Globals", globals.name());
+        assertEquals(96, globals.byteSize());
+        assertEquals(
+            List.of(
+                new UniformBlockLayout.Member("ModelViewMat", UniformBlockLayout.MemberType.MAT4, 0, 16),
+                new UniformBlockLayout.Member("ColorModulator", UniformBlockLayout.MemberType.VEC4, 64, 0),
+                new UniformBlockLayout.Member("FogStart", UniformBlockLayout.MemberType.FLOAT, 80, 0),
+                new UniformBlockLayout.Member("ScreenSize", UniformBlockLayout.MemberType.IVEC2, 88, 0)
+            ),
+            globals.members()
+        );
+    }
+
+    /**
+     * Equivalent of {@code uniform Globals { mat4 ModelViewMat; vec4 ColorModulator; float FogStart; ivec2 ScreenSize; }}.
+     */
+    private static byte[] layoutModule() {
+        ModuleWriter module = new ModuleWriter();
+        module.instruction(5, 1).string("Globals");
+        module.instruction(6, 1, 0).string("ModelViewMat");
+        module.instruction(6, 1, 1).string("ColorModulator");
+        module.instruction(6, 1, 2).string("FogStart");
+        module.instruction(6, 1, 3).string("ScreenSize");
+        module.instruction(71, 1, 2);
+        module.instruction(71, 8, 34, 0);
+        module.instruction(71, 8, 33, 0);
+        module.instruction(72, 1, 0, 5);
+        module.instruction(72, 1, 0, 35, 0);
+        module.instruction(72, 1, 0, 7, 16);
+        module.instruction(72, 1, 1, 35, 64);
+        module.instruction(72, 1, 2, 35, 80);
+        module.instruction(72, 1, 3, 35, 88);
+        module.instruction(22, 2, 32);
+        module.instruction(23, 3, 2, 4);
+        module.instruction(24, 4, 3, 4);
+        module.instruction(21, 5, 32, 1);
+        module.instruction(23, 6, 5, 2);
+        module.instruction(30, 1, 4, 3, 2, 6);
+        module.instruction(32, 7, 2, 1);
+        module.instruction(59, 7, 8, 2);
+        return module.toBytes(9, ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Equivalent of {@code uniform Globals { vec4 ColorModulator; }}, {@code texture2D DiffuseSampler} and
+     * {@code sampler LinearClamp}, plus an input variable that must be ignored.
+     */
+    static byte[] sampleModule(ByteOrder order) {
+        ModuleWriter module = new ModuleWriter();
+        module.instruction(5, 1).string("Globals");
+        module.instruction(5, 4).string("globals");
+        module.instruction(5, 8).string("DiffuseSampler");
+        module.instruction(5, 11).string("LinearClamp");
+        module.instruction(5, 13).string("Position");
+        module.instruction(71, 1, 2);
+        module.instruction(71, 4, 34, 0);
+        module.instruction(71, 4, 33, 0);
+        module.instruction(71, 8, 34, 0);
+        module.instruction(71, 8, 33, 1);
+        module.instruction(71, 11, 34, 1);
+        module.instruction(71, 11, 33, 2);
+        module.instruction(22, 2, 32);
+        module.instruction(23, 14, 2, 4);
+        module.instruction(30, 1, 14);
+        module.instruction(32, 3, 2, 1);
+        module.instruction(59, 3, 4, 2);
+        module.instruction(25, 6, 2, 1, 0, 0, 0, 1, 0);
+        module.instruction(32, 7, 0, 6);
+        module.instruction(59, 7, 8, 0);
+        module.instruction(26, 9);
+        module.instruction(32, 10, 0, 9);
+        module.instruction(59, 10, 11, 0);
+        module.instruction(32, 12, 1, 14);
+        module.instruction(59, 12, 13, 1);
+        return module.toBytes(15, order);
+    }
+
+    private static final class ModuleWriter {
+        private final List<Integer> words = new ArrayList<>();
+        private int instructionStart;
+
+        ModuleWriter instruction(int opcode, int... operands) {
+            instructionStart = words.size();
+            words.add(((operands.length + 1) << 16) | opcode);
+            for (int operand : operands) {
+                words.add(operand);
+            }
+            return this;
+        }
+
+        void string(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            int wordCount = bytes.length / Integer.BYTES + 1;
+            for (int i = 0; i < wordCount; i++) {
+                int word = 0;
+                for (int b = 0; b < Integer.BYTES; b++) {
+                    int index = i * Integer.BYTES + b;
+                    if (index < bytes.length) {
+                        word |= (bytes[index] & 0xFF) << (b * Byte.SIZE);
+                    }
+                }
+                words.add(word);
+            }
+            int length = words.size() - instructionStart;
+            words.set(instructionStart, (length << 16) | (words.get(instructionStart) & 0xFFFF));
+        }
+
+        byte[] toBytes(int bound, ByteOrder order) {
+            ByteBuffer buffer = ByteBuffer.allocate((words.size() + 5) * Integer.BYTES).order(order);
+            buffer.putInt(0x07230203).putInt(0x00010600).putInt(0).putInt(bound).putInt(0);
+            for (int word : words) {
+                buffer.putInt(word);
+            }
+            return buffer.array();
+        }
+    }
+}
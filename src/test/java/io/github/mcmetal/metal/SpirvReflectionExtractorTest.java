@@ -1,6 +1,7 @@
 package io.github.mcmetal.metal;
 
 import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -8,9 +9,17 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class SpirvReflectionExtractorTest {
+    @BeforeEach
+    void setUp() {
+        InProcessShaderToolchain.setModeForTests(InProcessShaderToolchain.Mode.SUBPROCESS);
+        SpirvReflectionExtractor.setModeForTests(SpirvReflectionExtractor.Mode.SPIRV_CROSS);
+    }
+
     @AfterEach
     void tearDown() {
         SpirvReflectionExtractor.resetProcessExecutorForTests();
+        SpirvReflectionExtractor.resetModeForTests();
+        InProcessShaderToolchain.resetModeForTests();
     }
 
     @Test
@@ -53,4 +62,37 @@ class SpirvReflectionExtractorTest {
         );
         assertTrue(exception.getMessage().contains("reflection error"));
     }
+
+    @Test
+    void javaModeReflectsWithoutStartingSpirvCross() {
+        SpirvReflectionExtractor.setModeForTests(SpirvReflectionExtractor.Mode.JAVA);
+        SpirvReflectionExtractor.setProcessExecutorForTests(command -> {
+            throw new AssertionError("spirv-cross must not run in java reflection mode");
+        });
+
+        ShaderBindingMap bindingMap = new SpirvReflectionExtractor().extract(
+            "rendertype_solid",
+            SpirvBinaryReflectorTest.sampleModule(java.nio.ByteOrder.LITTLE_ENDIAN)
+        );
+
+        assertEquals("Globals", bindingMap.uniforms().get(0).name());
+        assertEquals("DiffuseSampler", bindingMap.textures().get(0).name());
+        assertEquals("LinearClamp", bindingMap.samplers().get(0).name());
+    }
+
+    @Test
+    void crossCheckModeReturnsSpirvCrossResult() {
+        SpirvReflectionExtractor.setModeForTests(SpirvReflectionExtractor.Mode.CROSS_CHECK);
+        SpirvReflectionExtractor.setProcessExecutorForTests(command ->
+            new SpirvReflectionExtractor.ProcessOutput(0, "{\"ubos\": [{\"name\":\"Globals\",\"set\":0,\"binding\":0}]}", "")
+        );
+
+        ShaderBindingMap bindingMap = new SpirvReflectionExtractor().extract(
+            "rendertype_solid",
+            SpirvBinaryReflectorTest.sampleModule(java.nio.ByteOrder.LITTLE_ENDIAN)
+        );
+
+        assertEquals(1, bindingMap.uniforms().size());
+        assertEquals(0, bindingMap.textures().size());
+    }
 }
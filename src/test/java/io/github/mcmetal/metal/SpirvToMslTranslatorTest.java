@@ -1,28 +1,38 @@
 package io.github.mcmetal.metal;
 
 import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.nio.ByteOrder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class SpirvToMslTranslatorTest {
+    @BeforeEach
+    void setUp() {
+        InProcessShaderToolchain.setModeForTests(InProcessShaderToolchain.Mode.SUBPROCESS);
+    }
+
     @AfterEach
     void tearDown() {
         SpirvToMslTranslator.resetProcessExecutorForTests();
+        InProcessShaderToolchain.resetModeForTests();
     }
 
     @Test
     void translatesSpirvIntoMslUsingConfiguredTool() {
         SpirvToMslTranslator translator = new SpirvToMslTranslator();
-        SpirvToMslTranslator.setProcessExecutorForTests(command -> {
+        SpirvToMslTranslator.setProcessExecutorForTests((command, stdin) -> {
             assertTrue(command.contains("--msl"));
-            Path outputPath = Path.of(command.get(command.indexOf("--output") + 1));
-            Files.writeString(outputPath, "fragment float4 main0() { return float4(1.0); }");
-            return new SpirvToMslTranslator.ProcessOutput(0, "", "");
+            assertTrue(command.contains("-"));
+            assertEquals(8, stdin.length);
+            return new SpirvToMslTranslator.ProcessOutput(0, "fragment float4 main0() { return float4(1.0); }", "");
         });
 
         String msl = translator.translate(
@@ -36,7 +46,7 @@ class SpirvToMslTranslatorTest {
     @Test
     void failsWhenTranslatorProcessFails() {
         SpirvToMslTranslator translator = new SpirvToMslTranslator();
-        SpirvToMslTranslator.setProcessExecutorForTests(command ->
+        SpirvToMslTranslator.setProcessExecutorForTests((command, stdin) ->
             new SpirvToMslTranslator.ProcessOutput(1, "", "translation error")
         );
 
@@ -51,11 +61,9 @@ class SpirvToMslTranslatorTest {
     @Test
     void failsWhenTranslatorReturnsBlankMsl() {
         SpirvToMslTranslator translator = new SpirvToMslTranslator();
-        SpirvToMslTranslator.setProcessExecutorForTests(command -> {
-            Path outputPath = Path.of(command.get(command.indexOf("--output") + 1));
-            Files.writeString(outputPath, " ");
-            return new SpirvToMslTranslator.ProcessOutput(0, "", "");
-        });
+        SpirvToMslTranslator.setProcessExecutorForTests((command, stdin) ->
+            new SpirvToMslTranslator.ProcessOutput(0, " ", "")
+        );
 
         RuntimeException exception = assertThrows(
             SpirvToMslTranslator.TranslationException.class,
@@ -64,4 +72,87 @@ class SpirvToMslTranslatorTest {
 
         assertTrue(exception.getMessage().contains("empty"));
     }
+
+    @Test
+    void translatesAndReflectsInOneStreamedInvocation() {
+        byte[] spirv = new byte[] {(byte) 0x03, (byte) 0x02, (byte) 0x23, (byte) 0x07, 0x00, 0x06, 0x01, 0x00};
+        SpirvToMslTranslator translator = new SpirvToMslTranslator();
+        SpirvToMslTranslator.setProcessExecutorForTests((command, stdin) -> {
+            assertTrue(command.contains("-"));
+            assertTrue(command.contains("--dump-resources"));
+            assertArrayEquals(spirv, stdin);
+            return new SpirvToMslTranslator.ProcessOutput(
+                0,
+                "fragment float4 main0() { return float4(1.0); }",
+                """
+                ubos
+                =============
+
+                 ID 012 : Globals (Set : 0) (Binding : 0)
+                =============
+
+                separate images
+                =============
+
+                 ID 020 : DiffuseSampler (Set : 0) (Binding : 1)
+                =============
+
+                separate samplers
+                =============
+
+                 ID 024 : LinearClamp (Set : 0) (Binding : 2)
+                =============
+
+                """
+            );
+        });
+
+        SpirvToMslTranslator.TranslatedShader translated = translator.translateWithReflection("rendertype_solid", spirv);
+
+        assertTrue(translated.mslSource().contains("fragment"));
+        assertEquals("Globals", translated.bindingMap().uniforms().get(0).name());
+        assertEquals(1, translated.bindingMap().textures().get(0).binding());
+        assertEquals("LinearClamp", translated.bindingMap().samplers().get(0).name());
+    }
+
+    @Test
+    void failsFusedTranslationWhenResourceListingIsMissing() {
+        SpirvToMslTranslator translator = new SpirvToMslTranslator();
+        SpirvToMslTranslator.setProcessExecutorForTests((command, stdin) ->
+            new SpirvToMslTranslator.ProcessOutput(0, "fragment float4 main0() { return float4(1.0); }", "")
+        );
+
+        assertThrows(
+            SpirvReflectionExtractor.ReflectionException.class,
+            () -> translator.translateWithReflection("unlisted_shader", new byte[] {1, 2, 3, 4})
+        );
+    }
+
+    @Test
+    void emitsUniformBlocksAtTheBufferIndexTheNativeLayerBinds() {
+        SpirvToMslTranslator translator = new SpirvToMslTranslator();
+        SpirvToMslTranslator.setProcessExecutorForTests((command, stdin) -> {
+            // With --msl-decoration-binding, spirv-cross emits each resource at its SPIR-V binding.
+            assertTrue(command.contains("--msl-decoration-binding"));
+            int binding = SpirvBinaryReflector.reflect("rendertype_solid", stdin).uniforms().get(0).binding();
+            return new SpirvToMslTranslator.ProcessOutput(
+                0,
+                "fragment float4 main0(constant Globals& globals [[buffer(" + binding + ")]]) { return 0; }",
+                "ubos\n=============\n\n ID 004 : Globals (Set : 0) (Binding : " + binding + ")\n=============\n"
+            );
+        });
+
+        SpirvToMslTranslator.TranslatedShader translated = translator.translateWithReflection(
+            "rendertype_solid",
+            SpirvBinaryReflectorTest.sampleModule(ByteOrder.LITTLE_ENDIAN)
+        );
+
+        Matcher buffer = Pattern.compile("\\[\\[buffer\\((\\d+)\\)]]").matcher(translated.mslSource());
+        assertTrue(buffer.find());
+        int declaredBinding = translated.bindingMap().uniforms().get(0).binding();
+        assertEquals(0, declaredBinding);
+        // MetalContext.swift binds uniform block N at kUniformBufferIndexBase (1) + N, after the vertex buffer at 0.
+        assertEquals(1, SpirvToMslTranslator.UNIFORM_BUFFER_INDEX_BASE);
+        assertEquals(1 + declaredBinding, Integer.parseInt(buffer.group(1)));
+    }
 }
@@ -5,6 +5,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
 
@@ -19,6 +20,7 @@ class VanillaShaderCorpusValidationTest {
         MetalShaderLifecycleBridge.resetForTests();
         MetalShaderProgramBridge.resetForTests();
         MetalShaderLifecycleBridge.setBridgeActiveForTests(true);
+        MetalShaderLifecycleBridge.setStageExecutorForTests(Runnable::run);
         MetalShaderLifecycleBridge.setSpirvCompilerForTests(new DeterministicCompiler());
         MetalShaderLifecycleBridge.setReflectionExtractorForTests(new DeterministicReflectionExtractor());
         MetalShaderLifecycleBridge.setMslTranslatorForTests(new DeterministicTranslator());
@@ -109,6 +111,14 @@ class VanillaShaderCorpusValidationTest {
         String translate(String shaderName, byte[] spirvBinary) {
             return "vertex float4 main0() { return float4(0.0); }";
         }
+
+        @Override
+        TranslatedShader translateWithReflection(String shaderName, byte[] spirvBinary) {
+            return new TranslatedShader(
+                translate(shaderName, spirvBinary),
+                new DeterministicReflectionExtractor().extract(shaderName, spirvBinary)
+            );
+        }
     }
 
     private static final class EmptyDiskCache extends ShaderDiskCache {
@@ -131,6 +141,11 @@ class VanillaShaderCorpusValidationTest {
             return 0;
         }
 
+        @Override
+        public int precompilePipelineState(long programHandle, long vertexDescriptorHandle, ByteBuffer packedState, int packedByteLength) {
+            return 0;
+        }
+
         @Override
         public long registerUniform(long programHandle, String uniformName, int set, int binding) {
             return nextHandle++;
@@ -141,6 +156,21 @@ class VanillaShaderCorpusValidationTest {
             return 0;
         }
 
+        @Override
+        public int configureUniformBlock(
+            long programHandle,
+            int blockByteLength,
+            ByteBuffer packedRegions,
+            int packedByteLength
+        ) {
+            return 0;
+        }
+
+        @Override
+        public int updateUniformBlock(long programHandle, ByteBuffer data, int dataLength) {
+            return 0;
+        }
+
         @Override
         public int destroyShaderProgram(long programHandle) {
             return 0;